@@ -18,6 +18,7 @@
 
 package org.apache.atlas.hive.bridge;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -99,7 +100,8 @@ public class HiveMetaStoreBridge {
     public final Hive hiveClient;
     private AtlasClient atlasClient = null;
 
-    HiveMetaStoreBridge(String clusterName, Hive hiveClient, AtlasClient atlasClient) {
+    @VisibleForTesting
+    public HiveMetaStoreBridge(String clusterName, Hive hiveClient, AtlasClient atlasClient) {
         this.clusterName = clusterName;
         this.hiveClient = hiveClient;
         this.atlasClient = atlasClient;
@@ -161,7 +163,7 @@ public class HiveMetaStoreBridge {
      * @return
      * @throws Exception
      */
-    private Referenceable registerDatabase(String databaseName) throws Exception {
+    Referenceable registerDatabase(String databaseName) throws Exception {
         Referenceable dbRef = getDatabaseReference(clusterName, databaseName);
         Database db = hiveClient.getDatabase(databaseName);
 
@@ -292,31 +294,7 @@ public class HiveMetaStoreBridge {
                 Referenceable process = getProcessReference(tableQualifiedName);
                 if (process == null) {
                     LOG.info("Attempting to register create table process for {}", tableQualifiedName);
-                    Referenceable lineageProcess = new Referenceable(HiveDataTypes.HIVE_PROCESS.getName());
-                    ArrayList<Referenceable> sourceList = new ArrayList<>();
-                    ArrayList<Referenceable> targetList = new ArrayList<>();
-                    String tableLocation = table.getDataLocation().toString();
-                    Referenceable path = fillHDFSDataSet(tableLocation);
-                    String query = getCreateTableString(table, tableLocation);
-                    sourceList.add(path);
-                    targetList.add(tableReferenceable);
-                    lineageProcess.set("inputs", sourceList);
-                    lineageProcess.set("outputs", targetList);
-                    lineageProcess.set("userName", table.getOwner());
-                    lineageProcess.set("startTime", new Date(System.currentTimeMillis()));
-                    lineageProcess.set("endTime", new Date(System.currentTimeMillis()));
-                    lineageProcess.set("operationType", "CREATETABLE");
-                    lineageProcess.set("queryText", query);
-                    lineageProcess.set("queryId", query);
-                    lineageProcess.set("queryPlan", "{}");
-                    lineageProcess.set("clusterName", clusterName);
-                    List<String> recentQueries = new ArrayList<>(1);
-                    recentQueries.add(query);
-                    lineageProcess.set("recentQueries", recentQueries);
-                    String processQualifiedName = getTableProcessQualifiedName(clusterName, table);
-                    lineageProcess.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, processQualifiedName);
-                    lineageProcess.set(AtlasClient.NAME, query);
-                    registerInstance(lineageProcess);
+                    registerInstance(createTableProcessInstance(table, tableReferenceable));
                 } else {
                     LOG.info("Process {} is already registered", process.toString());
                 }
@@ -331,6 +309,60 @@ public class HiveMetaStoreBridge {
         }
     }
 
+    /**
+     * Imports the given tables with one create request.  Entities which are registered already are updated.
+     * External tables are registered along with the process which created them, unless it is registered already.
+     *
+     * @param databaseReferenceable reference to the database of the tables
+     * @param tables                tables to import
+     * @throws Exception
+     */
+    void importTables(Referenceable databaseReferenceable, List<Table> tables) throws Exception {
+        List<Referenceable> entities = new ArrayList<>();
+
+        for (Table table : tables) {
+            Referenceable tableReferenceable = createTableInstance(databaseReferenceable, table);
+            entities.add(tableReferenceable);
+
+            if (table.getTableType() == TableType.EXTERNAL_TABLE
+                    && getProcessReference(getTableProcessQualifiedName(clusterName, table)) == null) {
+                entities.add(createTableProcessInstance(table, tableReferenceable));
+            }
+        }
+
+        LOG.debug("Submitting {} entities for {} tables", entities.size(), tables.size());
+        List<String> guids = getAtlasClient().createEntity(entities);
+        LOG.debug("created instances for {} tables, guids: {}", tables.size(), guids);
+    }
+
+    private Referenceable createTableProcessInstance(Table table, Referenceable tableReferenceable) {
+        Referenceable lineageProcess = new Referenceable(HiveDataTypes.HIVE_PROCESS.getName());
+        ArrayList<Referenceable> sourceList = new ArrayList<>();
+        ArrayList<Referenceable> targetList = new ArrayList<>();
+        String tableLocation = table.getDataLocation().toString();
+        Referenceable path = fillHDFSDataSet(tableLocation);
+        String query = getCreateTableString(table, tableLocation);
+        sourceList.add(path);
+        targetList.add(tableReferenceable);
+        lineageProcess.set("inputs", sourceList);
+        lineageProcess.set("outputs", targetList);
+        lineageProcess.set("userName", table.getOwner());
+        lineageProcess.set("startTime", new Date(System.currentTimeMillis()));
+        lineageProcess.set("endTime", new Date(System.currentTimeMillis()));
+        lineageProcess.set("operationType", "CREATETABLE");
+        lineageProcess.set("queryText", query);
+        lineageProcess.set("queryId", query);
+        lineageProcess.set("queryPlan", "{}");
+        lineageProcess.set("clusterName", clusterName);
+        List<String> recentQueries = new ArrayList<>(1);
+        recentQueries.add(query);
+        lineageProcess.set("recentQueries", recentQueries);
+        String processQualifiedName = getTableProcessQualifiedName(clusterName, table);
+        lineageProcess.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, processQualifiedName);
+        lineageProcess.set(AtlasClient.NAME, query);
+        return lineageProcess;
+    }
+
     /**
      * Gets reference for the table
      *
@@ -630,6 +662,10 @@ public class HiveMetaStoreBridge {
         }
 
         Options options = new Options();
+        options.addOption("failOnError", false, "stop the import at the first error");
+        options.addOption("numThreads", true, "import with the given number of threads");
+        options.addOption("batchSize", true, "number of tables registered with one request, with -numThreads");
+        options.addOption("checkpointFile", true, "file to record imported tables in and resume from, with -numThreads");
         CommandLineParser parser = new BasicParser();
         CommandLine cmd = parser.parse( options, args);
 
@@ -639,6 +675,17 @@ public class HiveMetaStoreBridge {
         }
 
         HiveMetaStoreBridge hiveMetaStoreBridge = new HiveMetaStoreBridge(atlasConf, new HiveConf(), atlasClient);
-        hiveMetaStoreBridge.importHiveMetadata(failOnError);
+
+        if (cmd.hasOption("numThreads")) {
+            int numThreads = Integer.parseInt(cmd.getOptionValue("numThreads"));
+            int batchSize = cmd.hasOption("batchSize") ? Integer.parseInt(cmd.getOptionValue("batchSize")) :
+                    HiveMetaStoreBulkImporter.DEFAULT_BATCH_SIZE;
+            File checkpointFile = cmd.hasOption("checkpointFile") ? new File(cmd.getOptionValue("checkpointFile")) : null;
+
+            new HiveMetaStoreBulkImporter(hiveMetaStoreBridge, numThreads, batchSize, failOnError, checkpointFile)
+                    .importHiveMetadata();
+        } else {
+            hiveMetaStoreBridge.importHiveMetadata(failOnError);
+        }
     }
 }
@@ -0,0 +1,333 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hive.bridge;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports the Hive metastore with several threads, registering the tables of a database in batches with one create
+ * request per batch instead of looking up and registering every table separately.
+ *
+ * Hive metadata is read by the calling thread only, as the Hive client is not thread safe; the worker threads build
+ * the entities and send them to Atlas. When all threads are busy, the calling thread imports the next batch itself,
+ * so that no more than a few batches of tables are held in memory at a time.
+ *
+ * The qualified names of imported tables and of completely imported databases are appended to a checkpoint file,
+ * if one is given, and are skipped when the import is run again with the same file.
+ */
+public class HiveMetaStoreBulkImporter {
+    private static final Logger LOG = LoggerFactory.getLogger(HiveMetaStoreBulkImporter.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 20;
+
+    private static final long PROGRESS_LOG_INTERVAL_MS = 30 * 1000;
+
+    private final HiveMetaStoreBridge bridge;
+    private final Hive                hiveClient;
+    private final int                 numThreads;
+    private final int                 batchSize;
+    private final boolean             failOnError;
+    private final Checkpoint          checkpoint;
+
+    private final AtomicInteger tablesImported = new AtomicInteger();
+    private final AtomicInteger tablesFailed   = new AtomicInteger();
+    private volatile Exception  failure;
+    private long                startTime;
+    private long                lastProgressLogTime;
+
+    public HiveMetaStoreBulkImporter(HiveMetaStoreBridge bridge, int numThreads, int batchSize, boolean failOnError,
+                                     File checkpointFile) throws IOException {
+        this.bridge      = bridge;
+        this.hiveClient  = bridge.hiveClient;
+        this.numThreads  = numThreads;
+        this.batchSize   = batchSize;
+        this.failOnError = failOnError;
+        this.checkpoint  = new Checkpoint(checkpointFile);
+    }
+
+    public void importHiveMetadata() throws Exception {
+        LOG.info("Importing hive metadata with {} threads, {} tables per batch", numThreads, batchSize);
+
+        startTime           = System.currentTimeMillis();
+        lastProgressLogTime = startTime;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(numThreads),
+                new ThreadFactoryBuilder().setNameFormat("Atlas Hive Import Thread-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            for (String databaseName : hiveClient.getAllDatabases()) {
+                if (failure != null) {
+                    break;
+                }
+
+                String dbQualifiedName = HiveMetaStoreBridge.getDBQualifiedName(bridge.getClusterName(), databaseName);
+
+                if (checkpoint.isCompleted(dbQualifiedName)) {
+                    LOG.info("Database {} was imported already, skipping it", dbQualifiedName);
+                    continue;
+                }
+
+                Referenceable dbReference = bridge.registerDatabase(databaseName);
+
+                if (dbReference != null) {
+                    importTables(executor, dbReference, databaseName, dbQualifiedName);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            checkpoint.close();
+        }
+
+        logProgress(true);
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        if (tablesFailed.get() > 0) {
+            LOG.error("Unable to import {} tables. Please check logs for import errors", tablesFailed.get());
+        }
+    }
+
+    private void importTables(ThreadPoolExecutor executor, Referenceable dbReference, String databaseName,
+                              String dbQualifiedName) throws Exception {
+        List<String>   tableNames     = hiveClient.getAllTables(databaseName);
+        DatabaseImport databaseImport = new DatabaseImport(dbQualifiedName);
+        List<Table>    batch          = new ArrayList<>(batchSize);
+
+        LOG.info("Importing {} tables of database {}", tableNames.size(), dbQualifiedName);
+
+        for (String tableName : tableNames) {
+            if (failure != null) {
+                return;
+            }
+
+            String tableQualifiedName =
+                    HiveMetaStoreBridge.getTableQualifiedName(bridge.getClusterName(), databaseName, tableName);
+
+            if (checkpoint.isCompleted(tableQualifiedName)) {
+                continue;
+            }
+
+            try {
+                batch.add(hiveClient.getTable(databaseName, tableName));
+            } catch (Exception e) {
+                LOG.error("Import failed for hive_table {} ", tableQualifiedName, e);
+
+                databaseImport.failed.set(true);
+                tablesFailed.incrementAndGet();
+
+                if (failOnError) {
+                    throw e;
+                }
+            }
+
+            if (batch.size() == batchSize) {
+                databaseImport.submit(executor, dbReference, batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            databaseImport.submit(executor, dbReference, batch);
+        }
+
+        databaseImport.batchCompleted();
+    }
+
+    private void importBatch(Referenceable dbReference, List<Table> tables, DatabaseImport databaseImport) {
+        List<String> imported = new ArrayList<>(tables.size());
+
+        try {
+            bridge.importTables(dbReference, tables);
+
+            for (Table table : tables) {
+                imported.add(HiveMetaStoreBridge.getTableQualifiedName(bridge.getClusterName(), table));
+            }
+        } catch (Exception e) {
+            if (failOnError) {
+                LOG.error("Import failed for tables of database {}", databaseImport.dbQualifiedName, e);
+
+                failure = e;
+                databaseImport.failed.set(true);
+                return;
+            }
+
+            LOG.warn("Import of {} tables failed, importing them one by one", tables.size(), e);
+
+            // find out which tables fail, so that the other tables of the batch get imported
+            for (Table table : tables) {
+                String tableQualifiedName = HiveMetaStoreBridge.getTableQualifiedName(bridge.getClusterName(), table);
+
+                try {
+                    bridge.importTables(dbReference, Collections.singletonList(table));
+                    imported.add(tableQualifiedName);
+                } catch (Exception tableException) {
+                    LOG.error("Import failed for hive_table {} ", tableQualifiedName, tableException);
+
+                    databaseImport.failed.set(true);
+                    tablesFailed.incrementAndGet();
+                }
+            }
+        }
+
+        try {
+            checkpoint.markCompleted(imported);
+        } catch (IOException e) {
+            LOG.error("Unable to record imported tables in the checkpoint file", e);
+        }
+
+        tablesImported.addAndGet(imported.size());
+        logProgress(false);
+    }
+
+    private synchronized void logProgress(boolean force) {
+        long now = System.currentTimeMillis();
+
+        if (force || now - lastProgressLogTime >= PROGRESS_LOG_INTERVAL_MS) {
+            long elapsedSeconds = Math.max(1, (now - startTime) / 1000);
+
+            LOG.info("Imported {} tables ({} failed) in {} seconds, {} tables/second", tablesImported.get(),
+                    tablesFailed.get(), elapsedSeconds, tablesImported.get() / elapsedSeconds);
+
+            lastProgressLogTime = now;
+        }
+    }
+
+    /**
+     * Tracks the batches of a database, to record the database in the checkpoint once all of its tables are imported.
+     */
+    private class DatabaseImport {
+        private final String        dbQualifiedName;
+        private final AtomicBoolean failed         = new AtomicBoolean();
+        // one more than the number of pending batches, until all batches are submitted
+        private final AtomicInteger pendingBatches = new AtomicInteger(1);
+
+        DatabaseImport(String dbQualifiedName) {
+            this.dbQualifiedName = dbQualifiedName;
+        }
+
+        void submit(ThreadPoolExecutor executor, final Referenceable dbReference, final List<Table> tables) {
+            pendingBatches.incrementAndGet();
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        importBatch(dbReference, tables, DatabaseImport.this);
+                    } finally {
+                        batchCompleted();
+                    }
+                }
+            });
+        }
+
+        void batchCompleted() {
+            if (pendingBatches.decrementAndGet() == 0 && !failed.get()) {
+                LOG.info("Successfully imported all tables of database {}", dbQualifiedName);
+
+                try {
+                    checkpoint.markCompleted(Collections.singletonList(dbQualifiedName));
+                } catch (IOException e) {
+                    LOG.error("Unable to record imported database in the checkpoint file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Qualified names of the imported databases and tables, one per line.
+     */
+    private static class Checkpoint {
+        private final Set<String> completed = new HashSet<>();
+        private final Writer      writer;
+
+        Checkpoint(File file) throws IOException {
+            if (file == null) {
+                writer = null;
+                return;
+            }
+
+            if (file.exists()) {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (!line.isEmpty()) {
+                            completed.add(line);
+                        }
+                    }
+                }
+
+                LOG.info("Resuming import, {} databases and tables were imported already", completed.size());
+            }
+
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        }
+
+        boolean isCompleted(String qualifiedName) {
+            return completed.contains(qualifiedName);
+        }
+
+        synchronized void markCompleted(Collection<String> qualifiedNames) throws IOException {
+            if (writer != null && !qualifiedNames.isEmpty()) {
+                for (String qualifiedName : qualifiedNames) {
+                    writer.write(qualifiedName);
+                    writer.write('\n');
+                }
+
+                writer.flush();
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -20,7 +20,6 @@ package org.apache.atlas.hive.hook;
 
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasConstants;
 import org.apache.atlas.hive.bridge.HiveMetaStoreBridge;
@@ -56,11 +55,13 @@ import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -68,9 +69,6 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -85,6 +83,8 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
     private static final String KEEP_ALIVE_TIME = CONF_PREFIX + "keepAliveTime";
     public static final String CONF_SYNC = CONF_PREFIX + "synchronous";
     public static final String QUEUE_SIZE = CONF_PREFIX + "queueSize";
+    public static final String OVERFLOW_POLICY = CONF_PREFIX + "overflowPolicy";
+    public static final String OVERFLOW_TIMEOUT_MS = CONF_PREFIX + "overflowTimeoutMs";
 
     public static final String HOOK_NUM_RETRIES = CONF_PREFIX + "numRetries";
     public static final String SEP = ":".intern();
@@ -92,15 +92,27 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
 
     private static final Map<String, HiveOperation> OPERATION_MAP = new HashMap<>();
 
+    // operations whose event only refreshes its outputs from the metastore, so that events of such operations on
+    // the same outputs can be coalesced
+    private static final Set<HiveOperation> COALESCABLE_OPERATIONS = EnumSet.of(
+            HiveOperation.ALTERTABLE_FILEFORMAT, HiveOperation.ALTERTABLE_CLUSTER_SORT,
+            HiveOperation.ALTERTABLE_BUCKETNUM, HiveOperation.ALTERTABLE_PROPERTIES,
+            HiveOperation.ALTERVIEW_PROPERTIES, HiveOperation.ALTERTABLE_SERDEPROPERTIES,
+            HiveOperation.ALTERTABLE_SERIALIZER, HiveOperation.ALTERTABLE_ADDCOLS,
+            HiveOperation.ALTERTABLE_REPLACECOLS, HiveOperation.ALTERTABLE_PARTCOLTYPE,
+            HiveOperation.ALTERDATABASE, HiveOperation.ALTERDATABASE_OWNER);
+
     // wait time determines how long we wait before we exit the jvm on
     // shutdown. Pending requests after that will not be sent.
     private static final int WAIT_TIME = 3;
-    private static ExecutorService executor = null;
+    private static HiveHookExecutor executor = null;
 
     private static final int minThreadsDefault = 1;
     private static final int maxThreadsDefault = 5;
     private static final long keepAliveTimeDefault = 10;
     private static final int queueSizeDefault = 10000;
+    private static final String overflowPolicyDefault = HiveHookExecutor.OverflowPolicy.SPILL.name();
+    private static final long overflowTimeoutMsDefault = 1000;
 
     private static final HiveConf hiveConf;
 
@@ -115,10 +127,12 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
                 int maxThreads = atlasProperties.getInt(MAX_THREADS, maxThreadsDefault);
                 long keepAliveTime = atlasProperties.getLong(KEEP_ALIVE_TIME, keepAliveTimeDefault);
                 int queueSize = atlasProperties.getInt(QUEUE_SIZE, queueSizeDefault);
+                HiveHookExecutor.OverflowPolicy overflowPolicy = getOverflowPolicy();
+                long overflowTimeoutMs = atlasProperties.getLong(OVERFLOW_TIMEOUT_MS, overflowTimeoutMsDefault);
 
-                executor = new ThreadPoolExecutor(minThreads, maxThreads, keepAliveTime, TimeUnit.MILLISECONDS,
-                        new LinkedBlockingQueue<Runnable>(queueSize),
-                        new ThreadFactoryBuilder().setNameFormat("Atlas Logger %d").build());
+                executor = new HiveHookExecutor(minThreads, maxThreads, keepAliveTime, queueSize, overflowPolicy,
+                        overflowTimeoutMs);
+                executor.registerMBean();
 
                 ShutdownHookManager.get().addShutdownHook(new Thread() {
                     @Override
@@ -126,8 +140,7 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
                         try {
                             LOG.info("==> Shutdown of Atlas Hive Hook");
 
-                            executor.shutdown();
-                            executor.awaitTermination(WAIT_TIME, TimeUnit.SECONDS);
+                            executor.shutdown(WAIT_TIME, TimeUnit.SECONDS);
                             executor = null;
                         } catch (InterruptedException ie) {
                             LOG.info("Interrupt received in shutdown.");
@@ -149,6 +162,16 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
         LOG.info("Created Atlas Hook");
     }
 
+    private static HiveHookExecutor.OverflowPolicy getOverflowPolicy() {
+        String value = atlasProperties.getString(OVERFLOW_POLICY, overflowPolicyDefault);
+        try {
+            return HiveHookExecutor.OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Invalid value {} for {}, using {}", value, OVERFLOW_POLICY, overflowPolicyDefault);
+            return HiveHookExecutor.OverflowPolicy.valueOf(overflowPolicyDefault);
+        }
+    }
+
     private static void setupOperationMap() {
         //Populate OPERATION_MAP - string to HiveOperation mapping
         for (HiveOperation hiveOperation : HiveOperation.values()) {
@@ -184,23 +207,25 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
                 collect(event);
                 notifyAsPrivilegedAction(event);
             } else {
-                executor.submit(new Runnable() {
+                String description = event.getOperation() + " " + event.getQueryId() + " " + event.getQueryStr();
+
+                executor.submit(description, getCoalesceKey(event), new Runnable() {
                     @Override
                     public void run() {
                         try {
-                            ugi.doAs(new PrivilegedExceptionAction<Object>() {
-                                @Override
-                                public Object run() throws Exception {
-                                    collect(event);
-                                    return event;
-                                }
-                            });
-
+                            collectAsPrivilegedAction(ugi, event);
                             notifyAsPrivilegedAction(event);
                         } catch (Throwable e) {
                             LOG.error("Atlas hook failed due to error ", e);
                         }
                     }
+                }, new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        // the messages are sent once the notifications keep up again
+                        collectAsPrivilegedAction(ugi, event);
+                        return spillEntities(event.getMessages());
+                    }
                 });
             }
         } catch (Throwable t) {
@@ -208,6 +233,35 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
         }
     }
 
+    private void collectAsPrivilegedAction(UserGroupInformation ugi, final HiveEventContext event) throws Exception {
+        ugi.doAs(new PrivilegedExceptionAction<Object>() {
+            @Override
+            public Object run() throws Exception {
+                collect(event);
+                return event;
+            }
+        });
+    }
+
+    /**
+     * @return the key of the events which the given event can be coalesced with, null if it can't be coalesced
+     */
+    @VisibleForTesting
+    static String getCoalesceKey(HiveEventContext event) {
+        if (!COALESCABLE_OPERATIONS.contains(event.getOperation()) || event.getOutputs() == null
+                || event.getOutputs().isEmpty()) {
+            return null;
+        }
+
+        SortedSet<String> outputs = new TreeSet<>();
+
+        for (WriteEntity output : event.getOutputs()) {
+            outputs.add(output.getType() + ":" + output.getName().toLowerCase());
+        }
+
+        return StringUtils.join(outputs, ",");
+    }
+
     void notifyAsPrivilegedAction(final HiveEventContext event) {
 
         try {
@@ -234,13 +288,16 @@ public class HiveHook extends AtlasHook implements ExecuteWithHookContext {
     }
 
     private void collect(HiveEventContext event) throws Exception {
+        collect(new HiveMetaStoreBridge(atlasProperties, hiveConf), event);
+    }
+
+    @VisibleForTesting
+    void collect(HiveMetaStoreBridge dgiBridge, HiveEventContext event) throws Exception {
 
         assert event.getHookType() == HookContext.HookType.POST_EXEC_HOOK : "Non-POST_EXEC_HOOK not supported!";
 
         LOG.info("Entered Atlas hook for hook type {}, operation {} , user {} as {}", event.getHookType(), event.getOperation(), event.getUgi().getRealUser(), event.getUgi().getShortUserName());
 
-        HiveMetaStoreBridge dgiBridge = new HiveMetaStoreBridge(atlasProperties, hiveConf);
-
         switch (event.getOperation()) {
         case CREATEDATABASE:
             handleEventOutputs(dgiBridge, event, Type.DATABASE);
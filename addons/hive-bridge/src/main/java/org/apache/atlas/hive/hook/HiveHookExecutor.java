@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hive.hook;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes hive hook events in the background with a bounded queue.
+ *
+ * What happens to an event which doesn't fit in the queue is decided by the overflow policy: the event is dropped,
+ * the query thread waits for room in the queue for a limited time before the event is dropped or spilled, or the query
+ * thread processes the event itself. An event which is spilled is collected in the query thread, and its messages are
+ * written to the local disk to be sent later. An event which only refreshes a table from the metastore is coalesced
+ * with an event for the same table still waiting in the queue, which will read the table after both changes.
+ * Dropped events are logged with their query, and counted along with the spilled and coalesced events, the queue
+ * depth and the event latency in the JMX bean org.apache.atlas:type=HiveHookExecutor.
+ */
+public class HiveHookExecutor implements HiveHookExecutorMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(HiveHookExecutor.class);
+
+    public static final String MBEAN_NAME = "org.apache.atlas:type=HiveHookExecutor";
+
+    /**
+     * Policy applied to events which don't fit in the queue.
+     */
+    public enum OverflowPolicy {
+        /** drop the event */
+        DROP,
+        /** wait for room in the queue, drop the event if there is none within the timeout */
+        BLOCK,
+        /** process the event in the submitting thread */
+        CALLER_RUNS,
+        /** wait for room in the queue, spill the event if there is none within the timeout */
+        SPILL,
+        /** coalesce the event with a waiting event for the same table, or else handle it like SPILL */
+        COALESCE
+    }
+
+    private final ThreadPoolExecutor      executor;
+    private final BlockingQueue<Runnable> queue;
+    private final OverflowPolicy          overflowPolicy;
+    private final long                    overflowTimeoutMs;
+
+    // events waiting in the queue, by the key they can be coalesced by
+    private final ConcurrentMap<String, HookTask> waitingTasks = new ConcurrentHashMap<>();
+
+    private final AtomicLong submittedCount     = new AtomicLong();
+    private final AtomicLong completedCount     = new AtomicLong();
+    private final AtomicLong droppedCount       = new AtomicLong();
+    private final AtomicLong spilledCount       = new AtomicLong();
+    private final AtomicLong coalescedCount     = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis   = new AtomicLong();
+
+    public HiveHookExecutor(int minThreads, int maxThreads, long keepAliveTime, int queueSize,
+                            OverflowPolicy overflowPolicy, long overflowTimeoutMs) {
+        this.queue             = new LinkedBlockingQueue<>(queueSize);
+        this.overflowPolicy    = overflowPolicy;
+        this.overflowTimeoutMs = overflowTimeoutMs;
+        this.executor          = new ThreadPoolExecutor(minThreads, maxThreads, keepAliveTime, TimeUnit.MILLISECONDS,
+                queue, new ThreadFactoryBuilder().setNameFormat("Atlas Logger %d").build(), new OverflowHandler());
+    }
+
+    /**
+     * Register this executor as a JMX bean. Failures are logged, as they must not affect the queries.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+        } catch (Exception e) {
+            LOG.warn("Unable to register JMX bean {}", MBEAN_NAME, e);
+        }
+    }
+
+    /**
+     * Submit an event for processing.
+     *
+     * @param description  description of the event, logged if the event is dropped
+     * @param task         processing of the event
+     */
+    public void submit(String description, Runnable task) {
+        submit(description, null, task, null);
+    }
+
+    /**
+     * Submit an event for processing.
+     *
+     * @param description  description of the event, logged if the event is dropped
+     * @param coalesceKey  key of the events which this event can be coalesced with, null if it can't be coalesced
+     * @param task         processing of the event
+     * @param spillTask    spilling of the event in the submitting thread, which returns false if the event could not
+     *                     be spilled; null if the event can't be spilled
+     */
+    public void submit(String description, String coalesceKey, Runnable task, Callable<Boolean> spillTask) {
+        HookTask hookTask = new HookTask(description, coalesceKey, task, spillTask);
+
+        submittedCount.incrementAndGet();
+
+        if (coalesceKey != null) {
+            // an event can be coalesced with the last event submitted for the same table, if it hasn't started yet
+            hookTask.coalesceWith = waitingTasks.put(coalesceKey, hookTask);
+        }
+
+        executor.execute(hookTask);
+    }
+
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeout, unit);
+
+        int pending = queue.size();
+        if (pending > 0) {
+            droppedCount.addAndGet(pending);
+            LOG.error("{} hive hook events were not processed before shutdown", pending);
+        }
+    }
+
+    // ----- HiveHookExecutorMBean -------------------------------------------
+
+    @Override
+    public String getOverflowPolicy() {
+        return overflowPolicy.name();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public long getAverageLatencyMillis() {
+        long completed = completedCount.get();
+
+        return completed == 0 ? 0 : totalLatencyMillis.get() / completed;
+    }
+
+    @Override
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    private void drop(HookTask task, String reason) {
+        droppedCount.incrementAndGet();
+
+        LOG.error("Dropped hive hook event {}: {}", task.description, reason);
+    }
+
+    private void spill(HookTask task) {
+        if (task.spillTask == null) {
+            drop(task, "queue is full");
+            return;
+        }
+
+        boolean spilled;
+
+        try {
+            spilled = task.spillTask.call();
+        } catch (Exception e) {
+            LOG.error("Failed to spill hive hook event {}", task.description, e);
+            spilled = false;
+        }
+
+        if (spilled) {
+            spilledCount.incrementAndGet();
+        } else {
+            drop(task, "queue is full and the event could not be spilled");
+        }
+    }
+
+    /**
+     * Wait for room in the queue, and spill the task if there is none within the timeout.
+     *
+     * @return true if the task was queued
+     */
+    private boolean enqueueOrSpill(HookTask task) {
+        try {
+            if (queue.offer(task, overflowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        spill(task);
+
+        return false;
+    }
+
+    // a task which is not queued can't be coalesced with; the task submitted before it still can, if it's waiting
+    private void unregister(HookTask task) {
+        if (task.coalesceKey != null) {
+            HookTask previous = task.coalesceWith;
+
+            if (previous != null && !previous.started) {
+                waitingTasks.replace(task.coalesceKey, task, previous);
+            } else {
+                waitingTasks.remove(task.coalesceKey, task);
+            }
+        }
+    }
+
+    private class HookTask implements Runnable {
+        private final String            description;
+        private final String            coalesceKey;
+        private final Runnable          task;
+        private final Callable<Boolean> spillTask;
+        private final long              submitTime = System.currentTimeMillis();
+
+        private volatile boolean  started      = false;
+        private volatile HookTask coalesceWith = null;
+
+        HookTask(String description, String coalesceKey, Runnable task, Callable<Boolean> spillTask) {
+            this.description = description;
+            this.coalesceKey = coalesceKey;
+            this.task        = task;
+            this.spillTask   = spillTask;
+        }
+
+        @Override
+        public void run() {
+            // the metastore changes of the events submitted from now on may not be read by this one
+            started      = true;
+            coalesceWith = null;
+
+            if (coalesceKey != null) {
+                waitingTasks.remove(coalesceKey, this);
+            }
+
+            try {
+                task.run();
+            } finally {
+                long latency = System.currentTimeMillis() - submitTime;
+
+                completedCount.incrementAndGet();
+                totalLatencyMillis.addAndGet(latency);
+
+                for (long max = maxLatencyMillis.get(); latency > max; max = maxLatencyMillis.get()) {
+                    if (maxLatencyMillis.compareAndSet(max, latency)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private class OverflowHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            HookTask task   = (HookTask) r;
+            boolean  queued = false;
+
+            if (executor.isShutdown()) {
+                drop(task, "hook is shutting down");
+            } else {
+                switch (overflowPolicy) {
+                case CALLER_RUNS:
+                    task.run();
+                    break;
+
+                case BLOCK:
+                    try {
+                        queued = queue.offer(task, overflowTimeoutMs, TimeUnit.MILLISECONDS);
+
+                        if (!queued) {
+                            drop(task, "queue is full");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        drop(task, "interrupted while waiting for the queue");
+                    }
+                    break;
+
+                case SPILL:
+                    queued = enqueueOrSpill(task);
+                    break;
+
+                case COALESCE:
+                    // the waiting task reads the table from the metastore after the change of this one
+                    HookTask waiting = task.coalesceWith;
+
+                    if (waiting != null && !waiting.started) {
+                        coalescedCount.incrementAndGet();
+
+                        LOG.debug("Coalesced hive hook event {} with a waiting event", task.description);
+                    } else {
+                        queued = enqueueOrSpill(task);
+                    }
+                    break;
+
+                default:
+                    drop(task, "queue is full");
+                    break;
+                }
+            }
+
+            if (!queued) {
+                unregister(task);
+            }
+
+            task.coalesceWith = null;
+        }
+    }
+}
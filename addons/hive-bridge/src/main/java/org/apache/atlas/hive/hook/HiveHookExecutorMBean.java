@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hive.hook;
+
+/**
+ * JMX view of the executor which processes hive hook events.
+ */
+public interface HiveHookExecutorMBean {
+    /**
+     * @return the policy applied to events which don't fit in the queue
+     */
+    String getOverflowPolicy();
+
+    /**
+     * @return number of events waiting in the queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return number of events being processed
+     */
+    int getActiveCount();
+
+    /**
+     * @return number of events submitted since the hook was loaded
+     */
+    long getSubmittedCount();
+
+    /**
+     * @return number of events processed since the hook was loaded
+     */
+    long getCompletedCount();
+
+    /**
+     * @return number of events dropped because the queue was full or the hook was shutting down
+     */
+    long getDroppedCount();
+
+    /**
+     * @return number of events spilled to the local disk because the queue was full
+     */
+    long getSpilledCount();
+
+    /**
+     * @return number of events coalesced with an event for the same table waiting in the queue
+     */
+    long getCoalescedCount();
+
+    /**
+     * @return average time in milliseconds from submitting an event to the end of its processing
+     */
+    long getAverageLatencyMillis();
+
+    /**
+     * @return longest time in milliseconds from submitting an event to the end of its processing
+     */
+    long getMaxLatencyMillis();
+}
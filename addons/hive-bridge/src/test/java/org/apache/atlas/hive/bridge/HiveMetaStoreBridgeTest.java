@@ -35,17 +35,34 @@ import org.codehaus.jettison.json.JSONException;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import scala.actors.threadpool.Arrays;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyCollectionOf;
+import static org.mockito.Mockito.anyListOf;
 import static org.mockito.Mockito.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -219,6 +236,167 @@ public class HiveMetaStoreBridgeTest {
         }
     }
 
+    @Test
+    public void testBulkImportResumesFromCheckpoint() throws Exception {
+        setupDB(hiveClient, TEST_DB_NAME);
+        setupTables(hiveClient, TEST_DB_NAME, TEST_TABLE_NAME + "_1", TEST_TABLE_NAME + "_2", TEST_TABLE_NAME + "_3");
+
+        returnExistingDatabase(TEST_DB_NAME, atlasClient, CLUSTER_NAME);
+
+        File checkpointFile = File.createTempFile("import-hive", ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        HiveMetaStoreBridge bridge = new HiveMetaStoreBridge(CLUSTER_NAME, hiveClient, atlasClient);
+        new HiveMetaStoreBulkImporter(bridge, 2, 2, true, checkpointFile).importHiveMetadata();
+
+        // 3 tables in batches of 2
+        verify(atlasClient, times(2)).createEntity(anyCollectionOf(Referenceable.class));
+
+        List<String> checkpoint = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(checkpoint.size(), 4);
+        Assert.assertTrue(checkpoint.contains(HiveMetaStoreBridge.getDBQualifiedName(CLUSTER_NAME, TEST_DB_NAME)));
+        Assert.assertTrue(checkpoint.contains(
+                HiveMetaStoreBridge.getTableQualifiedName(CLUSTER_NAME, TEST_DB_NAME, TEST_TABLE_NAME + "_3")));
+
+        // everything was imported already
+        new HiveMetaStoreBulkImporter(bridge, 2, 2, true, checkpointFile).importHiveMetadata();
+
+        verify(atlasClient, times(2)).createEntity(anyCollectionOf(Referenceable.class));
+        verify(hiveClient, times(1)).getDatabase(TEST_DB_NAME);
+    }
+
+    @Test
+    public void testBulkImportResumesFromPartialCheckpoint() throws Exception {
+        setupDB(hiveClient, TEST_DB_NAME);
+        setupTables(hiveClient, TEST_DB_NAME, TEST_TABLE_NAME + "_1", TEST_TABLE_NAME + "_2", TEST_TABLE_NAME + "_3");
+
+        // the import stopped after the first table of the database
+        File checkpointFile = File.createTempFile("import-hive", ".checkpoint");
+        checkpointFile.deleteOnExit();
+        String table1QualifiedName =
+                HiveMetaStoreBridge.getTableQualifiedName(CLUSTER_NAME, TEST_DB_NAME, TEST_TABLE_NAME + "_1");
+        Files.write(checkpointFile.toPath(), (table1QualifiedName + "\n").getBytes(StandardCharsets.UTF_8));
+
+        List<List<String>> batches = new ArrayList<>();
+        HiveMetaStoreBridge bridge = bulkImportBridge(batches, Collections.<String>emptySet(), null);
+        new HiveMetaStoreBulkImporter(bridge, 2, 2, true, checkpointFile).importHiveMetadata();
+
+        // the database is registered again, but only the tables which weren't imported are
+        verify(bridge, times(1)).registerDatabase(TEST_DB_NAME);
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(batches.get(0), Arrays.asList(new String[]{TEST_TABLE_NAME + "_2", TEST_TABLE_NAME + "_3"}));
+
+        List<String> checkpoint = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(checkpoint.size(), 4);
+        Assert.assertEquals(checkpoint.get(0), table1QualifiedName);
+        Assert.assertEquals(checkpoint.get(3), HiveMetaStoreBridge.getDBQualifiedName(CLUSTER_NAME, TEST_DB_NAME));
+    }
+
+    @Test
+    public void testBulkImportRetriesFailedBatchTableByTable() throws Exception {
+        setupDB(hiveClient, TEST_DB_NAME);
+        setupTables(hiveClient, TEST_DB_NAME, TEST_TABLE_NAME + "_1", TEST_TABLE_NAME + "_2");
+
+        File checkpointFile = File.createTempFile("import-hive", ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        Set<String> failingTables = new HashSet<>();
+        failingTables.add(TEST_TABLE_NAME + "_2");
+        List<List<String>> batches = new ArrayList<>();
+        HiveMetaStoreBridge bridge = bulkImportBridge(batches, failingTables, null);
+        new HiveMetaStoreBulkImporter(bridge, 2, 2, false, checkpointFile).importHiveMetadata();
+
+        // the failed batch is retried one table at a time, and the table which fails again is given up
+        Assert.assertEquals(batches.size(), 3);
+        Assert.assertEquals(batches.get(1), Arrays.asList(new String[]{TEST_TABLE_NAME + "_1"}));
+        Assert.assertEquals(batches.get(2), Arrays.asList(new String[]{TEST_TABLE_NAME + "_2"}));
+
+        // neither the table given up nor its database are recorded as imported
+        List<String> checkpoint = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(checkpoint, Arrays.asList(new String[]{
+                HiveMetaStoreBridge.getTableQualifiedName(CLUSTER_NAME, TEST_DB_NAME, TEST_TABLE_NAME + "_1")}));
+
+        // so the next import retries the table, and completes the database
+        failingTables.clear();
+        batches.clear();
+        new HiveMetaStoreBulkImporter(bridge, 2, 2, false, checkpointFile).importHiveMetadata();
+
+        Assert.assertEquals(batches, Arrays.asList(new Object[]{Arrays.asList(new String[]{TEST_TABLE_NAME + "_2"})}));
+        checkpoint = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(checkpoint.get(checkpoint.size() - 1),
+                HiveMetaStoreBridge.getDBQualifiedName(CLUSTER_NAME, TEST_DB_NAME));
+    }
+
+    @Test(timeOut = 30000)
+    public void testBulkImportImportsBatchesConcurrently() throws Exception {
+        setupDB(hiveClient, TEST_DB_NAME);
+        setupTables(hiveClient, TEST_DB_NAME, TEST_TABLE_NAME + "_1", TEST_TABLE_NAME + "_2", TEST_TABLE_NAME + "_3",
+                TEST_TABLE_NAME + "_4", TEST_TABLE_NAME + "_5", TEST_TABLE_NAME + "_6");
+
+        File checkpointFile = File.createTempFile("import-hive", ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        // the first two batches only complete once both are being imported
+        List<List<String>> batches = new ArrayList<>();
+        CountDownLatch concurrentBatches = new CountDownLatch(2);
+        HiveMetaStoreBridge bridge = bulkImportBridge(batches, Collections.<String>emptySet(), concurrentBatches);
+        new HiveMetaStoreBulkImporter(bridge, 2, 2, true, checkpointFile).importHiveMetadata();
+
+        Assert.assertEquals(concurrentBatches.getCount(), 0);
+        Assert.assertEquals(batches.size(), 3);
+        Set<String> importedTables = new HashSet<>();
+        for (List<String> batch : batches) {
+            importedTables.addAll(batch);
+        }
+        Assert.assertEquals(importedTables.size(), 6);
+
+        // the database is recorded once all of its batches are imported
+        List<String> checkpoint = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(checkpoint.size(), 7);
+        Assert.assertEquals(checkpoint.get(6), HiveMetaStoreBridge.getDBQualifiedName(CLUSTER_NAME, TEST_DB_NAME));
+    }
+
+    /**
+     * A bridge which records the names of the tables of each batch it is asked to import, and fails the batches
+     * which contain one of the failing tables. If a latch is given, each batch counts it down and fails unless the
+     * latch is released within 10 seconds.
+     */
+    private HiveMetaStoreBridge bulkImportBridge(final List<List<String>> batches, final Set<String> failingTables,
+                                                 final CountDownLatch latch) throws Exception {
+        HiveMetaStoreBridge bridge = spy(new HiveMetaStoreBridge(CLUSTER_NAME, hiveClient, atlasClient));
+
+        doReturn(getEntityReference(HiveDataTypes.HIVE_DB.getName(), "72e06b34-9151-4023-aa9d-b82103a50e76"))
+                .when(bridge).registerDatabase(TEST_DB_NAME);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                List<String> tableNames = new ArrayList<>();
+                for (Object table : (List) invocation.getArguments()[1]) {
+                    tableNames.add(((Table) table).getTableName());
+                }
+                synchronized (batches) {
+                    batches.add(tableNames);
+                }
+
+                if (latch != null) {
+                    latch.countDown();
+                    if (!latch.await(10, TimeUnit.SECONDS)) {
+                        throw new Exception("Batches were not imported concurrently");
+                    }
+                }
+
+                for (String tableName : tableNames) {
+                    if (failingTables.contains(tableName)) {
+                        throw new Exception("Simulating failure of " + tableName);
+                    }
+                }
+                return null;
+            }
+        }).when(bridge).importTables(any(Referenceable.class), anyListOf(Table.class));
+
+        return bridge;
+    }
+
     private Referenceable getEntityReference(String typeName, String id) throws JSONException {
         return new Referenceable(id, typeName, null);
     }
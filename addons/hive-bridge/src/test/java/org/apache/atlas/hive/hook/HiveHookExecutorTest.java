@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hive.hook;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class HiveHookExecutorTest {
+
+    @Test
+    public void testDropWhenQueueIsFull() throws Exception {
+        HiveHookExecutor executor = new HiveHookExecutor(1, 1, 10, 1, HiveHookExecutor.OverflowPolicy.DROP, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit("event1", new BlockingTask(started, release));
+        started.await();
+        executor.submit("event2", new BlockingTask(new CountDownLatch(1), release));
+        executor.submit("event3", new BlockingTask(new CountDownLatch(1), release));
+
+        assertEquals(executor.getQueueDepth(), 1);
+        assertEquals(executor.getDroppedCount(), 1);
+
+        release.countDown();
+        executor.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(executor.getSubmittedCount(), 3);
+        assertEquals(executor.getCompletedCount(), 2);
+    }
+
+    @Test
+    public void testBlockDropsAfterTimeout() throws Exception {
+        HiveHookExecutor executor = new HiveHookExecutor(1, 1, 10, 1, HiveHookExecutor.OverflowPolicy.BLOCK, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit("event1", new BlockingTask(started, release));
+        started.await();
+        executor.submit("event2", new BlockingTask(new CountDownLatch(1), release));
+
+        long start = System.currentTimeMillis();
+        executor.submit("event3", new BlockingTask(new CountDownLatch(1), release));
+
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(executor.getDroppedCount(), 1);
+
+        release.countDown();
+        executor.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCallerRunsWhenQueueIsFull() throws Exception {
+        HiveHookExecutor executor = new HiveHookExecutor(1, 1, 10, 1, HiveHookExecutor.OverflowPolicy.CALLER_RUNS, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final AtomicBoolean ranInCaller = new AtomicBoolean();
+
+        executor.submit("event1", new BlockingTask(started, release));
+        started.await();
+        executor.submit("event2", new BlockingTask(new CountDownLatch(1), release));
+        executor.submit("event3", new Runnable() {
+            @Override
+            public void run() {
+                ranInCaller.set(Thread.currentThread() == caller);
+            }
+        });
+
+        assertTrue(ranInCaller.get());
+        assertEquals(executor.getDroppedCount(), 0);
+
+        release.countDown();
+        executor.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(executor.getCompletedCount(), 3);
+    }
+
+    @Test
+    public void testSpillAfterTimeout() throws Exception {
+        HiveHookExecutor executor = new HiveHookExecutor(1, 1, 10, 1, HiveHookExecutor.OverflowPolicy.SPILL, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final AtomicBoolean spilledInCaller = new AtomicBoolean();
+        final AtomicBoolean processed = new AtomicBoolean();
+
+        executor.submit("event1", new BlockingTask(started, release));
+        started.await();
+        executor.submit("event2", new BlockingTask(new CountDownLatch(1), release));
+
+        long start = System.currentTimeMillis();
+        executor.submit("event3", null, new Runnable() {
+            @Override
+            public void run() {
+                processed.set(true);
+            }
+        }, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                spilledInCaller.set(Thread.currentThread() == caller);
+                return true;
+            }
+        });
+
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertTrue(spilledInCaller.get());
+        assertEquals(executor.getSpilledCount(), 1);
+        assertEquals(executor.getDroppedCount(), 0);
+
+        // an event which can't be spilled is dropped
+        executor.submit("event4", null, new BlockingTask(new CountDownLatch(1), release), new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return false;
+            }
+        });
+
+        assertEquals(executor.getDroppedCount(), 1);
+
+        release.countDown();
+        executor.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(executor.getCompletedCount(), 2);
+        assertFalse(processed.get());
+    }
+
+    @Test
+    public void testCoalesceWithWaitingEventForSameTable() throws Exception {
+        HiveHookExecutor executor = new HiveHookExecutor(1, 1, 10, 1, HiveHookExecutor.OverflowPolicy.COALESCE, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger processedCount = new AtomicInteger();
+        final AtomicInteger spilledCount = new AtomicInteger();
+        Runnable alterTable = new Runnable() {
+            @Override
+            public void run() {
+                processedCount.incrementAndGet();
+            }
+        };
+        Callable<Boolean> spill = new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                spilledCount.incrementAndGet();
+                return true;
+            }
+        };
+
+        executor.submit("event1", new BlockingTask(started, release));
+        started.await();
+        executor.submit("alter1", "TABLE:db1@t1", alterTable, spill);
+
+        // the waiting alter of t1 reads the table after this one, which is skipped
+        executor.submit("alter2", "TABLE:db1@t1", alterTable, spill);
+
+        assertEquals(executor.getCoalescedCount(), 1);
+
+        // an event for another table doesn't fit, and is spilled
+        executor.submit("alter3", "TABLE:db1@t2", alterTable, spill);
+
+        assertEquals(spilledCount.get(), 1);
+
+        release.countDown();
+        executor.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(processedCount.get(), 1);
+
+        // once the waiting event started, later events can't be coalesced with it
+        HiveHookExecutor next = new HiveHookExecutor(1, 1, 10, 1, HiveHookExecutor.OverflowPolicy.COALESCE, 100);
+        CountDownLatch alterStarted = new CountDownLatch(1);
+        CountDownLatch alterRelease = new CountDownLatch(1);
+
+        next.submit("alter1", "TABLE:db1@t1", new BlockingTask(alterStarted, alterRelease), spill);
+        alterStarted.await();
+        next.submit("event2", new BlockingTask(new CountDownLatch(1), alterRelease));
+        next.submit("alter2", "TABLE:db1@t1", alterTable, spill);
+
+        assertEquals(next.getCoalescedCount(), 0);
+        assertEquals(spilledCount.get(), 2);
+
+        alterRelease.countDown();
+        next.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    private static class BlockingTask implements Runnable {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingTask(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hive.hook;
+
+import org.apache.atlas.AtlasClient;
+import org.apache.atlas.hive.bridge.HiveMetaStoreBridge;
+import org.apache.atlas.hive.model.HiveDataTypes;
+import org.apache.atlas.notification.AbstractNotification;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.metastore.TableType;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.hooks.HookContext;
+import org.apache.hadoop.hive.ql.hooks.ReadEntity;
+import org.apache.hadoop.hive.ql.hooks.WriteEntity;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.plan.HiveOperation;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class HiveHookTest {
+    private static final String CLUSTER_NAME = "primary";
+    private static final String DB_NAME = "default";
+
+    @Test
+    public void testCtasMessageIsKeyedByOutputTable() throws Exception {
+        Hive hiveClient = mock(Hive.class);
+        when(hiveClient.getDatabase(DB_NAME)).thenReturn(
+                new Database(DB_NAME, "Default database", "/user/hive/default", null));
+        Table source = createTable(hiveClient, "source");
+        Table target = createTable(hiveClient, "ctas_target");
+
+        HiveHook.HiveEventContext event = new HiveHook.HiveEventContext();
+        event.setInputs(Collections.singleton(new ReadEntity(source)));
+        event.setOutputs(Collections.singleton(new WriteEntity(target, WriteEntity.WriteType.DDL_NO_LOCK)));
+        event.setOperation(HiveOperation.CREATETABLE_AS_SELECT);
+        event.setHookType(HookContext.HookType.POST_EXEC_HOOK);
+        event.setUser("user");
+        event.setUgi(UserGroupInformation.createRemoteUser("user"));
+        event.setQueryId("query1");
+        event.setQueryStr("create table ctas_target as select * from source");
+        event.setQueryStartTime(System.currentTimeMillis());
+
+        new HiveHook().collect(new HiveMetaStoreBridge(CLUSTER_NAME, hiveClient, mock(AtlasClient.class)), event);
+
+        HookNotification.EntityUpdateRequest lineageMessage = null;
+        for (HookNotification.HookNotificationMessage message : event.getMessages()) {
+            if (message instanceof HookNotification.EntityUpdateRequest && containsProcess(
+                    ((HookNotification.EntityUpdateRequest) message).getEntities())) {
+                lineageMessage = (HookNotification.EntityUpdateRequest) message;
+            }
+        }
+
+        //The process is the last entity of the message, yet the message is about the table it creates, like a
+        //later alter or drop of the table
+        assertNotNull(lineageMessage);
+        assertEquals(AbstractNotification.getMessageKey(lineageMessage),
+                HiveMetaStoreBridge.getTableQualifiedName(CLUSTER_NAME, DB_NAME, "ctas_target"));
+        assertEquals(AbstractNotification.getMessageKey(new HookNotification.EntityDeleteRequest("user",
+                HiveDataTypes.HIVE_TABLE.getName(), AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME,
+                HiveMetaStoreBridge.getTableQualifiedName(CLUSTER_NAME, DB_NAME, "ctas_target"))),
+                AbstractNotification.getMessageKey(lineageMessage));
+    }
+
+    @Test
+    public void testAlterTableEventsAreCoalescedByTable() throws Exception {
+        Hive hiveClient = mock(Hive.class);
+        Table table = createTable(hiveClient, "altered");
+
+        HiveHook.HiveEventContext addColumns = createEvent(HiveOperation.ALTERTABLE_ADDCOLS, table);
+        HiveHook.HiveEventContext setProperties = createEvent(HiveOperation.ALTERTABLE_PROPERTIES, table);
+        HiveHook.HiveEventContext rename = createEvent(HiveOperation.ALTERTABLE_RENAME, table);
+
+        assertNotNull(HiveHook.getCoalesceKey(addColumns));
+        assertEquals(HiveHook.getCoalesceKey(setProperties), HiveHook.getCoalesceKey(addColumns));
+        assertNull(HiveHook.getCoalesceKey(rename));
+    }
+
+    private HiveHook.HiveEventContext createEvent(HiveOperation operation, Table table) {
+        HiveHook.HiveEventContext event = new HiveHook.HiveEventContext();
+        event.setOutputs(Collections.singleton(new WriteEntity(table, WriteEntity.WriteType.DDL_NO_LOCK)));
+        event.setOperation(operation);
+        return event;
+    }
+
+    private boolean containsProcess(List<Referenceable> entities) {
+        for (Referenceable entity : entities) {
+            if (HiveDataTypes.HIVE_PROCESS.getName().equals(entity.getTypeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Table createTable(Hive hiveClient, String tableName) throws HiveException {
+        Table table = new Table(DB_NAME, tableName);
+        table.setInputFormatClass(TextInputFormat.class);
+        table.setFields(new ArrayList<FieldSchema>() {{
+            add(new FieldSchema("col1", "string", "comment1"));
+        }
+        });
+        table.setTableType(TableType.MANAGED_TABLE);
+        table.setDataLocation(new Path("/user/hive/default/" + tableName));
+        when(hiveClient.getTable(DB_NAME, tableName)).thenReturn(table);
+        return table;
+    }
+}
@@ -32,6 +32,11 @@ public class AtlasEntityQuery extends BaseQuery {
         super(queryExpression, resourceDefinition, request);
     }
 
+    @Override
+    protected void addRootConditions(QueryPlanner planner) {
+        planner.addExpression(queryExpression);
+    }
+
     protected Pipe getQueryPipe() {
         return new GremlinPipeline().has(Constants.ENTITY_TEXT_PROPERTY_KEY).
                 hasNot(Constants.ENTITY_TYPE_PROPERTY_KEY, "Taxonomy");
@@ -18,6 +18,7 @@
 
 package org.apache.atlas.catalog.query;
 
+import com.tinkerpop.blueprints.Compare;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.gremlin.java.GremlinPipeline;
@@ -45,6 +46,14 @@ public class AtlasEntityTagQuery extends BaseQuery {
         this.guid = guid;
     }
 
+    // the query expression applies to the tags, so only the entity is selected with the index
+    @Override
+    protected void addRootConditions(QueryPlanner planner) {
+        if (! guid.equals("*")) {
+            planner.has(Constants.GUID_PROPERTY_KEY, Compare.EQUAL, guid);
+        }
+    }
+
     @Override
     protected Pipe getQueryPipe() {
         GremlinPipeline p;
@@ -18,10 +18,12 @@
 
 package org.apache.atlas.catalog.query;
 
+import com.tinkerpop.blueprints.Compare;
 import com.tinkerpop.gremlin.java.GremlinPipeline;
 import com.tinkerpop.pipes.Pipe;
 import org.apache.atlas.catalog.Request;
 import org.apache.atlas.catalog.definition.ResourceDefinition;
+import org.apache.atlas.repository.Constants;
 
 /**
  * Taxonomy resource query.
@@ -31,6 +33,11 @@ public class AtlasTaxonomyQuery extends BaseQuery {
         super(queryExpression, resourceDefinition, request);
     }
 
+    @Override
+    protected void addRootConditions(QueryPlanner planner) {
+        planner.has(Constants.ENTITY_TYPE_PROPERTY_KEY, Compare.EQUAL, "Taxonomy").addExpression(queryExpression);
+    }
+
     @Override
     protected Pipe getQueryPipe() {
         return new GremlinPipeline().has("__typeName", "Taxonomy");
@@ -19,6 +19,7 @@
 package org.apache.atlas.catalog.query;
 
 import com.thinkaurelius.titan.core.attribute.Text;
+import com.tinkerpop.blueprints.Compare;
 import com.tinkerpop.gremlin.java.GremlinPipeline;
 import com.tinkerpop.pipes.Pipe;
 import org.apache.atlas.catalog.Request;
@@ -37,6 +38,15 @@ public class AtlasTermQuery extends BaseQuery {
         this.termPath = termPath;
     }
 
+    // the query expression applies to the terms, so only the taxonomy is selected with the index
+    @Override
+    protected void addRootConditions(QueryPlanner planner) {
+        planner.has(Constants.ENTITY_TYPE_PROPERTY_KEY, Compare.EQUAL, "Taxonomy");
+        if (! termPath.getTaxonomyName().equals("*")) {
+            planner.has("Taxonomy.name", Compare.EQUAL, termPath.getTaxonomyName());
+        }
+    }
+
     @Override
     protected Pipe getQueryPipe() {
         GremlinPipeline p;
@@ -113,7 +113,18 @@ public abstract class BaseQuery implements AtlasQuery {
     protected abstract Pipe getQueryPipe();
 
     protected GremlinPipeline getRootVertexPipeline() {
-        return new GremlinPipeline(getGraph().getVertices());
+        QueryPlanner planner = new QueryPlanner(resourceDefinition);
+        addRootConditions(planner);
+        return new GremlinPipeline(planner.vertices(getGraph()));
+    }
+
+    /**
+     * Add the conditions which the root vertices of the query must satisfy, so that they can be
+     * selected with a graph index.  By default all vertices are candidates.
+     *
+     * @param planner  planner selecting the root vertices
+     */
+    protected void addRootConditions(QueryPlanner planner) {
     }
 
     protected Pipe getNotDeletedPipe() {
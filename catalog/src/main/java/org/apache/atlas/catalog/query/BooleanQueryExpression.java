@@ -62,6 +62,29 @@ public class BooleanQueryExpression extends BaseQueryExpression {
         }
     }
 
+    /**
+     * Get the expressions which must all be satisfied for this expression to be satisfied.
+     * Nothing is returned when the expression is negated or has optional clauses, as none of
+     * the clauses is required in that case.
+     *
+     * @return expressions of the required clauses
+     */
+    Collection<QueryExpression> getRequiredExpressions() {
+        Collection<QueryExpression> requiredExpressions = new ArrayList<>();
+        if (negate) {
+            return requiredExpressions;
+        }
+
+        Map<BooleanClause.Occur, Collection<BooleanClause>> groupedClauses = groupClauses();
+        Collection<BooleanClause> andClauses = groupedClauses.get(BooleanClause.Occur.MUST);
+        if (andClauses != null && ! groupedClauses.containsKey(BooleanClause.Occur.SHOULD)) {
+            for (BooleanClause andClause : andClauses) {
+                requiredExpressions.add(queryFactory.create(andClause.getQuery(), resourceDefinition));
+            }
+        }
+        return requiredExpressions;
+    }
+
     private Map<BooleanClause.Occur, Collection<BooleanClause>> groupClauses() {
         Map<BooleanClause.Occur, Collection<BooleanClause>> groupedClauses = new HashMap<>();
         for (BooleanClause clause : clauses) {
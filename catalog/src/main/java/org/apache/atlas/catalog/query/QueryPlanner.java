@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.atlas.catalog.query;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.tinkerpop.blueprints.Compare;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.Predicate;
+import com.tinkerpop.blueprints.Vertex;
+import org.apache.atlas.AtlasException;
+import org.apache.atlas.catalog.definition.ResourceDefinition;
+import org.apache.atlas.repository.Constants;
+import org.apache.atlas.typesystem.types.AttributeInfo;
+import org.apache.atlas.typesystem.types.DataTypes;
+import org.apache.atlas.typesystem.types.HierarchicalType;
+import org.apache.atlas.typesystem.types.TypeSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects the root vertices of a query with an indexed graph query instead of iterating over every vertex.
+ *
+ * Only conditions which select a superset of the vertices matched by the query pipes are pushed down,
+ * so the pipes are still applied to the selected vertices and evaluate the predicates which can't be
+ * pushed down.  When there is nothing to push down, all vertices of the graph are returned.
+ *
+ * Of the query expressions, only equality on properties with a composite index is pushed down.  String
+ * properties are added to the vertex index with its default TEXT mapping, which only supports token
+ * predicates, so prefix and range expressions would be evaluated by iterating over the vertices anyway;
+ * they are left to the pipes.
+ */
+public class QueryPlanner {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlanner.class);
+
+    // internal string properties which have the same name for every type
+    private static final Map<String, String> INTERNAL_PROPERTIES = new HashMap<>();
+    static {
+        INTERNAL_PROPERTIES.put("id", Constants.GUID_PROPERTY_KEY);
+        INTERNAL_PROPERTIES.put("type", Constants.ENTITY_TYPE_PROPERTY_KEY);
+        INTERNAL_PROPERTIES.put("state", Constants.STATE_PROPERTY_KEY);
+        INTERNAL_PROPERTIES.put("created_by", Constants.CREATED_BY_KEY);
+        INTERNAL_PROPERTIES.put("modified_by", Constants.MODIFIED_BY_KEY);
+    }
+
+    // internal properties with a composite index; the state is in the vertex index only
+    private static final Set<String> EXACT_MATCH_INTERNAL_PROPERTIES = new HashSet<>(Arrays.asList(
+            Constants.GUID_PROPERTY_KEY, Constants.ENTITY_TYPE_PROPERTY_KEY, Constants.CREATED_BY_KEY,
+            Constants.MODIFIED_BY_KEY));
+
+    private final ResourceDefinition resourceDefinition;
+    private final List<Condition> conditions = new ArrayList<>();
+
+    public QueryPlanner(ResourceDefinition resourceDefinition) {
+        this.resourceDefinition = resourceDefinition;
+    }
+
+    /**
+     * Add a condition which every root vertex must satisfy.
+     *
+     * @param key        fully qualified property name
+     * @param predicate  predicate applied to the property value
+     * @param value      value the property is compared to
+     * @return this planner
+     */
+    public QueryPlanner has(String key, Predicate predicate, Object value) {
+        conditions.add(new Condition(key, predicate, value));
+        return this;
+    }
+
+    /**
+     * Push down the parts of the expression which can be evaluated by a graph index.
+     * Must only be used for expressions which are applied to the root vertices.
+     *
+     * @param expression  query expression
+     * @return this planner
+     */
+    public QueryPlanner addExpression(QueryExpression expression) {
+        if (expression == null || expression.isNegate() || expression.isProjectionExpression()) {
+            return this;
+        }
+
+        if (expression instanceof BooleanQueryExpression) {
+            for (QueryExpression requiredExpression : ((BooleanQueryExpression) expression).getRequiredExpressions()) {
+                addExpression(requiredExpression);
+            }
+            return this;
+        }
+
+        String key = resolvePropertyKey(expression.getField());
+        if (key == null) {
+            return this;
+        }
+
+        // prefix and range expressions are not supported by the TEXT mapping of the vertex index
+        if (expression instanceof TermQueryExpression && isExactMatchIndexed(key)) {
+            String expectedValue = expression.getExpectedValue();
+            // "null" matches vertices without the property
+            if (! expectedValue.equals("null")) {
+                has(key, Compare.EQUAL, expectedValue.replaceAll(QueryFactory.PATH_SEP_TOKEN, "/"));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Get the vertices which satisfy all conditions.
+     *
+     * @param graph  graph to query
+     * @return the matching vertices, or all vertices if there are no conditions
+     */
+    public Iterable<Vertex> vertices(TitanGraph graph) {
+        if (conditions.isEmpty()) {
+            LOG.debug("No conditions to push down, iterating over all vertices");
+            return graph.getVertices();
+        }
+
+        LOG.debug("Selecting root vertices with conditions {}", conditions);
+        GraphQuery query = graph.query();
+        for (Condition condition : conditions) {
+            query = query.has(condition.key, condition.predicate, condition.value);
+        }
+        return query.vertices();
+    }
+
+    protected Collection<Condition> getConditions() {
+        return conditions;
+    }
+
+    // resolves the vertex property for a field if its values can be compared as strings by the index
+    private String resolvePropertyKey(String field) {
+        if (field == null) {
+            return null;
+        }
+
+        String typeName = resourceDefinition.getTypeName();
+        if (typeName == null) {
+            // property names of resources without a single type depend on the type of each vertex
+            return INTERNAL_PROPERTIES.get(field);
+        }
+
+        String key = resourceDefinition.getPropertyMapper().toFullyQualifiedName(field, typeName);
+        return INTERNAL_PROPERTIES.containsValue(key) || isStringAttribute(typeName, field) ? key : null;
+    }
+
+    // attributes of the type of the resource have a composite index with the type name, which the queries of
+    // resources with a single type select on
+    private boolean isExactMatchIndexed(String key) {
+        return EXACT_MATCH_INTERNAL_PROPERTIES.contains(key) || ! INTERNAL_PROPERTIES.containsValue(key);
+    }
+
+    protected boolean isStringAttribute(String typeName, String attributeName) {
+        try {
+            HierarchicalType type = TypeSystem.getInstance().getDataType(HierarchicalType.class, typeName);
+            AttributeInfo attributeInfo = type.fieldMapping().fields.get(attributeName);
+            return attributeInfo != null && attributeInfo.dataType() == DataTypes.STRING_TYPE;
+        } catch (AtlasException e) {
+            LOG.debug("Unable to resolve attribute {} of type {}", attributeName, typeName, e);
+            return false;
+        }
+    }
+
+    /**
+     * Condition on a vertex property.
+     */
+    protected static class Condition {
+        private final String key;
+        private final Predicate predicate;
+        private final Object value;
+
+        public Condition(String key, Predicate predicate, Object value) {
+            this.key = key;
+            this.predicate = predicate;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Predicate getPredicate() {
+            return predicate;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s", key, predicate, value);
+        }
+    }
+}
@@ -48,6 +48,14 @@ public class TermRangeQueryExpression extends BaseQueryExpression {
        return compareLowerBound(valueBytes) && compareUpperBound(valueBytes);
     }
 
+    protected BytesRef getLowerTerm() {
+        return m_lowerTerm;
+    }
+
+    protected BytesRef getUpperTerm() {
+        return m_upperTerm;
+    }
+
     private boolean compareLowerBound(BytesRef valueBytes) {
         return m_lowerTerm == null || (m_lowerInclusive ? valueBytes.compareTo(m_lowerTerm) > 0 :
                 valueBytes.compareTo(m_lowerTerm) >= 0);
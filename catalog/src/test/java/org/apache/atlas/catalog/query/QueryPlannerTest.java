@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.atlas.catalog.query;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanGraphQuery;
+import com.tinkerpop.blueprints.Compare;
+import com.tinkerpop.blueprints.Vertex;
+import org.apache.atlas.catalog.CollectionRequest;
+import org.apache.atlas.catalog.InstanceRequest;
+import org.apache.atlas.catalog.Request;
+import org.apache.atlas.catalog.definition.EntityResourceDefinition;
+import org.apache.atlas.repository.Constants;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for QueryPlanner.
+ */
+public class QueryPlannerTest {
+    @Test
+    public void testAddExpression_instanceRequest() throws Exception {
+        Map<String, Object> requestProps = new HashMap<>();
+        requestProps.put("id", "guid1");
+        Request request = new InstanceRequest(requestProps);
+
+        QueryPlanner planner = createPlanner(request);
+
+        assertEquals(planner.getConditions().size(), 1);
+        QueryPlanner.Condition condition = planner.getConditions().iterator().next();
+        assertEquals(condition.getKey(), Constants.GUID_PROPERTY_KEY);
+        assertEquals(condition.getPredicate(), Compare.EQUAL);
+        assertEquals(condition.getValue(), "guid1");
+    }
+
+    @Test
+    public void testAddExpression_requiredClauses() throws Exception {
+        Request request = new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "type:hive_table AND name:foo AND state:ACT*");
+
+        QueryPlanner planner = createPlanner(request);
+
+        // name can't be resolved without knowing the type of the vertex, and prefixes aren't supported by the index
+        assertEquals(planner.getConditions().size(), 1);
+        QueryPlanner.Condition typeCondition = planner.getConditions().iterator().next();
+        assertEquals(typeCondition.getKey(), Constants.ENTITY_TYPE_PROPERTY_KEY);
+        assertEquals(typeCondition.getPredicate(), Compare.EQUAL);
+        assertEquals(typeCondition.getValue(), "hive_table");
+    }
+
+    @Test
+    public void testAddExpression_userAttributeEntityQuery() throws Exception {
+        // entities have no single type, so only their internal properties are pushed down
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "name:foo")).getConditions().isEmpty());
+
+        QueryPlanner planner = createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "name:foo AND created_by:admin"));
+
+        assertEquals(planner.getConditions().size(), 1);
+        QueryPlanner.Condition condition = planner.getConditions().iterator().next();
+        assertEquals(condition.getKey(), Constants.CREATED_BY_KEY);
+        assertEquals(condition.getValue(), "admin");
+    }
+
+    @Test
+    public void testAddExpression_unsupportedPredicates() throws Exception {
+        // the TEXT mapping of the vertex index supports neither prefixes nor ranges, and state has no composite index
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "id:guid*")).getConditions().isEmpty());
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "created_by:[a TO m]")).getConditions().isEmpty());
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "state:ACTIVE")).getConditions().isEmpty());
+    }
+
+    @Test
+    public void testAddExpression_optionalAndNegatedClauses() throws Exception {
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "type:hive_table OR id:guid1")).getConditions().isEmpty());
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "-type:hive_table")).getConditions().isEmpty());
+        assertTrue(createPlanner(new CollectionRequest(Collections.<String, Object>emptyMap(),
+                "type:null")).getConditions().isEmpty());
+    }
+
+    @Test
+    public void testVertices() throws Exception {
+        TitanGraph graph = createStrictMock(TitanGraph.class);
+        TitanGraphQuery graphQuery = createStrictMock(TitanGraphQuery.class);
+        List<Vertex> vertices = new ArrayList<>();
+
+        expect(graph.query()).andReturn(graphQuery);
+        expect(graphQuery.has(Constants.GUID_PROPERTY_KEY, Compare.EQUAL, "guid1")).andReturn(graphQuery);
+        expect(graphQuery.vertices()).andReturn(vertices);
+        replay(graph, graphQuery);
+
+        QueryPlanner planner = new QueryPlanner(new EntityResourceDefinition());
+        planner.has(Constants.GUID_PROPERTY_KEY, Compare.EQUAL, "guid1");
+
+        assertSame(planner.vertices(graph), vertices);
+        verify(graph, graphQuery);
+    }
+
+    @Test
+    public void testVertices_noConditions() throws Exception {
+        TitanGraph graph = createStrictMock(TitanGraph.class);
+        List<Vertex> vertices = new ArrayList<>();
+
+        expect(graph.getVertices()).andReturn(vertices);
+        replay(graph);
+
+        QueryPlanner planner = new QueryPlanner(new EntityResourceDefinition());
+
+        assertSame(planner.vertices(graph), vertices);
+        verify(graph);
+    }
+
+    private QueryPlanner createPlanner(Request request) throws Exception {
+        AtlasEntityQuery query = (AtlasEntityQuery) new QueryFactory().createEntityQuery(request);
+        QueryPlanner planner = new QueryPlanner(query.getResourceDefinition());
+        query.addRootConditions(planner);
+        return planner;
+    }
+}
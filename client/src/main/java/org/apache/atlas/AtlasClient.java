@@ -89,6 +89,7 @@ public class AtlasClient extends AtlasBaseClient {
     public static final String QUERY = "query";
     public static final String LIMIT = "limit";
     public static final String OFFSET = "offset";
+    public static final String CONTINUATION_TOKEN = "continuationToken";
     public static final String QUERY_TYPE = "queryType";
     public static final String ATTRIBUTE_NAME = "property";
     public static final String ATTRIBUTE_VALUE = "value";
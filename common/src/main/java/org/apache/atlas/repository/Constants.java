@@ -72,6 +72,11 @@ public final class Constants {
     public static final String MODIFICATION_TIMESTAMP_PROPERTY_KEY =
         INTERNAL_PROPERTY_KEY_PREFIX + "modificationTimestamp";
 
+    /**
+     * Time at which the full text of the entity became stale, while it waits to be indexed asynchronously.
+     */
+    public static final String FULLTEXT_PENDING_SINCE_PROPERTY_KEY = INTERNAL_PROPERTY_KEY_PREFIX + "fullTextPendingSince";
+
     /**
      * search backing index name.
      */
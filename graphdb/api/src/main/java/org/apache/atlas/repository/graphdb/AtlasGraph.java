@@ -19,6 +19,8 @@ package org.apache.atlas.repository.graphdb;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import javax.script.ScriptException;
@@ -103,6 +105,36 @@ public interface AtlasGraph<V, E> {
      */
     AtlasVertex<V, E> getVertex(String vertexId);
 
+    /**
+     * Gets the edges incident to each of the given vertices in the given direction.  Implementations
+     * read the edges of all the vertices together where the underlying graph supports it, rather than
+     * with one query per vertex.
+     *
+     * @param vertices
+     * @param direction
+     * @return the edges of each vertex, keyed by vertex
+     */
+    Map<AtlasVertex<V, E>, Iterable<AtlasEdge<V, E>>> getEdges(Collection<AtlasVertex<V, E>> vertices,
+                                                              AtlasEdgeDirection direction);
+
+    /**
+     * Reads the properties of the given vertices together where the underlying graph supports it, rather than with
+     * one query per vertex, so that later property reads of these vertices in the current transaction are served
+     * without querying the graph again.
+     *
+     * @param vertices
+     */
+    void loadProperties(Collection<AtlasVertex<V, E>> vertices);
+
+    /**
+     * Checks whether an edge label with the given name has been defined in the graph schema, as seen by the
+     * current transaction.  A label created by a concurrent transaction may not be seen.
+     *
+     * @param label
+     * @return
+     */
+    boolean containsEdgeLabel(String label);
+
     /**
      * Gets the names of the indexes on edges
      * type.
@@ -154,6 +186,16 @@ public interface AtlasGraph<V, E> {
      */
     AtlasIndexQuery<V, E> indexQuery(String indexName, String queryString);
 
+    /**
+     * Whether index queries against the given index order their results by vertex and position them after a vertex
+     * in the index itself, so that reading a page with {@link AtlasIndexQuery#startAfter(String)} doesn't read the
+     * results before it.
+     *
+     * @param indexName index name
+     * @return
+     */
+    boolean isIndexKeyOrderSupported(String indexName);
+
     /**
      * Gets the management object associated with this graph and opens a transaction
      * for changes that are made.
@@ -264,6 +306,21 @@ public interface AtlasGraph<V, E> {
      */
     Object executeGremlinScript(String query, boolean isPath) throws ScriptException;
 
+    /**
+     * Executes a Gremlin script with the given bindings, returns an object with the result.
+     * Scripts that reference their parameters through bindings, rather than inlining them,
+     * can share a single compiled script across parameter values.
+     *
+     * @param gremlinQuery
+     * @param bindings values of the variables referenced by the script
+     * @param isPath whether this is a path query
+     *
+     * @return the result from executing the script
+     *
+     * @throws ScriptException
+     */
+    Object executeGremlinScript(String query, Map<String, Object> bindings, boolean isPath) throws ScriptException;
+
     /**
      * Convenience method to check whether the given property is
      * a multi-property.
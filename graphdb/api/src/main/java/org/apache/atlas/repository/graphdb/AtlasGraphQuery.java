@@ -87,6 +87,38 @@ public interface AtlasGraphQuery<V, E> {
      */
     AtlasGraphQuery<V, E> createChildQuery();
 
+    /**
+     * Limits the number of vertices returned by the query.  The limit
+     * is pushed down to the underlying graph query, so vertices past
+     * the limit are not retrieved.  Only applies to the query that is
+     * executed, not to child queries.
+     *
+     * @param limit maximum number of vertices to return
+     * @return
+     */
+    AtlasGraphQuery<V, E> limit(int limit);
+
+    /**
+     * Skips the given number of matching vertices before the vertices
+     * that are returned.  Only applies to the query that is executed,
+     * not to child queries.
+     *
+     * @param offset number of vertices to skip
+     * @return
+     */
+    AtlasGraphQuery<V, E> offset(int offset);
+
+    /**
+     * Orders the returned vertices by the value of the given property.
+     * Vertices without the property are returned last.  Only applies to
+     * the query that is executed, not to child queries.
+     *
+     * @param propertyKey
+     * @param order
+     * @return
+     */
+    AtlasGraphQuery<V, E> orderBy(String propertyKey, SortOrder order);
+
 
     /**
      * Comparison operators that can be used in an AtlasGraphQuery.
@@ -98,6 +130,14 @@ public interface AtlasGraphQuery<V, E> {
         NOT_EQUAL
     }
 
+    /**
+     * Sort orders that can be used in an AtlasGraphQuery.
+     */
+    enum SortOrder {
+        ASC,
+        DESC
+    }
+
     /**
      * Adds all of the predicates that have been added to this query to the
      * specified query.
@@ -29,7 +29,49 @@ import java.util.Iterator;
 public interface AtlasIndexQuery<V, E> {
 
     /**
-     * Gets the query results.
+     * Limits the number of results returned by the query.  The limit is
+     * pushed down to the index, so results past the limit are not retrieved.
+     *
+     * @param limit maximum number of results to return
+     * @return
+     */
+    AtlasIndexQuery<V, E> limit(int limit);
+
+    /**
+     * Skips the given number of results before the results that are returned.
+     * The offset is pushed down to the index, so skipped results are not retrieved.
+     *
+     * @param offset number of results to skip
+     * @return
+     */
+    AtlasIndexQuery<V, E> offset(int offset);
+
+    /**
+     * Orders the results by vertex instead of by score, in an order which is the same for every query, and starts
+     * them after the vertex with the given id.  The results can then be read a page at a time, each page starting
+     * after the last vertex of the previous one.  Where the index supports it, the position is pushed down to the
+     * index, so the results before it are not retrieved and reading a page costs the same wherever it starts.
+     *
+     * @param vertexId id of the vertex after which to start, or null to start at the first result
+     * @return
+     */
+    AtlasIndexQuery<V, E> startAfter(String vertexId);
+
+    /**
+     * Orders the results by the value of the given property instead of by score.  Where the index can sort on the
+     * property, the ordering is pushed down to the index along with the offset and limit, so only the requested
+     * results are retrieved; otherwise all results are read and ordered in memory.  Results without a value for
+     * the property come last.  Can't be combined with {@link #startAfter(String)}.
+     *
+     * @param propertyKey property to order by
+     * @param order order of the property values
+     * @return
+     */
+    AtlasIndexQuery<V, E> orderBy(String propertyKey, AtlasGraphQuery.SortOrder order);
+
+    /**
+     * Gets the query results, ordered by descending score unless {@link #startAfter(String)} or
+     * {@link #orderBy(String, AtlasGraphQuery.SortOrder)} is used.
      *
      * @return
      */
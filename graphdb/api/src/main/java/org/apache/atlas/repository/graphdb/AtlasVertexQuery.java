@@ -34,6 +34,24 @@ public interface AtlasVertexQuery<V, E> {
      */
     AtlasVertexQuery<V, E> direction(AtlasEdgeDirection queryDirection);
 
+    /**
+     * Restricts the query to edges with the specified label.
+     *
+     * @param label
+     * @return
+     */
+    AtlasVertexQuery<V, E> label(String label);
+
+    /**
+     * Restricts the query to edges whose other end is the specified vertex.  Where the graph keeps the
+     * edges of a vertex sorted by label and adjacent vertex, together with label this is a point lookup
+     * rather than a scan of the edges of the vertex.
+     *
+     * @param vertex
+     * @return
+     */
+    AtlasVertexQuery<V, E> adjacent(AtlasVertex<V, E> vertex);
+
     /**
      * Returns the vertices that satisfy the query condition.
      *
@@ -20,6 +20,7 @@ package org.apache.atlas.repository.graphdb.titan.query;
 import java.util.Collection;
 
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery.ComparisionOperator;
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery.SortOrder;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
 
 /**
@@ -57,4 +58,19 @@ public interface NativeTitanGraphQuery<V, E> {
      */
     void has(String propertyName, ComparisionOperator op, Object value);
 
+    /**
+     * Limits the number of vertices returned by the query.
+     *
+     * @param limit
+     */
+    void limit(int limit);
+
+    /**
+     * Orders the vertices returned by the query.
+     *
+     * @param propertyName
+     * @param order
+     */
+    void orderBy(String propertyName, SortOrder order);
+
 }
@@ -17,8 +17,12 @@
  */
 package org.apache.atlas.repository.graphdb.titan.query;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -90,6 +94,10 @@ public abstract class TitanGraphQuery<V, E> implements AtlasGraphQuery<V, E> {
     protected final AtlasGraph<V, E> graph;
     private final OrCondition queryCondition = new OrCondition();
     private final boolean isChildQuery;
+    private int limit = -1;
+    private int offset = 0;
+    private String orderKey;
+    private SortOrder order;
     protected abstract NativeTitanQueryFactory<V, E> getQueryFactory();
 
     /**
@@ -123,16 +131,94 @@ public abstract class TitanGraphQuery<V, E> implements AtlasGraphQuery<V, E> {
     public Iterable<AtlasVertex<V, E>> vertices() {
         LOG.debug("Executing: ");
         LOG.debug(queryCondition.toString());
+
+        List<AndCondition> andTerms = queryCondition.getAndTerms();
+
+        //Each AndCondition only needs to return the vertices up to the end of the
+        //requested page, since the vertices of the page are among the first
+        //offset + limit vertices of at least one of the AndConditions.
+        int nativeLimit = limit < 0 ? -1 : (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+
+        if (andTerms.size() == 1) {
+            //a single native query orders and limits the vertices itself, so they
+            //are returned as they are read rather than collected first.
+            return skip(createNativeQuery(andTerms.get(0), nativeLimit).vertices(), offset);
+        }
+
         //compute the overall result by unioning the results from all of the
         //AndConditions together.
-        Set<AtlasVertex<V, E>> result = new HashSet<>();
-        for(AndCondition andExpr : queryCondition.getAndTerms()) {
-            NativeTitanGraphQuery<V, E> andQuery = andExpr.create(getQueryFactory());
-            for(AtlasVertex<V, E> vertex : andQuery.vertices()) {
-                result.add(vertex);
+        Set<AtlasVertex<V, E>> union = new LinkedHashSet<>();
+        for(AndCondition andExpr : andTerms) {
+            for(AtlasVertex<V, E> vertex : createNativeQuery(andExpr, nativeLimit).vertices()) {
+                union.add(vertex);
             }
         }
-        return result;
+
+        if (offset == 0 && limit < 0 && (orderKey == null || andTerms.size() < 2)) {
+            return union;
+        }
+
+        List<AtlasVertex<V, E>> result = new ArrayList<>(union);
+        if (orderKey != null && andTerms.size() > 1) {
+            //the results of each AndCondition are ordered, but not their union
+            Collections.sort(result, new PropertyComparator<V, E>(orderKey, order));
+        }
+
+        int fromIndex = Math.min(offset, result.size());
+        int toIndex = nativeLimit < 0 ? result.size() : Math.min(nativeLimit, result.size());
+        return result.subList(fromIndex, toIndex);
+    }
+
+    private NativeTitanGraphQuery<V, E> createNativeQuery(AndCondition andExpr, int nativeLimit) {
+        NativeTitanGraphQuery<V, E> ret = andExpr.create(getQueryFactory());
+        if (orderKey != null) {
+            ret.orderBy(orderKey, order);
+        }
+        if (nativeLimit >= 0) {
+            ret.limit(nativeLimit);
+        }
+        return ret;
+    }
+
+    private static <T> Iterable<T> skip(final Iterable<T> iterable, final int count) {
+        if (count == 0) {
+            return iterable;
+        }
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                Iterator<T> ret = iterable.iterator();
+                for (int i = 0; i < count && ret.hasNext(); i++) {
+                    ret.next();
+                }
+                return ret;
+            }
+        };
+    }
+
+    @Override
+    public AtlasGraphQuery<V, E> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit should be >= 0, current value " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public AtlasGraphQuery<V, E> offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset should be >= 0, current value " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    @Override
+    public AtlasGraphQuery<V, E> orderBy(String propertyKey, SortOrder order) {
+        this.orderKey = propertyKey;
+        this.order = order;
+        return this;
     }
 
     @Override
@@ -186,4 +272,30 @@ public abstract class TitanGraphQuery<V, E> implements AtlasGraphQuery<V, E> {
     public boolean isChildQuery() {
         return isChildQuery;
     }
+
+    /**
+     * Orders vertices by the value of a property, with the vertices
+     * that don't have the property last.
+     */
+    private static final class PropertyComparator<V, E> implements Comparator<AtlasVertex<V, E>> {
+        private final String propertyKey;
+        private final SortOrder order;
+
+        PropertyComparator(String propertyKey, SortOrder order) {
+            this.propertyKey = propertyKey;
+            this.order = order;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(AtlasVertex<V, E> v1, AtlasVertex<V, E> v2) {
+            Comparable value1 = v1.getProperty(propertyKey, Comparable.class);
+            Comparable value2 = v2.getProperty(propertyKey, Comparable.class);
+            if (value1 == null || value2 == null) {
+                return value1 == null ? (value2 == null ? 0 : 1) : -1;
+            }
+            int result = value1.compareTo(value2);
+            return order == SortOrder.DESC ? -result : result;
+        }
+    }
 }
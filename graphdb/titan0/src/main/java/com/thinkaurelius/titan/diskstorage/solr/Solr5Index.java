@@ -14,16 +14,21 @@
  */
 package com.thinkaurelius.titan.diskstorage.solr;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.thinkaurelius.titan.core.Order;
 import com.thinkaurelius.titan.core.TitanElement;
+import com.thinkaurelius.titan.core.TitanException;
 import com.thinkaurelius.titan.core.attribute.Cmp;
 import com.thinkaurelius.titan.core.attribute.Geo;
 import com.thinkaurelius.titan.core.attribute.Geoshape;
 import com.thinkaurelius.titan.core.attribute.Text;
 import com.thinkaurelius.titan.core.schema.Mapping;
+import com.thinkaurelius.titan.core.schema.Parameter;
 import com.thinkaurelius.titan.diskstorage.BackendException;
 import com.thinkaurelius.titan.diskstorage.BaseTransaction;
 import com.thinkaurelius.titan.diskstorage.BaseTransactionConfig;
@@ -73,6 +78,7 @@ import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
@@ -83,11 +89,15 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -105,6 +115,20 @@ public class Solr5Index implements IndexProvider {
 
     private static final String DEFAULT_ID_FIELD = "id";
 
+    /**
+     * Parameter of a raw query which orders its hits by document key instead of by score, starting after the key
+     * given as its value, or at the first hit when the value is empty. The hits before that key are excluded by the
+     * query rather than skipped, so a page read this way costs the same wherever it starts.
+     */
+    public static final String KEY_ORDER_AFTER = "key-order-after";
+
+    /**
+     * Parameter of a raw query which orders its hits by a field instead of by score, given as its value in the form
+     * "field asc" or "field desc". Hits with the same value are ordered by document key. The field must be one Solr
+     * can sort on, i.e. not a tokenized text field.
+     */
+    public static final String ORDER_BY = "order-by";
+
     private enum Mode {
         HTTP, CLOUD;
 
@@ -132,6 +156,10 @@ public class Solr5Index implements IndexProvider {
             "Field name that uniquely identifies each document in Solr. Must be specified as a list of `collection=field`.",
             ConfigOption.Type.GLOBAL, String[].class);
 
+    public static final ConfigOption<Integer> CURSOR_PAGE_SIZE = new ConfigOption<>(SOLR_NS, "cursor-page-size",
+            "Number of documents fetched per request when the results of an index query are paged through with a cursor, which is done for queries whose limit exceeds a page.",
+            ConfigOption.Type.MASKABLE, 1000);
+
     public static final ConfigOption<String> TTL_FIELD = new ConfigOption<>(SOLR_NS, "ttl_field",
             "Name of the TTL field for Solr collections.",
             ConfigOption.Type.GLOBAL_OFFLINE, "ttl");
@@ -200,19 +228,31 @@ public class Solr5Index implements IndexProvider {
     private final boolean dynFields;
     private final Map<String, String> keyFieldIds;
     private final String ttlField;
-    private final int maxResults;
+    private final int cursorPageSize;
     private final boolean waitSearcher;
 
     public Solr5Index(final Configuration config) throws BackendException {
+        this(config, createSolrClient(config));
+    }
+
+    @VisibleForTesting
+    Solr5Index(final Configuration config, SolrClient solrClient) throws BackendException {
         Preconditions.checkArgument(config!=null);
         configuration = config;
 
         mode = Mode.parse(config.get(SOLR_MODE));
         dynFields = config.get(DYNAMIC_FIELDS);
         keyFieldIds = parseKeyFieldsForCollections(config);
-        maxResults = config.get(GraphDatabaseConfiguration.INDEX_MAX_RESULT_SET_SIZE);
+        cursorPageSize = config.get(CURSOR_PAGE_SIZE);
         ttlField = config.get(TTL_FIELD);
         waitSearcher = config.get(WAIT_SEARCHER);
+        this.solrClient = solrClient;
+    }
+
+    private static SolrClient createSolrClient(final Configuration config) {
+        Preconditions.checkArgument(config!=null);
+        Mode mode = Mode.parse(config.get(SOLR_MODE));
+        SolrClient solrClient;
 
         if (mode==Mode.CLOUD) {
             HttpClientUtil.setConfigurer(new Krb5HttpClientConfigurer());
@@ -242,6 +282,7 @@ public class Solr5Index implements IndexProvider {
         } else {
             throw new IllegalArgumentException("Unsupported Solr operation mode: " + mode);
         }
+        return solrClient;
     }
 
     private Map<String, String> parseKeyFieldsForCollections(Configuration config) throws BackendException {
@@ -454,12 +495,13 @@ public class Solr5Index implements IndexProvider {
 
     @Override
     public List<String> query(IndexQuery query, KeyInformation.IndexRetriever informations, BaseTransaction tx) throws BackendException {
-        List<String> result;
         String collection = query.getStore();
         String keyIdField = getKeyFieldId(collection);
         SolrQuery solrQuery = new SolrQuery("*:*");
         String queryFilter = buildQueryFilter(query.getCondition(), informations.get(collection));
         solrQuery.addFilterQuery(queryFilter);
+        // only the document keys are read from the hits
+        solrQuery.setFields(keyIdField);
         if (!query.getOrder().isEmpty()) {
             List<IndexQuery.OrderEntry> orders = query.getOrder();
             for (IndexQuery.OrderEntry order1 : orders) {
@@ -468,71 +510,199 @@ public class Solr5Index implements IndexProvider {
                 solrQuery.addSort(new SolrQuery.SortClause(item, order));
             }
         }
-        solrQuery.setStart(0);
-        if (query.hasLimit()) {
-            solrQuery.setRows(query.getLimit());
-        } else {
-            solrQuery.setRows(maxResults);
-        }
         try {
-            QueryResponse response = solrClient.query(collection, solrQuery);
+            // the caller copies the keys, so they are collected here; the limit bounds them
+            List<String> result = new ArrayList<>();
+            Iterator<SolrDocument> hits = getHits(collection, solrQuery, keyIdField, 0, query.hasLimit() ? query.getLimit() : -1);
+            while (hits.hasNext()) {
+                result.add(hits.next().getFieldValue(keyIdField).toString());
+            }
 
             if (logger.isDebugEnabled())
-                logger.debug("Executed query [{}] in {} ms", query.getCondition(), response.getElapsedTime());
-
-            int totalHits = response.getResults().size();
-
-            if (!query.hasLimit() && totalHits >= maxResults)
-                logger.warn("Query result set truncated to first [{}] elements for query: {}", maxResults, query);
+                logger.debug("Executed query [{}], {} hits", query.getCondition(), result.size());
 
-            result = new ArrayList<>(totalHits);
-            for (SolrDocument hit : response.getResults()) {
-                result.add(hit.getFieldValue(keyIdField).toString());
-            }
+            return result;
         } catch (IOException e) {
             logger.error("Query did not complete : ", e);
             throw new PermanentBackendException(e);
         } catch (SolrServerException e) {
             logger.error("Unable to query Solr index.", e);
             throw new PermanentBackendException(e);
+        } catch (TitanException e) {
+            logger.error("Unable to query Solr index.", e);
+            throw new PermanentBackendException(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Hits of a query starting at the given offset, up to the given limit. When the hits fit in a single page, they are
+     * read with a single request. Otherwise they are paged through with a cursor, which reads a page only once the
+     * hits of the previous one have been consumed.
+     *
+     * @param limit maximum number of hits, or -1 to read all of them
+     */
+    private Iterator<SolrDocument> getHits(String collection, SolrQuery solrQuery, String keyIdField, int offset, int limit)
+            throws IOException, SolrServerException {
+        if (limit >= 0 && limit <= cursorPageSize) {
+            solrQuery.setStart(offset);
+            solrQuery.setRows(limit);
+
+            QueryResponse response = solrClient.query(collection, solrQuery);
+
+            if (logger.isDebugEnabled())
+                logger.debug("Executed query [{}] in {} ms", solrQuery.getQuery(), response.getElapsedTime());
+
+            return response.getResults().iterator();
         }
-        return result;
+
+        // a cursor can't start at an offset, so the hits before it are skipped
+        Iterator<SolrDocument> ret = new CursorMarkIterator(collection, solrQuery, keyIdField);
+        Iterators.advance(ret, offset);
+        return limit >= 0 ? Iterators.limit(ret, limit) : ret;
     }
 
+    /**
+     * Lazily pages through all hits of a query with Solr cursorMark deep paging, fetching the next page only
+     * when the hits of the current page have been consumed.
+     */
+    private class CursorMarkIterator implements Iterator<SolrDocument> {
+        private final String collection;
+        private final SolrQuery solrQuery;
+        private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        private Iterator<SolrDocument> page = Collections.emptyIterator();
+        private boolean done = false;
+
+        CursorMarkIterator(String collection, SolrQuery solrQuery, String keyIdField) {
+            this.collection = collection;
+            this.solrQuery = solrQuery;
+            // a cursor requires the sort to end with the unique key of the collection
+            List<SolrQuery.SortClause> sorts = solrQuery.getSorts();
+            if (sorts.isEmpty() || !sorts.get(sorts.size() - 1).getItem().equals(keyIdField)) {
+                this.solrQuery.addSort(new SolrQuery.SortClause(keyIdField, SolrQuery.ORDER.asc));
+            }
+            this.solrQuery.setStart(0);
+            this.solrQuery.setRows(cursorPageSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !done) {
+                fetchNextPage();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public SolrDocument next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void fetchNextPage() {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            try {
+                QueryResponse response = solrClient.query(collection, solrQuery);
+
+                if (logger.isDebugEnabled())
+                    logger.debug("Fetched page at cursor [{}] in {} ms", cursorMark, response.getElapsedTime());
+
+                String nextCursorMark = response.getNextCursorMark();
+                done = nextCursorMark == null || nextCursorMark.equals(cursorMark);
+                cursorMark = nextCursorMark;
+                page = response.getResults().iterator();
+            } catch (IOException | SolrServerException e) {
+                throw new TitanException("Unable to fetch the next page of query results", e);
+            }
+        }
+    }
+
+    /**
+     * The hits are returned as they are read: when they don't fit in a single page, the pages after the first one
+     * are fetched while the caller iterates over the hits. With the {@link #KEY_ORDER_AFTER} parameter, the hits are
+     * ordered by document key and start after the given key; with the {@link #ORDER_BY} parameter, they are ordered
+     * by the given field.
+     */
     @Override
     public Iterable<RawQuery.Result<String>> query(RawQuery query, KeyInformation.IndexRetriever informations, BaseTransaction tx) throws BackendException {
-        List<RawQuery.Result<String>> result;
         String collection = query.getStore();
-        String keyIdField = getKeyFieldId(collection);
+        final String keyIdField = getKeyFieldId(collection);
         SolrQuery solrQuery = new SolrQuery(query.getQuery())
                 .addField(keyIdField)
-                .setIncludeScore(true)
-                .setStart(query.getOffset())
-                .setRows(query.hasLimit() ? query.getLimit() : maxResults);
+                .setIncludeScore(true);
+
+        String afterKey = getParameter(query, KEY_ORDER_AFTER);
+        String orderBy = getParameter(query, ORDER_BY);
+        Preconditions.checkArgument(afterKey == null || orderBy == null,
+                "A query can't be ordered by both document key and a field");
+        if (orderBy != null) {
+            String[] sort = orderBy.trim().split("\\s+");
+            Preconditions.checkArgument(sort.length == 2, "Invalid order: %s", orderBy);
+            SolrQuery.ORDER order = SolrQuery.ORDER.valueOf(sort[1].toLowerCase(Locale.ENGLISH));
+            solrQuery.addSort(new SolrQuery.SortClause(sort[0], order));
+            // so that the order is the same on every page
+            solrQuery.addSort(new SolrQuery.SortClause(keyIdField, SolrQuery.ORDER.asc));
+        } else if (afterKey == null) {
+            // explicitly, as a cursor requires a sort
+            solrQuery.addSort(new SolrQuery.SortClause("score", SolrQuery.ORDER.desc));
+        } else {
+            solrQuery.addSort(new SolrQuery.SortClause(keyIdField, SolrQuery.ORDER.asc));
+            if (!afterKey.isEmpty()) {
+                solrQuery.addFilterQuery(keyIdField + ":{" + escapeValue(afterKey) + " TO *]");
+            }
+        }
 
         try {
-            QueryResponse response = solrClient.query(collection, solrQuery);
+            final Iterator<SolrDocument> hits = getHits(collection, solrQuery, keyIdField, query.getOffset(),
+                    query.hasLimit() ? query.getLimit() : -1);
+            // so that a failure to read the first page is reported by the query
+            hits.hasNext();
+
             if (logger.isDebugEnabled())
-                logger.debug("Executed query [{}] in {} ms", query.getQuery(), response.getElapsedTime());
+                logger.debug("Executed query [{}]", query.getQuery());
 
-            int totalHits = response.getResults().size();
-            if (!query.hasLimit() && totalHits >= maxResults) {
-                logger.warn("Query result set truncated to first [{}] elements for query: {}", maxResults, query);
-            }
-            result = new ArrayList<>(totalHits);
+            return new Iterable<RawQuery.Result<String>>() {
+                private boolean isIterated;
 
-            for (SolrDocument hit : response.getResults()) {
-                double score = Double.parseDouble(hit.getFieldValue("score").toString());
-                result.add(new RawQuery.Result<>(hit.getFieldValue(keyIdField).toString(), score));
-            }
+                @Override
+                public Iterator<RawQuery.Result<String>> iterator() {
+                    Preconditions.checkState(!isIterated, "The hits of an index query can only be iterated once");
+                    isIterated = true;
+
+                    return Iterators.transform(hits, new Function<SolrDocument, RawQuery.Result<String>>() {
+                        @Override
+                        public RawQuery.Result<String> apply(SolrDocument hit) {
+                            double score = Double.parseDouble(hit.getFieldValue("score").toString());
+                            return new RawQuery.Result<>(hit.getFieldValue(keyIdField).toString(), score);
+                        }
+                    });
+                }
+            };
         } catch (IOException e) {
             logger.error("Query did not complete : ", e);
             throw new PermanentBackendException(e);
         } catch (SolrServerException e) {
             logger.error("Unable to query Solr index.", e);
             throw new PermanentBackendException(e);
+        } catch (TitanException e) {
+            logger.error("Unable to query Solr index.", e);
+            throw new PermanentBackendException(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private static String getParameter(RawQuery query, String name) {
+        for (Parameter parameter : query.getParameters()) {
+            if (name.equals(parameter.getKey())) {
+                return String.valueOf(parameter.getValue());
+            }
         }
-        return result;
+        return null;
     }
 
     private static String escapeValue(Object value) {
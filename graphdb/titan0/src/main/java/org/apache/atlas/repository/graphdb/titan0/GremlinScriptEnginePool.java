@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.graphdb.titan0;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.atlas.utils.LruCache;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe pool of pre-warmed gremlin-groovy script engines.
+ *
+ * Scripts are normalized with {@link ParameterizedGremlinScript}, so that queries that
+ * differ only in their string literals share a single compiled script. Compiled scripts
+ * are held in a bounded LRU cache. Since the groovy engine keeps a reference to every
+ * class it compiles, an engine is replaced with a fresh one after it has compiled a
+ * configured number of scripts; together with cache eviction, this keeps the number of
+ * generated classes (and hence metaspace usage) bounded.
+ */
+public class GremlinScriptEnginePool {
+    private static final Logger LOG         = LoggerFactory.getLogger(GremlinScriptEnginePool.class);
+    private static final Logger METRICS_LOG = LoggerFactory.getLogger("METRICS");
+
+    public static final String POOL_SIZE                    = "atlas.gremlin.engine.pool.size";
+    public static final String MAX_COMPILATIONS_PER_ENGINE  = "atlas.gremlin.engine.max.compilations";
+    public static final String SCRIPT_CACHE_SIZE            = "atlas.gremlin.script.cache.size";
+    public static final String SCRIPT_PARAMETERIZE_LITERALS = "atlas.gremlin.script.parameterize.literals";
+    public static final String STATS_LOG_INTERVAL_SECS      = "atlas.gremlin.script.stats.log.intervalInSecs";
+
+    public static final int     DEFAULT_POOL_SIZE                   = Runtime.getRuntime().availableProcessors();
+    public static final int     DEFAULT_MAX_COMPILATIONS_PER_ENGINE = 5000;
+    public static final int     DEFAULT_SCRIPT_CACHE_SIZE           = 1000;
+    public static final boolean DEFAULT_PARAMETERIZE_LITERALS       = true;
+    public static final int     DEFAULT_STATS_LOG_INTERVAL_SECS     = 300;
+
+    public static final String METRIC_CACHE_HITS         = "scriptCacheHits";
+    public static final String METRIC_CACHE_MISSES       = "scriptCacheMisses";
+    public static final String METRIC_CACHE_EVICTIONS    = "scriptCacheEvictions";
+    public static final String METRIC_CACHE_SIZE         = "scriptCacheSize";
+    public static final String METRIC_COMPILATIONS       = "scriptCompilations";
+    public static final String METRIC_COMPILE_TIME       = "scriptCompileTimeMSecs";
+    public static final String METRIC_EXECUTIONS         = "scriptExecutions";
+    public static final String METRIC_EXECUTION_TIME     = "scriptExecutionTimeMSecs";
+    public static final String METRIC_ENGINES_RECYCLED   = "scriptEnginesRecycled";
+
+    private static final String ENGINE_NAME        = "gremlin-groovy";
+    private static final String KEEP_GLOBALS_ATTR  = "#jsr223.groovy.engine.keep.globals";
+    private static final String KEEP_GLOBALS_VALUE = "phantom";
+    private static final String WARMUP_SCRIPT      = "[1, 2, 3].collect { it * " + ParameterizedGremlinScript.PARAMETER_PREFIX + "0 }.size()";
+
+    private final BlockingQueue<PooledEngine>  engines;
+    private final Map<String, CompiledScript>  scriptCache;
+    private final int                          maxCompilationsPerEngine;
+    private final boolean                      parameterizeLiterals;
+    private final long                         statsLogIntervalMs;
+
+    private final AtomicLong cacheHits       = new AtomicLong();
+    private final AtomicLong cacheMisses     = new AtomicLong();
+    private final AtomicLong cacheEvictions  = new AtomicLong();
+    private final AtomicLong compilations    = new AtomicLong();
+    private final AtomicLong compileTimeMs   = new AtomicLong();
+    private final AtomicLong executions      = new AtomicLong();
+    private final AtomicLong executionTimeMs = new AtomicLong();
+    private final AtomicLong enginesRecycled = new AtomicLong();
+    private final AtomicLong lastStatsLogTime = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @param configuration atlas application configuration; may be null, in which case defaults are used
+     */
+    public GremlinScriptEnginePool(Configuration configuration) {
+        int poolSize      = getInt(configuration, POOL_SIZE, DEFAULT_POOL_SIZE);
+        int cacheSize     = getInt(configuration, SCRIPT_CACHE_SIZE, DEFAULT_SCRIPT_CACHE_SIZE);
+
+        this.maxCompilationsPerEngine = getInt(configuration, MAX_COMPILATIONS_PER_ENGINE, DEFAULT_MAX_COMPILATIONS_PER_ENGINE);
+        this.parameterizeLiterals     = configuration != null ? configuration.getBoolean(SCRIPT_PARAMETERIZE_LITERALS, DEFAULT_PARAMETERIZE_LITERALS)
+                                                              : DEFAULT_PARAMETERIZE_LITERALS;
+        this.statsLogIntervalMs       = getInt(configuration, STATS_LOG_INTERVAL_SECS, DEFAULT_STATS_LOG_INTERVAL_SECS) * 1000L;
+        this.engines                  = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+        this.scriptCache              = Collections.synchronizedMap(new LruCache<String, CompiledScript>(Math.max(cacheSize, 1), 0) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                boolean ret = super.removeEldestEntry(eldest);
+
+                if (ret) {
+                    cacheEvictions.incrementAndGet();
+                }
+
+                return ret;
+            }
+        });
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < Math.max(poolSize, 1); i++) {
+            engines.add(createEngine());
+        }
+
+        LOG.info("Initialized {} gremlin script engines in {} ms (scriptCacheSize={}, maxCompilationsPerEngine={})",
+                 engines.size(), System.currentTimeMillis() - start, cacheSize, maxCompilationsPerEngine);
+    }
+
+    /**
+     * Evaluates the given script.
+     *
+     * @param script gremlin script
+     * @param parameters bindings referenced by the script, like the graph 'g'; may be null
+     * @return result of the script evaluation
+     * @throws ScriptException
+     */
+    public Object eval(String script, Map<String, Object> parameters) throws ScriptException {
+        long start = System.currentTimeMillis();
+
+        try {
+            ParameterizedGremlinScript parameterized = parameterizeLiterals ? ParameterizedGremlinScript.parse(script) : null;
+            String                     scriptText    = parameterized != null ? parameterized.getText() : script;
+            Bindings                   bindings      = new SimpleBindings();
+
+            bindings.put(KEEP_GLOBALS_ATTR, KEEP_GLOBALS_VALUE);
+
+            if (parameterized != null) {
+                bindings.putAll(parameterized.getParameters());
+            }
+
+            if (parameters != null) {
+                bindings.putAll(parameters);
+            }
+
+            CompiledScript compiledScript = getCompiledScript(scriptText);
+
+            if (compiledScript != null) {
+                return compiledScript.eval(bindings);
+            }
+
+            PooledEngine engine = borrowEngine();
+
+            try {
+                return engine.scriptEngine.eval(scriptText, bindings);
+            } finally {
+                returnEngine(engine, false);
+            }
+        } finally {
+            executions.incrementAndGet();
+            executionTimeMs.addAndGet(System.currentTimeMillis() - start);
+
+            logStatisticsIfNeeded();
+        }
+    }
+
+    public Map<String, Number> getStatistics() {
+        Map<String, Number> ret = new LinkedHashMap<>();
+
+        ret.put(METRIC_CACHE_HITS, cacheHits.get());
+        ret.put(METRIC_CACHE_MISSES, cacheMisses.get());
+        ret.put(METRIC_CACHE_EVICTIONS, cacheEvictions.get());
+        ret.put(METRIC_CACHE_SIZE, scriptCache.size());
+        ret.put(METRIC_COMPILATIONS, compilations.get());
+        ret.put(METRIC_COMPILE_TIME, compileTimeMs.get());
+        ret.put(METRIC_EXECUTIONS, executions.get());
+        ret.put(METRIC_EXECUTION_TIME, executionTimeMs.get());
+        ret.put(METRIC_ENGINES_RECYCLED, enginesRecycled.get());
+
+        return ret;
+    }
+
+    /**
+     * @return compiled script for the given text; null if the script engine does not support compilation
+     */
+    private CompiledScript getCompiledScript(String scriptText) throws ScriptException {
+        CompiledScript ret = scriptCache.get(scriptText);
+
+        if (ret != null) {
+            cacheHits.incrementAndGet();
+
+            return ret;
+        }
+
+        cacheMisses.incrementAndGet();
+
+        PooledEngine engine   = borrowEngine();
+        boolean      compiled = false;
+
+        try {
+            if (!(engine.scriptEngine instanceof Compilable)) {
+                return null;
+            }
+
+            long start = System.currentTimeMillis();
+
+            ret      = ((Compilable) engine.scriptEngine).compile(scriptText);
+            compiled = true;
+
+            compilations.incrementAndGet();
+            compileTimeMs.addAndGet(System.currentTimeMillis() - start);
+
+            scriptCache.put(scriptText, ret);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compiled gremlin script in {} ms: {}", System.currentTimeMillis() - start, scriptText);
+            }
+        } finally {
+            returnEngine(engine, compiled);
+        }
+
+        return ret;
+    }
+
+    private PooledEngine borrowEngine() throws ScriptException {
+        try {
+            return engines.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new ScriptException("Interrupted while waiting for a gremlin script engine");
+        }
+    }
+
+    private void returnEngine(PooledEngine engine, boolean compiledScript) {
+        PooledEngine toReturn = engine;
+
+        if (compiledScript && ++engine.compilationCount >= maxCompilationsPerEngine) {
+            // the engine holds on to every class it has compiled; replace it to let them be unloaded
+            // once the cached scripts compiled by it are evicted
+            try {
+                toReturn = createEngine();
+
+                enginesRecycled.incrementAndGet();
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to create a gremlin script engine; continuing with the existing one", e);
+
+                engine.compilationCount = 0;
+            }
+        }
+
+        engines.offer(toReturn);
+    }
+
+    private PooledEngine createEngine() {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName(ENGINE_NAME);
+
+        if (engine == null) {
+            throw new IllegalStateException("Script engine " + ENGINE_NAME + " not found");
+        }
+
+        // load the groovy runtime and gremlin steps up front, rather than in the first query
+        try {
+            Bindings bindings = engine.createBindings();
+
+            bindings.put(ParameterizedGremlinScript.PARAMETER_PREFIX + "0", 2);
+            bindings.put(KEEP_GLOBALS_ATTR, KEEP_GLOBALS_VALUE);
+
+            engine.eval(WARMUP_SCRIPT, bindings);
+        } catch (ScriptException e) {
+            LOG.warn("Failed to warm up gremlin script engine", e);
+        }
+
+        return new PooledEngine(engine);
+    }
+
+    private void logStatisticsIfNeeded() {
+        if (statsLogIntervalMs <= 0 || !METRICS_LOG.isInfoEnabled()) {
+            return;
+        }
+
+        long now     = System.currentTimeMillis();
+        long lastLog = lastStatsLogTime.get();
+
+        if (now - lastLog >= statsLogIntervalMs && lastStatsLogTime.compareAndSet(lastLog, now)) {
+            METRICS_LOG.info("GremlinScriptEnginePool: {}", getStatistics());
+        }
+    }
+
+    private static int getInt(Configuration configuration, String name, int defaultValue) {
+        return configuration != null ? configuration.getInt(name, defaultValue) : defaultValue;
+    }
+
+    private static final class PooledEngine {
+        private final ScriptEngine scriptEngine;
+        private int                compilationCount = 0;
+
+        private PooledEngine(ScriptEngine scriptEngine) {
+            this.scriptEngine = scriptEngine;
+        }
+    }
+}
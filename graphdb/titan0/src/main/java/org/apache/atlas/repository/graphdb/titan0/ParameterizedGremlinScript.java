@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.graphdb.titan0;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A gremlin script whose string literals have been replaced with references to
+ * bindings.  Scripts that differ only in the values of their string literals
+ * (type names, guids, qualified names...) normalize to the same text, so they
+ * can share a single compiled script.
+ *
+ * Only literals that are safe to replace with a variable are extracted.  Literals
+ * used as property names (it.'name'), map keys ['key':...], GStrings with
+ * interpolation and multi-line strings are left in place, as are slashy strings
+ * (/regex/, $/.../$) and comments.  The rest of the script, whitespace included,
+ * is kept as is.
+ */
+public final class ParameterizedGremlinScript {
+
+    public static final String PARAMETER_PREFIX = "__atlasLiteral";
+
+    private static final Set<String> SLASHY_STRING_KEYWORDS = new HashSet<>(Arrays.asList("return", "in", "case", "assert"));
+
+    private final String              text;
+    private final Map<String, Object> parameters;
+
+    private ParameterizedGremlinScript(String text, Map<String, Object> parameters) {
+        this.text       = text;
+        this.parameters = Collections.unmodifiableMap(parameters);
+    }
+
+    /**
+     * @return the normalized script text, which references the extracted literals by name
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the values of the extracted literals, keyed by the name used in the script text
+     */
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    public static ParameterizedGremlinScript parse(String script) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        StringBuilder       text       = new StringBuilder(script.length());
+        int                 length     = script.length();
+        int                 i          = 0;
+
+        while (i < length) {
+            char c = script.charAt(i);
+
+            if (c == '\'' || c == '"') {
+                int end = findLiteralEnd(script, i);
+
+                if (end < 0) { // unterminated or multi-line string - leave the rest as is
+                    text.append(script, i, length);
+                    break;
+                }
+
+                String literal = script.substring(i, end + 1);
+                String value   = isParameterizable(script, i, end) ? unescape(literal) : null;
+
+                if (value != null) {
+                    String name = PARAMETER_PREFIX + parameters.size();
+
+                    parameters.put(name, value);
+                    text.append(name);
+                } else {
+                    text.append(literal);
+                }
+
+                i = end + 1;
+            } else if (script.startsWith("//", i) || script.startsWith("/*", i)
+                    || script.startsWith("$/", i) || (c == '/' && isSlashyStringStart(script, i))) {
+                int end = findVerbatimEnd(script, i);
+
+                if (end < 0) { // unterminated - leave the rest as is
+                    text.append(script, i, length);
+                    break;
+                }
+
+                text.append(script, i, end);
+                i = end;
+            } else {
+                text.append(c);
+                i++;
+            }
+        }
+
+        return new ParameterizedGremlinScript(text.toString(), parameters);
+    }
+
+    /**
+     * A slash starts a slashy string where an operand is expected, i.e. at the start of the script or after an
+     * operator, opening bracket or keyword; after an operand, it is a division.
+     */
+    private static boolean isSlashyStringStart(String script, int index) {
+        char prev = previousNonBlank(script, index);
+
+        if (prev == 0 || "([{,=:!&|?;~+-*%<>^".indexOf(prev) != -1) {
+            return true;
+        }
+
+        int wordEnd = index;
+
+        while (Character.isWhitespace(script.charAt(wordEnd - 1))) {
+            wordEnd--;
+        }
+
+        int wordStart = wordEnd;
+
+        while (wordStart > 0 && Character.isJavaIdentifierPart(script.charAt(wordStart - 1))) {
+            wordStart--;
+        }
+
+        return SLASHY_STRING_KEYWORDS.contains(script.substring(wordStart, wordEnd))
+                && (wordStart == 0 || script.charAt(wordStart - 1) != '.');
+    }
+
+    /**
+     * Finds the end of the comment or slashy string that starts at the given index, whose text is to be kept as is.
+     *
+     * @return index after the end; -1 if it is not terminated
+     */
+    private static int findVerbatimEnd(String script, int start) {
+        if (script.startsWith("//", start)) {
+            int end = script.indexOf('\n', start);
+
+            return end < 0 ? script.length() : end;
+        }
+
+        if (script.startsWith("/*", start)) {
+            int end = script.indexOf("*/", start + 2);
+
+            return end < 0 ? -1 : end + 2;
+        }
+
+        if (script.startsWith("$/", start)) {
+            int end = script.indexOf("/$", start + 2);
+
+            return end < 0 ? -1 : end + 2;
+        }
+
+        for (int i = start + 1; i < script.length(); i++) {
+            char c = script.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (c == '/') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the index of the closing quote of the literal that starts at the given index.
+     *
+     * @return index of the closing quote; -1 for triple-quoted, multi-line or unterminated literals
+     */
+    private static int findLiteralEnd(String script, int start) {
+        char quote = script.charAt(start);
+
+        if (script.startsWith(new String(new char[] { quote, quote, quote }), start)) {
+            return -1;
+        }
+
+        for (int i = start + 1; i < script.length(); i++) {
+            char c = script.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (c == '\n') {
+                return -1;
+            } else if (c == quote) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isParameterizable(String script, int start, int end) {
+        char prev = previousNonBlank(script, start);
+        char next = nextNonBlank(script, end);
+
+        // property access (it.'name') and map keys ('key': value) must remain literals
+        if (prev == '.' || next == ':') {
+            return false;
+        }
+
+        // GStrings with interpolation are evaluated by groovy
+        return !(script.charAt(start) == '"' && script.substring(start, end).indexOf('$') != -1);
+    }
+
+    private static char previousNonBlank(String script, int index) {
+        for (int i = index - 1; i >= 0; i--) {
+            char c = script.charAt(i);
+
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    private static char nextNonBlank(String script, int index) {
+        for (int i = index + 1; i < script.length(); i++) {
+            char c = script.charAt(i);
+
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Converts a quoted groovy literal to its value.
+     *
+     * @return the value of the literal; null if it uses an escape sequence that is not handled here
+     */
+    private static String unescape(String literal) {
+        StringBuilder ret = new StringBuilder(literal.length());
+
+        for (int i = 1; i < literal.length() - 1; i++) {
+            char c = literal.charAt(i);
+
+            if (c != '\\') {
+                ret.append(c);
+                continue;
+            }
+
+            char escaped = literal.charAt(++i);
+
+            switch (escaped) {
+                case '\\':
+                case '\'':
+                case '"':
+                case '$':
+                    ret.append(escaped);
+                    break;
+                case 'n':
+                    ret.append('\n');
+                    break;
+                case 't':
+                    ret.append('\t');
+                    break;
+                case 'r':
+                    ret.append('\r');
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        return ret.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterizedGremlinScript{text='" + text + "', parameters=" + parameters + '}';
+    }
+}
@@ -20,23 +20,25 @@ package org.apache.atlas.repository.graphdb.titan0;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.script.Bindings;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
+import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.AtlasException;
 import org.apache.atlas.groovy.GroovyExpression;
 import org.apache.atlas.repository.graphdb.AtlasEdge;
+import org.apache.atlas.repository.graphdb.AtlasEdgeDirection;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasGraphManagement;
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
@@ -47,17 +49,29 @@ import org.apache.atlas.repository.graphdb.GremlinVersion;
 import org.apache.atlas.repository.graphdb.titan0.query.Titan0GraphQuery;
 import org.apache.atlas.typesystem.types.IDataType;
 import org.apache.atlas.utils.IteratorToIterableAdapter;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.thinkaurelius.titan.core.Cardinality;
 import com.thinkaurelius.titan.core.PropertyKey;
+import com.thinkaurelius.titan.core.RelationType;
 import com.thinkaurelius.titan.core.SchemaViolationException;
+import com.thinkaurelius.titan.core.TitanEdge;
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.thinkaurelius.titan.core.TitanIndexQuery;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.thinkaurelius.titan.core.schema.Mapping;
+import com.thinkaurelius.titan.core.schema.Parameter;
+import com.thinkaurelius.titan.core.schema.TitanGraphIndex;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
 import com.thinkaurelius.titan.core.util.TitanCleanup;
+import com.thinkaurelius.titan.diskstorage.solr.Solr5Index;
+import com.thinkaurelius.titan.graphdb.database.StandardTitanGraph;
+import com.thinkaurelius.titan.graphdb.types.ParameterType;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Vertex;
@@ -70,8 +84,16 @@ import com.tinkerpop.pipes.util.structures.Row;
  */
 public class Titan0Graph implements AtlasGraph<Titan0Vertex, Titan0Edge> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Titan0Graph.class);
+
     private final Set<String> multiProperties;
 
+    private final GremlinScriptEnginePool scriptEnginePool;
+
+    private final Map<String, Boolean> keyOrderSupport = new ConcurrentHashMap<>();
+    // index field to sort on by index and property name, or "" where the index can't sort on the property
+    private final Map<String, String> indexSortFields = new ConcurrentHashMap<>();
+
     public Titan0Graph() {
         //determine multi-properties once at startup
         TitanManagement mgmt = null;
@@ -89,6 +111,18 @@ public class Titan0Graph implements AtlasGraph<Titan0Vertex, Titan0Edge> {
                 mgmt.rollback();
             }
         }
+
+        scriptEnginePool = new GremlinScriptEnginePool(getApplicationProperties());
+    }
+
+    private static Configuration getApplicationProperties() {
+        try {
+            return ApplicationProperties.get();
+        } catch (AtlasException e) {
+            LOG.warn("Failed to load application properties; using default gremlin script engine settings", e);
+
+            return null;
+        }
     }
 
     @Override
@@ -140,6 +174,62 @@ public class Titan0Graph implements AtlasGraph<Titan0Vertex, Titan0Edge> {
         return wrapVertices(vertices);
     }
 
+    @Override
+    public Map<AtlasVertex<Titan0Vertex, Titan0Edge>, Iterable<AtlasEdge<Titan0Vertex, Titan0Edge>>> getEdges(
+            Collection<AtlasVertex<Titan0Vertex, Titan0Edge>> vertices, AtlasEdgeDirection direction) {
+
+        Map<AtlasVertex<Titan0Vertex, Titan0Edge>, Iterable<AtlasEdge<Titan0Vertex, Titan0Edge>>> result =
+                new HashMap<>(vertices.size());
+        Map<TitanVertex, AtlasVertex<Titan0Vertex, Titan0Edge>> titanVertices = new HashMap<>(vertices.size());
+
+        for (AtlasVertex<Titan0Vertex, Titan0Edge> vertex : vertices) {
+            Vertex wrapped = vertex.getV().getWrappedElement();
+            if (wrapped instanceof TitanVertex) {
+                titanVertices.put((TitanVertex) wrapped, vertex);
+            } else {
+                result.put(vertex, vertex.getEdges(direction));
+            }
+        }
+
+        if (!titanVertices.isEmpty()) {
+            // a multi-vertex query reads the adjacency lists of all the vertices with one backend call
+            Map<TitanVertex, Iterable<TitanEdge>> edges = getGraph().multiQuery(titanVertices.keySet())
+                    .direction(TitanObjectFactory.createDirection(direction)).titanEdges();
+
+            for (Map.Entry<TitanVertex, AtlasVertex<Titan0Vertex, Titan0Edge>> entry : titanVertices.entrySet()) {
+                Iterable<? extends Edge> vertexEdges = edges.get(entry.getKey());
+                result.put(entry.getValue(), vertexEdges != null ? wrapEdges((Iterable<Edge>) vertexEdges)
+                        : Collections.<AtlasEdge<Titan0Vertex, Titan0Edge>>emptyList());
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void loadProperties(Collection<AtlasVertex<Titan0Vertex, Titan0Edge>> vertices) {
+        List<TitanVertex> titanVertices = new ArrayList<>(vertices.size());
+
+        for (AtlasVertex<Titan0Vertex, Titan0Edge> vertex : vertices) {
+            Vertex wrapped = vertex.getV().getWrappedElement();
+            if (wrapped instanceof TitanVertex) {
+                titanVertices.add((TitanVertex) wrapped);
+            }
+        }
+
+        if (!titanVertices.isEmpty()) {
+            // the properties read by a multi-vertex query are cached in the transaction, and serve later reads of
+            // single properties of these vertices
+            getGraph().multiQuery(titanVertices).properties();
+        }
+    }
+
+    @Override
+    public boolean containsEdgeLabel(String label) {
+        RelationType relationType = getGraph().getRelationType(label);
+        return relationType != null && relationType.isEdgeLabel();
+    }
+
     @Override
     public AtlasVertex<Titan0Vertex, Titan0Edge> addVertex() {
         Vertex result = getGraph().addVertex(null);
@@ -159,7 +249,74 @@ public class Titan0Graph implements AtlasGraph<Titan0Vertex, Titan0Edge> {
     @Override
     public AtlasIndexQuery<Titan0Vertex, Titan0Edge> indexQuery(String fulltextIndex, String graphQuery) {
         TitanIndexQuery query = getGraph().indexQuery(fulltextIndex, graphQuery);
-        return new Titan0IndexQuery(this, query);
+        return new Titan0IndexQuery(this, query, fulltextIndex, isIndexKeyOrderSupported(fulltextIndex));
+    }
+
+    /**
+     * Gets the field of the given Solr5Index-backed mixed index that index queries can be sorted on to order them by
+     * the given property: the property must be in the index, and not be a tokenized text field, which Solr can't
+     * sort on.
+     *
+     * @return the field name, or null if the index can't sort on the property
+     */
+    String getIndexSortField(String indexName, String propertyName) {
+        String cacheKey = indexName + "." + propertyName;
+        String ret = indexSortFields.get(cacheKey);
+        if (ret == null) {
+            if (!isIndexKeyOrderSupported(indexName)) {
+                return null;
+            }
+
+            TitanManagement mgmt = getGraph().getManagementSystem();
+            try {
+                TitanGraphIndex index = mgmt.getGraphIndex(indexName);
+                PropertyKey key = mgmt.getPropertyKey(propertyName);
+                if (key == null || !Arrays.asList(index.getFieldKeys()).contains(key)) {
+                    // not cached, as the property may yet be added to the index
+                    return null;
+                }
+
+                Parameter[] parameters = index.getParametersFor(key);
+                String mappedName = ParameterType.MAPPED_NAME.findParameter(parameters, null);
+                Object mapping = ParameterType.MAPPING.findParameter(parameters, null);
+                Class<?> dataType = key.getDataType();
+                boolean sortable = Number.class.isAssignableFrom(dataType) || dataType == Date.class
+                        || dataType == Boolean.class || (dataType == String.class
+                        && Mapping.STRING.toString().equalsIgnoreCase(String.valueOf(mapping)));
+
+                ret = sortable && mappedName != null ? mappedName : "";
+            } finally {
+                mgmt.rollback();
+            }
+            indexSortFields.put(cacheKey, ret);
+        }
+        return ret.isEmpty() ? null : ret;
+    }
+
+    /**
+     * Whether the given mixed index is backed by Solr5Index, which orders index query results by document key
+     * and starts them after a given key.
+     */
+    @Override
+    public boolean isIndexKeyOrderSupported(String indexName) {
+        Boolean ret = keyOrderSupport.get(indexName);
+        if (ret == null) {
+            TitanManagement mgmt = getGraph().getManagementSystem();
+            try {
+                TitanGraphIndex index = mgmt.getGraphIndex(indexName);
+                if (index == null) {
+                    // not cached, as the index may yet be created
+                    return false;
+                }
+                ret = getGraph() instanceof StandardTitanGraph
+                        && ((StandardTitanGraph) getGraph()).getBackend().getIndexInformation()
+                                .get(index.getBackingIndex()) instanceof Solr5Index;
+            } finally {
+                mgmt.rollback();
+            }
+            keyOrderSupport.put(indexName, ret);
+        }
+        return ret;
     }
 
     @Override
@@ -263,7 +420,13 @@ public class Titan0Graph implements AtlasGraph<Titan0Vertex, Titan0Edge> {
     @Override
     public Object executeGremlinScript(String query, boolean isPath) throws ScriptException {
 
-        Object result = executeGremlinScript(query);
+        return executeGremlinScript(query, Collections.<String, Object>emptyMap(), isPath);
+    }
+
+    @Override
+    public Object executeGremlinScript(String query, Map<String, Object> bindings, boolean isPath) throws ScriptException {
+
+        Object result = executeGremlinScript(query, bindings);
         if (isPath) {
             List<Object> path = convertPathQueryResultToList(result);
 
@@ -277,16 +440,22 @@ public class Titan0Graph implements AtlasGraph<Titan0Vertex, Titan0Edge> {
         }
     }
 
-    private Object executeGremlinScript(String gremlinQuery) throws ScriptException {
+    private Object executeGremlinScript(String gremlinQuery, Map<String, Object> queryBindings) throws ScriptException {
 
-        ScriptEngineManager manager = new ScriptEngineManager();
-        ScriptEngine engine = manager.getEngineByName("gremlin-groovy");
-        Bindings bindings = engine.createBindings();
+        Map<String, Object> bindings = new HashMap<>();
+        if (queryBindings != null) {
+            bindings.putAll(queryBindings);
+        }
         bindings.put("g", getGraph());
-        //Do not cache script compilations due to memory implications
-        engine.getContext().setAttribute("#jsr223.groovy.engine.keep.globals", "phantom", ScriptContext.ENGINE_SCOPE);
-        Object result = engine.eval(gremlinQuery, bindings);
-        return result;
+        return scriptEnginePool.eval(gremlinQuery, bindings);
+    }
+
+    /**
+     * Gets the statistics of the gremlin script engine pool: script cache hits/misses,
+     * compilation count and time, etc.
+     */
+    public Map<String, Number> getScriptEngineStatistics() {
+        return scriptEnginePool.getStatistics();
     }
 
     @Override
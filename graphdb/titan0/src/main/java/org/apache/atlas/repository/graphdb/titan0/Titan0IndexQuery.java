@@ -18,32 +18,116 @@
 package org.apache.atlas.repository.graphdb.titan0;
 
 import java.util.Iterator;
+import java.util.List;
 
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
 import org.apache.atlas.repository.graphdb.AtlasIndexQuery;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
 import com.thinkaurelius.titan.core.TitanIndexQuery;
+import com.thinkaurelius.titan.core.schema.Parameter;
+import com.thinkaurelius.titan.diskstorage.solr.Solr5Index;
+import com.thinkaurelius.titan.util.encoding.LongEncoding;
 import com.tinkerpop.blueprints.Vertex;
 
 /**
  * Titan 0.5.4 implementation of AtlasIndexQuery.
+ *
+ * Results ordered by vertex are ordered by index document key, which Titan derives from the vertex id. Solr5Index
+ * orders and positions them in the index; other indexes return all results by score, which are then ordered and
+ * positioned here, reading all of them for every page. Results ordered by a property are ordered by Solr5Index
+ * where it can sort on the property, and likewise here otherwise.
  */
 public class Titan0IndexQuery implements AtlasIndexQuery<Titan0Vertex, Titan0Edge> {
 
+    private static final Ordering<TitanIndexQuery.Result<Vertex>> KEY_ORDER =
+            Ordering.natural().onResultOf(new Function<TitanIndexQuery.Result<Vertex>, String>() {
+                @Override
+                public String apply(TitanIndexQuery.Result<Vertex> result) {
+                    return getKey(result.getElement().getId());
+                }
+            });
+
     private Titan0Graph graph;
     private TitanIndexQuery wrappedIndexQuery;
+    private final String indexName;
+    private final boolean keyOrderSupported;
+    private int limit = -1;
+    private int offset = 0;
+    private String afterKey = null;
+    private String orderKey = null;
+    private AtlasGraphQuery.SortOrder sortOrder = null;
 
 
-    public Titan0IndexQuery(Titan0Graph graph, TitanIndexQuery query) {
+    /**
+     * @param indexName name of the index the query runs against
+     * @param keyOrderSupported whether the index orders results by document key and starts them after a given key
+     */
+    public Titan0IndexQuery(Titan0Graph graph, TitanIndexQuery query, String indexName, boolean keyOrderSupported) {
         wrappedIndexQuery = query;
         this.graph = graph;
+        this.indexName = indexName;
+        this.keyOrderSupported = keyOrderSupported;
+    }
+
+    @Override
+    public AtlasIndexQuery<Titan0Vertex, Titan0Edge> limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public AtlasIndexQuery<Titan0Vertex, Titan0Edge> offset(int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    @Override
+    public AtlasIndexQuery<Titan0Vertex, Titan0Edge> startAfter(String vertexId) {
+        afterKey = vertexId == null ? "" : getKey(Long.valueOf(vertexId));
+        return this;
+    }
+
+    @Override
+    public AtlasIndexQuery<Titan0Vertex, Titan0Edge> orderBy(String propertyKey, AtlasGraphQuery.SortOrder order) {
+        orderKey = propertyKey;
+        sortOrder = order;
+        return this;
     }
 
     @Override
     public Iterator<AtlasIndexQuery.Result<Titan0Vertex, Titan0Edge>> vertices() {
-        Iterator<TitanIndexQuery.Result<Vertex>> results = wrappedIndexQuery.vertices().iterator();
+        Preconditions.checkState(afterKey == null || orderKey == null,
+                "An index query can't be ordered by a property and started after a vertex");
+
+        String sortField = orderKey == null ? null : graph.getIndexSortField(indexName, orderKey);
+        Iterator<TitanIndexQuery.Result<Vertex>> results;
+        if (afterKey != null && !keyOrderSupported) {
+            results = getResultsInKeyOrder();
+        } else if (orderKey != null && sortField == null) {
+            results = getResultsInOrder(wrappedIndexQuery.vertices(), getPropertyOrder());
+        } else {
+            if (afterKey != null) {
+                wrappedIndexQuery.addParameter(Parameter.of(Solr5Index.KEY_ORDER_AFTER, afterKey));
+            }
+            if (sortField != null) {
+                String direction = sortOrder == AtlasGraphQuery.SortOrder.DESC ? "desc" : "asc";
+                wrappedIndexQuery.addParameter(Parameter.of(Solr5Index.ORDER_BY, sortField + " " + direction));
+            }
+            if (offset > 0) {
+                wrappedIndexQuery.offset(offset);
+            }
+            if (limit >= 0) {
+                wrappedIndexQuery.limit(limit);
+            }
+            results = wrappedIndexQuery.vertices().iterator();
+        }
 
         Function<TitanIndexQuery.Result<Vertex>, AtlasIndexQuery.Result<Titan0Vertex, Titan0Edge>> function =
                 new Function<TitanIndexQuery.Result<Vertex>, AtlasIndexQuery.Result<Titan0Vertex, Titan0Edge>>() {
@@ -56,6 +140,48 @@ public class Titan0IndexQuery implements AtlasIndexQuery<Titan0Vertex, Titan0Edg
         return Iterators.transform(results, function);
     }
 
+    /**
+     * Orders and positions all results of the query, keeping only those up to the limit in memory.
+     */
+    private Iterator<TitanIndexQuery.Result<Vertex>> getResultsInKeyOrder() {
+        Iterable<TitanIndexQuery.Result<Vertex>> results = Iterables.filter(wrappedIndexQuery.vertices(),
+                new Predicate<TitanIndexQuery.Result<Vertex>>() {
+                    @Override
+                    public boolean apply(TitanIndexQuery.Result<Vertex> result) {
+                        return getKey(result.getElement().getId()).compareTo(afterKey) > 0;
+                    }
+                });
+        return getResultsInOrder(results, KEY_ORDER);
+    }
+
+    /**
+     * Orders and positions the given results, keeping only those up to the limit in memory.
+     */
+    private Iterator<TitanIndexQuery.Result<Vertex>> getResultsInOrder(Iterable<TitanIndexQuery.Result<Vertex>> results,
+            Ordering<TitanIndexQuery.Result<Vertex>> ordering) {
+        List<TitanIndexQuery.Result<Vertex>> ret = limit >= 0 ? ordering.leastOf(results, (int) Math.min(
+                (long) offset + limit, Integer.MAX_VALUE)) : ordering.sortedCopy(results);
+        return ret.subList(Math.min(offset, ret.size()), ret.size()).iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Ordering<TitanIndexQuery.Result<Vertex>> getPropertyOrder() {
+        Ordering<Comparable> valueOrder = Ordering.natural();
+        if (sortOrder == AtlasGraphQuery.SortOrder.DESC) {
+            valueOrder = valueOrder.reverse();
+        }
+        return valueOrder.nullsLast().onResultOf(new Function<TitanIndexQuery.Result<Vertex>, Comparable>() {
+            @Override
+            public Comparable apply(TitanIndexQuery.Result<Vertex> result) {
+                return result.getElement().getProperty(orderKey);
+            }
+        });
+    }
+
+    private static String getKey(Object vertexId) {
+        return LongEncoding.encode((Long) vertexId);
+    }
+
     private final class ResultImpl implements AtlasIndexQuery.Result<Titan0Vertex, Titan0Edge> {
         private TitanIndexQuery.Result<Vertex> wrappedResult;
 
@@ -22,6 +22,11 @@ import org.apache.atlas.repository.graphdb.AtlasEdgeDirection;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
 import org.apache.atlas.repository.graphdb.AtlasVertexQuery;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.thinkaurelius.titan.core.TitanVertexQuery;
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.VertexQuery;
@@ -33,6 +38,8 @@ public class Titan0VertexQuery implements AtlasVertexQuery<Titan0Vertex, Titan0E
 
     private Titan0Graph graph;
     private VertexQuery vertexQuery;
+    // adjacent vertex to filter on, when the query can't restrict to it
+    private Vertex adjacentVertex;
 
     public Titan0VertexQuery(Titan0Graph graph, VertexQuery vertexQuery) {
         this.vertexQuery = vertexQuery;
@@ -46,20 +53,61 @@ public class Titan0VertexQuery implements AtlasVertexQuery<Titan0Vertex, Titan0E
 
     }
 
+    @Override
+    public AtlasVertexQuery<Titan0Vertex, Titan0Edge> label(String label) {
+        vertexQuery.labels(label);
+        return this;
+    }
+
+    @Override
+    public AtlasVertexQuery<Titan0Vertex, Titan0Edge> adjacent(AtlasVertex<Titan0Vertex, Titan0Edge> vertex) {
+        Vertex wrapped = vertex.getV().getWrappedElement();
+        if (vertexQuery instanceof TitanVertexQuery && wrapped instanceof TitanVertex) {
+            ((TitanVertexQuery) vertexQuery).adjacent((TitanVertex) wrapped);
+        } else {
+            adjacentVertex = wrapped;
+        }
+        return this;
+    }
+
     @Override
     public Iterable<AtlasVertex<Titan0Vertex, Titan0Edge>> vertices() {
+        if (adjacentVertex != null) {
+            final Vertex adjacent = adjacentVertex;
+            Iterable<Vertex> vertices = Iterables.filter(vertexQuery.vertices(), new Predicate<Vertex>() {
+                @Override
+                public boolean apply(Vertex input) {
+                    return adjacent.equals(input);
+                }
+            });
+            return graph.wrapVertices(vertices);
+        }
         Iterable<Vertex> vertices = vertexQuery.vertices();
         return graph.wrapVertices(vertices);
     }
 
     @Override
     public Iterable<AtlasEdge<Titan0Vertex, Titan0Edge>> edges() {
+        if (adjacentVertex != null) {
+            final Vertex adjacent = adjacentVertex;
+            Iterable<Edge> edges = Iterables.filter(vertexQuery.edges(), new Predicate<Edge>() {
+                @Override
+                public boolean apply(Edge input) {
+                    return adjacent.equals(input.getVertex(Direction.IN))
+                            || adjacent.equals(input.getVertex(Direction.OUT));
+                }
+            });
+            return graph.wrapEdges(edges);
+        }
         Iterable<Edge> edges = vertexQuery.edges();
         return graph.wrapEdges(edges);
     }
 
     @Override
     public long count() {
+        if (adjacentVertex != null) {
+            return Iterables.size(edges());
+        }
         return vertexQuery.count();
     }
 }
@@ -20,6 +20,7 @@ package org.apache.atlas.repository.graphdb.titan0.query;
 import java.util.Collection;
 
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery.ComparisionOperator;
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery.SortOrder;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
 import org.apache.atlas.repository.graphdb.titan.query.NativeTitanGraphQuery;
 import org.apache.atlas.repository.graphdb.titan0.Titan0GraphDatabase;
@@ -27,6 +28,7 @@ import org.apache.atlas.repository.graphdb.titan0.Titan0Edge;
 import org.apache.atlas.repository.graphdb.titan0.Titan0Graph;
 import org.apache.atlas.repository.graphdb.titan0.Titan0Vertex;
 
+import com.thinkaurelius.titan.core.Order;
 import com.thinkaurelius.titan.core.TitanGraphQuery;
 import com.thinkaurelius.titan.core.attribute.Contain;
 import com.thinkaurelius.titan.graphdb.query.TitanPredicate;
@@ -69,6 +71,16 @@ public class NativeTitan0GraphQuery implements NativeTitanGraphQuery<Titan0Verte
         query.has(propertyName, pred, value);
     }
 
+    @Override
+    public void limit(int limit) {
+        query.limit(limit);
+    }
+
+    @Override
+    public void orderBy(String propertyName, SortOrder order) {
+        query.orderBy(propertyName, order == SortOrder.DESC ? Order.DESC : Order.ASC);
+    }
+
     private Compare getGremlinPredicate(ComparisionOperator op) {
         switch (op) {
         case EQUAL:
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thinkaurelius.titan.diskstorage.solr;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.thinkaurelius.titan.core.PropertyKey;
+import com.thinkaurelius.titan.core.TitanFactory;
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanIndexQuery;
+import com.thinkaurelius.titan.core.attribute.Text;
+import com.thinkaurelius.titan.core.schema.Mapping;
+import com.thinkaurelius.titan.core.schema.Parameter;
+import com.thinkaurelius.titan.core.schema.TitanManagement;
+import com.thinkaurelius.titan.diskstorage.BackendException;
+import com.thinkaurelius.titan.diskstorage.configuration.Configuration;
+import com.thinkaurelius.titan.util.encoding.LongEncoding;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Runs queries of a Titan graph against Solr5Index, with a mock Solr client which serves the documents of the
+ * vertices of the graph, so that the queries go through Titan's query planning as they do against a Solr server.
+ */
+public class Solr5IndexGraphQueryTest {
+
+    private static final String INDEX = "vertex_index";
+    private static final int    PAGE_SIZE = 2;
+
+    // the client of the index Titan creates, which can't be handed to it
+    private static SolrClient solrClient;
+
+    public static class MockSolr5Index extends Solr5Index {
+        public MockSolr5Index(Configuration config) throws BackendException {
+            super(config, solrClient);
+        }
+    }
+
+    private TitanGraph         graph;
+    private List<Vertex>       vertices;
+    private List<String>       keys;
+    private List<SolrParams>   requests;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        solrClient = mock(SolrClient.class);
+        graph = TitanFactory.build()
+                .set("storage.backend", "inmemory")
+                .set("index.search.backend", MockSolr5Index.class.getName())
+                // through the options, so that Solr5Index registers them before they are set
+                .set("index.search.solr." + Solr5Index.SOLR_MODE.getName(), "http")
+                .set("index.search.solr." + Solr5Index.CURSOR_PAGE_SIZE.getName(), PAGE_SIZE)
+                .open();
+
+        TitanManagement management = graph.getManagementSystem();
+        PropertyKey name = management.makePropertyKey("name").dataType(String.class).make();
+        management.buildIndex(INDEX, Vertex.class).addKey(name, Mapping.STRING.getParameter()).buildMixedIndex("search");
+        management.commit();
+
+        vertices = new ArrayList<>();
+        keys     = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Vertex vertex = graph.addVertex(null);
+            vertex.setProperty("name", "v" + i);
+            vertices.add(vertex);
+        }
+        graph.commit();
+        for (Vertex vertex : vertices) {
+            keys.add(LongEncoding.encode((Long) vertex.getId()));
+        }
+
+        requests = new ArrayList<>();
+        when(solrClient.query(eq(INDEX), any(SolrParams.class))).thenAnswer(new Answer<QueryResponse>() {
+            @Override
+            public QueryResponse answer(InvocationOnMock invocation) throws Throwable {
+                // a copy, as the cursor changes the parameters of the request for the next page
+                SolrParams params = new ModifiableSolrParams((SolrParams) invocation.getArguments()[1]);
+                requests.add(params);
+                return serve(params);
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        graph.shutdown();
+    }
+
+    @Test
+    public void testGraphQueryIsPagedThroughWithCursor() {
+        Set<Vertex> result = new HashSet<>();
+        for (Vertex vertex : graph.query().has("name", Text.PREFIX, "v").vertices()) {
+            result.add(vertex);
+        }
+
+        assertEquals(result, new HashSet<>(vertices));
+        // Titan limits the query to more than a page, which is read a page at a time rather than in one request
+        assertEquals(requests.size(), 4);
+        for (SolrParams request : requests) {
+            assertEquals(request.get(CommonParams.ROWS), String.valueOf(PAGE_SIZE));
+        }
+        assertEquals(requests.get(0).get(CursorMarkParams.CURSOR_MARK_PARAM), CursorMarkParams.CURSOR_MARK_START);
+    }
+
+    @Test
+    public void testGraphQueryWithinPageIsSingleRequest() {
+        // Titan asks the index for twice the limit of the query, which is a page here
+        Iterator<Vertex> result = graph.query().has("name", Text.PREFIX, "v").limit(PAGE_SIZE / 2).vertices().iterator();
+
+        assertEquals(result.next(), vertices.get(0));
+        assertEquals(requests.size(), 1);
+        assertNull(requests.get(0).get(CursorMarkParams.CURSOR_MARK_PARAM));
+        assertEquals(requests.get(0).get(CommonParams.ROWS), String.valueOf(PAGE_SIZE));
+    }
+
+    @Test
+    public void testIndexQueryHitsAreReadAsTheyAreIterated() {
+        Iterator<TitanIndexQuery.Result<Vertex>> result = graph.indexQuery(INDEX, "v.\"name\":(v*)").vertices().iterator();
+
+        assertEquals(result.next().getElement(), vertices.get(0));
+        assertEquals(requests.size(), 1);
+
+        List<Vertex> rest = new ArrayList<>();
+        while (result.hasNext()) {
+            rest.add(result.next().getElement());
+        }
+
+        assertEquals(rest, vertices.subList(1, vertices.size()));
+        assertEquals(requests.size(), 4);
+    }
+
+    @Test
+    public void testIndexQueryInKeyOrderStartsAfterKey() {
+        // wherever a page starts, it is read with the same request but for the key it starts after
+        for (String key : keys) {
+            graph.indexQuery(INDEX, "v.\"name\":(v*)").addParameter(Parameter.of(Solr5Index.KEY_ORDER_AFTER, key))
+                    .limit(PAGE_SIZE).vertices().iterator().hasNext();
+
+            SolrParams request = requests.get(requests.size() - 1);
+            assertEquals(request.get(CommonParams.SORT), "id asc");
+            assertEquals(request.getParams(CommonParams.FQ), new String[] { "id:{" + key + " TO *]" });
+            assertEquals(request.getInt(CommonParams.START, 0), 0);
+            assertEquals(request.get(CommonParams.ROWS), String.valueOf(PAGE_SIZE));
+            assertNull(request.get(CursorMarkParams.CURSOR_MARK_PARAM));
+        }
+        assertEquals(requests.size(), keys.size());
+    }
+
+    @Test
+    public void testIndexQueryInKeyOrderFromFirstKey() {
+        Iterator<TitanIndexQuery.Result<Vertex>> result = graph.indexQuery(INDEX, "v.\"name\":(v*)")
+                .addParameter(Parameter.of(Solr5Index.KEY_ORDER_AFTER, "")).vertices().iterator();
+
+        assertEquals(result.next().getElement(), vertices.get(0));
+        assertEquals(requests.get(0).get(CommonParams.SORT), "id asc");
+        assertNull(requests.get(0).getParams(CommonParams.FQ));
+    }
+
+    @Test
+    public void testIndexQueryOrderedByField() {
+        graph.indexQuery(INDEX, "v.\"name\":(v*)").addParameter(Parameter.of(Solr5Index.ORDER_BY, "name desc"))
+                .offset(1).limit(PAGE_SIZE).vertices().iterator().hasNext();
+
+        SolrParams request = requests.get(0);
+        // ties are broken by key, so that the order is the same on every page
+        assertEquals(request.get(CommonParams.SORT), "name desc,id asc");
+        assertEquals(request.get(CommonParams.START), "1");
+        assertEquals(request.get(CommonParams.ROWS), String.valueOf(PAGE_SIZE));
+        assertNull(request.getParams(CommonParams.FQ));
+    }
+
+    /**
+     * Serves the documents of the vertices in the order they were added, either from the start and rows of the
+     * request, or by cursor mark, with the offset of a page as its cursor mark.
+     */
+    private QueryResponse serve(SolrParams params) {
+        String cursorMark = params.get(CursorMarkParams.CURSOR_MARK_PARAM);
+        int    rows       = params.getInt(CommonParams.ROWS);
+        int    start      = cursorMark == null ? params.getInt(CommonParams.START, 0)
+                : cursorMark.equals(CursorMarkParams.CURSOR_MARK_START) ? 0 : Integer.parseInt(cursorMark);
+        int    end        = Math.min(start + rows, keys.size());
+
+        SolrDocumentList hits = new SolrDocumentList();
+        for (String key : keys.subList(Math.min(start, end), end)) {
+            SolrDocument hit = new SolrDocument();
+            hit.setField("id", key);
+            hit.setField("score", 1.0f);
+            hits.add(hit);
+        }
+
+        QueryResponse ret = mock(QueryResponse.class);
+        when(ret.getResults()).thenReturn(hits);
+        when(ret.getNextCursorMark()).thenReturn(cursorMark == null ? null : String.valueOf(end));
+        return ret;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thinkaurelius.titan.diskstorage.solr;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.thinkaurelius.titan.core.attribute.Cmp;
+import com.thinkaurelius.titan.core.schema.Parameter;
+import com.thinkaurelius.titan.diskstorage.BackendException;
+import com.thinkaurelius.titan.diskstorage.configuration.Configuration;
+import com.thinkaurelius.titan.diskstorage.indexing.IndexQuery;
+import com.thinkaurelius.titan.diskstorage.indexing.KeyInformation;
+import com.thinkaurelius.titan.diskstorage.indexing.RawQuery;
+import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
+import com.thinkaurelius.titan.graphdb.query.condition.PredicateCondition;
+
+public class Solr5IndexTest {
+
+    private static final String COLLECTION = "vertex_index";
+
+    @Mock
+    Configuration config;
+
+    @Mock
+    SolrClient solrClient;
+
+    @Mock
+    KeyInformation.IndexRetriever informations;
+
+    // the parameters of the requests sent to Solr, as they were when sent
+    private List<Map<String, String>> requests;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(config.get(Solr5Index.SOLR_MODE)).thenReturn("cloud");
+        when(config.get(Solr5Index.DYNAMIC_FIELDS)).thenReturn(true);
+        when(config.get(Solr5Index.TTL_FIELD)).thenReturn("ttl");
+        when(config.get(Solr5Index.WAIT_SEARCHER)).thenReturn(false);
+        when(config.get(GraphDatabaseConfiguration.INDEX_MAX_RESULT_SET_SIZE)).thenReturn(100000);
+        when(config.get(Solr5Index.CURSOR_PAGE_SIZE)).thenReturn(2);
+        KeyInformation.StoreRetriever storeInformations = mock(KeyInformation.StoreRetriever.class);
+        when(informations.get(COLLECTION)).thenReturn(storeInformations);
+
+        requests = new ArrayList<>();
+
+        // five hits, served two per page by cursor mark
+        final Map<String, QueryResponse> pages = new HashMap<>();
+        pages.put(CursorMarkParams.CURSOR_MARK_START, response("c1", "a", "b"));
+        pages.put("c1", response("c2", "c", "d"));
+        pages.put("c2", response("c3", "e"));
+        pages.put("c3", response("c3"));
+        pages.put(null, response(null, "a", "b"));
+
+        when(solrClient.query(eq(COLLECTION), any(SolrParams.class))).thenAnswer(new Answer<QueryResponse>() {
+            @Override
+            public QueryResponse answer(InvocationOnMock invocation) throws Throwable {
+                SolrParams params = (SolrParams) invocation.getArguments()[1];
+                Map<String, String> request = new HashMap<>();
+                for (String name : Arrays.asList(CursorMarkParams.CURSOR_MARK_PARAM, CommonParams.ROWS,
+                        CommonParams.SORT, CommonParams.FL)) {
+                    request.put(name, params.get(name));
+                }
+                requests.add(request);
+                return pages.get(params.get(CursorMarkParams.CURSOR_MARK_PARAM));
+            }
+        });
+    }
+
+    @Test
+    public void testQueryWithoutLimitPagesThroughAllHits() throws BackendException {
+        Solr5Index index = new Solr5Index(config, solrClient);
+
+        List<String> result = index.query(new IndexQuery(COLLECTION, PredicateCondition.of("age", Cmp.EQUAL, 5)),
+                informations, null);
+
+        assertEquals(result, Arrays.asList("a", "b", "c", "d", "e"));
+        assertEquals(requests.size(), 4);
+        assertEquals(requests.get(0).get(CursorMarkParams.CURSOR_MARK_PARAM), CursorMarkParams.CURSOR_MARK_START);
+        assertEquals(requests.get(1).get(CursorMarkParams.CURSOR_MARK_PARAM), "c1");
+        assertEquals(requests.get(2).get(CursorMarkParams.CURSOR_MARK_PARAM), "c2");
+        assertEquals(requests.get(3).get(CursorMarkParams.CURSOR_MARK_PARAM), "c3");
+        for (Map<String, String> request : requests) {
+            assertEquals(request.get(CommonParams.ROWS), "2");
+            assertEquals(request.get(CommonParams.SORT), "id asc");
+            assertEquals(request.get(CommonParams.FL), "id");
+        }
+    }
+
+    @Test
+    public void testQueryWithLimitBeyondPageIsPagedUpToLimit() throws BackendException {
+        Solr5Index index = new Solr5Index(config, solrClient);
+
+        List<String> result = index.query(new IndexQuery(COLLECTION, PredicateCondition.of("age", Cmp.EQUAL, 5), 3),
+                informations, null);
+
+        assertEquals(result, Arrays.asList("a", "b", "c"));
+        // no pages are fetched beyond the one holding the last hit within the limit
+        assertEquals(requests.size(), 2);
+        assertEquals(requests.get(1).get(CursorMarkParams.CURSOR_MARK_PARAM), "c1");
+        assertEquals(requests.get(1).get(CommonParams.ROWS), "2");
+    }
+
+    @Test
+    public void testQueryWithLimitIsSingleRequest() throws BackendException {
+        Solr5Index index = new Solr5Index(config, solrClient);
+
+        List<String> result = index.query(new IndexQuery(COLLECTION, PredicateCondition.of("age", Cmp.EQUAL, 5), 2),
+                informations, null);
+
+        assertEquals(result, Arrays.asList("a", "b"));
+        assertEquals(requests.size(), 1);
+        assertNull(requests.get(0).get(CursorMarkParams.CURSOR_MARK_PARAM));
+        assertEquals(requests.get(0).get(CommonParams.ROWS), "2");
+    }
+
+    @Test
+    public void testRawQueryHitsAreReadAsTheyAreIterated() throws BackendException {
+        Solr5Index index = new Solr5Index(config, solrClient);
+
+        Iterator<RawQuery.Result<String>> result = index.query(new RawQuery(COLLECTION, "v.name:(a)", new Parameter[0]),
+                informations, null).iterator();
+
+        assertEquals(result.next().getResult(), "a");
+        assertEquals(result.next().getResult(), "b");
+        assertEquals(requests.size(), 1);
+        assertEquals(result.next().getResult(), "c");
+        assertEquals(requests.size(), 2);
+        assertEquals(requests.get(0).get(CommonParams.SORT), "score desc,id asc");
+        assertEquals(requests.get(0).get(CommonParams.FL), "id,score");
+    }
+
+    @Test
+    public void testRawQueryWithOffsetAndLimit() throws BackendException {
+        Solr5Index index = new Solr5Index(config, solrClient);
+
+        List<String> result = new ArrayList<>();
+        for (RawQuery.Result<String> hit : index.query(new RawQuery(COLLECTION, "v.name:(a)", new Parameter[0])
+                .setOffset(1).setLimit(3), informations, null)) {
+            result.add(hit.getResult());
+        }
+
+        assertEquals(result, Arrays.asList("b", "c", "d"));
+        assertEquals(requests.size(), 2);
+    }
+
+    private static QueryResponse response(String nextCursorMark, String... keys) {
+        SolrDocumentList hits = new SolrDocumentList();
+        for (String key : keys) {
+            SolrDocument hit = new SolrDocument();
+            hit.setField("id", key);
+            hit.setField("score", 1.0f);
+            hits.add(hit);
+        }
+
+        QueryResponse ret = mock(QueryResponse.class);
+        when(ret.getResults()).thenReturn(hits);
+        when(ret.getNextCursorMark()).thenReturn(nextCursorMark);
+        return ret;
+    }
+}
@@ -26,12 +26,15 @@ import static org.testng.AssertJUnit.assertTrue;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery.ComparisionOperator;
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery.SortOrder;
+import org.apache.atlas.repository.graphdb.AtlasIndexQuery;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
 import org.testng.annotations.Test;
 
@@ -401,6 +404,71 @@ public class GraphQueryTest extends AbstractGraphDatabaseTest {
 
     }
 
+    @Test
+    public  void testOrderedPagesQuery() throws AtlasException {
+        Titan0Graph graph = getTitan0Graph();
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v1 = createVertex(graph);
+        v1.setProperty("name", "Fred");
+        v1.setProperty("typeName", "PagedPerson");
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v2 = createVertex(graph);
+        v2.setProperty("name", "George");
+        v2.setProperty("typeName", "PagedPerson");
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v3 = createVertex(graph);
+        v3.setProperty("name", "Jane");
+        v3.setProperty("typeName", "PagedPerson");
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v4 = createVertex(graph);
+        v4.setProperty("name", "Bob");
+        v4.setProperty("typeName", "PagedManager");
+
+        graph.commit();
+        pause(); //let the index update
+
+        AtlasGraphQuery q = getGraphQuery();
+        q.has("typeName", "PagedPerson").orderBy("name", SortOrder.DESC).offset(1).limit(1);
+        assertEquals(toList(q.vertices()), Arrays.asList(v2));
+
+        //the union of the child queries is ordered and paged as a whole
+        AtlasGraphQuery orQuery = getGraphQuery();
+        AtlasGraphQuery inner1 = orQuery.createChildQuery().has("typeName", "PagedPerson");
+        AtlasGraphQuery inner2 = orQuery.createChildQuery().has("typeName", "PagedManager");
+        orQuery.or(toList(inner1, inner2)).orderBy("name", SortOrder.ASC).offset(1).limit(2);
+        assertEquals(toList(orQuery.vertices()), Arrays.asList(v1, v2));
+    }
+
+    @Test
+    public void testOrderedIndexQuery() throws AtlasException {
+        Titan0Graph graph = getTitan0Graph();
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v1 = createVertex(graph);
+        v1.setProperty("name", "Fred");
+        v1.setProperty("typeName", "IndexOrderedPerson");
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v2 = createVertex(graph);
+        v2.setProperty("name", "George");
+        v2.setProperty("typeName", "IndexOrderedPerson");
+
+        AtlasVertex<Titan0Vertex, Titan0Edge> v3 = createVertex(graph);
+        v3.setProperty("name", "Jane");
+        v3.setProperty("typeName", "IndexOrderedPerson");
+
+        graph.commit();
+        pause(); //let the index update
+
+        AtlasIndexQuery<Titan0Vertex, Titan0Edge> q =
+                graph.indexQuery("backing", "v.\"typeName\":(IndexOrderedPerson)");
+        q.orderBy("name", SortOrder.DESC).offset(1).limit(1);
+        List<AtlasVertex<Titan0Vertex, Titan0Edge>> result = new ArrayList<>();
+        Iterator<AtlasIndexQuery.Result<Titan0Vertex, Titan0Edge>> results = q.vertices();
+        while (results.hasNext()) {
+            result.add(results.next().getVertex());
+        }
+        assertEquals(result, Arrays.asList(v2));
+    }
+
     private static <T> List<T> toList(Iterable<T> itr) {
         List<T> result = new ArrayList<>();
         for(T object : itr) {
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.graphdb.titan0;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for GremlinScriptEnginePool.
+ */
+public class GremlinScriptEnginePoolTest {
+
+    @Test
+    public void testScriptsDifferingInLiteralsShareCompiledScript() throws Exception {
+        GremlinScriptEnginePool pool = createPool(1, 10, 100);
+
+        assertEquals(pool.eval("'abc'.size() + x", Collections.<String, Object>singletonMap("x", 1)), 4);
+        assertEquals(pool.eval("'de'.size() + x", Collections.<String, Object>singletonMap("x", 1)), 3);
+        assertEquals(pool.eval("'de'.size() * x", Collections.<String, Object>singletonMap("x", 2)), 4);
+
+        Map<String, Number> statistics = pool.getStatistics();
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_CACHE_MISSES), 2L);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_CACHE_HITS), 1L);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_COMPILATIONS), 2L);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_CACHE_SIZE), 2);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_EXECUTIONS), 3L);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedScriptIsEvicted() throws Exception {
+        GremlinScriptEnginePool pool = createPool(1, 2, 100);
+
+        pool.eval("1 + 1", null);
+        pool.eval("2 + 2", null);
+        pool.eval("1 + 1", null);
+        pool.eval("3 + 3", null); // evicts 2 + 2
+        pool.eval("1 + 1", null);
+        assertEquals(pool.eval("2 + 2", null), 4);
+
+        Map<String, Number> statistics = pool.getStatistics();
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_CACHE_EVICTIONS), 2L);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_CACHE_SIZE), 2);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_CACHE_HITS), 2L);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_COMPILATIONS), 4L);
+    }
+
+    @Test
+    public void testEngineIsRecycledAfterMaxCompilations() throws Exception {
+        GremlinScriptEnginePool pool = createPool(1, 10, 2);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(pool.eval(i + " + 1", null), i + 1);
+        }
+
+        // scripts compiled by a recycled engine still run
+        assertEquals(pool.eval("0 + 1", null), 1);
+
+        Map<String, Number> statistics = pool.getStatistics();
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_COMPILATIONS), 5L);
+        assertEquals(statistics.get(GremlinScriptEnginePool.METRIC_ENGINES_RECYCLED), 2L);
+    }
+
+    @Test
+    public void testConcurrentEval() throws Exception {
+        final GremlinScriptEnginePool pool = createPool(2, 5, 3);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 50; i++) {
+                            String value = "v" + thread + "-" + i;
+                            // 10 distinct scripts, so that scripts are evicted and engines recycled meanwhile
+                            String script = "x + '" + value + "' + " + (i % 10);
+                            Object result = pool.eval(script, Collections.<String, Object>singletonMap("x", thread));
+                            if (!(thread + value + (i % 10)).equals(result)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+
+            for (Future<Boolean> result : results) {
+                assertEquals(result.get(), Boolean.TRUE);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(pool.getStatistics().get(GremlinScriptEnginePool.METRIC_EXECUTIONS), 400L);
+    }
+
+    private GremlinScriptEnginePool createPool(int poolSize, int cacheSize, int maxCompilationsPerEngine) {
+        Configuration configuration = new PropertiesConfiguration();
+        configuration.setProperty(GremlinScriptEnginePool.POOL_SIZE, poolSize);
+        configuration.setProperty(GremlinScriptEnginePool.SCRIPT_CACHE_SIZE, cacheSize);
+        configuration.setProperty(GremlinScriptEnginePool.MAX_COMPILATIONS_PER_ENGINE, maxCompilationsPerEngine);
+        return new GremlinScriptEnginePool(configuration);
+    }
+}
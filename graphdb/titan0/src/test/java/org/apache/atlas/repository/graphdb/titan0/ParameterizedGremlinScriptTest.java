@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.graphdb.titan0;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests for ParameterizedGremlinScript.
+ */
+public class ParameterizedGremlinScriptTest {
+
+    @Test
+    public void testLiteralsAreExtracted() {
+        ParameterizedGremlinScript script1 = ParameterizedGremlinScript.parse("g.V().has('__guid', 'abc-123').toList()");
+        ParameterizedGremlinScript script2 = ParameterizedGremlinScript.parse("g.V().has('__guid', \"def-456\").toList()");
+
+        assertEquals(script1.getText(), script2.getText());
+        assertEquals(script1.getParameters().get(ParameterizedGremlinScript.PARAMETER_PREFIX + "1"), "abc-123");
+        assertEquals(script2.getParameters().get(ParameterizedGremlinScript.PARAMETER_PREFIX + "1"), "def-456");
+    }
+
+    @Test
+    public void testEscapedLiterals() {
+        ParameterizedGremlinScript script = ParameterizedGremlinScript.parse("g.V().has('name', 'it\\'s').toList()");
+
+        assertEquals(script.getParameters().get(ParameterizedGremlinScript.PARAMETER_PREFIX + "1"), "it's");
+    }
+
+    @Test
+    public void testPropertyNamesAndMapKeysAreNotExtracted() {
+        String query = "g.V().filter({it.'__type.category'.name() != 'TRAIT'}).transform{['key': it.'name']}.toList()";
+
+        ParameterizedGremlinScript script = ParameterizedGremlinScript.parse(query);
+
+        assertEquals(script.getParameters().size(), 1);
+        assertTrue(script.getText().contains("it.'__type.category'"));
+        assertTrue(script.getText().contains("'key':"));
+        assertTrue(script.getText().contains("it.'name'"));
+    }
+
+    @Test
+    public void testInterpolatedAndMultiLineStringsAreNotExtracted() {
+        ParameterizedGremlinScript script = ParameterizedGremlinScript.parse("def x = \"${y}\"; def z = '''a\nb'''");
+
+        assertEquals(script.getParameters().size(), 0);
+        assertEquals(script.getText(), "def x = \"${y}\"; def z = '''a\nb'''");
+    }
+
+    @Test
+    public void testWhitespaceIsKept() {
+        String query = "g.V().has('name',  'a').toList()\n  .size()";
+
+        assertEquals(ParameterizedGremlinScript.parse(query).getText(), "g.V().has(" + ParameterizedGremlinScript.PARAMETER_PREFIX
+                + "0,  " + ParameterizedGremlinScript.PARAMETER_PREFIX + "1).toList()\n  .size()");
+    }
+
+    @Test
+    public void testSlashyStringsAreNotChanged() {
+        String query = "g.V().filter{it.name ==~ /a  'b'/ && it.desc =~ $/c \"d\"/$}.toList()";
+
+        ParameterizedGremlinScript script = ParameterizedGremlinScript.parse(query);
+
+        assertEquals(script.getParameters().size(), 0);
+        assertEquals(script.getText(), query);
+    }
+
+    @Test
+    public void testDivisionIsNotSlashyString() {
+        ParameterizedGremlinScript script = ParameterizedGremlinScript.parse("x = a / 2 + b / 'c'.size()");
+
+        assertEquals(script.getParameters().size(), 1);
+        assertEquals(script.getParameters().get(ParameterizedGremlinScript.PARAMETER_PREFIX + "0"), "c");
+    }
+
+    @Test
+    public void testCommentsAreNotChanged() {
+        String query = "// it's a comment\ng.V().toList() /* 'x' */";
+
+        ParameterizedGremlinScript script = ParameterizedGremlinScript.parse(query);
+
+        assertEquals(script.getParameters().size(), 0);
+        assertEquals(script.getText(), query);
+    }
+}
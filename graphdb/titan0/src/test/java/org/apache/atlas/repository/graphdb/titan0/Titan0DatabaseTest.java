@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.repository.Constants;
@@ -230,6 +231,41 @@ public class Titan0DatabaseTest {
         assertEdgesMatch(v2.getEdges(AtlasEdgeDirection.BOTH, "delivers"));
     }
 
+    @Test
+    public <V, E> void testGetEdgesOfVertices() {
+
+        AtlasGraph<V, E> graph = getGraph();
+        AtlasVertex<V, E> v1 = graph.addVertex();
+        AtlasVertex<V, E> v2 = graph.addVertex();
+        AtlasVertex<V, E> v3 = graph.addVertex();
+        AtlasVertex<V, E> v4 = graph.addVertex();
+
+        AtlasEdge<V, E> knows = graph.addEdge(v2, v1, "knows");
+        AtlasEdge<V, E> eats = graph.addEdge(v3, v1, "eats");
+        AtlasEdge<V, E> drives = graph.addEdge(v3, v2, "drives");
+        AtlasEdge<V, E> sleeps = graph.addEdge(v2, v3, "sleeps");
+
+        Map<AtlasVertex<V, E>, Iterable<AtlasEdge<V, E>>> outEdges =
+                graph.getEdges(Arrays.asList(v1, v2, v3, v4), AtlasEdgeDirection.OUT);
+        assertEquals(outEdges.size(), 4);
+        assertEdgesMatch(outEdges.get(v1));
+        assertEdgesMatch(outEdges.get(v2), knows, sleeps);
+        assertEdgesMatch(outEdges.get(v3), eats, drives);
+        assertEdgesMatch(outEdges.get(v4));
+
+        Map<AtlasVertex<V, E>, Iterable<AtlasEdge<V, E>>> inEdges =
+                graph.getEdges(Arrays.asList(v1, v2), AtlasEdgeDirection.IN);
+        assertEquals(inEdges.size(), 2);
+        assertEdgesMatch(inEdges.get(v1), knows, eats);
+        assertEdgesMatch(inEdges.get(v2), drives);
+
+        Map<AtlasVertex<V, E>, Iterable<AtlasEdge<V, E>>> bothEdges =
+                graph.getEdges(Collections.singletonList(v2), AtlasEdgeDirection.BOTH);
+        assertEdgesMatch(bothEdges.get(v2), knows, sleeps, drives);
+
+        assertTrue(graph.getEdges(Collections.<AtlasVertex<V, E>>emptyList(), AtlasEdgeDirection.OUT).isEmpty());
+    }
+
     private <V, E> void assertEdgesMatch(Iterable<AtlasEdge<V, E>> edgesIt, AtlasEdge<V, E>... expected) {
         List<AtlasEdge<V, E>> edges = toList(edgesIt);
         assertEquals(expected.length, edges.size());
@@ -238,6 +274,25 @@ public class Titan0DatabaseTest {
         }
     }
 
+    @Test
+    public <V, E> void testGremlinScriptWithBindings() throws Exception {
+        AtlasGraph<V, E> graph = getGraph();
+
+        AtlasVertex<V, E> vertex = graph.addVertex();
+        vertex.setProperty("bindingsProperty", "value1");
+        graph.addVertex().setProperty("bindingsProperty", "value2");
+        graph.commit();
+
+        String script = "g.V().has('bindingsProperty', p1).count()";
+        Object count1 = graph.executeGremlinScript(script, Collections.<String, Object>singletonMap("p1", "value1"),
+                false);
+        Object count3 = graph.executeGremlinScript(script, Collections.<String, Object>singletonMap("p1", "value3"),
+                false);
+
+        assertEquals(((Number) count1).longValue(), 1L);
+        assertEquals(((Number) count3).longValue(), 0L);
+    }
+
     @Test
     public <V, E> void testMultiplictyManyPropertySupport() {
 
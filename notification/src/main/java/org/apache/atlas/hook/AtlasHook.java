@@ -19,26 +19,34 @@
 package org.apache.atlas.hook;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.notification.AbstractNotification;
 import org.apache.atlas.notification.NotificationException;
 import org.apache.atlas.notification.NotificationInterface;
 import org.apache.atlas.notification.NotificationModule;
 import org.apache.atlas.notification.hook.HookNotification;
 import org.apache.atlas.typesystem.Referenceable;
-import org.apache.atlas.typesystem.json.InstanceSerialization;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.security.UserGroupInformation;
-import org.codehaus.jettison.json.JSONArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -63,6 +71,25 @@ public abstract class AtlasHook {
     public static final String ATLAS_NOTIFICATION_LOG_FAILED_MESSAGES_ENABLED_KEY =
             "atlas.notification.log.failed.messages";
 
+    public static final String ATLAS_NOTIFICATION_ASYNCHRONOUS = "atlas.notification.hook.asynchronous";
+    public static final String ATLAS_NOTIFICATION_ASYNCHRONOUS_QUEUE_SIZE =
+            "atlas.notification.hook.asynchronous.queue.size";
+    public static final String ATLAS_NOTIFICATION_ASYNCHRONOUS_SHUTDOWN_WAIT_TIME_MS =
+            "atlas.notification.hook.asynchronous.shutdown.wait.time.ms";
+
+    public static final String ATLAS_NOTIFICATION_SPILL_ENABLED = "atlas.notification.hook.spill.enabled";
+    public static final String ATLAS_NOTIFICATION_SPILL_DIR = "atlas.notification.hook.spill.dir";
+    public static final String ATLAS_NOTIFICATION_SPILL_MAX_EVENTS = "atlas.notification.hook.spill.max.events";
+    public static final String ATLAS_NOTIFICATION_SPILL_REPLAY_INTERVAL_MS =
+            "atlas.notification.hook.spill.replay.interval.ms";
+    public static final String ATLAS_HOOK_SPILL_DEFAULT_DIR_NAME = "atlas_hook_spill";
+
+    // sends the notifications in the background when asynchronous notification is enabled, null otherwise
+    private static ExecutorService executor;
+
+    // events the hook couldn't keep up with, replayed in the background; null if spilling is disabled
+    private static HookSpillQueue spillQueue;
+
     static {
         try {
             atlasProperties = ApplicationProperties.get();
@@ -82,22 +109,67 @@ public abstract class AtlasHook {
         Injector injector = Guice.createInjector(new NotificationModule());
         notifInterface = injector.getInstance(NotificationInterface.class);
 
+        if (atlasProperties.getBoolean(ATLAS_NOTIFICATION_ASYNCHRONOUS, false)) {
+            int queueSize = atlasProperties.getInt(ATLAS_NOTIFICATION_ASYNCHRONOUS_QUEUE_SIZE, 10000);
+            final long shutdownWaitTimeMs =
+                    atlasProperties.getLong(ATLAS_NOTIFICATION_ASYNCHRONOUS_SHUTDOWN_WAIT_TIME_MS, 10000);
+
+            // a single thread sends the notifications in the order in which the hook produced them
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize),
+                    new ThreadFactoryBuilder().setNameFormat("Atlas Notifier %d").setDaemon(true).build());
+
+            Runtime.getRuntime().addShutdownHook(new Thread("Atlas Notifier Shutdown") {
+                @Override
+                public void run() {
+                    executor.shutdown();
+                    try {
+                        if (!executor.awaitTermination(shutdownWaitTimeMs, TimeUnit.MILLISECONDS)) {
+                            LOG.warn("Pending notifications were not sent within {} ms of shutdown", shutdownWaitTimeMs);
+                        }
+                    } catch (InterruptedException e) {
+                        LOG.warn("Interrupted while waiting for pending notifications to be sent");
+                    }
+                }
+            });
+
+            LOG.info("Sending notifications asynchronously, queue size {}", queueSize);
+        }
+
+        if (atlasProperties.getBoolean(ATLAS_NOTIFICATION_SPILL_ENABLED, true)) {
+            String spillDir = atlasProperties.getString(ATLAS_NOTIFICATION_SPILL_DIR,
+                    new File(System.getProperty("java.io.tmpdir"), ATLAS_HOOK_SPILL_DEFAULT_DIR_NAME).getPath());
+            long maxEvents = atlasProperties.getLong(ATLAS_NOTIFICATION_SPILL_MAX_EVENTS, 100000);
+            long replayIntervalMs = atlasProperties.getLong(ATLAS_NOTIFICATION_SPILL_REPLAY_INTERVAL_MS, 10000);
+
+            spillQueue = new HookSpillQueue(new File(spillDir), maxEvents);
+
+            ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Atlas Spill Replayer %d").setDaemon(true).build());
+
+            replayer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    replaySpilledEntities(spillQueue, notifInterface);
+                }
+            }, 0, replayIntervalMs, TimeUnit.MILLISECONDS);
+
+            LOG.info("Spilling hook events to {}, at most {}", spillDir, maxEvents);
+        }
+
         LOG.info("Created Atlas Hook");
     }
 
     protected abstract String getNumberOfRetriesPropertyKey();
 
     protected void notifyEntities(String user, Collection<Referenceable> entities) {
-        JSONArray entitiesArray = new JSONArray();
-
         for (Referenceable entity : entities) {
             LOG.info("Adding entity for type: {}", entity.getTypeName());
-            final String entityJson = InstanceSerialization.toJson(entity, true);
-            entitiesArray.put(entityJson);
         }
 
+        // the entities are serialized once, when the message is sent
         List<HookNotification.HookNotificationMessage> hookNotificationMessages = new ArrayList<>();
-        hookNotificationMessages.add(new HookNotification.EntityCreateRequest(user, entitiesArray));
+        hookNotificationMessages.add(new HookNotification.EntityCreateRequest(user, new ArrayList<>(entities)));
         notifyEntities(hookNotificationMessages);
     }
 
@@ -111,22 +183,149 @@ public abstract class AtlasHook {
      * @param maxRetries maximum number of retries while sending message to messaging system
      */
     public static void notifyEntities(List<HookNotification.HookNotificationMessage> messages, int maxRetries) {
-        notifyEntitiesInternal(messages, maxRetries, notifInterface, logFailedMessages, failedMessagesLogger);
+        if (spillBehindPendingSpills(messages, spillQueue)) {
+            return;
+        }
+
+        if (executor == null) {
+            notifyEntitiesInternal(messages, maxRetries, notifInterface, logFailedMessages, failedMessagesLogger);
+        } else {
+            notifyEntitiesAsync(messages, maxRetries, executor, notifInterface, logFailedMessages,
+                    failedMessagesLogger);
+        }
+    }
+
+    /**
+     * Spills the messages if spilled events are waiting to be replayed, so that the messages follow them rather than
+     * overtake them.
+     *
+     * @return true if the messages were spilled
+     */
+    @VisibleForTesting
+    static boolean spillBehindPendingSpills(List<HookNotification.HookNotificationMessage> messages,
+                                            HookSpillQueue spillQueue) {
+        return spillQueue != null && !spillQueue.isEmpty() && spillQueue.spill(messages);
+    }
+
+    /**
+     * Spills the messages of an event the hook can't keep up with to the local disk, from which they are sent in
+     * the background once the messaging system keeps up again. If they can't be spilled, because spilling is
+     * disabled or the spill queue is full, they are logged as failed messages.
+     *
+     * @param messages hook notification messages
+     * @return true if the messages were spilled
+     */
+    protected static boolean spillEntities(List<HookNotification.HookNotificationMessage> messages) {
+        if (spillQueue != null && spillQueue.spill(messages)) {
+            return true;
+        }
+
+        if (logFailedMessages) {
+            for (HookNotification.HookNotificationMessage message : messages) {
+                failedMessagesLogger.log(AbstractNotification.getMessageJson(message));
+            }
+        }
+        LOG.error("Failed to notify atlas for entity {}: unable to spill the messages", messages);
+
+        return false;
+    }
+
+    /**
+     * Sends the spilled events, each of them once: an event which can't be sent is left in the queue and sent again
+     * on the next replay, so the replay doesn't retry.
+     */
+    @VisibleForTesting
+    static int replaySpilledEntities(HookSpillQueue spillQueue, final NotificationInterface notificationInterface) {
+        try {
+            return spillQueue.replay(new HookSpillQueue.MessageSender() {
+                @Override
+                public void send(List<HookNotification.HookNotificationMessage> messages) throws Exception {
+                    notificationInterface.send(NotificationInterface.NotificationType.HOOK, messages);
+                }
+            });
+        } catch (Throwable t) {
+            // keeps the replay scheduled
+            LOG.error("Replay of spilled hook events failed", t);
+            return 0;
+        }
+    }
+
+    /**
+     * Hands the messages to the executor, which sends them with retries like notifyEntitiesInternal, so that
+     * the caller never waits for the messaging system. The executor does not wait for the messages to be
+     * delivered either: the messages which can't be delivered are logged as failed messages once the messaging
+     * system gives up on them. If the queue of the executor is full, the messages are not sent and are logged
+     * as failed messages instead.
+     */
+    @VisibleForTesting
+    static void notifyEntitiesAsync(final List<HookNotification.HookNotificationMessage> messages,
+                                    final int maxRetries, ExecutorService executor,
+                                    final NotificationInterface notificationInterface,
+                                    final boolean shouldLogFailedMessages, final FailedMessagesLogger logger) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    notifyEntitiesInternal(messages, maxRetries, notificationInterface, shouldLogFailedMessages,
+                            logger, true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (shouldLogFailedMessages) {
+                for (HookNotification.HookNotificationMessage message : messages) {
+                    logger.log(AbstractNotification.getMessageJson(message));
+                }
+            }
+            LOG.error("Failed to notify atlas for entity {}: notification queue is full", messages);
+        }
     }
 
     @VisibleForTesting
     static void notifyEntitiesInternal(List<HookNotification.HookNotificationMessage> messages, int maxRetries,
                                        NotificationInterface notificationInterface,
                                        boolean shouldLogFailedMessages, FailedMessagesLogger logger) {
+        notifyEntitiesInternal(messages, maxRetries, notificationInterface, shouldLogFailedMessages, logger, false);
+    }
+
+    /**
+     * Sends the messages, retrying if they can't be sent. If async is set, the messages are only handed to the
+     * messaging system rather than delivered, and are logged as failed messages if it can't deliver them.
+     */
+    private static void notifyEntitiesInternal(List<HookNotification.HookNotificationMessage> messages,
+                                               int maxRetries, NotificationInterface notificationInterface,
+                                               final boolean shouldLogFailedMessages,
+                                               final FailedMessagesLogger logger, boolean async) {
         if (messages == null || messages.isEmpty()) {
             return;
         }
 
+        NotificationInterface.FailedMessageHandler failedMessageHandler = null;
+        if (async) {
+            failedMessageHandler = new NotificationInterface.FailedMessageHandler() {
+                @Override
+                public void onFailure(String failedMessage, Exception e) {
+                    if (shouldLogFailedMessages) {
+                        logger.log(failedMessage);
+                    }
+                    LOG.error("Failed to notify atlas for entity {}", failedMessage, e);
+                }
+            };
+        }
+
         final String message = messages.toString();
         int numRetries = 0;
         while (true) {
             try {
-                notificationInterface.send(NotificationInterface.NotificationType.HOOK, messages);
+                if (failedMessageHandler == null) {
+                    notificationInterface.send(NotificationInterface.NotificationType.HOOK, messages);
+                } else {
+                    notificationInterface.sendAsync(NotificationInterface.NotificationType.HOOK, messages,
+                            failedMessageHandler);
+                }
                 return;
             } catch (Exception e) {
                 numRetries++;
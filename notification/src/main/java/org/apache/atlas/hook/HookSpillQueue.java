@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hook;
+
+import org.apache.atlas.notification.AbstractNotification;
+import org.apache.atlas.notification.MessageDeserializer;
+import org.apache.atlas.notification.hook.HookMessageDeserializer;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queue of hook notification messages on the local disk, to which a hook spills the messages of the events it
+ * can't keep up with, and from which they are replayed once the messaging system keeps up again.
+ *
+ * The messages of each event are written to their own file, one message JSON per line, which gets its final name
+ * once it is complete so that a partially written event is never replayed. Events are replayed in the order in which
+ * they were spilled, and their file is deleted once the messages are sent. One process at a time replays a
+ * directory, so that processes on the same host can share it.
+ */
+public class HookSpillQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(HookSpillQueue.class);
+
+    static final String SPILL_FILE_SUFFIX = ".spill";
+
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+    private static final String LOCK_FILE_NAME  = "replay.lock";
+
+    private static final MessageDeserializer<HookNotification.HookNotificationMessage> DESERIALIZER =
+            new HookMessageDeserializer();
+
+    /**
+     * Sends replayed messages.
+     */
+    public interface MessageSender {
+        /**
+         * @throws Exception if the messages were not sent, to replay them again later
+         */
+        void send(List<HookNotification.HookNotificationMessage> messages) throws Exception;
+    }
+
+    private final File   directory;
+    private final long   maxEvents;
+    private final String processId = UUID.randomUUID().toString();
+
+    private final AtomicLong sequence      = new AtomicLong();
+    private final AtomicLong pendingCount  = new AtomicLong();
+    private final AtomicLong spilledCount  = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+
+    /**
+     * @param directory  directory of the queue, which keeps the events spilled before a restart
+     * @param maxEvents  number of events the queue holds at most
+     */
+    public HookSpillQueue(File directory, long maxEvents) {
+        this.directory = directory;
+        this.maxEvents = maxEvents;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOG.error("Unable to create the hook spill directory {}", directory);
+        }
+
+        pendingCount.set(listSpills().size());
+
+        if (pendingCount.get() > 0) {
+            LOG.info("{} spilled hook events in {} are waiting to be replayed", pendingCount.get(), directory);
+        }
+    }
+
+    /**
+     * @return true if no spilled events are waiting to be replayed
+     */
+    public boolean isEmpty() {
+        return pendingCount.get() <= 0;
+    }
+
+    /**
+     * @return number of spilled events waiting to be replayed
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return number of events spilled since the queue was created
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * @return number of events replayed since the queue was created
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * Appends the messages of an event to the queue.
+     *
+     * @param messages  messages of the event
+     *
+     * @return false if the messages were not spilled, because the queue is full or they couldn't be written
+     */
+    public boolean spill(List<HookNotification.HookNotificationMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return true;
+        }
+
+        if (pendingCount.get() >= maxEvents) {
+            LOG.error("Hook spill queue {} is full with {} events", directory, pendingCount.get());
+            return false;
+        }
+
+        // spills sort in the order they were written in, also across processes
+        String name      = String.format("%013d-%s-%010d", System.currentTimeMillis(), processId, sequence.incrementAndGet());
+        File   tmpFile   = new File(directory, name + TMP_FILE_SUFFIX);
+        File   spillFile = new File(directory, name + SPILL_FILE_SUFFIX);
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8)) {
+            for (HookNotification.HookNotificationMessage message : messages) {
+                writer.write(AbstractNotification.getMessageJson(message));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to spill hook messages to {}", tmpFile, e);
+            tmpFile.delete();
+            return false;
+        }
+
+        if (!tmpFile.renameTo(spillFile)) {
+            LOG.error("Failed to rename the hook spill {} to {}", tmpFile, spillFile);
+            tmpFile.delete();
+            return false;
+        }
+
+        pendingCount.incrementAndGet();
+        spilledCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Sends the spilled events in the order in which they were spilled, including the events spilled meanwhile.
+     * Replay stops at the first event which isn't sent, which is replayed again on the next call.
+     *
+     * @param sender  sends the messages of an event
+     *
+     * @return number of events replayed
+     */
+    public synchronized int replay(MessageSender sender) {
+        int ret = 0;
+
+        try (RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+             FileLock lock = lockFile.getChannel().tryLock()) {
+            if (lock == null) {
+                LOG.debug("Hook spill queue {} is replayed by another process", directory);
+                return ret;
+            }
+
+            for (List<File> spills = listSpills(); !spills.isEmpty(); spills = listSpills()) {
+                pendingCount.set(spills.size());
+
+                for (File spill : spills) {
+                    List<HookNotification.HookNotificationMessage> messages;
+
+                    try {
+                        messages = read(spill);
+                    } catch (Exception e) {
+                        // an event which can't be read would block the queue forever
+                        LOG.error("Skipping unreadable hook spill {}", spill, e);
+                        spill.renameTo(new File(directory, spill.getName() + ".failed"));
+                        pendingCount.decrementAndGet();
+                        continue;
+                    }
+
+                    try {
+                        sender.send(messages);
+                    } catch (Exception e) {
+                        LOG.warn("Failed to replay hook spill {}; it will be replayed again later", spill, e);
+                        return ret;
+                    }
+
+                    if (!spill.delete()) {
+                        // replaying it again would send its messages twice
+                        LOG.error("Failed to delete replayed hook spill {}. Stopping replay", spill);
+                        return ret;
+                    }
+
+                    pendingCount.decrementAndGet();
+                    replayedCount.incrementAndGet();
+                    ret++;
+                }
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            LOG.error("Failed to replay hook spill queue {}", directory, e);
+        }
+
+        if (ret > 0) {
+            LOG.info("Replayed {} spilled hook events from {}", ret, directory);
+        }
+
+        return ret;
+    }
+
+    private List<File> listSpills() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SPILL_FILE_SUFFIX);
+            }
+        });
+
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        Arrays.sort(files);
+
+        return Arrays.asList(files);
+    }
+
+    private static List<HookNotification.HookNotificationMessage> read(File spill) throws IOException {
+        List<HookNotification.HookNotificationMessage> ret = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spill),
+                                                                              StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isEmpty()) {
+                    ret.add(DESERIALIZER.deserialize(line));
+                }
+            }
+        }
+
+        return ret;
+    }
+}
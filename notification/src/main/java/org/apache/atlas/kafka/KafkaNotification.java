@@ -36,6 +36,7 @@ import org.apache.atlas.service.Service;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationConverter;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -76,10 +77,17 @@ public class KafkaNotification extends AbstractNotification implements Service {
     public static final String ATLAS_ENTITIES_TOPIC = "ATLAS_ENTITIES";
 
     protected static final String CONSUMER_GROUP_ID_PROPERTY = "group.id";
+    protected static final String CONSUMER_TIMEOUT_PROPERTY = "consumer.timeout.ms";
+
+    private static final String HOOK_BATCH_SIZE_PROPERTY = "atlas.notification.hook.batch.size";
+
+    public static final int DEFAULT_HOOK_BATCH_SIZE = 100;
+    public static final int DEFAULT_HOOK_CONSUMER_TIMEOUT_MS = 100;
 
     private KafkaServer kafkaServer;
     private ServerCnxnFactory factory;
     private Properties properties;
+    private boolean hookBatchingEnabled;
 
     private KafkaProducer producer = null;
     private List<ConsumerConnector> consumerConnectors = new ArrayList<>();
@@ -124,6 +132,8 @@ public class KafkaNotification extends AbstractNotification implements Service {
                 "org.apache.kafka.common.serialization.StringDeserializer");
         properties.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, "roundrobin");
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "smallest");
+
+        hookBatchingEnabled = applicationProperties.getInt(HOOK_BATCH_SIZE_PROPERTY, DEFAULT_HOOK_BATCH_SIZE) > 1;
     }
 
     @VisibleForTesting
@@ -216,19 +226,45 @@ public class KafkaNotification extends AbstractNotification implements Service {
 
     @Override
     public void sendInternal(NotificationType type, String... messages) throws NotificationException {
+        sendInternal(type, messages, null);
+    }
+
+    @Override
+    protected void sendInternal(NotificationType type, String[] messages, String[] keys) throws NotificationException {
         if (producer == null) {
             createProducer();
         }
-        sendInternalToProducer(producer, type, messages);
+        sendInternalToProducer(producer, type, messages, keys);
+    }
+
+    @Override
+    protected void sendInternalAsync(NotificationType type, String[] messages, String[] keys,
+                                     FailedMessageHandler handler) throws NotificationException {
+        if (producer == null) {
+            createProducer();
+        }
+        sendInternalToProducerAsync(producer, type, messages, keys, handler);
     }
 
     @VisibleForTesting
     void sendInternalToProducer(Producer p, NotificationType type, String[] messages) throws NotificationException {
+        sendInternalToProducer(p, type, messages, null);
+    }
+
+    /**
+     * Send the messages with the producer.  Messages with a key are sent to the partition of their key, so the
+     * messages about an entity are consumed in the order in which they were sent.
+     */
+    @VisibleForTesting
+    void sendInternalToProducer(Producer p, NotificationType type, String[] messages, String[] keys)
+        throws NotificationException {
         String topic = TOPIC_MAP.get(type);
         List<MessageContext> messageContexts = new ArrayList<>();
-        for (String message : messages) {
-            ProducerRecord record = new ProducerRecord(topic, message);
-            LOG.debug("Sending message for topic {}: {}", topic, message);
+        for (int i = 0; i < messages.length; i++) {
+            String message = messages[i];
+            String key = keys != null ? keys[i] : null;
+            ProducerRecord record = new ProducerRecord(topic, key, message);
+            LOG.debug("Sending message for topic {}, key {}: {}", topic, key, message);
             Future future = p.send(record);
             messageContexts.add(new MessageContext(future, message));
         }
@@ -250,6 +286,39 @@ public class KafkaNotification extends AbstractNotification implements Service {
         }
     }
 
+    /**
+     * Send the messages with the producer without waiting for them to be delivered.  The producer calls back once
+     * a message is delivered or has failed, after the retries of its configuration, and the messages which failed
+     * are handed to the handler then.
+     */
+    @VisibleForTesting
+    void sendInternalToProducerAsync(Producer p, NotificationType type, String[] messages, String[] keys,
+                                     final FailedMessageHandler handler) {
+        final String topic = TOPIC_MAP.get(type);
+        for (int i = 0; i < messages.length; i++) {
+            final String message = messages[i];
+            String key = keys != null ? keys[i] : null;
+            ProducerRecord record = new ProducerRecord(topic, key, message);
+            LOG.debug("Sending message for topic {}, key {}: {}", topic, key, message);
+            try {
+                p.send(record, new Callback() {
+                    @Override
+                    public void onCompletion(RecordMetadata response, Exception e) {
+                        if (e != null) {
+                            handler.onFailure(message, e);
+                        } else {
+                            LOG.debug("Sent message for topic - {}, partition - {}, offset - {}", response.topic(),
+                                response.partition(), response.offset());
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                // the producer throws rather than calls back if the message can't be handed to it
+                handler.onFailure(message, e);
+            }
+        }
+    }
+
     // ----- helper methods --------------------------------------------------
 
     /**
@@ -282,7 +351,8 @@ public class KafkaNotification extends AbstractNotification implements Service {
     }
 
     // Get properties for consumer request
-    private Properties getConsumerProperties(NotificationType type) {
+    @VisibleForTesting
+    Properties getConsumerProperties(NotificationType type) {
         // find the configured group id for the given notification type
         String groupId = properties.getProperty(type.toString().toLowerCase() + "." + CONSUMER_GROUP_ID_PROPERTY);
 
@@ -294,6 +364,12 @@ public class KafkaNotification extends AbstractNotification implements Service {
         consumerProperties.putAll(properties);
         consumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
 
+        // the hook consumer applies a partially filled batch only when hasNext() times out, which it doesn't by default
+        if (type == NotificationType.HOOK && hookBatchingEnabled
+            && !consumerProperties.containsKey(CONSUMER_TIMEOUT_PROPERTY)) {
+            consumerProperties.put(CONSUMER_TIMEOUT_PROPERTY, String.valueOf(DEFAULT_HOOK_CONSUMER_TIMEOUT_MS));
+        }
+
         LOG.info("Consumer property: auto.commit.enable: {}", consumerProperties.getProperty("auto.commit.enable"));
         return consumerProperties;
     }
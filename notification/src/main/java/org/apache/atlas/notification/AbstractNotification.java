@@ -24,8 +24,12 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.ha.HAConfiguration;
+import org.apache.atlas.notification.entity.EntityNotification;
+import org.apache.atlas.notification.hook.HookMessageEntities;
+import org.apache.atlas.notification.hook.HookNotification;
 import org.apache.atlas.typesystem.IReferenceableInstance;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.atlas.typesystem.json.InstanceSerialization;
@@ -48,8 +52,18 @@ public abstract class AbstractNotification implements NotificationInterface {
     public static final MessageVersion CURRENT_MESSAGE_VERSION = new MessageVersion("1.0.0");
 
     public static final String PROPERTY_EMBEDDED = PROPERTY_PREFIX + ".embedded";
+
+    /**
+     * Messages whose JSON is at least compression.min.size characters long are sent compressed.  Consumers read both
+     * compressed and uncompressed messages, so compression must only be enabled once the Atlas server is upgraded.
+     */
+    public static final String PROPERTY_MESSAGE_COMPRESSION_ENABLED  = PROPERTY_PREFIX + ".message.compression.enabled";
+    public static final String PROPERTY_MESSAGE_COMPRESSION_MIN_SIZE = PROPERTY_PREFIX + ".message.compression.min.size";
+    public static final int    DEFAULT_MESSAGE_COMPRESSION_MIN_SIZE  = 16 * 1024;
+
     private final boolean embedded;
     private final boolean isHAEnabled;
+    private final int     compressionMinSize;
 
     /**
      * Used for message serialization.
@@ -65,12 +79,16 @@ public abstract class AbstractNotification implements NotificationInterface {
     public AbstractNotification(Configuration applicationProperties) throws AtlasException {
         this.embedded = applicationProperties.getBoolean(PROPERTY_EMBEDDED, false);
         this.isHAEnabled = HAConfiguration.isHAEnabled(applicationProperties);
+        this.compressionMinSize = applicationProperties.getBoolean(PROPERTY_MESSAGE_COMPRESSION_ENABLED, false) ?
+            applicationProperties.getInt(PROPERTY_MESSAGE_COMPRESSION_MIN_SIZE, DEFAULT_MESSAGE_COMPRESSION_MIN_SIZE) :
+            -1;
     }
 
     @VisibleForTesting
     protected AbstractNotification() {
         embedded = false;
         isHAEnabled = false;
+        compressionMinSize = -1;
     }
 
     // ----- NotificationInterface -------------------------------------------
@@ -78,10 +96,18 @@ public abstract class AbstractNotification implements NotificationInterface {
     @Override
     public <T> void send(NotificationType type, List<T> messages) throws NotificationException {
         String[] strMessages = new String[messages.size()];
-        for (int index = 0; index < messages.size(); index++) {
-            strMessages[index] = getMessageJson(messages.get(index));
-        }
-        sendInternal(type, strMessages);
+        String[] keys = new String[messages.size()];
+        toMessagesAndKeys(messages, strMessages, keys);
+        sendInternal(type, strMessages, keys);
+    }
+
+    @Override
+    public <T> void sendAsync(NotificationType type, List<T> messages, FailedMessageHandler handler)
+        throws NotificationException {
+        String[] strMessages = new String[messages.size()];
+        String[] keys = new String[messages.size()];
+        toMessagesAndKeys(messages, strMessages, keys);
+        sendInternalAsync(type, strMessages, keys, handler);
     }
 
     @Override
@@ -119,6 +145,53 @@ public abstract class AbstractNotification implements NotificationInterface {
      */
     protected abstract void sendInternal(NotificationType type, String[] messages) throws NotificationException;
 
+    /**
+     * Send the given messages with the given keys.  Messages with the same key are delivered in the order in
+     * which they are sent.  By default the keys are ignored.
+     *
+     * @param type      the message type
+     * @param messages  the array of messages to send
+     * @param keys      the key of each message, or null for messages without a key
+     *
+     * @throws NotificationException if an error occurs while sending
+     */
+    protected void sendInternal(NotificationType type, String[] messages, String[] keys) throws NotificationException {
+        sendInternal(type, messages);
+    }
+
+    /**
+     * Send the given messages with the given keys without waiting for them to be delivered, handing the messages
+     * which can't be delivered to the given handler.  By default the messages are sent with
+     * {@link #sendInternal(NotificationType, String[], String[])}, which waits for them to be delivered.
+     *
+     * @param type      the message type
+     * @param messages  the array of messages to send
+     * @param keys      the key of each message, or null for messages without a key
+     * @param handler   the handler of the messages which can't be delivered
+     *
+     * @throws NotificationException if an error occurs before the messages are handed to the messaging system
+     */
+    protected void sendInternalAsync(NotificationType type, String[] messages, String[] keys,
+                                     FailedMessageHandler handler) throws NotificationException {
+        try {
+            sendInternal(type, messages, keys);
+        } catch (NotificationException e) {
+            if (e.getFailedMessages() == null) {
+                throw e;
+            }
+            for (String message : e.getFailedMessages()) {
+                handler.onFailure(message, e);
+            }
+        }
+    }
+
+    private <T> void toMessagesAndKeys(List<T> messages, String[] strMessages, String[] keys) {
+        for (int index = 0; index < messages.size(); index++) {
+            strMessages[index] = getMessageJson(messages.get(index), compressionMinSize);
+            keys[index] = getMessageKey(messages.get(index));
+        }
+    }
+
 
     // ----- utility methods -------------------------------------------------
 
@@ -135,6 +208,62 @@ public abstract class AbstractNotification implements NotificationInterface {
         return GSON.toJson(versionedMessage);
     }
 
+    /**
+     * Get the notification message JSON from the given object, compressed if it is large.
+     *
+     * @param message             the message in object form
+     * @param compressionMinSize  length of the JSON from which on the message is compressed, negative to never
+     *                            compress the message
+     *
+     * @return the message as a JSON string
+     */
+    public static String getMessageJson(Object message, int compressionMinSize) {
+        String messageJson = getMessageJson(message);
+
+        if (compressionMinSize < 0 || messageJson.length() < compressionMinSize) {
+            return messageJson;
+        }
+
+        return GSON.toJson(CompressedMessage.compress(CURRENT_MESSAGE_VERSION, messageJson));
+    }
+
+
+    /**
+     * Get the key of the given notification message.  Messages about the same entity get the same key: hook
+     * messages are keyed by the unique attribute value of the entity they are about, which is the root entity of
+     * create and update requests - the output of a lineage request, the last entity of others, see
+     * {@link HookMessageEntities} - so that an alter or drop of a table follows the message that created it, and
+     * entity notifications are keyed by the guid of the entity.
+     *
+     * @param message  the message in object form
+     *
+     * @return the message key, or null if the message is not about a single entity
+     */
+    public static String getMessageKey(Object message) {
+        if (message instanceof HookNotification.EntityCreateRequest) {
+            Referenceable rootEntity =
+                HookMessageEntities.of((HookNotification.EntityCreateRequest) message).getRootEntity();
+
+            if (rootEntity != null) {
+                Object qualifiedName = rootEntity.get(AtlasClient.QUALIFIED_NAME);
+
+                return qualifiedName != null ? qualifiedName.toString() : null;
+            }
+        } else if (message instanceof HookNotification.EntityPartialUpdateRequest) {
+            return ((HookNotification.EntityPartialUpdateRequest) message).getAttributeValue();
+        } else if (message instanceof HookNotification.EntityDeleteRequest) {
+            return ((HookNotification.EntityDeleteRequest) message).getAttributeValue();
+        } else if (message instanceof EntityNotification) {
+            IReferenceableInstance entity = ((EntityNotification) message).getEntity();
+
+            if (entity != null && entity.getId() != null) {
+                return entity.getId()._getId();
+            }
+        }
+
+        return null;
+    }
+
 
     // ----- serializers -----------------------------------------------------
 
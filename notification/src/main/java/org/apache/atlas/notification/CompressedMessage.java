@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.notification;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Represents a notification message whose JSON is compressed.  The compressed bytes are carried base64 encoded,
+ * so that compressed and uncompressed messages can be sent over the same string based topics.
+ *
+ * Hook messages repeat type names, attribute names and qualified name prefixes for every entity they contain,
+ * which compresses well, so large messages shrink to a fraction of their size.
+ */
+public class CompressedMessage {
+
+    /**
+     * Compression of the message.
+     */
+    public static final String COMPRESSION_GZIP = "gzip";
+
+    private static final String COMPRESSION_ATTRIBUTE = "compression";
+    private static final String MESSAGE_ATTRIBUTE     = "message";
+
+    /**
+     * The version of the compressed message.
+     */
+    private final MessageVersion version;
+
+    /**
+     * The compression of the message.
+     */
+    private final String compression;
+
+    /**
+     * The base64 encoded, compressed message JSON.
+     */
+    private final String message;
+
+
+    // ----- Constructors ----------------------------------------------------
+
+    /**
+     * Create a compressed message.
+     *
+     * @param version      the message version
+     * @param compression  the compression of the message
+     * @param message      the base64 encoded, compressed message JSON
+     */
+    public CompressedMessage(MessageVersion version, String compression, String message) {
+        this.version     = version;
+        this.compression = compression;
+        this.message     = message;
+    }
+
+
+    // ----- accessors -------------------------------------------------------
+
+    public MessageVersion getVersion() {
+        return version;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+
+    // ----- helper methods --------------------------------------------------
+
+    /**
+     * Compress the given message JSON.
+     *
+     * @param version      the message version
+     * @param messageJson  the message JSON
+     *
+     * @return the compressed message
+     */
+    public static CompressedMessage compress(MessageVersion version, String messageJson) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(messageJson.length() / 4);
+
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(messageJson.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+
+        return new CompressedMessage(version, COMPRESSION_GZIP, BaseEncoding.base64().encode(bytes.toByteArray()));
+    }
+
+    /**
+     * Determine whether or not the given JSON is a compressed message.
+     *
+     * @param json  the message JSON
+     *
+     * @return true if the JSON is a compressed message
+     */
+    public static boolean isCompressed(JsonElement json) {
+        return json.isJsonObject() && json.getAsJsonObject().has(COMPRESSION_ATTRIBUTE);
+    }
+
+    /**
+     * Decompress the given compressed message JSON.
+     *
+     * @param json  the compressed message JSON
+     *
+     * @return the JSON of the message
+     *
+     * @throws IllegalArgumentException if the message compression is not supported
+     */
+    public static String decompress(JsonElement json) {
+        JsonObject jsonObject  = json.getAsJsonObject();
+        String     compression = jsonObject.get(COMPRESSION_ATTRIBUTE).getAsString();
+
+        if (!COMPRESSION_GZIP.equals(compression)) {
+            throw new IllegalArgumentException(String.format("Unsupported message compression : %s.", compression));
+        }
+
+        byte[] compressed = BaseEncoding.base64().decode(jsonObject.get(MESSAGE_ATTRIBUTE).getAsString());
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream(compressed.length * 4);
+            byte[]                buffer = new byte[8192];
+
+            for (int len = in.read(buffer); len != -1; len = in.read(buffer)) {
+                bytes.write(buffer, 0, len);
+            }
+
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid compressed message", e);
+        }
+    }
+}
@@ -96,6 +96,21 @@ public interface NotificationInterface {
         }
     }
 
+    /**
+     * Handler of the messages which could not be delivered by {@link #sendAsync(NotificationType, List,
+     * FailedMessageHandler)}.
+     */
+    interface FailedMessageHandler {
+
+        /**
+         * Called once for every message which could not be delivered.
+         *
+         * @param message  the message as it was sent
+         * @param e        the reason the message could not be delivered
+         */
+        void onFailure(String message, Exception e);
+    }
+
     /**
      * Create notification consumers for the given notification type.
      *
@@ -129,6 +144,20 @@ public interface NotificationInterface {
      */
     <T> void send(NotificationType type, List<T> messages) throws NotificationException;
 
+    /**
+     * Send the given messages without waiting for them to be delivered.  The messages which can't be delivered are
+     * handed to the given handler, possibly from another thread once the send has returned.
+     *
+     * @param type      the message type
+     * @param messages  the list of messages to send
+     * @param handler   the handler of the messages which can't be delivered
+     * @param <T>       the message type
+     *
+     * @throws NotificationException if an error occurs before the messages are handed to the messaging system
+     */
+    <T> void sendAsync(NotificationType type, List<T> messages, FailedMessageHandler handler)
+        throws NotificationException;
+
     /**
      * Shutdown any notification producers and consumers associated with this interface instance.
      */
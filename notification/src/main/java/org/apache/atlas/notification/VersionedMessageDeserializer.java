@@ -19,6 +19,8 @@
 package org.apache.atlas.notification;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 
 import java.lang.reflect.ParameterizedType;
@@ -62,12 +64,19 @@ public abstract class VersionedMessageDeserializer<T> implements MessageDeserial
 
     @Override
     public T deserialize(String messageJson) {
-        VersionedMessage<T> versionedMessage = gson.fromJson(messageJson, versionedMessageType);
+        JsonElement json = new JsonParser().parse(messageJson);
+
+        // compressed messages wrap the JSON of a versioned message
+        if (CompressedMessage.isCompressed(json)) {
+            return deserialize(CompressedMessage.decompress(json));
+        }
+
+        VersionedMessage<T> versionedMessage = gson.fromJson(json, versionedMessageType);
 
         // older style messages not wrapped with VersionedMessage
         if (versionedMessage.getVersion() == null) {
             Type t = ((ParameterizedType) versionedMessageType).getActualTypeArguments()[0];
-            versionedMessage = new VersionedMessage<>(MessageVersion.NO_VERSION, gson.<T>fromJson(messageJson, t));
+            versionedMessage = new VersionedMessage<>(MessageVersion.NO_VERSION, gson.<T>fromJson(json, t));
         }
         checkVersion(versionedMessage, messageJson);
 
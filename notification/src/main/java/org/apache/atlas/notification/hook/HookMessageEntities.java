@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.notification.hook;
+
+import org.apache.atlas.AtlasClient;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.Struct;
+import org.apache.atlas.typesystem.persistence.Id;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The entities a hook message writes and the entities it only refers to, identified by type name and qualifiedName,
+ * or by guid when there is no qualifiedName.
+ *
+ * A create or full update writes its root entity, along with the entities nested in it like the columns of a table,
+ * and refers to the other entities it carries: HiveHook sends the database of a table, and the input tables of a
+ * query, along with every message about the table. The root entity of a lineage message, which carries a process, is
+ * the first output of the process, and the message also writes the processes and the other outputs. The root entity
+ * of any other message is its last entity, as the entities it refers to come before it.
+ *
+ * A partial update or a delete writes the entity it identifies by unique attribute. A partial update also writes the
+ * entities of its update: a rename, like HiveHook sends, carries the new qualifiedName which later messages use to
+ * refer to the entity.
+ */
+public final class HookMessageEntities {
+    private final Referenceable rootEntity;
+    private final String        rootKey;
+    private final Set<String>   writtenKeys;
+    private final Set<String>   referencedKeys;
+
+    private HookMessageEntities(Referenceable rootEntity, String rootKey, Set<String> writtenKeys,
+                                Set<String> referencedKeys) {
+        this.rootEntity     = rootEntity;
+        this.rootKey        = rootKey;
+        this.writtenKeys    = writtenKeys;
+        this.referencedKeys = referencedKeys;
+    }
+
+    /**
+     * @return the root entity of a create or full update, null for other messages or when the message has no entities
+     */
+    public Referenceable getRootEntity() {
+        return rootEntity;
+    }
+
+    /**
+     * @return the key of the entity the message is about, null if it is not known
+     */
+    public String getRootKey() {
+        return rootKey;
+    }
+
+    public Set<String> getWrittenKeys() {
+        return writtenKeys;
+    }
+
+    public Set<String> getReferencedKeys() {
+        return referencedKeys;
+    }
+
+    public static HookMessageEntities of(HookNotification.HookNotificationMessage message) {
+        switch (message.getType()) {
+        case ENTITY_CREATE:
+        case ENTITY_FULL_UPDATE:
+            return ofEntities(((HookNotification.EntityCreateRequest) message).getEntities());
+
+        case ENTITY_PARTIAL_UPDATE:
+            HookNotification.EntityPartialUpdateRequest partialUpdateRequest =
+                (HookNotification.EntityPartialUpdateRequest) message;
+            String partialUpdateKey = partialUpdateRequest.getTypeName() + "." + partialUpdateRequest.getAttributeValue();
+            Set<String> writtenKeys = new HashSet<>();
+
+            writtenKeys.add(partialUpdateKey);
+
+            if (partialUpdateRequest.getEntity() != null) {
+                addEntityKeys(partialUpdateRequest.getEntity(), Collections.<String>emptySet(), writtenKeys,
+                    newVisitedSet());
+            }
+
+            return new HookMessageEntities(null, partialUpdateKey, writtenKeys, Collections.<String>emptySet());
+
+        case ENTITY_DELETE:
+            HookNotification.EntityDeleteRequest deleteRequest = (HookNotification.EntityDeleteRequest) message;
+            String deleteKey = deleteRequest.getTypeName() + "." + deleteRequest.getAttributeValue();
+
+            return new HookMessageEntities(null, deleteKey, Collections.singleton(deleteKey),
+                Collections.<String>emptySet());
+
+        default:
+            return new HookMessageEntities(null, null, Collections.<String>emptySet(), Collections.<String>emptySet());
+        }
+    }
+
+    /**
+     * @return the type name and qualifiedName of the entity, or its guid if it has no qualifiedName
+     */
+    public static String getEntityKey(Referenceable entity) {
+        Object qualifiedName = entity.get(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME);
+
+        if (qualifiedName != null) {
+            return entity.getTypeName() + "." + qualifiedName;
+        }
+
+        return entity.getId() != null ? entity.getId()._getId() : null;
+    }
+
+    private static HookMessageEntities ofEntities(List<Referenceable> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return new HookMessageEntities(null, null, Collections.<String>emptySet(), Collections.<String>emptySet());
+        }
+
+        Set<String>         topLevelKeys = new HashSet<>();
+        List<Referenceable> processes    = new ArrayList<>();
+        List<Referenceable> outputs      = new ArrayList<>();
+
+        for (Referenceable entity : entities) {
+            String key = getEntityKey(entity);
+
+            if (key != null) {
+                topLevelKeys.add(key);
+            }
+
+            if (entity.get(AtlasClient.PROCESS_ATTRIBUTE_OUTPUTS) != null) {
+                processes.add(entity);
+            }
+        }
+
+        for (Referenceable process : processes) {
+            Object value = process.get(AtlasClient.PROCESS_ATTRIBUTE_OUTPUTS);
+
+            if (value instanceof Collection) {
+                for (Object output : (Collection<?>) value) {
+                    Referenceable entity = resolveEntity(output, entities);
+
+                    if (entity != null) {
+                        outputs.add(entity);
+                    }
+                }
+            }
+        }
+
+        Referenceable rootEntity;
+
+        if (!outputs.isEmpty()) {
+            rootEntity = outputs.get(0);
+        } else if (!processes.isEmpty()) {
+            rootEntity = processes.get(0);
+        } else {
+            rootEntity = entities.get(entities.size() - 1);
+        }
+
+        Set<String> writtenKeys = new HashSet<>();
+
+        addEntityKeys(rootEntity, topLevelKeys, writtenKeys, newVisitedSet());
+
+        for (Referenceable output : outputs) {
+            addEntityKeys(output, topLevelKeys, writtenKeys, newVisitedSet());
+        }
+
+        for (Referenceable process : processes) {
+            String key = getEntityKey(process);
+
+            if (key != null) {
+                writtenKeys.add(key);
+            }
+        }
+
+        Set<String> referencedKeys = new HashSet<>();
+        Set<Object> visited        = newVisitedSet();
+
+        for (Referenceable entity : entities) {
+            addEntityKeys(entity, Collections.<String>emptySet(), referencedKeys, visited);
+        }
+
+        referencedKeys.removeAll(writtenKeys);
+
+        return new HookMessageEntities(rootEntity, getEntityKey(rootEntity), writtenKeys, referencedKeys);
+    }
+
+    /**
+     * @return the entity of the message the given output of a process stands for
+     */
+    private static Referenceable resolveEntity(Object output, List<Referenceable> entities) {
+        if (output instanceof Referenceable) {
+            String key = getEntityKey((Referenceable) output);
+
+            for (Referenceable entity : entities) {
+                if (key != null && key.equals(getEntityKey(entity))) {
+                    return entity;
+                }
+            }
+
+            return (Referenceable) output;
+        }
+
+        if (output instanceof Id) {
+            String guid = ((Id) output)._getId();
+
+            for (Referenceable entity : entities) {
+                if (entity.getId() != null && guid.equals(entity.getId()._getId())) {
+                    return entity;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds the key of the given value, if it is an entity, and the keys of the entities nested in it. An entity whose
+     * key is one of stopKeys is not added, nor the entities nested in it, unless it is the value the walk started
+     * from: the entities of the message other than the root are referred to, not written, by the root.
+     */
+    private static void addEntityKeys(Object value, Set<String> stopKeys, Set<String> keys, Set<Object> visited) {
+        boolean isStart = visited.isEmpty();
+
+        if (value == null || !visited.add(value)) {
+            return;
+        }
+
+        if (value instanceof Referenceable) {
+            String key = getEntityKey((Referenceable) value);
+
+            if (key != null) {
+                if (!isStart && stopKeys.contains(key)) {
+                    return;
+                }
+
+                keys.add(key);
+            }
+        }
+
+        if (value instanceof Struct) {
+            Map<String, Object> attributes = ((Struct) value).getValuesMap();
+
+            if (attributes != null) {
+                for (Object attribute : attributes.values()) {
+                    addEntityKeys(attribute, stopKeys, keys, visited);
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                addEntityKeys(element, stopKeys, keys, visited);
+            }
+        } else if (value instanceof Map) {
+            for (Object element : ((Map<?, ?>) value).values()) {
+                addEntityKeys(element, stopKeys, keys, visited);
+            }
+        }
+    }
+
+    private static Set<Object> newVisitedSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+}
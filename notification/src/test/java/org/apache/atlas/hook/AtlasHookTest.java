@@ -18,22 +18,34 @@
 
 package org.apache.atlas.hook;
 
+import org.apache.atlas.notification.AbstractNotification;
 import org.apache.atlas.notification.NotificationException;
 import org.apache.atlas.notification.NotificationInterface;
 import org.apache.atlas.notification.hook.HookNotification;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 
 public class AtlasHookTest {
@@ -130,4 +142,66 @@ public class AtlasHookTest {
 
         verifyZeroInteractions(failedMessagesLogger);
     }
+
+    @Test
+    public void testNotifyEntitiesAsyncSendsInBackground() throws Exception {
+        List<HookNotification.HookNotificationMessage> hookNotificationMessages =
+                new ArrayList<HookNotification.HookNotificationMessage>() {{
+                    add(new HookNotification.EntityCreateRequest("user"));
+                }
+            };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtlasHook.notifyEntitiesAsync(hookNotificationMessages, 2, executor, notificationInterface, true,
+                failedMessagesLogger);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        verify(notificationInterface, times(1)).sendAsync(eq(NotificationInterface.NotificationType.HOOK),
+                eq(hookNotificationMessages), any(NotificationInterface.FailedMessageHandler.class));
+        verifyZeroInteractions(failedMessagesLogger);
+    }
+
+    @Test
+    public void testNotifyEntitiesAsyncLogsUndeliveredMessages() throws Exception {
+        List<HookNotification.HookNotificationMessage> hookNotificationMessages =
+                Arrays.<HookNotification.HookNotificationMessage>asList(new HookNotification.EntityCreateRequest("user"));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                // the messaging system calls back once it gives up on a message, after the send has returned
+                NotificationInterface.FailedMessageHandler handler =
+                        (NotificationInterface.FailedMessageHandler) invocation.getArguments()[2];
+                handler.onFailure("failed message", new Exception("Simulating delivery failure"));
+                return null;
+            }
+        }).when(notificationInterface).sendAsync(eq(NotificationInterface.NotificationType.HOOK),
+                eq(hookNotificationMessages), any(NotificationInterface.FailedMessageHandler.class));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtlasHook.notifyEntitiesAsync(hookNotificationMessages, 2, executor, notificationInterface, true,
+                failedMessagesLogger);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        verify(failedMessagesLogger, times(1)).log("failed message");
+        // the failure is not retried, as the messaging system has retried the message already
+        verify(notificationInterface, times(1)).sendAsync(eq(NotificationInterface.NotificationType.HOOK),
+                eq(hookNotificationMessages), any(NotificationInterface.FailedMessageHandler.class));
+        verify(notificationInterface, times(0)).send(NotificationInterface.NotificationType.HOOK,
+                hookNotificationMessages);
+    }
+
+    @Test
+    public void testNotifyEntitiesAsyncLogsMessagesIfQueueIsFull() throws Exception {
+        HookNotification.HookNotificationMessage message = new HookNotification.EntityCreateRequest("user");
+        List<HookNotification.HookNotificationMessage> hookNotificationMessages = Arrays.asList(message);
+        ExecutorService executor = mock(ExecutorService.class);
+        when(executor.submit(any(Runnable.class))).thenThrow(new RejectedExecutionException());
+
+        AtlasHook.notifyEntitiesAsync(hookNotificationMessages, 2, executor, notificationInterface, true,
+                failedMessagesLogger);
+
+        verify(failedMessagesLogger, times(1)).log(AbstractNotification.getMessageJson(message));
+        verifyZeroInteractions(notificationInterface);
+    }
 }
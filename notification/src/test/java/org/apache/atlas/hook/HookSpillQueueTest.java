@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.hook;
+
+import org.apache.atlas.notification.NotificationException;
+import org.apache.atlas.notification.NotificationInterface;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class HookSpillQueueTest {
+    private File directory;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("atlas_hook_spill").toFile();
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void testSpilledEventsAreReplayedInOrderAfterRestart() throws Exception {
+        HookSpillQueue spillQueue = new HookSpillQueue(directory, 10);
+
+        assertTrue(spillQueue.spill(createMessages("db1.t1@cl1", "db1.t2@cl1")));
+        assertTrue(spillQueue.spill(createMessages("db1.t3@cl1")));
+        assertEquals(spillQueue.getPendingCount(), 2);
+
+        // the hook process restarts before the events are replayed
+        HookSpillQueue restartedQueue = new HookSpillQueue(directory, 10);
+        final List<String> replayed = new ArrayList<>();
+
+        assertFalse(restartedQueue.isEmpty());
+        assertEquals(restartedQueue.replay(new HookSpillQueue.MessageSender() {
+            @Override
+            public void send(List<HookNotification.HookNotificationMessage> messages) throws Exception {
+                for (HookNotification.HookNotificationMessage message : messages) {
+                    replayed.add((String) ((HookNotification.EntityCreateRequest) message).getEntities().get(0)
+                                                                                         .get("qualifiedName"));
+                }
+            }
+        }), 2);
+
+        assertEquals(replayed, Arrays.asList("db1.t1@cl1", "db1.t2@cl1", "db1.t3@cl1"));
+        assertTrue(restartedQueue.isEmpty());
+        assertEquals(restartedQueue.getReplayedCount(), 2);
+        assertEquals(directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(HookSpillQueue.SPILL_FILE_SUFFIX);
+            }
+        }).length, 0);
+    }
+
+    @Test
+    public void testEventIsReplayedAgainWhenItIsNotSent() throws Exception {
+        HookSpillQueue        spillQueue            = new HookSpillQueue(directory, 10);
+        NotificationInterface notificationInterface = mock(NotificationInterface.class);
+
+        spillQueue.spill(createMessages("db1.t1@cl1"));
+        spillQueue.spill(createMessages("db1.t2@cl1"));
+
+        doThrow(new NotificationException(new Exception())).when(notificationInterface)
+                .send(eq(NotificationInterface.NotificationType.HOOK), anyList());
+
+        assertEquals(AtlasHook.replaySpilledEntities(spillQueue, notificationInterface), 0);
+        assertEquals(spillQueue.getPendingCount(), 2);
+
+        NotificationInterface recoveredInterface = mock(NotificationInterface.class);
+
+        assertEquals(AtlasHook.replaySpilledEntities(spillQueue, recoveredInterface), 2);
+        assertTrue(spillQueue.isEmpty());
+        verify(recoveredInterface, times(2))
+                .send(eq(NotificationInterface.NotificationType.HOOK), anyList());
+    }
+
+    @Test
+    public void testMessagesAreSpilledBehindWaitingEvents() throws Exception {
+        HookSpillQueue spillQueue = new HookSpillQueue(directory, 10);
+
+        // nothing is waiting, so the messages are sent
+        assertFalse(AtlasHook.spillBehindPendingSpills(createMessages("db1.t1@cl1"), spillQueue));
+
+        spillQueue.spill(createMessages("db1.t1@cl1"));
+
+        assertTrue(AtlasHook.spillBehindPendingSpills(createMessages("db1.t2@cl1"), spillQueue));
+        assertEquals(spillQueue.getPendingCount(), 2);
+    }
+
+    @Test
+    public void testSpillFailsWhenQueueIsFull() throws Exception {
+        HookSpillQueue spillQueue = new HookSpillQueue(directory, 1);
+
+        assertTrue(spillQueue.spill(createMessages("db1.t1@cl1")));
+        assertFalse(spillQueue.spill(createMessages("db1.t2@cl1")));
+        assertEquals(spillQueue.getSpilledCount(), 1);
+
+        // there is room again once the queue is replayed
+        AtlasHook.replaySpilledEntities(spillQueue, mock(NotificationInterface.class));
+
+        assertTrue(spillQueue.spill(createMessages("db1.t2@cl1")));
+    }
+
+    private List<HookNotification.HookNotificationMessage> createMessages(String... qualifiedNames) {
+        List<HookNotification.HookNotificationMessage> ret = new ArrayList<>();
+
+        for (String qualifiedName : qualifiedNames) {
+            Referenceable table = new Referenceable("hive_table");
+
+            table.set("qualifiedName", qualifiedName);
+
+            ret.add(new HookNotification.EntityCreateRequest("user", table));
+        }
+
+        return ret;
+    }
+}
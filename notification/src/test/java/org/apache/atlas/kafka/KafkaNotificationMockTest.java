@@ -24,13 +24,19 @@ import org.apache.atlas.notification.MessageDeserializer;
 import org.apache.atlas.notification.NotificationConsumer;
 import org.apache.atlas.notification.NotificationException;
 import org.apache.atlas.notification.NotificationInterface;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,8 +49,10 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -85,6 +93,33 @@ public class KafkaNotificationMockTest {
         assertTrue(consumers.contains(consumer2));
     }
 
+    @Test
+    public void testHookConsumerTimesOutWhenBatching() throws Exception {
+        Configuration configuration = new PropertiesConfiguration();
+        configuration.setProperty("atlas.kafka.hook.group.id", "atlas");
+        configuration.setProperty("atlas.kafka.entities.group.id", "atlas");
+
+        KafkaNotification kafkaNotification = new KafkaNotification(configuration);
+
+        assertEquals(kafkaNotification.getConsumerProperties(NotificationInterface.NotificationType.HOOK)
+                .getProperty("consumer.timeout.ms"), String.valueOf(KafkaNotification.DEFAULT_HOOK_CONSUMER_TIMEOUT_MS));
+        assertNull(kafkaNotification.getConsumerProperties(NotificationInterface.NotificationType.ENTITIES)
+                .getProperty("consumer.timeout.ms"));
+
+        configuration.setProperty("atlas.kafka.consumer.timeout.ms", "-1");
+        kafkaNotification = new KafkaNotification(configuration);
+
+        assertEquals(kafkaNotification.getConsumerProperties(NotificationInterface.NotificationType.HOOK)
+                .getProperty("consumer.timeout.ms"), "-1");
+
+        configuration.clearProperty("atlas.kafka.consumer.timeout.ms");
+        configuration.setProperty("atlas.notification.hook.batch.size", 1);
+        kafkaNotification = new KafkaNotification(configuration);
+
+        assertNull(kafkaNotification.getConsumerProperties(NotificationInterface.NotificationType.HOOK)
+                .getProperty("consumer.timeout.ms"));
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void shouldSendMessagesSuccessfully() throws NotificationException,
@@ -106,6 +141,29 @@ public class KafkaNotificationMockTest {
         verify(producer).send(expectedRecord);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldSendMessagesWithKeys() throws NotificationException,
+            ExecutionException, InterruptedException {
+        Properties configProperties = mock(Properties.class);
+        KafkaNotification kafkaNotification = new KafkaNotification(configProperties);
+
+        Producer producer = mock(Producer.class);
+        String topicName = kafkaNotification.getTopicName(NotificationInterface.NotificationType.HOOK);
+        Future returnValue = mock(Future.class);
+        when(returnValue.get()).thenReturn(new RecordMetadata(new TopicPartition(topicName, 0), 0, 0));
+        ProducerRecord keyedRecord = new ProducerRecord(topicName, "db.table@cluster", "message1");
+        ProducerRecord unkeyedRecord = new ProducerRecord(topicName, "message2");
+        when(producer.send(keyedRecord)).thenReturn(returnValue);
+        when(producer.send(unkeyedRecord)).thenReturn(returnValue);
+
+        kafkaNotification.sendInternalToProducer(producer, NotificationInterface.NotificationType.HOOK,
+                new String[]{"message1", "message2"}, new String[]{"db.table@cluster", null});
+
+        verify(producer).send(keyedRecord);
+        verify(producer).send(unkeyedRecord);
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void shouldThrowExceptionIfProducerFails() throws NotificationException,
@@ -162,6 +220,49 @@ public class KafkaNotificationMockTest {
         }
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldHandFailedMessagesToHandlerWithoutWaitingForDelivery() {
+        Properties configProperties = mock(Properties.class);
+        KafkaNotification kafkaNotification = new KafkaNotification(configProperties);
+
+        Producer producer = mock(Producer.class);
+        String topicName = kafkaNotification.getTopicName(NotificationInterface.NotificationType.HOOK);
+        final Future returnValue = mock(Future.class);
+        ProducerRecord deliveredRecord = new ProducerRecord(topicName, "message1");
+        ProducerRecord failedRecord = new ProducerRecord(topicName, "db.table@cluster", "message2");
+        when(producer.send(eq(deliveredRecord), any(Callback.class))).thenAnswer(callBack(returnValue, null));
+        final Exception failure = new RuntimeException("Simulating exception");
+        when(producer.send(eq(failedRecord), any(Callback.class))).thenAnswer(callBack(returnValue, failure));
+
+        final List<String> failedMessages = new ArrayList<>();
+        kafkaNotification.sendInternalToProducerAsync(producer, NotificationInterface.NotificationType.HOOK,
+                new String[]{"message1", "message2"}, new String[]{null, "db.table@cluster"},
+                new NotificationInterface.FailedMessageHandler() {
+                    @Override
+                    public void onFailure(String message, Exception e) {
+                        assertEquals(e, failure);
+                        failedMessages.add(message);
+                    }
+                });
+
+        assertEquals(failedMessages, Arrays.asList("message2"));
+        verifyZeroInteractions(returnValue);
+    }
+
+    private Answer<Future> callBack(final Future returnValue, final Exception e) {
+        return new Answer<Future>() {
+            @Override
+            public Future answer(InvocationOnMock invocation) {
+                ProducerRecord record = (ProducerRecord) invocation.getArguments()[0];
+                RecordMetadata metadata = e != null ? null
+                        : new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0);
+                ((Callback) invocation.getArguments()[1]).onCompletion(metadata, e);
+                return returnValue;
+            }
+        };
+    }
+
     class TestKafkaNotification extends KafkaNotification {
 
         private final ConsumerConnector consumerConnector;
@@ -18,15 +18,20 @@
 
 package org.apache.atlas.notification;
 
+import com.google.gson.JsonParser;
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang.StringUtils;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.*;
 
 /**
@@ -85,6 +90,65 @@ public class AbstractNotificationTest {
         assertEquals(messageJson3, notification.messages[2]);
     }
 
+    @Test
+    public void testSendCompressed() throws Exception {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getBoolean(AbstractNotification.PROPERTY_MESSAGE_COMPRESSION_ENABLED, false))
+            .thenReturn(true);
+        when(configuration.getInt(AbstractNotification.PROPERTY_MESSAGE_COMPRESSION_MIN_SIZE,
+            AbstractNotification.DEFAULT_MESSAGE_COMPRESSION_MIN_SIZE)).thenReturn(100);
+
+        TestNotification notification = new TestNotification(configuration);
+
+        TestMessage smallMessage = new TestMessage(HookNotification.HookNotificationType.ENTITY_CREATE, "user1");
+        TestMessage largeMessage = new TestMessage(HookNotification.HookNotificationType.ENTITY_CREATE,
+            StringUtils.repeat("user1", 100));
+
+        notification.send(NotificationInterface.NotificationType.HOOK, smallMessage, largeMessage);
+
+        assertEquals(notification.messages[0], AbstractNotification.getMessageJson(smallMessage));
+        assertTrue(CompressedMessage.isCompressed(new JsonParser().parse(notification.messages[1])));
+        assertEquals(CompressedMessage.decompress(new JsonParser().parse(notification.messages[1])),
+            AbstractNotification.getMessageJson(largeMessage));
+    }
+
+    @Test
+    public void testGetMessageKey() throws Exception {
+        Referenceable db = new Referenceable("hive_db");
+        db.set("qualifiedName", "default@cluster");
+        Referenceable table = new Referenceable("hive_table");
+        table.set("qualifiedName", "default.t1@cluster");
+
+        assertEquals(AbstractNotification.getMessageKey(new HookNotification.EntityCreateRequest("user", db, table)),
+                "default.t1@cluster");
+        assertEquals(AbstractNotification.getMessageKey(new HookNotification.EntityPartialUpdateRequest("user",
+                "hive_table", "qualifiedName", "default.t1@cluster", table)), "default.t1@cluster");
+        assertEquals(AbstractNotification.getMessageKey(new HookNotification.EntityDeleteRequest("user",
+                "hive_table", "qualifiedName", "default.t1@cluster")), "default.t1@cluster");
+        assertNull(AbstractNotification.getMessageKey(
+                new TestMessage(HookNotification.HookNotificationType.TYPE_CREATE, "user")));
+    }
+
+    @Test
+    public void testGetMessageKeyOfLineageMessage() throws Exception {
+        Referenceable db = new Referenceable("hive_db");
+        db.set("qualifiedName", "default@cluster");
+        Referenceable source = new Referenceable("hive_table");
+        source.set("qualifiedName", "default.t1@cluster");
+        source.set("db", db);
+        Referenceable target = new Referenceable("hive_table");
+        target.set("qualifiedName", "default.t2@cluster");
+        target.set("db", db);
+        Referenceable process = new Referenceable("hive_process");
+        process.set("qualifiedName", "default.t2@cluster:1480000000000");
+        process.set("inputs", Arrays.asList(source));
+        process.set("outputs", Arrays.asList(target));
+
+        //Like a CTAS from HiveHook, the process comes last, yet the message is about the table it creates
+        assertEquals(AbstractNotification.getMessageKey(
+                new HookNotification.EntityUpdateRequest("user", db, source, db, target, process)), "default.t2@cluster");
+    }
+
     public static class TestMessage extends HookNotification.HookNotificationMessage {
 
         public TestMessage(HookNotification.HookNotificationType type, String user) {
@@ -67,4 +67,35 @@ public class HookMessageDeserializerTest {
         assertEquals(deserializedEntity.getTraits(), entity.getTraits());
         assertEquals(deserializedEntity.getTrait(traitName), entity.getTrait(traitName));
     }
+
+    @Test
+    public void testDeserializeCompressed() throws Exception {
+        HookMessageDeserializer deserializer = new HookMessageDeserializer();
+
+        List<Referenceable> entities = new LinkedList<>();
+        for (int i = 0; i < 100; i++) {
+            Referenceable column = new Referenceable("hive_column");
+            column.set("qualifiedName", "default.table1.column" + i + "@cluster1");
+            column.set("name", "column" + i);
+            entities.add(column);
+        }
+
+        HookNotification.EntityCreateRequest message = new HookNotification.EntityCreateRequest("user1", entities);
+
+        String json           = AbstractNotification.getMessageJson(message);
+        String compressedJson = AbstractNotification.getMessageJson(message, 0);
+
+        assertTrue(compressedJson.length() < json.length() / 4);
+
+        HookNotification.HookNotificationMessage deserializedMessage = deserializer.deserialize(compressedJson);
+
+        assertTrue(deserializedMessage instanceof HookNotification.EntityCreateRequest);
+        assertEquals(deserializedMessage.getUser(), message.getUser());
+
+        List<Referenceable> deserializedEntities =
+            ((HookNotification.EntityCreateRequest) deserializedMessage).getEntities();
+
+        assertEquals(deserializedEntities.size(), entities.size());
+        assertEquals(deserializedEntities.get(99).get("qualifiedName"), "default.table1.column99@cluster1");
+    }
 }
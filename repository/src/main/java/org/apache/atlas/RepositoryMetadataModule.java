@@ -38,6 +38,7 @@ import org.apache.atlas.listener.TypesChangeListener;
 import org.apache.atlas.repository.MetadataRepository;
 import org.apache.atlas.repository.audit.EntityAuditListener;
 import org.apache.atlas.repository.audit.EntityAuditRepository;
+import org.apache.atlas.repository.graph.AsyncFullTextIndexer;
 import org.apache.atlas.repository.graph.DeleteHandler;
 import org.apache.atlas.repository.graph.GraphBackedMetadataRepository;
 import org.apache.atlas.repository.graph.GraphBackedSearchIndexer;
@@ -57,7 +58,9 @@ import org.apache.atlas.repository.typestore.GraphBackedTypeStore;
 import org.apache.atlas.repository.typestore.ITypeStore;
 import org.apache.atlas.service.Service;
 import org.apache.atlas.services.DefaultMetadataService;
+import org.apache.atlas.services.EntityChangeOutbox;
 import org.apache.atlas.services.MetadataService;
+import org.apache.atlas.services.MetricsService;
 import org.apache.atlas.store.AtlasTypeDefStore;
 import org.apache.atlas.type.AtlasTypeRegistry;
 import org.apache.atlas.typesystem.types.TypeSystem;
@@ -97,6 +100,7 @@ public class RepositoryMetadataModule extends com.google.inject.AbstractModule {
                 Multibinder.newSetBinder(binder(), TypeDefChangeListener.class);
         typeDefChangeListenerMultibinder.addBinding().to(DefaultMetadataService.class);
         typeDefChangeListenerMultibinder.addBinding().to(GraphBackedSearchIndexer.class).asEagerSingleton();
+        typeDefChangeListenerMultibinder.addBinding().to(MetricsService.class);
 
         bind(AtlasEntityStore.class).to(AtlasEntityStoreV1.class);
 
@@ -119,6 +123,18 @@ public class RepositoryMetadataModule extends com.google.inject.AbstractModule {
 
         bind(TypeCache.class).to(AtlasRepositoryConfiguration.getTypeCache()).asEagerSingleton();
 
+        //the full-text indexer is a service, so that its workers are started and stopped with the server
+        bind(AsyncFullTextIndexer.class).asEagerSingleton();
+        Multibinder<Service> serviceBinder = Multibinder.newSetBinder(binder(), Service.class);
+        serviceBinder.addBinding().to(AsyncFullTextIndexer.class);
+
+        //the metadata service starts and stops the outbox, as it delivers entity changes only on the active instance
+        bind(EntityChangeOutbox.class).asEagerSingleton();
+
+        //services with thread pools, so that their threads are stopped with the server
+        serviceBinder.addBinding().to(DefaultMetadataService.class);
+        serviceBinder.addBinding().to(EntityLineageService.class);
+
         bind(EntityGraphMapper.class);
 
         bind(MapVertexMapper.class).asEagerSingleton();
@@ -135,6 +151,9 @@ public class RepositoryMetadataModule extends com.google.inject.AbstractModule {
                 Multibinder.newSetBinder(binder(), EntityChangeListener.class);
         entityChangeListenerBinder.addBinding().to(EntityAuditListener.class);
 
+        //MetricsService maintains the entity and tag counts from the entity change notifications
+        entityChangeListenerBinder.addBinding().to(MetricsService.class);
+
         MethodInterceptor interceptor = new GraphTransactionInterceptor();
         requestInjection(interceptor);
         bindInterceptor(Matchers.any(), Matchers.annotatedWith(GraphTransaction.class), interceptor);
@@ -88,7 +88,7 @@ public class EntityDiscoveryService implements AtlasDiscoveryService {
                 LOG.debug("Executing DSL query: {}", dslQuery);
             }
 
-            Object result = graph.executeGremlinScript(gremlinQuery.queryStr(), false);
+            Object result = graph.executeGremlinScript(gremlinQuery.queryStr(), gremlinQuery.queryParams(), false);
 
             if (result instanceof List && CollectionUtils.isNotEmpty((List)result)) {
                 List   queryResult  = (List) result;
@@ -150,19 +150,33 @@ public class EntityDiscoveryService implements AtlasDiscoveryService {
     }
 
     private List<AtlasFullTextResult> getIndexQueryResults(AtlasIndexQuery query, QueryParams params) {
-        List<AtlasFullTextResult> ret  = new ArrayList<>();
-        Iterator<Result>          iter = query.vertices();
-
-        while (iter.hasNext() && ret.size() < params.limit()) {
-            Result idxQueryResult = iter.next();
-            AtlasVertex vertex = idxQueryResult.getVertex();
-            String guid = vertex != null ? vertex.getProperty(Constants.GUID_PROPERTY_KEY, String.class) : null;
-
-            if (guid != null) {
-                AtlasEntityHeaderWithAssociations entity = toAtlasEntityHeaderwithAssociations(vertex);
-                Double score = idxQueryResult.getScore();
-                ret.add(new AtlasFullTextResult(entity, score));
+        List<AtlasFullTextResult> ret    = new ArrayList<>();
+        int                       offset = params.offset();
+
+        // offset and limit are pushed down to the index; results without a guid are filtered out,
+        // so the following results are fetched until the limit is reached or the results are exhausted
+        while (ret.size() < params.limit()) {
+            int              pageSize = params.limit() - ret.size();
+            Iterator<Result> iter     = query.offset(offset).limit(pageSize).vertices();
+            int              fetched  = 0;
+
+            while (iter.hasNext()) {
+                Result idxQueryResult = iter.next();
+                AtlasVertex vertex = idxQueryResult.getVertex();
+                String guid = vertex != null ? vertex.getProperty(Constants.GUID_PROPERTY_KEY, String.class) : null;
+                fetched++;
+
+                if (guid != null) {
+                    AtlasEntityHeaderWithAssociations entity = toAtlasEntityHeaderwithAssociations(vertex);
+                    Double score = idxQueryResult.getScore();
+                    ret.add(new AtlasFullTextResult(entity, score));
+                }
+            }
+
+            if (fetched < pageSize) {
+                break;
             }
+            offset += fetched;
         }
 
         return ret;
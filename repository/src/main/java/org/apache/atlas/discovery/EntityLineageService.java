@@ -19,8 +19,12 @@
 package org.apache.atlas.discovery;
 
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.atlas.ApplicationProperties;
 import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasErrorCode;
+import org.apache.atlas.AtlasException;
 import org.apache.atlas.exception.AtlasBaseException;
 import org.apache.atlas.model.instance.AtlasEntity.Status;
 import org.apache.atlas.model.instance.AtlasEntityHeader;
@@ -29,24 +33,53 @@ import org.apache.atlas.model.lineage.AtlasLineageInfo.LineageRelation;
 import org.apache.atlas.model.lineage.AtlasLineageInfo.LineageDirection;
 import org.apache.atlas.repository.Constants;
 import org.apache.atlas.repository.graph.AtlasGraphProvider;
+import org.apache.atlas.repository.graphdb.AtlasEdge;
+import org.apache.atlas.repository.graphdb.AtlasEdgeDirection;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.service.Service;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Singleton
+public class EntityLineageService implements AtlasLineageService, Service {
+    private static final Logger LOG = LoggerFactory.getLogger(EntityLineageService.class);
 
-public class EntityLineageService implements AtlasLineageService {
     private static final String INPUT_PROCESS_EDGE      =  "__Process.inputs";
     private static final String OUTPUT_PROCESS_EDGE     =  "__Process.outputs";
 
-    private final AtlasGraph graph;
+    public static final String LINEAGE_USE_GREMLIN   = "atlas.lineage.gremlin.enabled";
+    public static final String LINEAGE_MAX_ENTITIES  = "atlas.lineage.max.entities";
+    public static final String LINEAGE_THREAD_COUNT  = "atlas.lineage.threads";
+
+    private static final boolean DEFAULT_LINEAGE_USE_GREMLIN  = false;
+    private static final int     DEFAULT_LINEAGE_MAX_ENTITIES = 10000;
+    private static final int     DEFAULT_LINEAGE_THREAD_COUNT = 4;
+
+    private final AtlasGraph      graph;
+    private final boolean         useGremlin;
+    private final int             maxEntities;
+    private final ExecutorService executorService;
 
     /**
      *  Gremlin query to retrieve input/output lineage for specified depth on a DataSet entity.
@@ -69,7 +102,43 @@ public class EntityLineageService implements AtlasLineageService {
 
     @Inject
     EntityLineageService() throws DiscoveryException {
-        this.graph = AtlasGraphProvider.getGraphInstance();
+        this(AtlasGraphProvider.getGraphInstance(), getApplicationProperties());
+    }
+
+    @VisibleForTesting
+    EntityLineageService(AtlasGraph graph, Configuration configuration) {
+        this.graph           = graph;
+        this.useGremlin      = configuration != null ? configuration.getBoolean(LINEAGE_USE_GREMLIN, DEFAULT_LINEAGE_USE_GREMLIN) : DEFAULT_LINEAGE_USE_GREMLIN;
+        this.maxEntities     = configuration != null ? configuration.getInt(LINEAGE_MAX_ENTITIES, DEFAULT_LINEAGE_MAX_ENTITIES) : DEFAULT_LINEAGE_MAX_ENTITIES;
+        int threadCount      = configuration != null ? configuration.getInt(LINEAGE_THREAD_COUNT, DEFAULT_LINEAGE_THREAD_COUNT) : DEFAULT_LINEAGE_THREAD_COUNT;
+        this.executorService = Executors.newFixedThreadPool(Math.max(threadCount, 1),
+                                                            new ThreadFactoryBuilder().setNameFormat("atlas-lineage-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void start() throws AtlasException {
+    }
+
+    /**
+     * Stops the lineage threads. Requests waiting for the input lineage being read by a lineage thread fail;
+     * later requests read both directions on the calling thread.
+     */
+    @Override
+    public void stop() throws AtlasException {
+        for (Runnable task : executorService.shutdownNow()) {
+            // tasks which haven't started are cancelled, so that their requests don't wait for them
+            if (task instanceof Future) {
+                ((Future) task).cancel(true);
+            }
+        }
+    }
+
+    private static Configuration getApplicationProperties() throws DiscoveryException {
+        try {
+            return ApplicationProperties.get();
+        } catch (AtlasException e) {
+            throw new DiscoveryException(e);
+        }
     }
 
     @Override
@@ -98,6 +167,127 @@ public class EntityLineageService implements AtlasLineageService {
     }
 
     private AtlasLineageInfo getLineageInfo(String guid, LineageDirection direction, int depth) throws AtlasBaseException {
+        return useGremlin ? getLineageInfoUsingGremlin(guid, direction, depth) : traverseLineage(guid, direction, depth);
+    }
+
+    /**
+     * Computes the lineage by walking the process edges breadth-first from the given entity.  Each vertex is
+     * expanded at most once, so unlike the path based gremlin query, the cost is linear in the size of the
+     * lineage graph rather than in the number of distinct paths through it.
+     *
+     * @param depth maximum number of processes between the entity and any entity in the lineage; < 1 for no limit
+     */
+    @VisibleForTesting
+    AtlasLineageInfo traverseLineage(String guid, LineageDirection direction, int depth) throws AtlasBaseException {
+        Map<String, AtlasEntityHeader> entities  = new HashMap<>();
+        Set<LineageRelation>           relations = new HashSet<>();
+        AtlasVertex                    start     = findDataSetVertex(guid);
+
+        if (start == null) {
+            throw new AtlasBaseException(AtlasErrorCode.INSTANCE_GUID_NOT_FOUND, guid);
+        }
+
+        // dataSet -> process edge label and process -> dataSet edge label, as seen from the dataSet being expanded
+        String           toProcessLabel  = direction.equals(LineageDirection.INPUT) ? OUTPUT_PROCESS_EDGE : INPUT_PROCESS_EDGE;
+        String           toDataSetLabel  = direction.equals(LineageDirection.INPUT) ? INPUT_PROCESS_EDGE : OUTPUT_PROCESS_EDGE;
+        Set<Object>      visited         = new HashSet<>();
+        List<AtlasVertex> frontier       = new ArrayList<>();
+        AtlasEntityHeader startEntity    = toAtlasEntityHeader(start);
+        boolean           budgetExceeded = false;
+
+        visited.add(start.getId());
+        frontier.add(start);
+
+        for (int level = 1; !frontier.isEmpty() && (depth < 1 || level <= depth) && !budgetExceeded; level++) {
+            List<AtlasVertex> nextFrontier = new ArrayList<>();
+
+            for (AtlasVertex dataSet : frontier) {
+                String dataSetGuid = dataSet.getProperty(Constants.GUID_PROPERTY_KEY, String.class);
+
+                for (AtlasEdge processEdge : (Iterable<AtlasEdge>) dataSet.getEdges(AtlasEdgeDirection.IN, toProcessLabel)) {
+                    AtlasVertex       process       = processEdge.getOutVertex();
+                    AtlasEntityHeader processEntity = null;
+
+                    for (AtlasEdge dataSetEdge : (Iterable<AtlasEdge>) process.getEdges(AtlasEdgeDirection.OUT, toDataSetLabel)) {
+                        AtlasVertex next = dataSetEdge.getInVertex();
+
+                        // like the gremlin query, the lineage only goes through dataSets
+                        if (!isDataSet(next)) {
+                            continue;
+                        }
+
+                        // a process is part of the lineage only if it leads to another dataSet
+                        if (processEntity == null) {
+                            processEntity = getOrCreateEntityHeader(entities, process);
+
+                            addRelation(relations, direction, dataSetGuid, processEntity.getGuid());
+                        }
+
+                        AtlasEntityHeader nextEntity = getOrCreateEntityHeader(entities, next);
+
+                        addRelation(relations, direction, processEntity.getGuid(), nextEntity.getGuid());
+
+                        if (visited.add(next.getId())) {
+                            nextFrontier.add(next);
+                        }
+                    }
+
+                    if (maxEntities > 0 && entities.size() >= maxEntities) {
+                        LOG.warn("Lineage of {} has more than {} entities. Returning partial lineage", guid, maxEntities);
+
+                        budgetExceeded = true;
+
+                        break;
+                    }
+                }
+
+                if (budgetExceeded) {
+                    break;
+                }
+            }
+
+            frontier = nextFrontier;
+        }
+
+        if (!relations.isEmpty()) {
+            entities.put(startEntity.getGuid(), startEntity);
+        }
+
+        return new AtlasLineageInfo(guid, entities, relations, direction, depth);
+    }
+
+    private static boolean isDataSet(AtlasVertex vertex) {
+        Collection<String> superTypes = vertex.getPropertyValues(Constants.SUPER_TYPES_PROPERTY_KEY, String.class);
+
+        return superTypes != null && superTypes.contains(AtlasClient.DATA_SET_SUPER_TYPE);
+    }
+
+    private AtlasEntityHeader getOrCreateEntityHeader(Map<String, AtlasEntityHeader> entities, AtlasVertex vertex) {
+        String            guid = vertex.getProperty(Constants.GUID_PROPERTY_KEY, String.class);
+        AtlasEntityHeader ret  = entities.get(guid);
+
+        if (ret == null) {
+            ret = toAtlasEntityHeader(vertex);
+
+            entities.put(guid, ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param fromGuid guid of the entity closer to the base entity in the traversal
+     * @param toGuid guid of the entity further from the base entity in the traversal
+     */
+    private void addRelation(Set<LineageRelation> relations, LineageDirection direction, String fromGuid, String toGuid) {
+        if (direction.equals(LineageDirection.INPUT)) {
+            relations.add(new LineageRelation(toGuid, fromGuid));
+        } else {
+            relations.add(new LineageRelation(fromGuid, toGuid));
+        }
+    }
+
+    private AtlasLineageInfo getLineageInfoUsingGremlin(String guid, LineageDirection direction, int depth) throws AtlasBaseException {
         Map<String, AtlasEntityHeader> entities     = new HashMap<String, AtlasEntityHeader>();
         Set<LineageRelation>           relations    = new HashSet<LineageRelation>();
         String                         lineageQuery = getLineageQuery(guid, direction, depth);
@@ -142,8 +332,20 @@ public class EntityLineageService implements AtlasLineageService {
     }
 
     private AtlasLineageInfo getBothLineageInfo(String guid, int depth) throws AtlasBaseException {
-        AtlasLineageInfo inputLineage  = getLineageInfo(guid, LineageDirection.INPUT, depth);
-        AtlasLineageInfo outputLineage = getLineageInfo(guid, LineageDirection.OUTPUT, depth);
+        AtlasLineageInfo inputLineage;
+        AtlasLineageInfo outputLineage;
+
+        if (useGremlin || executorService.isShutdown()) {
+            inputLineage  = getLineageInfo(guid, LineageDirection.INPUT, depth);
+            outputLineage = getLineageInfo(guid, LineageDirection.OUTPUT, depth);
+        } else {
+            // the two traversals are independent; run the input traversal in a worker thread
+            Future<AtlasLineageInfo> inputFuture = executorService.submit(new LineageTask(guid, LineageDirection.INPUT, depth));
+
+            outputLineage = getLineageInfo(guid, LineageDirection.OUTPUT, depth);
+            inputLineage  = getResult(inputFuture, guid);
+        }
+
         AtlasLineageInfo ret           = inputLineage;
 
         ret.getRelations().addAll(outputLineage.getRelations());
@@ -153,6 +355,49 @@ public class EntityLineageService implements AtlasLineageService {
         return ret;
     }
 
+    private AtlasLineageInfo getResult(Future<AtlasLineageInfo> future, String guid) throws AtlasBaseException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new AtlasBaseException(AtlasErrorCode.INSTANCE_LINEAGE_QUERY_FAILED, e, guid);
+        } catch (CancellationException e) {
+            throw new AtlasBaseException(AtlasErrorCode.INSTANCE_LINEAGE_QUERY_FAILED, e, guid);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AtlasBaseException) {
+                throw (AtlasBaseException) e.getCause();
+            }
+
+            throw new AtlasBaseException(AtlasErrorCode.INSTANCE_LINEAGE_QUERY_FAILED, e.getCause(), guid);
+        }
+    }
+
+    /**
+     * Traverses the lineage in a worker thread. The graph transaction opened by the reads in the worker
+     * thread is closed once the traversal completes.
+     */
+    private class LineageTask implements Callable<AtlasLineageInfo> {
+        private final String           guid;
+        private final LineageDirection direction;
+        private final int              depth;
+
+        LineageTask(String guid, LineageDirection direction, int depth) {
+            this.guid      = guid;
+            this.direction = direction;
+            this.depth     = depth;
+        }
+
+        @Override
+        public AtlasLineageInfo call() throws AtlasBaseException {
+            try {
+                return traverseLineage(guid, direction, depth);
+            } finally {
+                graph.rollback();
+            }
+        }
+    }
+
     private String getLineageQuery(String entityGuid, LineageDirection direction, int depth) throws AtlasBaseException {
         String lineageQuery = null;
 
@@ -192,16 +437,15 @@ public class EntityLineageService implements AtlasLineageService {
     }
 
     private boolean entityExists(String guid) {
-        boolean ret = false;
+        return findDataSetVertex(guid) != null;
+    }
+
+    private AtlasVertex findDataSetVertex(String guid) {
         Iterator<AtlasVertex> results = graph.query()
                 .has(Constants.GUID_PROPERTY_KEY, guid)
                 .has(Constants.SUPER_TYPES_PROPERTY_KEY, AtlasClient.DATA_SET_SUPER_TYPE)
                 .vertices().iterator();
 
-        while (results.hasNext()) {
-            return true;
-        }
-
-        return ret;
+        return results.hasNext() ? results.next() : null;
     }
 }
\ No newline at end of file
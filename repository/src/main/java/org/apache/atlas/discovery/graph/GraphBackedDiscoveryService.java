@@ -88,34 +88,42 @@ public class GraphBackedDiscoveryService implements DiscoveryService {
     public String searchByFullText(String query, QueryParams queryParams) throws DiscoveryException {
         String graphQuery = String.format("v.\"%s\":(%s)", Constants.ENTITY_TEXT_PROPERTY_KEY, query);
         LOG.debug("Full text query: {}", graphQuery);
-        Iterator<AtlasIndexQuery.Result<?, ?>> results =graph.indexQuery(Constants.FULLTEXT_INDEX, graphQuery).vertices();
+        AtlasIndexQuery indexQuery = graph.indexQuery(Constants.FULLTEXT_INDEX, graphQuery);
         JSONArray response = new JSONArray();
 
-        int index = 0;
-        while (results.hasNext() && index < queryParams.offset()) {
-            results.next();
-            index++;
-        }
+        //offset and limit are pushed down to the index. Since results of non-class entities are filtered
+        //out, the following results are fetched until the limit is reached or the results are exhausted.
+        int offset = queryParams.offset();
+        while (response.length() < queryParams.limit()) {
+            int pageSize = queryParams.limit() - response.length();
+            Iterator<AtlasIndexQuery.Result<?, ?>> results = indexQuery.offset(offset).limit(pageSize).vertices();
+
+            int fetched = 0;
+            while (results.hasNext()) {
+                AtlasIndexQuery.Result<?,?> result = results.next();
+                AtlasVertex<?,?> vertex = result.getVertex();
+                fetched++;
 
-        while (results.hasNext() && response.length() < queryParams.limit()) {
-
-            AtlasIndexQuery.Result<?,?> result = results.next();
-            AtlasVertex<?,?> vertex = result.getVertex();
-
-            JSONObject row = new JSONObject();
-            String guid = GraphHelper.getGuid(vertex);
-            if (guid != null) { //Filter non-class entities
-                try {
-                    row.put("guid", guid);
-                    row.put(AtlasClient.TYPENAME, GraphHelper.getTypeName(vertex));
-                    row.put(SCORE, result.getScore());
-                } catch (JSONException e) {
-                    LOG.error("Unable to create response", e);
-                    throw new DiscoveryException("Unable to create response");
+                JSONObject row = new JSONObject();
+                String guid = GraphHelper.getGuid(vertex);
+                if (guid != null) { //Filter non-class entities
+                    try {
+                        row.put("guid", guid);
+                        row.put(AtlasClient.TYPENAME, GraphHelper.getTypeName(vertex));
+                        row.put(SCORE, result.getScore());
+                    } catch (JSONException e) {
+                        LOG.error("Unable to create response", e);
+                        throw new DiscoveryException("Unable to create response");
+                    }
+
+                    response.put(row);
                 }
+            }
 
-                response.put(row);
+            if (fetched < pageSize) {
+                break;
             }
+            offset += fetched;
         }
         return response.toString();
     }
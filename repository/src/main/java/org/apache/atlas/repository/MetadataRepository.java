@@ -20,6 +20,9 @@ package org.apache.atlas.repository;
 
 import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasException;
+import org.apache.atlas.services.EntityListPage;
+import org.apache.atlas.services.EntityProjection;
+import org.apache.atlas.services.EntityListVisitor;
 import org.apache.atlas.typesystem.ITypedReferenceableInstance;
 import org.apache.atlas.typesystem.ITypedStruct;
 import org.apache.atlas.typesystem.exception.EntityExistsException;
@@ -106,6 +109,29 @@ public interface MetadataRepository {
      */
     ITypedReferenceableInstance getEntityDefinition(String guid) throws RepositoryException, EntityNotFoundException;
 
+    /**
+     * Fetch the parts of the definition of an entity selected by the projection. Only the vertex properties and
+     * edges of the selected attributes are read.
+     *
+     * @param guid globally unique identifier for the entity
+     * @param projection attributes to read, and whether composite entities and traits are read
+     * @return entity (typed instance) definition
+     * @throws RepositoryException
+     */
+    ITypedReferenceableInstance getEntityDefinition(String guid, EntityProjection projection)
+            throws RepositoryException, EntityNotFoundException;
+
+    /**
+     * Fetch the complete definitions of the entities with the given GUIDs. The vertices are looked up with
+     * a single graph query and entities referenced by more than one of them are mapped only once.
+     *
+     * @param guids globally unique identifiers for the entities
+     * @return entity (typed instance) definitions, in the order of the given GUIDs
+     * @throws RepositoryException
+     * @throws EntityNotFoundException if any of the entities could not be found
+     */
+    List<ITypedReferenceableInstance> getEntityDefinitions(List<String> guids) throws RepositoryException, EntityNotFoundException;
+
     /**
      * Gets the list of entities for a given entity type.
      *
@@ -115,6 +141,33 @@ public interface MetadataRepository {
      */
     List<String> getEntityList(String entityType) throws RepositoryException;
 
+    /**
+     * Gets a page of the entities for a given entity type. Pages are positioned with an opaque continuation
+     * token, returned with the previous page. A list that fits in one page is read from the exact-match index of
+     * the type, and has every committed entity. Where the vertex index positions results after a vertex, longer
+     * lists are paged in vertex order: the token marks the last entity of the page, so entities created or deleted
+     * between two pages don't cause the entities of the following pages to be skipped or repeated, but an entity is
+     * listed only once the index has made it searchable. Otherwise they are paged by offset in the exact-match index.
+     *
+     * @param entityType name of a type which is unique
+     * @param limit maximum number of entities to return
+     * @param continuationToken token of the page to return, or null for the first page
+     * @return page of entity guids
+     * @throws RepositoryException
+     */
+    EntityListPage getEntityList(String entityType, int limit, String continuationToken) throws RepositoryException;
+
+    /**
+     * Passes the entities for a given entity type to the visitor as they are read, without holding them in memory.
+     * Starting at the first entity, they are read from the exact-match index of the type in a single pass.
+     *
+     * @param entityType name of a type which is unique
+     * @param continuationToken token of the page to start at, or null to start at the first entity
+     * @param visitor visitor receiving the entity guids
+     * @throws AtlasException
+     */
+    void visitEntityList(String entityType, String continuationToken, EntityListVisitor visitor) throws AtlasException;
+
     /**
      * Deletes entities for the specified guids.
      *
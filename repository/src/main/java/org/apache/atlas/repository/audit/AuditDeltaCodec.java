@@ -0,0 +1,296 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.atlas.repository.audit;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.atlas.AtlasException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes the entity definitions of audit events as deltas against the definition stored with the previous event of
+ * the same entity, and decodes them.
+ *
+ * A delta records the attributes that were set, removed or, for nested objects, changed, along with the timestamp
+ * and a checksum of the definition it applies to. Every snapshot interval events, whenever the previous
+ * definition of the entity isn't cached, and for the first event at least the snapshot max age after the last full
+ * definition, the definition is stored in full instead. The max age bounds how far back a delta chain reaches, so
+ * that with a TTL on the table, the events a delta refers to don't expire long before the delta itself. The checksum
+ * guards against a base event which was overwritten by another event with the same key; such definitions can't be
+ * decoded. The definition of an event is cached as it is encoded, before the event is written: when the write fails,
+ * the entity is evicted, so that its next definition is stored in full rather than as a delta against a missing event.
+ */
+class AuditDeltaCodec {
+    private static final String BASE_TIMESTAMP = "b";
+    private static final String CHECKSUM       = "c";
+    private static final String DIFF           = "d";
+    private static final String SET            = "s";
+    private static final String REMOVE         = "r";
+    private static final String NESTED         = "n";
+
+    private final int                            snapshotInterval;
+    private final long                           snapshotMaxAgeMs;
+    private final Map<String, StoredDefinition> lastDefinitions;
+
+    AuditDeltaCodec(int snapshotInterval, long snapshotMaxAgeMs, final int cacheSize) {
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotMaxAgeMs = snapshotMaxAgeMs;
+        this.lastDefinitions  = new LinkedHashMap<String, StoredDefinition>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredDefinition> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return the definition as a delta against the previous definition of the entity, or null if the definition
+     *         should be stored in full
+     */
+    String encode(String entityId, long timestamp, String definition) throws AtlasException {
+        JsonObject target;
+
+        try {
+            target = parse(definition);
+        } catch (JsonParseException | IllegalStateException e) {
+            return null;
+        }
+
+        StoredDefinition previous;
+
+        synchronized (lastDefinitions) {
+            previous = lastDefinitions.get(entityId);
+        }
+
+        String     ret               = null;
+        JsonObject stored            = target;
+        int        deltaCount        = 0;
+        long       snapshotTimestamp = timestamp;
+
+        // an event older than the previous one is stored in full, as it may overwrite an event another delta refers to
+        if (previous != null && previous.timestamp < timestamp && previous.deltaCount + 1 < snapshotInterval
+                && timestamp - previous.snapshotTimestamp < snapshotMaxAgeMs) {
+            JsonObject base  = parse(decompress(previous.definition));
+            JsonObject diff  = diff(base, target);
+            JsonObject delta = new JsonObject();
+
+            delta.addProperty(BASE_TIMESTAMP, previous.timestamp);
+            delta.addProperty(CHECKSUM, checksum(base));
+            delta.add(DIFF, diff);
+
+            ret        = delta.toString();
+            stored     = apply(base, diff); // as a reader decodes it, so that the next checksum matches
+            deltaCount = previous.deltaCount + 1;
+
+            snapshotTimestamp = previous.snapshotTimestamp;
+        }
+
+        synchronized (lastDefinitions) {
+            StoredDefinition current = lastDefinitions.get(entityId);
+
+            if (current == null || current.timestamp < timestamp) {
+                lastDefinitions.put(entityId, new StoredDefinition(timestamp, compress(stored.toString()), deltaCount,
+                                                                   snapshotTimestamp));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Forget the last definition of the given entity, whose event may not have been written.
+     */
+    void evict(String entityId) {
+        synchronized (lastDefinitions) {
+            lastDefinitions.remove(entityId);
+        }
+    }
+
+    /**
+     * @return timestamp of the event whose definition the given delta applies to
+     */
+    static long getBaseTimestamp(JsonObject delta) {
+        return delta.get(BASE_TIMESTAMP).getAsLong();
+    }
+
+    /**
+     * @return the definition decoded from the given delta, or null if the base isn't the definition the delta was
+     *         computed against
+     */
+    static JsonObject decode(JsonObject base, JsonObject delta) {
+        if (checksum(base) != delta.get(CHECKSUM).getAsLong()) {
+            return null;
+        }
+
+        return apply(base, delta.getAsJsonObject(DIFF));
+    }
+
+    static JsonObject parse(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+
+    static byte[] compress(String value) throws AtlasException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new AtlasException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static String decompress(byte[] value) throws AtlasException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(value))) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[8192];
+
+            for (int len = in.read(buffer); len != -1; len = in.read(buffer)) {
+                bytes.write(buffer, 0, len);
+            }
+
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new AtlasException(e);
+        }
+    }
+
+    private static JsonObject diff(JsonObject base, JsonObject target) {
+        JsonObject set    = new JsonObject();
+        JsonArray  remove = new JsonArray();
+        JsonObject nested = new JsonObject();
+
+        for (Map.Entry<String, JsonElement> entry : target.entrySet()) {
+            String      name      = entry.getKey();
+            JsonElement value     = entry.getValue();
+            JsonElement baseValue = base.get(name);
+
+            if (!base.has(name)) {
+                set.add(name, value);
+            } else if (!baseValue.equals(value)) {
+                if (baseValue.isJsonObject() && value.isJsonObject()) {
+                    nested.add(name, diff(baseValue.getAsJsonObject(), value.getAsJsonObject()));
+                } else {
+                    set.add(name, value);
+                }
+            }
+        }
+
+        for (Map.Entry<String, JsonElement> entry : base.entrySet()) {
+            if (!target.has(entry.getKey())) {
+                remove.add(entry.getKey());
+            }
+        }
+
+        JsonObject ret = new JsonObject();
+
+        if (set.entrySet().size() > 0) {
+            ret.add(SET, set);
+        }
+
+        if (remove.size() > 0) {
+            ret.add(REMOVE, remove);
+        }
+
+        if (nested.entrySet().size() > 0) {
+            ret.add(NESTED, nested);
+        }
+
+        return ret;
+    }
+
+    // returns a new object; elements of the base which are not changed are shared, and never modified
+    private static JsonObject apply(JsonObject base, JsonObject diff) {
+        JsonObject  set    = diff.has(SET) ? diff.getAsJsonObject(SET) : new JsonObject();
+        JsonObject  nested = diff.has(NESTED) ? diff.getAsJsonObject(NESTED) : new JsonObject();
+        Set<String> remove = new HashSet<>();
+
+        if (diff.has(REMOVE)) {
+            for (JsonElement name : diff.getAsJsonArray(REMOVE)) {
+                remove.add(name.getAsString());
+            }
+        }
+
+        JsonObject ret = new JsonObject();
+
+        for (Map.Entry<String, JsonElement> entry : base.entrySet()) {
+            String name = entry.getKey();
+
+            if (remove.contains(name)) {
+                continue;
+            }
+
+            if (set.has(name)) {
+                ret.add(name, set.get(name));
+            } else if (nested.has(name)) {
+                ret.add(name, apply(entry.getValue().getAsJsonObject(), nested.getAsJsonObject(name)));
+            } else {
+                ret.add(name, entry.getValue());
+            }
+        }
+
+        for (Map.Entry<String, JsonElement> entry : set.entrySet()) {
+            if (!base.has(entry.getKey())) {
+                ret.add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return ret;
+    }
+
+    private static long checksum(JsonObject definition) {
+        CRC32 crc = new CRC32();
+
+        crc.update(definition.toString().getBytes(StandardCharsets.UTF_8));
+
+        return crc.getValue();
+    }
+
+    // the definition is kept compressed, as entity definitions can be large
+    private static class StoredDefinition {
+        final long   timestamp;
+        final byte[] definition;
+        final int    deltaCount;
+        final long   snapshotTimestamp; // of the last definition stored in full
+
+        StoredDefinition(long timestamp, byte[] definition, int deltaCount, long snapshotTimestamp) {
+            this.timestamp         = timestamp;
+            this.definition        = definition;
+            this.deltaCount        = deltaCount;
+            this.snapshotTimestamp = snapshotTimestamp;
+        }
+    }
+}
@@ -24,11 +24,13 @@ import org.apache.atlas.EntityAuditEvent;
 import org.apache.atlas.EntityAuditEvent.EntityAuditAction;
 import org.apache.atlas.RequestContext;
 import org.apache.atlas.listener.EntityChangeListener;
-import org.apache.atlas.typesystem.IReferenceableInstance;
 import org.apache.atlas.typesystem.IStruct;
 import org.apache.atlas.typesystem.ITypedReferenceableInstance;
+import org.apache.atlas.typesystem.Referenceable;
 import org.apache.atlas.typesystem.json.InstanceSerialization;
 import org.apache.atlas.typesystem.types.AttributeInfo;
+import org.apache.atlas.typesystem.types.ClassType;
+import org.apache.atlas.typesystem.types.TypeSystem;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.slf4j.Logger;
@@ -40,6 +42,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Listener on entity create/update/delete, tag add/delete. Adds the corresponding audit event to the audit repository.
@@ -109,11 +112,15 @@ public class EntityAuditListener implements EntityChangeListener {
         auditRepository.putEvents(events);
     }
 
-    private EntityAuditEvent createEvent(ITypedReferenceableInstance entity, long ts, EntityAuditAction action)
+    private EntityAuditEvent createEvent(final ITypedReferenceableInstance entity, long ts, final EntityAuditAction action)
             throws AtlasException {
-        String detail = getAuditEventDetail(entity, action);
-
-        return createEvent(entity, ts, action, detail);
+        return new DeferredEntityAuditEvent(entity.getId()._getId(), ts, RequestContext.get().getUser(), action, entity,
+                new Callable<String>() {
+                    @Override
+                    public String call() throws AtlasException {
+                        return getAuditEventDetail(entity, action);
+                    }
+                });
     }
 
     private EntityAuditEvent createEvent(ITypedReferenceableInstance entity, long ts, EntityAuditAction action, String details)
@@ -122,10 +129,10 @@ public class EntityAuditListener implements EntityChangeListener {
     }
 
     private String getAuditEventDetail(ITypedReferenceableInstance entity, EntityAuditAction action) throws AtlasException {
-        Map<String, Object> prunedAttributes = pruneEntityAttributesForAudit(entity);
+        ITypedReferenceableInstance auditEntity = pruneEntityAttributesForAudit(entity);
 
         String auditPrefix  = getAuditPrefix(action);
-        String auditString  = auditPrefix + InstanceSerialization.toJson(entity, true);
+        String auditString  = auditPrefix + InstanceSerialization.toJson(auditEntity, true);
         byte[] auditBytes   = auditString.getBytes(StandardCharsets.UTF_8);
         long   auditSize    = auditBytes != null ? auditBytes.length : 0;
         long   auditMaxSize = auditRepository.repositoryMaxSize();
@@ -134,131 +141,96 @@ public class EntityAuditListener implements EntityChangeListener {
             LOG.warn("audit record too long: entityType={}, guid={}, size={}; maxSize={}. entity attribute values not stored in audit",
                     entity.getTypeName(), entity.getId()._getId(), auditSize, auditMaxSize);
 
-            Map<String, Object> attrValues = entity.getValuesMap();
-
-            clearAttributeValues(entity);
-
-            auditString = auditPrefix + InstanceSerialization.toJson(entity, true);
-
-            addAttributeValues(entity, attrValues);
+            auditString = auditPrefix + InstanceSerialization.toJson(copyEntity(auditEntity, null), true);
         }
 
-        restoreEntityAttributes(entity, prunedAttributes);
-
         return auditString;
     }
 
-    private void clearAttributeValues(IReferenceableInstance entity) throws AtlasException {
-        Map<String, Object> attributesMap = entity.getValuesMap();
-
-        if (MapUtils.isNotEmpty(attributesMap)) {
-            for (String attribute : attributesMap.keySet()) {
-                entity.setNull(attribute);
-            }
-        }
-    }
-
-    private void addAttributeValues(ITypedReferenceableInstance entity, Map<String, Object> attributesMap) throws AtlasException {
-        if (MapUtils.isNotEmpty(attributesMap)) {
-            for (String attr : attributesMap.keySet()) {
-                entity.set(attr, attributesMap.get(attr));
-            }
-        }
-    }
-
-    private Map<String, Object> pruneEntityAttributesForAudit(ITypedReferenceableInstance entity) throws AtlasException {
-        Map<String, Object> ret               = null;
-        Map<String, Object> entityAttributes  = entity.getValuesMap();
-        List<String>        excludeAttributes = auditRepository.getAuditExcludeAttributes(entity.getTypeName());
+    /**
+     * The entity is shared with the other listeners, and may be audited on another thread, so it is not modified:
+     * if any attribute is excluded from audit, a copy without the excluded attributes is returned.
+     */
+    private ITypedReferenceableInstance pruneEntityAttributesForAudit(ITypedReferenceableInstance entity) throws AtlasException {
+        ITypedReferenceableInstance ret               = entity;
+        Map<String, Object>         entityAttributes  = entity.getValuesMap();
+        List<String>                excludeAttributes = auditRepository.getAuditExcludeAttributes(entity.getTypeName());
 
         if (CollectionUtils.isNotEmpty(excludeAttributes) && MapUtils.isNotEmpty(entityAttributes)) {
             Map<String, AttributeInfo> attributeInfoMap = entity.fieldMapping().fields;
+            Map<String, Object>        prunedAttributes = new HashMap<>(entityAttributes);
+            boolean                    isPruned         = false;
 
             for (String attrName : entityAttributes.keySet()) {
                 Object        attrValue = entityAttributes.get(attrName);
                 AttributeInfo attrInfo  = attributeInfoMap.get(attrName);
 
                 if (excludeAttributes.contains(attrName)) {
-                    if (ret == null) {
-                        ret = new HashMap<>();
-                    }
-
-                    ret.put(attrName, attrValue);
-                    entity.setNull(attrName);
+                    prunedAttributes.remove(attrName);
+                    isPruned = true;
                 } else if (attrInfo.isComposite) {
                     if (attrValue instanceof Collection) {
+                        List<Object> prunedValues  = new ArrayList<>();
+                        boolean      isValuePruned = false;
+
                         for (Object attribute : (Collection) attrValue) {
+                            Object prunedValue = attribute;
+
                             if (attribute instanceof ITypedReferenceableInstance) {
-                                ITypedReferenceableInstance attrInstance = (ITypedReferenceableInstance) attribute;
-                                Map<String, Object>         prunedAttrs  = pruneEntityAttributesForAudit(attrInstance);
+                                prunedValue   = pruneEntityAttributesForAudit((ITypedReferenceableInstance) attribute);
+                                isValuePruned = isValuePruned || prunedValue != attribute;
+                            }
 
-                                if (MapUtils.isNotEmpty(prunedAttrs)) {
-                                    if (ret == null) {
-                                        ret = new HashMap<>();
-                                    }
+                            prunedValues.add(prunedValue);
+                        }
 
-                                    ret.put(attrInstance.getId()._getId(), prunedAttrs);
-                                }
-                            }
+                        if (isValuePruned) {
+                            prunedAttributes.put(attrName, prunedValues);
+                            isPruned = true;
                         }
                     } else if (attrValue instanceof ITypedReferenceableInstance) {
-                        ITypedReferenceableInstance attrInstance = (ITypedReferenceableInstance) attrValue;
-                        Map<String, Object>         prunedAttrs  = pruneEntityAttributesForAudit(attrInstance);
+                        Object prunedValue = pruneEntityAttributesForAudit((ITypedReferenceableInstance) attrValue);
 
-                        if (MapUtils.isNotEmpty(prunedAttrs)) {
-                            if (ret == null) {
-                                ret = new HashMap<>();
-                            }
-
-                            ret.put(attrInstance.getId()._getId(), prunedAttrs);
+                        if (prunedValue != attrValue) {
+                            prunedAttributes.put(attrName, prunedValue);
+                            isPruned = true;
                         }
                     }
                 }
             }
+
+            if (isPruned) {
+                ret = copyEntity(entity, prunedAttributes);
+            }
         }
 
         return ret;
     }
 
-    private void restoreEntityAttributes(ITypedReferenceableInstance entity, Map<String, Object> prunedAttributes) throws AtlasException {
-        if (MapUtils.isEmpty(prunedAttributes)) {
-            return;
-        }
-
-        Map<String, Object> entityAttributes = entity.getValuesMap();
-
-        if (MapUtils.isNotEmpty(entityAttributes)) {
-            Map<String, AttributeInfo> attributeInfoMap = entity.fieldMapping().fields;
+    // copy of the entity, with its id, system attributes and traits, and the given attribute values
+    private ITypedReferenceableInstance copyEntity(ITypedReferenceableInstance entity, Map<String, Object> attributes)
+            throws AtlasException {
+        ClassType            type       = TypeSystem.getInstance().getDataType(ClassType.class, entity.getTypeName());
+        List<String>         traitNames = entity.getTraits();
+        Map<String, IStruct> traits     = new HashMap<>();
 
-            for (String attrName : entityAttributes.keySet()) {
-                Object        attrValue = entityAttributes.get(attrName);
-                AttributeInfo attrInfo  = attributeInfoMap.get(attrName);
+        for (String traitName : traitNames) {
+            traits.put(traitName, entity.getTrait(traitName));
+        }
 
-                if (prunedAttributes.containsKey(attrName)) {
-                    entity.set(attrName, prunedAttributes.get(attrName));
-                } else if (attrInfo.isComposite) {
-                    if (attrValue instanceof Collection) {
-                        for (Object attributeEntity : (Collection) attrValue) {
-                            if (attributeEntity instanceof ITypedReferenceableInstance) {
-                                ITypedReferenceableInstance attrInstance = (ITypedReferenceableInstance) attributeEntity;
-                                Object                      obj          = prunedAttributes.get(attrInstance.getId()._getId());
-
-                                if (obj instanceof Map) {
-                                    restoreEntityAttributes(attrInstance, (Map) obj);
-                                }
-                            }
-                        }
-                    } else if (attrValue instanceof ITypedReferenceableInstance) {
-                        ITypedReferenceableInstance attrInstance = (ITypedReferenceableInstance) attrValue;
-                        Object                      obj          = prunedAttributes.get(attrInstance.getId()._getId());
+        Referenceable               traitValues = new Referenceable(entity.getId(), entity.getTypeName(), null, traitNames, traits);
+        ITypedReferenceableInstance ret         = type.createInstanceWithTraits(entity.getId(), entity.getSystemAttributes(),
+                                                          traitValues, traitNames.toArray(new String[traitNames.size()]));
 
-                        if (obj instanceof Map) {
-                            restoreEntityAttributes(attrInstance, (Map) obj);
-                        }
-                    }
+        if (MapUtils.isNotEmpty(attributes)) {
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                if (attribute.getValue() != null) {
+                    ret.set(attribute.getKey(), attribute.getValue());
                 }
             }
         }
+
+        return ret;
     }
 
     private String getAuditPrefix(EntityAuditAction action) {
@@ -286,4 +258,41 @@ public class EntityAuditListener implements EntityChangeListener {
 
         return ret;
     }
+
+    /**
+     * Audit event whose details are computed when they are first read, so that repositories which write events in
+     * the background don't compute them on the thread that adds the events.
+     */
+    private static class DeferredEntityAuditEvent extends EntityAuditEvent {
+        private transient Callable<String> detailsProvider;
+
+        DeferredEntityAuditEvent(String entityId, long ts, String user, EntityAuditAction action,
+                                 ITypedReferenceableInstance entity, Callable<String> detailsProvider) throws AtlasException {
+            super(entityId, ts, user, action, null, entity);
+
+            this.detailsProvider = detailsProvider;
+        }
+
+        @Override
+        public synchronized String getDetails() {
+            if (detailsProvider != null) {
+                try {
+                    super.setDetails(detailsProvider.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException("Unable to compute audit details of entity " + getEntityId(), e);
+                }
+
+                detailsProvider = null;
+            }
+
+            return super.getDetails();
+        }
+
+        @Override
+        public synchronized void setDetails(String details) {
+            detailsProvider = null;
+
+            super.setDetails(details);
+        }
+    }
 }
@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.atlas.repository.audit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.atlas.AtlasException;
+import org.apache.atlas.EntityAuditEvent;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes audit events to HBase in the background, through a BufferedMutator.
+ *
+ * Events are queued by the threads which add them and converted to Puts, including the serialization of their
+ * details, by the writer thread. The mutator sends the Puts when its write buffer is full, and at least every
+ * flush interval. The queue is bounded: when HBase can't keep up, threads which add events wait for room in the
+ * queue, so that pending events can't exhaust the heap. Events which can't be written after the HBase client
+ * retries are logged, counted and dropped; the repository is told about them, so that delta encoded definitions
+ * aren't based on them. Callers aren't told: write() returns once the events are queued, so the entity change outbox
+ * counts dropped events as delivered.
+ */
+class HBaseAuditWriter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(HBaseAuditWriter.class);
+
+    private static final int  MAX_BATCH_SIZE     = 1000;
+    private static final long CLOSE_WAIT_TIME_MS = 60 * 1000;
+
+    private final HBaseBasedAuditRepository       repository;
+    private final BufferedMutator                 mutator;
+    private final BlockingQueue<EntityAuditEvent> queue;
+    private final long                            flushIntervalMs;
+    private final Thread                          writerThread;
+    private final Object                          flushLock = new Object();
+    private final AtomicLong                      failedCount = new AtomicLong();
+
+    // number of events added, and number of events written by the last flush; guarded by flushLock
+    private long    addedCount;
+    private long    flushedCount;
+    private boolean isFlushRequested;
+
+    private volatile boolean isClosed;
+
+    HBaseAuditWriter(HBaseBasedAuditRepository repository, Connection connection, TableName tableName, int queueSize,
+                     long flushSize, long flushIntervalMs) throws IOException {
+        this.repository      = repository;
+        this.queue           = new ArrayBlockingQueue<>(queueSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.mutator         = connection.getBufferedMutator(new BufferedMutatorParams(tableName)
+                                        .writeBufferSize(flushSize)
+                                        .listener(new BufferedMutator.ExceptionListener() {
+                                            @Override
+                                            public void onException(RetriesExhaustedWithDetailsException e,
+                                                                    BufferedMutator mutator) {
+                                                failedCount.addAndGet(e.getNumExceptions());
+
+                                                for (int i = 0; i < e.getNumExceptions(); i++) {
+                                                    HBaseAuditWriter.this.repository.onWriteFailed(e.getRow(i).getRow());
+                                                }
+
+                                                LOG.error("Unable to write {} audit events", e.getNumExceptions(), e);
+                                            }
+                                        }));
+        this.writerThread    = new ThreadFactoryBuilder().setNameFormat("atlas-audit-writer").setDaemon(true)
+                                        .build().newThread(new Writer());
+
+        writerThread.start();
+
+        LOG.info("Writing audit events asynchronously: queue size {}, flush size {}, flush interval {} ms",
+                 queueSize, flushSize, flushIntervalMs);
+    }
+
+    /**
+     * Queue the given events to be written, waiting for room in the queue if needed.
+     */
+    void write(List<EntityAuditEvent> events) throws AtlasException {
+        if (isClosed) {
+            throw new AtlasException("Audit writer is closed");
+        }
+
+        synchronized (flushLock) {
+            addedCount += events.size();
+        }
+
+        for (EntityAuditEvent event : events) {
+            if (!queue.offer(event)) {
+                LOG.warn("Audit event queue is full, waiting for events to be written");
+
+                try {
+                    queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AtlasException("Interrupted while waiting to queue audit events", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until the events queued so far are written.
+     */
+    void flush() throws AtlasException {
+        synchronized (flushLock) {
+            long target = addedCount;
+
+            while (flushedCount < target && writerThread.isAlive()) {
+                isFlushRequested = true;
+
+                try {
+                    flushLock.wait(flushIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AtlasException("Interrupted while waiting for audit events to be written", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of events which could not be written and were dropped
+     */
+    long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+
+        try {
+            writerThread.join(CLOSE_WAIT_TIME_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!queue.isEmpty()) {
+            LOG.warn("{} audit events were not written", queue.size());
+        }
+
+        mutator.close();
+
+        if (failedCount.get() > 0) {
+            LOG.warn("{} audit events could not be written", failedCount.get());
+        }
+    }
+
+    private void writeBatch(List<EntityAuditEvent> events) {
+        List<Put> puts = new ArrayList<>(events.size());
+
+        for (EntityAuditEvent event : events) {
+            try {
+                puts.add(repository.toPut(event));
+            } catch (AtlasException | RuntimeException e) {
+                failedCount.incrementAndGet();
+                repository.onWriteFailed(Collections.singletonList(event));
+                LOG.error("Unable to write audit event of entity {}", event.getEntityId(), e);
+            }
+        }
+
+        try {
+            mutator.mutate(puts);
+        } catch (IOException e) {
+            failedCount.addAndGet(puts.size());
+            repository.onWriteFailed(events);
+            LOG.error("Unable to write {} audit events", puts.size(), e);
+        }
+    }
+
+    private void flushMutator(long writtenCount) {
+        try {
+            mutator.flush();
+        } catch (IOException e) {
+            LOG.error("Unable to flush audit events", e);
+        }
+
+        synchronized (flushLock) {
+            flushedCount     = writtenCount;
+            isFlushRequested = false;
+
+            flushLock.notifyAll();
+        }
+    }
+
+    private boolean isFlushRequested() {
+        synchronized (flushLock) {
+            return isFlushRequested;
+        }
+    }
+
+    private class Writer implements Runnable {
+        @Override
+        public void run() {
+            List<EntityAuditEvent> batch        = new ArrayList<>();
+            long                   writtenCount = 0;
+            long                   nextFlush    = System.currentTimeMillis() + flushIntervalMs;
+
+            while (!(isClosed && queue.isEmpty())) {
+                try {
+                    long             waitTime = Math.max(1, Math.min(nextFlush - System.currentTimeMillis(), 100));
+                    EntityAuditEvent event    = queue.poll(waitTime, TimeUnit.MILLISECONDS);
+
+                    if (event != null) {
+                        batch.add(event);
+                        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                        writeBatch(batch);
+
+                        writtenCount += batch.size();
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warn("Audit writer interrupted", e);
+                    break;
+                } catch (RuntimeException e) {
+                    failedCount.addAndGet(batch.size());
+                    repository.onWriteFailed(batch);
+                    LOG.error("Unable to write {} audit events", batch.size(), e);
+
+                    writtenCount += batch.size();
+                    batch.clear();
+                }
+
+                if (System.currentTimeMillis() >= nextFlush || (isFlushRequested() && queue.isEmpty())) {
+                    flushMutator(writtenCount);
+
+                    nextFlush = System.currentTimeMillis() + flushIntervalMs;
+                }
+            }
+
+            flushMutator(writtenCount);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.atlas.repository.audit;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonObject;
 import com.google.inject.Singleton;
 import org.apache.atlas.ApplicationProperties;
 import org.apache.atlas.AtlasException;
@@ -30,6 +31,7 @@ import org.apache.commons.configuration.Configuration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Admin;
@@ -68,6 +70,19 @@ import java.util.Map;
  * Note: The timestamp in the key is assumed to be timestamp in milli seconds. Since the key is entity id + timestamp,
  * and only 1 version is kept, there can be just 1 audit event per entity id + timestamp. This is ok for one atlas server.
  * But if there are more than one atlas servers, we should use server id in the key
+ *
+ * With atlas.audit.hbase.async.enabled, events are queued and written in the background through a BufferedMutator,
+ * see HBaseAuditWriter. Events are then listed only once they are written, and events which can't be written are
+ * dropped and counted, see getFailedWriteCount(). Callers, including the entity change outbox, see such events as
+ * written, so audit writes are then best-effort.
+ *
+ * With atlas.audit.hbase.storage.format=delta, events are stored with a format column (v). The entity definition is
+ * stored either in full (f) or as a delta (g) against the definition of the previous event of the entity, see
+ * AuditDeltaCodec. When the details are the definition with a prefix, only the prefix (p) is stored. Details and
+ * definitions are compressed. Both formats are read, so the format can be changed on an existing table. When the table
+ * has a TTL, a full definition is stored at least every tenth of the TTL by default, so that the definitions of
+ * events remain readable until shortly before the events themselves expire. When events can't be written, the next
+ * event of each of their entities is stored with its definition in full, see onWriteFailed().
  */
 @Singleton
 public class HBaseBasedAuditRepository implements Service, EntityAuditRepository, ActiveStateChangeHandler {
@@ -77,12 +92,35 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
     public static final String CONFIG_TABLE_NAME = CONFIG_PREFIX + ".hbase.tablename";
     public static final String DEFAULT_TABLE_NAME = "ATLAS_ENTITY_AUDIT_EVENTS";
     public static final String CONFIG_PERSIST_ENTITY_DEFINITION = CONFIG_PREFIX + ".persistEntityDefinition";
+    public static final String CONFIG_ASYNC_ENABLED = CONFIG_PREFIX + ".hbase.async.enabled";
+    public static final String CONFIG_ASYNC_QUEUE_SIZE = CONFIG_PREFIX + ".hbase.async.queue.size";
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 10000;
+    public static final String CONFIG_ASYNC_FLUSH_SIZE = CONFIG_PREFIX + ".hbase.async.flush.size";
+    public static final long DEFAULT_ASYNC_FLUSH_SIZE = 2 * 1024 * 1024;
+    public static final String CONFIG_ASYNC_FLUSH_INTERVAL_MS = CONFIG_PREFIX + ".hbase.async.flush.interval.ms";
+    public static final long DEFAULT_ASYNC_FLUSH_INTERVAL_MS = 1000;
+    public static final String CONFIG_STORAGE_FORMAT = CONFIG_PREFIX + ".hbase.storage.format";
+    public static final String STORAGE_FORMAT_PLAIN = "plain";
+    public static final String STORAGE_FORMAT_DELTA = "delta";
+    public static final String CONFIG_DELTA_SNAPSHOT_INTERVAL = CONFIG_PREFIX + ".hbase.delta.snapshot.interval";
+    public static final int DEFAULT_DELTA_SNAPSHOT_INTERVAL = 20;
+    public static final String CONFIG_DELTA_CACHE_SIZE = CONFIG_PREFIX + ".hbase.delta.cache.size";
+    public static final int DEFAULT_DELTA_CACHE_SIZE = 10000;
+    public static final String CONFIG_DELTA_SNAPSHOT_MAX_AGE_MS = CONFIG_PREFIX + ".hbase.delta.snapshot.max.age.ms";
+
+    //Settings of the repository itself, which are not passed on to the HBase client
+    private static final String[] AUDIT_ONLY_CONFIG_PREFIXES = { "hbase.async.", "hbase.storage.", "hbase.delta." };
 
     public static final byte[] COLUMN_FAMILY = Bytes.toBytes("dt");
     public static final byte[] COLUMN_ACTION = Bytes.toBytes("a");
     public static final byte[] COLUMN_DETAIL = Bytes.toBytes("d");
     public static final byte[] COLUMN_USER = Bytes.toBytes("u");
     public static final byte[] COLUMN_DEFINITION = Bytes.toBytes("f");
+    public static final byte[] COLUMN_FORMAT = Bytes.toBytes("v");
+    public static final byte[] COLUMN_DEFINITION_DELTA = Bytes.toBytes("g");
+    public static final byte[] COLUMN_DETAIL_PREFIX = Bytes.toBytes("p");
+
+    private static final byte[] FORMAT_DELTA = Bytes.toBytes("2");
 
     private static final String  AUDIT_REPOSITORY_MAX_SIZE_PROPERTY = "atlas.hbase.client.keyvalue.maxsize";
     private static final String  AUDIT_EXCLUDE_ATTRIBUTE_PROPERTY   = "atlas.audit.hbase.entity";
@@ -90,19 +128,14 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
     private static final long    ATLAS_HBASE_KEYVALUE_DEFAULT_SIZE = 1024 * 1024;
     private static Configuration APPLICATION_PROPERTIES = null;
 
-    private static boolean       persistEntityDefinition;
-
     private Map<String, List<String>> auditExcludedAttributesCache = new HashMap<>();
 
-    static {
-        try {
-            persistEntityDefinition = ApplicationProperties.get().getBoolean(CONFIG_PERSIST_ENTITY_DEFINITION, false);
-        } catch (AtlasException e) {
-            throw new RuntimeException(e);
-        }
-    }
     private TableName tableName;
     private Connection connection;
+    private HBaseAuditWriter asyncWriter;
+    private boolean persistEntityDefinition;
+    private AuditDeltaCodec deltaCodec;
+    private int deltaSnapshotInterval = DEFAULT_DELTA_SNAPSHOT_INTERVAL;
 
     /**
      * Add events to the event repository
@@ -125,29 +158,115 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
             LOG.debug("Putting {} events", events.size());
         }
 
+        if (asyncWriter != null) {
+            asyncWriter.write(events);
+            return;
+        }
+
         Table table = null;
         try {
             table = connection.getTable(tableName);
             List<Put> puts = new ArrayList<>(events.size());
             for (EntityAuditEvent event : events) {
-                LOG.debug("Adding entity audit event {}", event);
-                Put put = new Put(getKey(event.getEntityId(), event.getTimestamp()));
-                addColumn(put, COLUMN_ACTION, event.getAction());
-                addColumn(put, COLUMN_USER, event.getUser());
-                addColumn(put, COLUMN_DETAIL, event.getDetails());
-                if (persistEntityDefinition) {
-                    addColumn(put, COLUMN_DEFINITION, event.getEntityDefinitionString());
-                }
-                puts.add(put);
+                puts.add(toPut(event));
             }
             table.put(puts);
         } catch (IOException e) {
+            onWriteFailed(events);
             throw new AtlasException(e);
+        } catch (AtlasException | RuntimeException e) {
+            onWriteFailed(events);
+            throw e;
         } finally {
             close(table);
         }
     }
 
+    /**
+     * Called for events which may not have been written. With the delta storage format, the next event of their
+     * entities is stored with the definition in full, as the definitions of these events can't be a delta base.
+     */
+    void onWriteFailed(List<EntityAuditEvent> events) {
+        if (deltaCodec != null) {
+            for (EntityAuditEvent event : events) {
+                deltaCodec.evict(event.getEntityId());
+            }
+        }
+    }
+
+    /**
+     * Called for the row of an event which could not be written, see onWriteFailed(List).
+     */
+    void onWriteFailed(byte[] row) {
+        if (deltaCodec != null) {
+            String key = Bytes.toString(row);
+            int    pos = key.lastIndexOf(FIELD_SEPARATOR);
+
+            deltaCodec.evict(pos != -1 ? key.substring(0, pos) : key);
+        }
+    }
+
+    Put toPut(EntityAuditEvent event) throws AtlasException {
+        LOG.debug("Adding entity audit event {}", event);
+        Put put = new Put(getKey(event.getEntityId(), event.getTimestamp()));
+        addColumn(put, COLUMN_ACTION, event.getAction());
+        addColumn(put, COLUMN_USER, event.getUser());
+        if (deltaCodec != null) {
+            addDeltaEncodedColumns(put, event);
+        } else {
+            addColumn(put, COLUMN_DETAIL, event.getDetails());
+            if (persistEntityDefinition) {
+                addColumn(put, COLUMN_DEFINITION, event.getEntityDefinitionString());
+            }
+        }
+        return put;
+    }
+
+    private void addDeltaEncodedColumns(Put put, EntityAuditEvent event) throws AtlasException {
+        String details = event.getDetails();
+        String definition = persistEntityDefinition ? event.getEntityDefinitionString() : null;
+
+        put.addColumn(COLUMN_FAMILY, COLUMN_FORMAT, FORMAT_DELTA);
+
+        if (StringUtils.isNotEmpty(definition)) {
+            String delta = deltaCodec.encode(event.getEntityId(), event.getTimestamp(), definition);
+            if (delta != null) {
+                put.addColumn(COLUMN_FAMILY, COLUMN_DEFINITION_DELTA, AuditDeltaCodec.compress(delta));
+            } else {
+                put.addColumn(COLUMN_FAMILY, COLUMN_DEFINITION, AuditDeltaCodec.compress(definition));
+            }
+
+            //Details of entity events are the definition with a prefix, no need to store the definition twice
+            if (details != null && details.endsWith(definition)) {
+                String prefix = details.substring(0, details.length() - definition.length());
+                put.addColumn(COLUMN_FAMILY, COLUMN_DETAIL_PREFIX, Bytes.toBytes(prefix));
+                return;
+            }
+        }
+
+        if (StringUtils.isNotEmpty(details)) {
+            put.addColumn(COLUMN_FAMILY, COLUMN_DETAIL, AuditDeltaCodec.compress(details));
+        }
+    }
+
+    /**
+     * @return number of events which were dropped because they could not be written, when events are written
+     * asynchronously; 0 otherwise, as synchronous writes fail with an exception instead
+     */
+    public long getFailedWriteCount() {
+        return asyncWriter != null ? asyncWriter.getFailedCount() : 0;
+    }
+
+    /**
+     * Wait until the events added so far are written, when events are written asynchronously
+     */
+    @VisibleForTesting
+    void flush() throws AtlasException {
+        if (asyncWriter != null) {
+            asyncWriter.flush();
+        }
+    }
+
     private <T> void addColumn(Put put, byte[] columnName, T columnValue) {
         if (columnValue != null && !columnValue.toString().isEmpty()) {
             put.addColumn(COLUMN_FAMILY, columnName, Bytes.toBytes(columnValue.toString()));
@@ -201,6 +320,8 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
             scanner = table.getScanner(scan);
             Result result;
             List<EntityAuditEvent> events = new ArrayList<>();
+            List<Result> results = new ArrayList<>();
+            DefinitionReader definitionReader = new DefinitionReader(table, entityId);
 
             //PageFilter doesn't ensure n results are returned. The filter is per region server.
             //So, adding extra check on n here
@@ -213,14 +334,26 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
                 }
                 event.setUser(getResultString(result, COLUMN_USER));
                 event.setAction(EntityAuditEvent.EntityAuditAction.valueOf(getResultString(result, COLUMN_ACTION)));
-                event.setDetails(getResultString(result, COLUMN_DETAIL));
-                if (persistEntityDefinition) {
-                    String colDef = getResultString(result, COLUMN_DEFINITION);
-                    if (colDef != null) {
-                        event.setEntityDefinition(colDef);
+                if (isDeltaEncoded(result)) {
+                    //Decoded once all the events are read, as the definitions of older events are needed
+                    definitionReader.addRow(event.getTimestamp(), result);
+                } else {
+                    event.setDetails(getResultString(result, COLUMN_DETAIL));
+                    if (persistEntityDefinition) {
+                        String colDef = getResultString(result, COLUMN_DEFINITION);
+                        if (colDef != null) {
+                            event.setEntityDefinition(colDef);
+                        }
                     }
                 }
                 events.add(event);
+                results.add(result);
+            }
+
+            for (int i = 0; i < events.size(); i++) {
+                if (isDeltaEncoded(results.get(i))) {
+                    readDeltaEncodedColumns(events.get(i), results.get(i), definitionReader);
+                }
             }
 
             if (LOG.isDebugEnabled()) {
@@ -236,6 +369,26 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
         }
     }
 
+    private void readDeltaEncodedColumns(EntityAuditEvent event, Result result, DefinitionReader definitionReader)
+            throws AtlasException {
+        String definition = definitionReader.getDefinition(event.getTimestamp());
+        byte[] detailPrefix = result.getValue(COLUMN_FAMILY, COLUMN_DETAIL_PREFIX);
+        byte[] details = result.getValue(COLUMN_FAMILY, COLUMN_DETAIL);
+
+        if (detailPrefix != null) {
+            event.setDetails(Bytes.toString(detailPrefix) + (definition != null ? definition : ""));
+        } else if (details != null) {
+            event.setDetails(AuditDeltaCodec.decompress(details));
+        }
+        if (persistEntityDefinition && definition != null) {
+            event.setEntityDefinition(definition);
+        }
+    }
+
+    private static boolean isDeltaEncoded(Result result) {
+        return result.getValue(COLUMN_FAMILY, COLUMN_FORMAT) != null;
+    }
+
     @Override
     public long repositoryMaxSize() throws AtlasException {
         long ret;
@@ -325,7 +478,9 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
         Iterator<String> keys = subsetAtlasConf.getKeys();
         while (keys.hasNext()) {
             String key = keys.next();
-            hbaseConf.set(key, subsetAtlasConf.getString(key));
+            if (!StringUtils.startsWithAny(key, AUDIT_ONLY_CONFIG_PREFIXES)) {
+                hbaseConf.set(key, subsetAtlasConf.getString(key));
+            }
         }
         return hbaseConf;
     }
@@ -367,6 +522,8 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
 
         String tableNameStr = atlasConf.getString(CONFIG_TABLE_NAME, DEFAULT_TABLE_NAME);
         tableName = TableName.valueOf(tableNameStr);
+        persistEntityDefinition = atlasConf.getBoolean(CONFIG_PERSIST_ENTITY_DEFINITION, false);
+        deltaSnapshotInterval = atlasConf.getInt(CONFIG_DELTA_SNAPSHOT_INTERVAL, DEFAULT_DELTA_SNAPSHOT_INTERVAL);
 
         try {
             connection = createConnection(hbaseConf);
@@ -378,6 +535,48 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
             LOG.info("HA is disabled. Hence creating table on startup.");
             createTableIfNotExists();
         }
+
+        if (STORAGE_FORMAT_DELTA.equalsIgnoreCase(atlasConf.getString(CONFIG_STORAGE_FORMAT, STORAGE_FORMAT_PLAIN))) {
+            long timeToLiveMs = getTimeToLiveMs();
+            long snapshotMaxAgeMs = atlasConf.getLong(CONFIG_DELTA_SNAPSHOT_MAX_AGE_MS,
+                    timeToLiveMs > 0 ? timeToLiveMs / 10 : Long.MAX_VALUE);
+
+            LOG.info("Storing audit events delta encoded, with a full entity definition every {} events or {} ms",
+                    deltaSnapshotInterval, snapshotMaxAgeMs);
+            deltaCodec = new AuditDeltaCodec(deltaSnapshotInterval, snapshotMaxAgeMs,
+                    atlasConf.getInt(CONFIG_DELTA_CACHE_SIZE, DEFAULT_DELTA_CACHE_SIZE));
+        }
+
+        if (atlasConf.getBoolean(CONFIG_ASYNC_ENABLED, false)) {
+            try {
+                asyncWriter = new HBaseAuditWriter(this, connection, tableName,
+                        atlasConf.getInt(CONFIG_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE),
+                        atlasConf.getLong(CONFIG_ASYNC_FLUSH_SIZE, DEFAULT_ASYNC_FLUSH_SIZE),
+                        atlasConf.getLong(CONFIG_ASYNC_FLUSH_INTERVAL_MS, DEFAULT_ASYNC_FLUSH_INTERVAL_MS));
+            } catch (IOException e) {
+                throw new AtlasException(e);
+            }
+        }
+    }
+
+    /**
+     * @return TTL of the audit events in milli seconds, or -1 if they don't expire or the table doesn't exist yet
+     */
+    private long getTimeToLiveMs() throws AtlasException {
+        Admin admin = null;
+        try {
+            admin = connection.getAdmin();
+            if (!admin.tableExists(tableName)) {
+                return -1;
+            }
+            HColumnDescriptor columnFamily = admin.getTableDescriptor(tableName).getFamily(COLUMN_FAMILY);
+            int timeToLive = columnFamily != null ? columnFamily.getTimeToLive() : HConstants.FOREVER;
+            return timeToLive == HConstants.FOREVER ? -1 : timeToLive * 1000L;
+        } catch (IOException e) {
+            throw new AtlasException(e);
+        } finally {
+            close(admin);
+        }
     }
 
     @VisibleForTesting
@@ -387,6 +586,7 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
 
     @Override
     public void stop() throws AtlasException {
+        close(asyncWriter);
         close(connection);
     }
 
@@ -400,4 +600,104 @@ public class HBaseBasedAuditRepository implements Service, EntityAuditRepository
     public void instanceIsPassive() {
         LOG.info("Reacting to passive: No action for now.");
     }
+
+    /**
+     * Reads the entity definitions of delta encoded events of an entity. The events a delta refers to are read from
+     * the rows already scanned, or else with a scan of the older events of the entity.
+     */
+    private class DefinitionReader {
+        private final Table table;
+        private final String entityId;
+        private final Map<Long, Result> rows = new HashMap<>();
+        private final Map<Long, JsonObject> definitions = new HashMap<>();
+
+        DefinitionReader(Table table, String entityId) {
+            this.table = table;
+            this.entityId = entityId;
+        }
+
+        void addRow(long timestamp, Result result) {
+            rows.put(timestamp, result);
+        }
+
+        /**
+         * @return the definition stored with the event, null if there is none or if it can't be decoded
+         */
+        String getDefinition(long timestamp) throws AtlasException {
+            Result row = getRow(timestamp);
+            byte[] definition = row != null ? row.getValue(COLUMN_FAMILY, COLUMN_DEFINITION) : null;
+
+            if (definition != null) {
+                //As stored, rather than as re-serialized from the parsed definition
+                return isDeltaEncoded(row) ? AuditDeltaCodec.decompress(definition) : Bytes.toString(definition);
+            }
+
+            JsonObject ret = getDefinitionObject(timestamp);
+            return ret != null ? ret.toString() : null;
+        }
+
+        private JsonObject getDefinitionObject(long timestamp) throws AtlasException {
+            if (definitions.containsKey(timestamp)) {
+                return definitions.get(timestamp);
+            }
+
+            JsonObject ret = null;
+            Result row = getRow(timestamp);
+            byte[] definition = row != null ? row.getValue(COLUMN_FAMILY, COLUMN_DEFINITION) : null;
+            byte[] delta = row != null ? row.getValue(COLUMN_FAMILY, COLUMN_DEFINITION_DELTA) : null;
+
+            if (definition != null) {
+                ret = AuditDeltaCodec.parse(isDeltaEncoded(row) ? AuditDeltaCodec.decompress(definition)
+                                                                : Bytes.toString(definition));
+            } else if (delta != null) {
+                JsonObject deltaObject = AuditDeltaCodec.parse(AuditDeltaCodec.decompress(delta));
+                long baseTimestamp = AuditDeltaCodec.getBaseTimestamp(deltaObject);
+                JsonObject base = getDefinitionObject(baseTimestamp);
+
+                if (base != null) {
+                    ret = AuditDeltaCodec.decode(base, deltaObject);
+                }
+                if (ret == null) {
+                    LOG.warn("Unable to decode the definition of entity {} at {}: event {} it refers to is missing or changed",
+                            entityId, timestamp, baseTimestamp);
+                }
+            }
+
+            definitions.put(timestamp, ret);
+            return ret;
+        }
+
+        private Result getRow(long timestamp) throws AtlasException {
+            if (!rows.containsKey(timestamp)) {
+                //Reads the events from the given one backwards, which includes the events the delta chain refers to
+                Scan scan = new Scan().setReversed(true).setFilter(new PageFilter(deltaSnapshotInterval))
+                                      .setStartRow(getKey(entityId, timestamp))
+                                      .setStopRow(Bytes.toBytes(entityId))
+                                      .setCaching(deltaSnapshotInterval)
+                                      .setSmall(true);
+                ResultScanner scanner = null;
+                try {
+                    scanner = table.getScanner(scan);
+                    Result result;
+                    int count = 0;
+                    while ((result = scanner.next()) != null && count++ < deltaSnapshotInterval) {
+                        EntityAuditEvent event = fromKey(result.getRow());
+                        if (event.getEntityId().equals(entityId) && !rows.containsKey(event.getTimestamp())) {
+                            rows.put(event.getTimestamp(), result);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new AtlasException(e);
+                } finally {
+                    close(scanner);
+                }
+
+                if (!rows.containsKey(timestamp)) {
+                    rows.put(timestamp, null);
+                }
+            }
+
+            return rows.get(timestamp);
+        }
+    }
 }
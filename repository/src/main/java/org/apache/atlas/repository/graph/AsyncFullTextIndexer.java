@@ -0,0 +1,458 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.graph;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.AtlasException;
+import org.apache.atlas.GraphTransactionInterceptor;
+import org.apache.atlas.RequestContext;
+import org.apache.atlas.repository.Constants;
+import org.apache.atlas.repository.graphdb.AtlasGraph;
+import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.service.Service;
+import org.apache.atlas.util.AtlasRepositoryConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the full-text documents of entities in the background, after the transactions that created or updated
+ * the entities have been committed, so that ingest latency doesn't include full-text generation.
+ *
+ * Repeated updates of an entity that is still waiting to be indexed are coalesced, and the documents are written
+ * in batches, one graph transaction per batch. An entity is never indexed by two workers at the same time, so the
+ * document written last is always computed from the latest committed state. The entities of a batch which can't be
+ * written are enqueued again, up to a maximum number of attempts.
+ *
+ * An entity waiting to be indexed is marked with the time its document became stale, in the transaction that updates
+ * it, and the mark is removed along with writing its document. The marked entities are enqueued again on
+ * {@link #start()}, so that entities which were pending when the server stopped, or which were given up on, are
+ * indexed after a restart. At most maxPending entities wait in memory: once as many are pending, transactions compute
+ * the documents of their entities themselves, and the marked entities are enqueued on start as there is room. The
+ * bound is approximate, as concurrent transactions check it before they commit.
+ *
+ * The workers run between {@link #start()} and {@link #stop()}, and only when asynchronous full-text indexing is
+ * enabled; entities enqueued while they aren't running wait.
+ */
+@Singleton
+public class AsyncFullTextIndexer implements Service {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncFullTextIndexer.class);
+
+    public static final String FULLTEXT_ASYNC_THREADS            = "atlas.fulltext.async.threads";
+    public static final int    DEFAULT_FULLTEXT_ASYNC_THREADS    = 2;
+    public static final String FULLTEXT_ASYNC_BATCH_SIZE         = "atlas.fulltext.async.batch.size";
+    public static final int    DEFAULT_FULLTEXT_ASYNC_BATCH_SIZE = 100;
+    public static final String FULLTEXT_ASYNC_MAX_ATTEMPTS         = "atlas.fulltext.async.max.attempts";
+    public static final int    DEFAULT_FULLTEXT_ASYNC_MAX_ATTEMPTS = 3;
+    public static final String FULLTEXT_ASYNC_MAX_PENDING          = "atlas.fulltext.async.max.pending";
+    public static final int    DEFAULT_FULLTEXT_ASYNC_MAX_PENDING  = 100000;
+
+    private static final int SHUTDOWN_TIMEOUT_SECS = 30;
+
+    private static final GraphHelper graphHelper = GraphHelper.getInstance();
+
+    private final IAtlasGraphProvider        graphProvider;
+    private final GraphToTypedInstanceMapper graphToTypedInstanceMapper;
+    private final int                        numThreads;
+    private final int                        batchSize;
+    private final int                        maxAttempts;
+    private final int                        maxPending;
+    private final boolean                    enabled;
+    private ExecutorService                  executor;
+
+    // guid -> time at which the oldest update not yet indexed was committed; guarded by itself
+    private final LinkedHashMap<String, Long> pending    = new LinkedHashMap<>();
+    private final Map<String, Long>           inProgress = new HashMap<>();
+    // guid -> number of failed attempts to index the entity; guarded by pending
+    private final Map<String, Integer>        failedAttempts = new HashMap<>();
+
+    @Inject
+    public AsyncFullTextIndexer() throws AtlasException {
+        this(new AtlasGraphProvider(), ApplicationProperties.get());
+    }
+
+    private AsyncFullTextIndexer(IAtlasGraphProvider graphProvider, Configuration configuration) {
+        this(graphProvider, configuration.getInt(FULLTEXT_ASYNC_THREADS, DEFAULT_FULLTEXT_ASYNC_THREADS),
+             configuration.getInt(FULLTEXT_ASYNC_BATCH_SIZE, DEFAULT_FULLTEXT_ASYNC_BATCH_SIZE),
+             configuration.getInt(FULLTEXT_ASYNC_MAX_ATTEMPTS, DEFAULT_FULLTEXT_ASYNC_MAX_ATTEMPTS),
+             configuration.getInt(FULLTEXT_ASYNC_MAX_PENDING, DEFAULT_FULLTEXT_ASYNC_MAX_PENDING),
+             AtlasRepositoryConfiguration.isAsyncFullTextIndexingEnabled());
+    }
+
+    @VisibleForTesting
+    AsyncFullTextIndexer(IAtlasGraphProvider graphProvider, int numThreads, int batchSize) {
+        this(graphProvider, numThreads, batchSize, DEFAULT_FULLTEXT_ASYNC_MAX_ATTEMPTS, true);
+    }
+
+    @VisibleForTesting
+    AsyncFullTextIndexer(IAtlasGraphProvider graphProvider, int numThreads, int batchSize, int maxAttempts,
+                         boolean enabled) {
+        this(graphProvider, numThreads, batchSize, maxAttempts, DEFAULT_FULLTEXT_ASYNC_MAX_PENDING, enabled);
+    }
+
+    @VisibleForTesting
+    AsyncFullTextIndexer(IAtlasGraphProvider graphProvider, int numThreads, int batchSize, int maxAttempts,
+                         int maxPending, boolean enabled) {
+        this.graphProvider              = graphProvider;
+        this.graphToTypedInstanceMapper = new GraphToTypedInstanceMapper(graphProvider);
+        this.numThreads                 = numThreads;
+        this.batchSize                  = batchSize;
+        this.maxAttempts                = maxAttempts;
+        this.maxPending                 = maxPending;
+        this.enabled                    = enabled;
+    }
+
+    @Override
+    public synchronized void start() throws AtlasException {
+        if (!enabled) {
+            LOG.info("Asynchronous full-text indexing is disabled, not starting the full-text indexer");
+            return;
+        }
+
+        if (executor != null) {
+            return;
+        }
+
+        // one more thread enqueues the entities marked as pending before the start
+        executor = Executors.newFixedThreadPool(numThreads + 1,
+                new ThreadFactoryBuilder().setNameFormat("atlas-fulltext-indexer-%d").setDaemon(true).build());
+
+        executor.submit(new Recovery());
+
+        for (int i = 0; i < numThreads; i++) {
+            executor.submit(new Worker());
+        }
+
+        LOG.info("Started full-text indexer with {} threads, batch size {}", numThreads, batchSize);
+    }
+
+    /**
+     * Stops the workers. A batch that is being indexed is interrupted and rolled back; its entities, like the
+     * entities still pending, keep their previous document until they are enqueued again on the next start.
+     */
+    @Override
+    public synchronized void stop() throws AtlasException {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+                LOG.warn("Full-text indexer workers did not stop within {} seconds", SHUTDOWN_TIMEOUT_SECS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        executor = null;
+
+        LOG.info("Stopped full-text indexer with {} entities pending", getPendingCount());
+    }
+
+    /**
+     * Marks the given entities as pending in the current graph transaction, and schedules them to be indexed once
+     * the transaction has been committed. Nothing is indexed if the transaction is rolled back.
+     *
+     * @param vertices vertices of the created or updated entities
+     * @return false if too many entities are pending already; the entities are not marked nor scheduled then, and
+     *         the caller computes their documents in the transaction
+     */
+    public boolean enqueueAfterCommit(Collection<AtlasVertex> vertices) {
+        if (vertices.isEmpty()) {
+            return true;
+        }
+
+        if (getPendingCount() + vertices.size() > maxPending) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{} entities are pending full-text indexing, indexing {} entities in the transaction",
+                        getPendingCount(), vertices.size());
+            }
+
+            return false;
+        }
+
+        long               now   = System.currentTimeMillis();
+        final List<String> guids = new ArrayList<>(vertices.size());
+
+        for (AtlasVertex vertex : vertices) {
+            GraphHelper.setProperty(vertex, Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, now);
+
+            guids.add(GraphHelper.getGuid(vertex));
+        }
+
+        new GraphTransactionInterceptor.PostTransactionHook() {
+            @Override
+            public void onComplete(boolean isSuccess) {
+                if (isSuccess) {
+                    enqueue(guids);
+                }
+            }
+        };
+
+        return true;
+    }
+
+    void enqueue(Collection<String> guids) {
+        long now = System.currentTimeMillis();
+
+        synchronized (pending) {
+            for (String guid : guids) {
+                if (!pending.containsKey(guid)) {
+                    pending.put(guid, now);
+                }
+            }
+
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Enqueues an entity marked as pending, once fewer than maxPending entities are pending.
+     *
+     * @param time time at which the document of the entity became stale
+     */
+    private void enqueueMarked(String guid, long time) throws InterruptedException {
+        synchronized (pending) {
+            while (pending.size() + inProgress.size() >= maxPending) {
+                pending.wait();
+            }
+
+            if (!pending.containsKey(guid)) {
+                pending.put(guid, time);
+            }
+
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * @return number of entities waiting to be indexed, or being indexed
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size() + inProgress.size();
+        }
+    }
+
+    /**
+     * @return time in milliseconds since the oldest update that isn't indexed yet was committed, 0 if there is none
+     */
+    public long getLagInMillis() {
+        long oldest = Long.MAX_VALUE;
+
+        synchronized (pending) {
+            if (!pending.isEmpty()) {
+                oldest = pending.values().iterator().next();
+            }
+
+            for (Long time : inProgress.values()) {
+                oldest = Math.min(oldest, time);
+            }
+        }
+
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    private List<String> takeBatch() throws InterruptedException {
+        synchronized (pending) {
+            while (true) {
+                List<String> ret = new ArrayList<>();
+
+                for (Iterator<Map.Entry<String, Long>> iter = pending.entrySet().iterator(); iter.hasNext() && ret.size() < batchSize; ) {
+                    Map.Entry<String, Long> entry = iter.next();
+
+                    // entities being indexed by another worker are left pending until that worker is done
+                    if (!inProgress.containsKey(entry.getKey())) {
+                        inProgress.put(entry.getKey(), entry.getValue());
+                        ret.add(entry.getKey());
+                        iter.remove();
+                    }
+                }
+
+                if (!ret.isEmpty()) {
+                    return ret;
+                }
+
+                pending.wait();
+            }
+        }
+    }
+
+    /**
+     * Completes the batch of a worker. The entities of a batch which failed are enqueued again, with the time of
+     * their oldest update, unless they have been attempted maxAttempts times; those keep their previous document
+     * until they are updated again, or until they are enqueued again on the next start.
+     */
+    private void completeBatch(List<String> guids, boolean isSuccess) {
+        synchronized (pending) {
+            for (String guid : guids) {
+                Long time = inProgress.remove(guid);
+
+                if (isSuccess) {
+                    failedAttempts.remove(guid);
+                    continue;
+                }
+
+                Integer attempts = failedAttempts.get(guid);
+                int     failures = attempts == null ? 1 : attempts + 1;
+
+                if (failures < maxAttempts) {
+                    failedAttempts.put(guid, failures);
+
+                    Long updateTime = pending.get(guid); // updated again since the batch was taken
+
+                    pending.put(guid, updateTime == null ? time : Math.min(time, updateTime));
+                } else {
+                    failedAttempts.remove(guid);
+
+                    LOG.error("Giving up indexing the full text of entity {} after {} attempts", guid, failures);
+                }
+            }
+
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * @return true if the documents of the entities were written, false if the batch was rolled back
+     */
+    boolean index(List<String> guids) {
+        RequestContext.createContext();
+
+        AtlasGraph graph = null;
+
+        try {
+            graph = graphProvider.get();
+
+            FullTextMapper           fullTextMapper = new FullTextMapper(graphToTypedInstanceMapper);
+            Map<String, AtlasVertex> vertices       = graphHelper.getVerticesForGUIDs(guids);
+
+            for (String guid : guids) {
+                AtlasVertex vertex = vertices.get(guid);
+
+                if (vertex == null) { // deleted since it was enqueued
+                    continue;
+                }
+
+                try {
+                    String fullText = fullTextMapper.mapRecursive(vertex, true);
+
+                    GraphHelper.setProperty(vertex, Constants.ENTITY_TEXT_PROPERTY_KEY, fullText);
+                } catch (AtlasException e) {
+                    LOG.error("Unable to compute the full text of entity {}", guid, e);
+                }
+
+                // an entity whose full text can't be computed isn't attempted again either
+                vertex.removeProperty(Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY);
+            }
+
+            graph.commit();
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Indexed full text of {} entities", guids.size());
+            }
+
+            return true;
+        } catch (Throwable t) {
+            LOG.error("Unable to index the full text of entities {}", guids, t);
+
+            if (graph != null) {
+                graph.rollback();
+            }
+
+            return false;
+        } finally {
+            RequestContext.clear();
+        }
+    }
+
+    /**
+     * Enqueues the entities marked as pending, which were not indexed before the server stopped.
+     */
+    private class Recovery implements Runnable {
+        @Override
+        public void run() {
+            int count = 0;
+
+            try {
+                for (AtlasVertex vertex : graphHelper.getVerticesWithPropertyAtLeast(
+                        Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, 0L)) {
+                    Long time = vertex.getProperty(Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, Long.class);
+
+                    if (time != null) {
+                        enqueueMarked(GraphHelper.getGuid(vertex), time);
+                        count++;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                LOG.error("Unable to enqueue the entities pending full-text indexing", t);
+            } finally {
+                // the vertices were read in the transaction of this thread, which writes nothing
+                AtlasGraphProvider.getGraphInstance().rollback();
+            }
+
+            if (count > 0) {
+                LOG.info("Enqueued {} entities pending full-text indexing since before the start", count);
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<String> guids;
+
+                try {
+                    guids = takeBatch();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                boolean isSuccess = false;
+
+                try {
+                    isSuccess = index(guids);
+                } finally {
+                    completeBatch(guids, isSuccess);
+                }
+            }
+        }
+    }
+}
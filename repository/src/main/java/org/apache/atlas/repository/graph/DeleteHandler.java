@@ -93,7 +93,8 @@ public abstract class DeleteHandler {
            // Record all deletion candidate GUIDs in RequestContext
            // and gather deletion candidate vertices.
            for (VertexInfo vertexInfo : compositeVertices) {
-               requestContext.recordEntityDelete(vertexInfo.getGuid(), vertexInfo.getTypeName());
+               requestContext.recordEntityDelete(vertexInfo.getGuid(), vertexInfo.getTypeName(),
+                                                 GraphHelper.getTraitNames(vertexInfo.getVertex()));
                deletionCandidateVertices.add(vertexInfo.getVertex());
            }
        }
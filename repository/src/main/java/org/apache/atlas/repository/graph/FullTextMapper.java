@@ -51,6 +51,11 @@ public class FullTextMapper {
         this.typedInstanceToGraphMapper = typedInstanceToGraphMapper;
     }
 
+    // for mapping committed entities, outside of the request that created them
+    FullTextMapper(GraphToTypedInstanceMapper graphToTypedInstanceMapper) {
+        this(null, graphToTypedInstanceMapper);
+    }
+
     public String mapRecursive(AtlasVertex instanceVertex, boolean followReferences) throws AtlasException {
         String guid = GraphHelper.getGuid(instanceVertex);
         ITypedReferenceableInstance typedReference;
@@ -131,7 +136,7 @@ public class FullTextMapper {
             if (followReferences) {
                 Id refId = ((ITypedReferenceableInstance) value).getId();
                 String refGuid = refId._getId();
-                AtlasVertex refVertex = typedInstanceToGraphMapper.lookupVertex(refId);
+                AtlasVertex refVertex = typedInstanceToGraphMapper != null ? typedInstanceToGraphMapper.lookupVertex(refId) : null;
                 if(refVertex == null) {
                     refVertex = graphHelper.getVertexForGUID(refGuid);
                 }
@@ -18,12 +18,14 @@
 
 package org.apache.atlas.repository.graph;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import javax.xml.bind.DatatypeConverter;
 
 import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasException;
@@ -35,7 +37,11 @@ import org.apache.atlas.repository.RepositoryException;
 import org.apache.atlas.repository.graphdb.AtlasEdge;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
+import org.apache.atlas.repository.graphdb.AtlasIndexQuery;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.services.EntityListPage;
+import org.apache.atlas.services.EntityListVisitor;
+import org.apache.atlas.services.EntityProjection;
 import org.apache.atlas.typesystem.ITypedReferenceableInstance;
 import org.apache.atlas.typesystem.ITypedStruct;
 import org.apache.atlas.typesystem.exception.EntityExistsException;
@@ -51,6 +57,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -67,16 +75,31 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
 
     private static final GraphHelper graphHelper = GraphHelper.getInstance();
 
+    // number of vertices of a streamed entity list read from the index at a time
+    private static final int ENTITY_LIST_PAGE_SIZE = 1000;
+
+    // continuation tokens position a page after a vertex of the vertex index, or at an offset in the type's
+    // exact-match index
+    private static final String KEY_TOKEN    = "k";
+    private static final String OFFSET_TOKEN = "o";
+
     private DeleteHandler deleteHandler;
 
     private final IAtlasGraphProvider graphProvider;
     private final GraphToTypedInstanceMapper graphToInstanceMapper;
+    private final AsyncFullTextIndexer fullTextIndexer;
 
     @Inject
-    public GraphBackedMetadataRepository(DeleteHandler deleteHandler) {
+    public GraphBackedMetadataRepository(DeleteHandler deleteHandler, AsyncFullTextIndexer fullTextIndexer) {
         this.graphProvider = new AtlasGraphProvider();
         this.graphToInstanceMapper = new GraphToTypedInstanceMapper(graphProvider);
         this.deleteHandler = deleteHandler;
+        this.fullTextIndexer = fullTextIndexer;
+    }
+
+    //for testing only
+    public GraphBackedMetadataRepository(DeleteHandler deleteHandler) {
+        this(new AtlasGraphProvider(), deleteHandler);
     }
 
     //for testing only
@@ -84,6 +107,7 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
         this.graphProvider = graphProvider;
         this.graphToInstanceMapper = new GraphToTypedInstanceMapper(graphProvider);
         this.deleteHandler = deleteHandler;
+        this.fullTextIndexer = null;
     }
 
 
@@ -150,7 +174,7 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
         }
 
         try {
-            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler);
+            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler, fullTextIndexer);
             instanceToGraphMapper.mapTypedInstanceToGraph(TypedInstanceToGraphMapper.Operation.CREATE, entities);
             return RequestContext.get().getCreatedEntityIds();
         } catch (EntityExistsException e) {
@@ -176,6 +200,58 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
         }
     }
 
+    @Override
+    @GraphTransaction
+    public ITypedReferenceableInstance getEntityDefinition(String guid, EntityProjection projection)
+            throws RepositoryException, EntityNotFoundException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Retrieving entity with guid={}, projection={}", guid, projection);
+        }
+
+        AtlasVertex instanceVertex = graphHelper.getVertexForGUID(guid);
+
+        try {
+            return graphToInstanceMapper.mapGraphToTypedInstance(guid, instanceVertex, projection);
+        } catch (AtlasException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    @Override
+    @GraphTransaction
+    public List<ITypedReferenceableInstance> getEntityDefinitions(List<String> guids) throws RepositoryException, EntityNotFoundException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Retrieving entities with guids={}", guids);
+        }
+
+        Map<String, AtlasVertex> vertices = graphHelper.getVerticesForGUIDs(guids);
+        List<ITypedReferenceableInstance> ret = new ArrayList<>(guids.size());
+
+        for (String guid : guids) {
+            // instances mapped earlier in the request, as one of the entities or as a composite of one, are reused
+            ITypedReferenceableInstance instance = RequestContext.get().getInstance(guid);
+
+            if (instance == null) {
+                AtlasVertex instanceVertex = vertices.get(guid);
+
+                if (instanceVertex == null) {
+                    throw new EntityNotFoundException("Could not find an entity in the repository with "
+                            + Constants.GUID_PROPERTY_KEY + " = " + guid);
+                }
+
+                try {
+                    instance = graphToInstanceMapper.mapGraphToTypedInstance(guid, instanceVertex);
+                } catch (AtlasException e) {
+                    throw new RepositoryException(e);
+                }
+            }
+
+            ret.add(instance);
+        }
+
+        return ret;
+    }
+
     @Override
     @GraphTransaction
     public ITypedReferenceableInstance getEntityDefinition(String entityType, String attribute, Object value)
@@ -220,6 +296,172 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
         return entityList;
     }
 
+    @Override
+    @GraphTransaction
+    public EntityListPage getEntityList(String entityType, int limit, String continuationToken) throws RepositoryException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Retrieving entity list for type={}, limit={}, continuationToken={}", entityType, limit, continuationToken);
+        }
+
+        EntityListPosition position = decodeContinuationToken(entityType, continuationToken);
+
+        // one more vertex than requested tells whether there is a next page
+        int readLimit = limit < Integer.MAX_VALUE ? limit + 1 : limit;
+
+        if (position == null || position.afterVertexId == null) {
+            // the exact-match index sees every committed entity, so a list that fits in one page is read from it
+            int offset = position != null ? position.offset : 0;
+            List<AtlasVertex> vertices = Lists.newArrayList(getEntityQuery(entityType).offset(offset).limit(readLimit).vertices());
+            if (vertices.size() <= limit) {
+                return new EntityListPage(getGuids(vertices), null);
+            }
+
+            // longer lists are paged in vertex order where the vertex index positions the pages, by offset otherwise
+            if (position != null || !getGraph().isIndexKeyOrderSupported(Constants.VERTEX_INDEX)) {
+                int nextOffset = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+                return new EntityListPage(getGuids(vertices.subList(0, limit)),
+                        encodeContinuationToken(entityType, OFFSET_TOKEN, String.valueOf(nextOffset)));
+            }
+        }
+
+        Iterator<AtlasVertex> results = getEntityVertices(entityType, position != null ? position.afterVertexId : null,
+                readLimit);
+
+        List<String> entityList = new ArrayList<>();
+        String lastVertexId = null;
+        while (results.hasNext() && entityList.size() < limit) {
+            AtlasVertex vertex = results.next();
+            entityList.add(GraphHelper.getGuid(vertex));
+            lastVertexId = vertex.getId().toString();
+        }
+
+        String nextToken = results.hasNext() && lastVertexId != null
+                ? encodeContinuationToken(entityType, KEY_TOKEN, lastVertexId) : null;
+        return new EntityListPage(entityList, nextToken);
+    }
+
+    @Override
+    @GraphTransaction
+    public void visitEntityList(String entityType, String continuationToken, EntityListVisitor visitor) throws AtlasException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Visiting entity list for type={}, continuationToken={}", entityType, continuationToken);
+        }
+
+        EntityListPosition position = decodeContinuationToken(entityType, continuationToken);
+
+        Iterator<AtlasVertex> results;
+        if (position == null || position.afterVertexId == null) {
+            // the exact-match index returns the vertices as they are read, in a single pass
+            results = getEntityQuery(entityType).offset(position != null ? position.offset : 0).vertices().iterator();
+        } else {
+            results = getEntityVertices(entityType, position.afterVertexId, ENTITY_LIST_PAGE_SIZE);
+        }
+
+        while (results.hasNext()) {
+            visitor.visit(GraphHelper.getGuid(results.next()));
+        }
+    }
+
+    private AtlasGraphQuery getEntityQuery(String entityType) {
+        return getGraph().query().has(Constants.ENTITY_TYPE_PROPERTY_KEY, entityType);
+    }
+
+    private static List<String> getGuids(List<AtlasVertex> vertices) {
+        List<String> ret = new ArrayList<>(vertices.size());
+        for (AtlasVertex vertex : vertices) {
+            ret.add(GraphHelper.getGuid(vertex));
+        }
+        return ret;
+    }
+
+    /**
+     * Entity lists are read from the vertex index a page at a time, in the order of the vertices, and pages are
+     * positioned after the last vertex of the previous page. Reading a page doesn't read the vertices before it, and
+     * entities created or deleted between two pages don't shift the entities of the following pages. Only used where
+     * the index positions the results itself, see {@link AtlasGraph#isIndexKeyOrderSupported(String)}.
+     *
+     * @param afterVertexId id of the vertex after which to start, or null to start at the first entity
+     * @param pageSize      number of vertices read from the index at a time
+     */
+    private Iterator<AtlasVertex> getEntityVertices(final String entityType, final String afterVertexId, final int pageSize)
+        throws RepositoryException {
+        final AtlasGraph graph = getGraph();
+        final String query = String.format("v.\"%s\":(\"%s\")", Constants.ENTITY_TYPE_PROPERTY_KEY,
+                entityType.replace("\\", "\\\\").replace("\"", "\\\""));
+
+        return new AbstractIterator<AtlasVertex>() {
+            private String lastVertexId = afterVertexId;
+            private Iterator<AtlasIndexQuery.Result> page = Collections.emptyIterator();
+            private boolean isLastPage = false;
+
+            @Override
+            protected AtlasVertex computeNext() {
+                while (true) {
+                    while (page.hasNext()) {
+                        AtlasVertex vertex = page.next().getVertex();
+                        lastVertexId = vertex.getId().toString();
+
+                        // the index matches the type name as text, which other type names may match as well
+                        if (entityType.equals(GraphHelper.getTypeName(vertex))) {
+                            return vertex;
+                        }
+                    }
+
+                    if (isLastPage) {
+                        return endOfData();
+                    }
+
+                    List<AtlasIndexQuery.Result> results = Lists.newArrayList(graph.indexQuery(Constants.VERTEX_INDEX, query)
+                            .startAfter(lastVertexId).limit(pageSize).vertices());
+                    isLastPage = results.size() < pageSize;
+                    page = results.iterator();
+                }
+            }
+        };
+    }
+
+    /**
+     * Position of a page of an entity list: after a vertex in the order of the vertex index, or at an offset in the
+     * exact-match index of the type.
+     */
+    private static final class EntityListPosition {
+        final String afterVertexId;
+        final int    offset;
+
+        EntityListPosition(String afterVertexId, int offset) {
+            this.afterVertexId = afterVertexId;
+            this.offset        = offset;
+        }
+    }
+
+    private static String encodeContinuationToken(String entityType, String kind, String position) {
+        return DatatypeConverter.printBase64Binary((entityType + ":" + kind + ":" + position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static EntityListPosition decodeContinuationToken(String entityType, String continuationToken) {
+        if (continuationToken == null) {
+            return null;
+        }
+
+        try {
+            String token = new String(DatatypeConverter.parseBase64Binary(continuationToken), StandardCharsets.UTF_8);
+            String prefix = entityType + ":";
+            if (token.startsWith(prefix + KEY_TOKEN + ":") && token.length() > prefix.length() + KEY_TOKEN.length() + 1) {
+                return new EntityListPosition(token.substring(prefix.length() + KEY_TOKEN.length() + 1), 0);
+            }
+            if (token.startsWith(prefix + OFFSET_TOKEN + ":")) {
+                int offset = Integer.parseInt(token.substring(prefix.length() + OFFSET_TOKEN.length() + 1));
+                if (offset >= 0) {
+                    return new EntityListPosition(null, offset);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Unable to decode continuation token {}", continuationToken, e);
+        }
+
+        throw new IllegalArgumentException("Invalid continuation token " + continuationToken + " for type " + entityType);
+    }
+
     /**
      * Gets the list of trait names for a given entity represented by a guid.
      *
@@ -288,7 +530,7 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
             // add the trait instance as a new vertex
             final String typeName = GraphHelper.getTypeName(instanceVertex);
 
-            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler);
+            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler, fullTextIndexer);
             instanceToGraphMapper.mapTraitInstanceToVertex(traitInstance,
                     typeSystem.getDataType(ClassType.class, typeName), instanceVertex);
 
@@ -366,7 +608,7 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
         }
 
         try {
-            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler);
+            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler, fullTextIndexer);
             instanceToGraphMapper.mapTypedInstanceToGraph(TypedInstanceToGraphMapper.Operation.UPDATE_FULL,
                     entitiesUpdated);
             RequestContext requestContext = RequestContext.get();
@@ -384,7 +626,7 @@ public class GraphBackedMetadataRepository implements MetadataRepository {
         }
 
         try {
-            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler);
+            TypedInstanceToGraphMapper instanceToGraphMapper = new TypedInstanceToGraphMapper(graphToInstanceMapper, deleteHandler, fullTextIndexer);
             instanceToGraphMapper.mapTypedInstanceToGraph(TypedInstanceToGraphMapper.Operation.UPDATE_PARTIAL, entity);
             RequestContext requestContext = RequestContext.get();
             return createEntityResultFromContext(requestContext);
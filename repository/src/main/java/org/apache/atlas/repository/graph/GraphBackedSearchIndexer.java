@@ -162,6 +162,10 @@ public class    GraphBackedSearchIndexer implements SearchIndexer, ActiveStateCh
                     AtlasCardinality.SINGLE, false, false);
 
 
+            // Add the pending full text property to Vertex Index (mixed index), to find the entities to index on start
+            createIndexes(management, Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, Long.class, false,
+                    AtlasCardinality.SINGLE, false, false);
+
             // create a mixed index for entity state. Set systemProperty flag deliberately to false
             // so that it doesnt create a composite index which has issues with
             // titan 0.5.4 - Refer https://groups.google.com/forum/#!searchin/aureliusgraphs/hemanth/aureliusgraphs/bx7T843mzXU/fjAsclx7GAAJ
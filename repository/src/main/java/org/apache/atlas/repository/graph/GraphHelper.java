@@ -29,8 +29,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.Stack;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.atlas.ApplicationProperties;
 import org.apache.atlas.AtlasException;
@@ -86,12 +86,15 @@ public final class GraphHelper {
 
     public static final String RETRY_COUNT = "atlas.graph.storage.num.retries";
     public static final String RETRY_DELAY = "atlas.graph.storage.retry.sleeptime.ms";
+    public static final String EDGE_LOOKUP_SCAN_FALLBACK = "atlas.graph.edge.lookup.scan.fallback";
+    public static final boolean DEFAULT_EDGE_LOOKUP_SCAN_FALLBACK = true;
 
     private static volatile GraphHelper INSTANCE;
 
     private AtlasGraph graph;
     private static int maxRetries;
     public static long retrySleepTimeMillis;
+    private static boolean edgeLookupScanFallback = DEFAULT_EDGE_LOOKUP_SCAN_FALLBACK;
 
     @VisibleForTesting
     GraphHelper(AtlasGraph graph) {
@@ -99,11 +102,17 @@ public final class GraphHelper {
         try {
             maxRetries = ApplicationProperties.get().getInt(RETRY_COUNT, 3);
             retrySleepTimeMillis = ApplicationProperties.get().getLong(RETRY_DELAY, 1000);
+            edgeLookupScanFallback = ApplicationProperties.get().getBoolean(EDGE_LOOKUP_SCAN_FALLBACK, DEFAULT_EDGE_LOOKUP_SCAN_FALLBACK);
         } catch (AtlasException e) {
             LOG.error("Could not load configuration. Setting to default value for " + RETRY_COUNT, e);
         }
     }
 
+    @VisibleForTesting
+    static void setEdgeLookupScanFallback(boolean scanFallback) {
+        edgeLookupScanFallback = scanFallback;
+    }
+
     public static GraphHelper getInstance() {
         if ( INSTANCE == null) {
             synchronized (GraphHelper.class) {
@@ -200,16 +209,9 @@ public final class GraphHelper {
                     LOG.debug("Running edge creation attempt {}", numRetries);
                 }
 
-                Iterator<AtlasEdge> edges = getAdjacentEdgesByLabel(inVertex, AtlasEdgeDirection.IN, edgeLabel);
-
-                while (edges.hasNext()) {
-                    AtlasEdge edge = edges.next();
-                    if (edge.getOutVertex().equals(outVertex)) {
-                        Id.EntityState edgeState = getState(edge);
-                        if (edgeState == null || edgeState == Id.EntityState.ACTIVE) {
-                            return edge;
-                        }
-                    }
+                AtlasEdge edge = getActiveEdge(outVertex, inVertex, edgeLabel);
+                if (edge != null) {
+                    return edge;
                 }
 
                 return addEdge(outVertex, inVertex, edgeLabel);
@@ -283,46 +285,107 @@ public final class GraphHelper {
         return vertex;
     }
 
-    //In some cases of parallel APIs, the edge is added, but get edge by label doesn't return the edge. ATLAS-1104
-    //So traversing all the edges
+    /**
+     * Returns the active edge with the given label from outVertex to inVertex, or null if there is none. The edge is
+     * looked up by label and adjacent vertex on the out-vertex, which is a point lookup in the out-vertex's adjacency
+     * list; the in-vertex may be a hub with a large number of incoming edges.
+     *
+     * The lookup may not see an edge whose label was created by a concurrent transaction (ATLAS-1104), so when it
+     * finds no edge and the label is not in the graph schema as seen by this transaction, the out edges of the
+     * out-vertex are scanned as well; otherwise concurrent updates of an entity would create duplicate edges. Once the
+     * label exists, a miss is trusted and no edges are scanned.
+     */
+    private AtlasEdge getActiveEdge(AtlasVertex outVertex, AtlasVertex inVertex, String edgeLabel) {
+        Iterable<AtlasEdge> edges = outVertex.query().direction(AtlasEdgeDirection.OUT).label(edgeLabel)
+                .adjacent(inVertex).edges();
+        for (AtlasEdge edge : edges) {
+            if (isActiveOrStateless(edge)) {
+                return edge;
+            }
+        }
+
+        if (isScanFallbackNeeded(edgeLabel)) {
+            Iterator<AtlasEdge> scanned = filterByLabel(outVertex.getEdges(AtlasEdgeDirection.OUT).iterator(),
+                    edgeLabel);
+            while (scanned.hasNext()) {
+                AtlasEdge edge = scanned.next();
+                if (edge.getInVertex().equals(inVertex) && isActiveOrStateless(edge)) {
+                    return edge;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether a lookup by the given label that found nothing must be followed by a scan of all the edges: only when the
+     * label is not yet in the graph schema, or was created by a concurrent transaction (ATLAS-1104).
+     */
+    private boolean isScanFallbackNeeded(String edgeLabel) {
+        return edgeLookupScanFallback && !graph.containsEdgeLabel(edgeLabel);
+    }
+
+    private static boolean isActiveOrStateless(AtlasEdge edge) {
+        Id.EntityState edgeState = getState(edge);
+        return edgeState == null || edgeState == Id.EntityState.ACTIVE;
+    }
+
+    /**
+     * Returns the edges with the given label, using a label-restricted query.
+     *
+     * In some cases of parallel APIs, the edge is added, but get edge by label doesn't return the edge (ATLAS-1104).
+     * Unless atlas.graph.edge.lookup.scan.fallback is disabled, when the label-restricted query returns no edges and
+     * the label is not in the graph schema as seen by this transaction, all the edges of the vertex are traversed and
+     * filtered by label instead.
+     *
+     * The returned iterator's next() returns null once there are no more edges.
+     */
     public Iterator<AtlasEdge> getAdjacentEdgesByLabel(AtlasVertex instanceVertex, AtlasEdgeDirection direction, final String edgeLabel) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Finding edges for {} with label {}", string(instanceVertex), edgeLabel);
         }
 
-        if(instanceVertex != null && edgeLabel != null) {
-            final Iterator<AtlasEdge> iterator = instanceVertex.getEdges(direction).iterator();
-            return new Iterator<AtlasEdge>() {
-                private AtlasEdge edge = null;
+        if (instanceVertex != null && edgeLabel != null) {
+            Iterator<AtlasEdge> edges = instanceVertex.getEdges(direction, edgeLabel).iterator();
+            if (!edges.hasNext() && isScanFallbackNeeded(edgeLabel)) {
+                edges = instanceVertex.getEdges(direction).iterator();
+            }
+            return filterByLabel(edges, edgeLabel);
+        }
+        return null;
+    }
 
-                @Override
-                public boolean hasNext() {
-                    while (edge == null && iterator.hasNext()) {
-                        AtlasEdge localEdge = iterator.next();
-                        if (localEdge.getLabel().equals(edgeLabel)) {
-                            edge = localEdge;
-                        }
-                    }
-                    return edge != null;
-                }
+    private static Iterator<AtlasEdge> filterByLabel(final Iterator<AtlasEdge> iterator, final String edgeLabel) {
+        return new Iterator<AtlasEdge>() {
+            private AtlasEdge edge = null;
 
-                @Override
-                public AtlasEdge next() {
-                    if (hasNext()) {
-                        AtlasEdge localEdge = edge;
-                        edge = null;
-                        return localEdge;
+            @Override
+            public boolean hasNext() {
+                while (edge == null && iterator.hasNext()) {
+                    AtlasEdge localEdge = iterator.next();
+                    if (localEdge.getLabel().equals(edgeLabel)) {
+                        edge = localEdge;
                     }
-                    return null;
                 }
+                return edge != null;
+            }
 
-                @Override
-                public void remove() {
-                    throw new IllegalStateException("Not handled");
+            @Override
+            public AtlasEdge next() {
+                if (hasNext()) {
+                    AtlasEdge localEdge = edge;
+                    edge = null;
+                    return localEdge;
                 }
-            };
-        }
-        return null;
+                return null;
+            }
+
+            @Override
+            public void remove() {
+                throw new IllegalStateException("Not handled");
+            }
+        };
     }
 
     public Iterator<AtlasEdge> getOutGoingEdgesByLabel(AtlasVertex instanceVertex, String edgeLabel) {
@@ -337,7 +400,15 @@ public final class GraphHelper {
      * @return
      */
     public AtlasEdge getEdgeForLabel(AtlasVertex vertex, String edgeLabel) {
-        Iterator<AtlasEdge> iterator = getAdjacentEdgesByLabel(vertex, AtlasEdgeDirection.OUT, edgeLabel);
+        return getActiveOrLatestDeletedEdge(getAdjacentEdgesByLabel(vertex, AtlasEdgeDirection.OUT, edgeLabel));
+    }
+
+    /**
+     * Returns the first active edge among the given edges, or the latest deleted edge if none of them is active.
+     * @param iterator edges with the same label
+     * @return
+     */
+    public static AtlasEdge getActiveOrLatestDeletedEdge(Iterator<AtlasEdge> iterator) {
         AtlasEdge latestDeletedEdge = null;
         long latestDeletedEdgeTime = Long.MIN_VALUE;
 
@@ -585,6 +656,50 @@ public final class GraphHelper {
         return getVerticesForPropertyValues(Constants.GUID_PROPERTY_KEY, guids);
     }
 
+    /**
+     * Finds the active vertices that have the given type property value (entity type or super type name)
+     * and one of the given values for a property, with a single graph query. Values that are not found
+     * in the graph will not be in the map.
+     *
+     * @return map of property value (as string) to AtlasVertex
+     */
+    public Map<String, AtlasVertex> getActiveVerticesForPropertyValues(String typeProperty, String typeName,
+                                                                       String property, Collection<?> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        AtlasGraphQuery query = graph.query()
+                                     .has(typeProperty, typeName)
+                                     .has(Constants.STATE_PROPERTY_KEY, Id.EntityState.ACTIVE.name())
+                                     .in(property, values);
+
+        Map<String, AtlasVertex> result = new HashMap<>(values.size());
+
+        for (AtlasVertex vertex : (Iterable<AtlasVertex>) query.vertices()) {
+            Object propertyValue = vertex.getProperty(property, Object.class);
+
+            if (propertyValue != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Found a vertex {} with {} = {} and {} = {}", string(vertex), typeProperty, typeName, property, propertyValue);
+                }
+
+                result.put(String.valueOf(propertyValue), vertex);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the vertices with a value of at least minValue for the given property.
+     */
+    public Iterable<AtlasVertex> getVerticesWithPropertyAtLeast(String property, long minValue) {
+        return (Iterable<AtlasVertex>) graph.query()
+                                            .has(property, AtlasGraphQuery.ComparisionOperator.GREATER_THAN_EQUAL, minValue)
+                                            .vertices();
+    }
+
     public static String getQualifiedNameForMapKey(String prefix, String key) {
         return prefix + "." + key;
     }
@@ -854,7 +969,9 @@ public final class GraphHelper {
 
     /**
      * Get the GUIDs and vertices for all composite entities owned/contained by the specified root entity AtlasVertex.
-     * The graph is traversed from the root entity through to the leaf nodes of the containment graph.
+     * The graph is traversed from the root entity through to the leaf nodes of the containment graph, one level at a
+     * time: the outgoing edges of all the vertices in a level are read with a single multi-vertex query and matched
+     * against the composite edge labels of each vertex's type.
      *
      * @param entityVertex the root entity vertex
      * @return set of VertexInfo for all composite entities
@@ -862,19 +979,77 @@ public final class GraphHelper {
      */
     public Set<VertexInfo> getCompositeVertices(AtlasVertex entityVertex) throws AtlasException {
         Set<VertexInfo> result = new HashSet<>();
-        Stack<AtlasVertex> vertices = new Stack<>();
-        vertices.push(entityVertex);
-        while (vertices.size() > 0) {
-            AtlasVertex vertex = vertices.pop();
-            String typeName = GraphHelper.getTypeName(vertex);
-            String guid = GraphHelper.getGuid(vertex);
-            Id.EntityState state = GraphHelper.getState(vertex);
-            if (state == Id.EntityState.DELETED) {
-                //If the reference vertex is marked for deletion, skip it
-                continue;
+        Set<Object> visited = new HashSet<>();
+        List<AtlasVertex> level = new ArrayList<>();
+        level.add(entityVertex);
+
+        while (!level.isEmpty()) {
+            Map<AtlasVertex, CompositeAttributes> toExpand = new HashMap<>();
+            for (AtlasVertex vertex : level) {
+                if (!visited.add(vertex.getId())) {
+                    continue;
+                }
+                Id.EntityState state = GraphHelper.getState(vertex);
+                if (state == Id.EntityState.DELETED) {
+                    //If the reference vertex is marked for deletion, skip it
+                    continue;
+                }
+                String typeName = GraphHelper.getTypeName(vertex);
+                String guid = GraphHelper.getGuid(vertex);
+                result.add(new VertexInfo(guid, vertex, typeName));
+
+                CompositeAttributes compositeAttributes = getCompositeAttributes(typeName);
+                if (!compositeAttributes.isEmpty()) {
+                    toExpand.put(vertex, compositeAttributes);
+                }
+            }
+
+            level = new ArrayList<>();
+            if (toExpand.isEmpty()) {
+                break;
             }
-            result.add(new VertexInfo(guid, vertex, typeName));
-            ClassType classType = typeSystem.getDataType(ClassType.class, typeName);
+
+            Map<AtlasVertex, Iterable<AtlasEdge>> edgesByVertex =
+                    graph.getEdges((Collection) toExpand.keySet(), AtlasEdgeDirection.OUT);
+
+            for (Map.Entry<AtlasVertex, CompositeAttributes> entry : toExpand.entrySet()) {
+                AtlasVertex vertex = entry.getKey();
+                Iterable<AtlasEdge> edges = edgesByVertex.get(vertex);
+                if (edges != null) {
+                    entry.getValue().collectReferencedVertices(vertex, edges, level);
+                }
+            }
+        }
+        return result;
+    }
+
+    private final Map<String, CompositeAttributes> compositeAttributesCache = new ConcurrentHashMap<>();
+
+    /**
+     * The composite attributes of the type and their edge labels are cached; the cached entry is replaced when the
+     * type system returns a different ClassType instance for the type name, i.e. after the type has been updated.
+     */
+    private CompositeAttributes getCompositeAttributes(String typeName) throws AtlasException {
+        ClassType classType = typeSystem.getDataType(ClassType.class, typeName);
+        CompositeAttributes ret = compositeAttributesCache.get(typeName);
+
+        if (ret == null || ret.classType != classType) {
+            ret = new CompositeAttributes(classType);
+            compositeAttributesCache.put(typeName, ret);
+        }
+
+        return ret;
+    }
+
+    private static final class CompositeAttributes {
+        private final ClassType    classType;
+        private final List<String> singleValuedLabels  = new ArrayList<>();
+        private final List<String> multiValuedLabels   = new ArrayList<>();
+        private final Map<String, String> mapKeysProperties = new HashMap<>(); // map edge label -> keys property
+
+        CompositeAttributes(ClassType classType) throws AtlasException {
+            this.classType = classType;
+
             for (AttributeInfo attributeInfo : classType.fieldMapping().fields.values()) {
                 if (!attributeInfo.isComposite) {
                     continue;
@@ -882,53 +1057,55 @@ public final class GraphHelper {
                 String edgeLabel = GraphHelper.getEdgeLabel(classType, attributeInfo);
                 switch (attributeInfo.dataType().getTypeCategory()) {
                     case CLASS:
-                        AtlasEdge edge = getEdgeForLabel(vertex, edgeLabel);
-                        if (edge != null && GraphHelper.getState(edge) == Id.EntityState.ACTIVE) {
-                            AtlasVertex compositeVertex = edge.getInVertex();
-                            vertices.push(compositeVertex);
-                        }
+                        singleValuedLabels.add(edgeLabel);
                         break;
                     case ARRAY:
                         IDataType elementType = ((DataTypes.ArrayType) attributeInfo.dataType()).getElemType();
-                        DataTypes.TypeCategory elementTypeCategory = elementType.getTypeCategory();
-                        if (elementTypeCategory != TypeCategory.CLASS) {
-                            continue;
-                        }
-                        Iterator<AtlasEdge> edges = getOutGoingEdgesByLabel(vertex, edgeLabel);
-                        if (edges != null) {
-                            while (edges.hasNext()) {
-                                edge = edges.next();
-                                if (edge != null && GraphHelper.getState(edge) == Id.EntityState.ACTIVE) {
-                                    AtlasVertex compositeVertex = edge.getInVertex();
-                                    vertices.push(compositeVertex);
-                                }
-                            }
+                        if (elementType.getTypeCategory() == TypeCategory.CLASS) {
+                            multiValuedLabels.add(edgeLabel);
                         }
                         break;
                     case MAP:
                         DataTypes.MapType mapType = (DataTypes.MapType) attributeInfo.dataType();
-                        DataTypes.TypeCategory valueTypeCategory = mapType.getValueType().getTypeCategory();
-                        if (valueTypeCategory != TypeCategory.CLASS) {
-                            continue;
-                        }
-                        String propertyName = GraphHelper.getQualifiedFieldName(classType, attributeInfo.name);
-                        List<String> keys = vertex.getProperty(propertyName, List.class);
-                        if (keys != null) {
-                            for (String key : keys) {
-                                String mapEdgeLabel = GraphHelper.getQualifiedNameForMapKey(edgeLabel, key);
-                                edge = getEdgeForLabel(vertex, mapEdgeLabel);
-                                if (edge != null && GraphHelper.getState(edge) == Id.EntityState.ACTIVE) {
-                                    AtlasVertex compositeVertex = edge.getInVertex();
-                                    vertices.push(compositeVertex);
-                                }
-                            }
+                        if (mapType.getValueType().getTypeCategory() == TypeCategory.CLASS) {
+                            mapKeysProperties.put(edgeLabel,
+                                    GraphHelper.getQualifiedFieldName(classType, attributeInfo.name));
                         }
                         break;
                     default:
                 }
             }
         }
-        return result;
+
+        boolean isEmpty() {
+            return singleValuedLabels.isEmpty() && multiValuedLabels.isEmpty() && mapKeysProperties.isEmpty();
+        }
+
+        /**
+         * Adds the in-vertices of the active composite edges among the given outgoing edges of the vertex. For
+         * single-valued attributes and map entries, only the first active edge with the label is followed.
+         */
+        void collectReferencedVertices(AtlasVertex vertex, Iterable<AtlasEdge> edges, List<AtlasVertex> result) {
+            Set<String> singleLabels = new HashSet<>(singleValuedLabels);
+            for (Map.Entry<String, String> entry : mapKeysProperties.entrySet()) {
+                List<String> keys = vertex.getProperty(entry.getValue(), List.class);
+                if (keys != null) {
+                    for (String key : keys) {
+                        singleLabels.add(GraphHelper.getQualifiedNameForMapKey(entry.getKey(), key));
+                    }
+                }
+            }
+
+            for (AtlasEdge edge : edges) {
+                if (edge == null || GraphHelper.getState(edge) != Id.EntityState.ACTIVE) {
+                    continue;
+                }
+                String label = edge.getLabel();
+                if (multiValuedLabels.contains(label) || singleLabels.remove(label)) {
+                    result.add(edge.getInVertex());
+                }
+            }
+        }
     }
 
     public static ITypedReferenceableInstance[] deserializeClassInstances(TypeSystem typeSystem, String entityInstanceDefinition)
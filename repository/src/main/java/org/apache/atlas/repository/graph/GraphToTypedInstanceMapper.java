@@ -22,10 +22,16 @@ import static org.apache.atlas.repository.graph.GraphHelper.string;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.RequestContext;
@@ -35,6 +41,7 @@ import org.apache.atlas.repository.graphdb.AtlasEdge;
 import org.apache.atlas.repository.graphdb.AtlasEdgeDirection;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.services.EntityProjection;
 import org.apache.atlas.typesystem.ITypedInstance;
 import org.apache.atlas.typesystem.ITypedReferenceableInstance;
 import org.apache.atlas.typesystem.ITypedStruct;
@@ -51,8 +58,18 @@ import org.apache.atlas.typesystem.types.TypeSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.inject.Singleton;
 
+/**
+ * Maps entity vertices to typed instances.
+ *
+ * The graph elements an instance is mapped from are read through a {@link ReadPlan}: the outgoing edges of a vertex
+ * are read with a single query, together with the properties of the vertices they lead to, and the edges referred to
+ * by id from array and map attributes are resolved from the edges read, instead of with one graph lookup per element.
+ * When only some attributes of an entity are mapped, the edges of the entity vertex are read per attribute instead.
+ */
 @Singleton
 public final class GraphToTypedInstanceMapper {
 
@@ -68,6 +85,24 @@ public final class GraphToTypedInstanceMapper {
 
     public ITypedReferenceableInstance mapGraphToTypedInstance(String guid, AtlasVertex instanceVertex)
         throws AtlasException {
+        return mapGraphToTypedInstance(guid, instanceVertex, new ReadPlan(getGraph(), true, null),
+                EntityProjection.ALL);
+    }
+
+    /**
+     * Maps the parts of the entity selected by the projection. Attributes which aren't selected are not set, and the
+     * instance isn't cached in the request context unless it is complete.
+     */
+    public ITypedReferenceableInstance mapGraphToTypedInstance(String guid, AtlasVertex instanceVertex,
+        EntityProjection projection) throws AtlasException {
+        ReadPlan readPlan = new ReadPlan(getGraph(), projection.isExpandComposites(),
+                projection.getAttributes() != null ? instanceVertex : null);
+
+        return mapGraphToTypedInstance(guid, instanceVertex, readPlan, projection);
+    }
+
+    private ITypedReferenceableInstance mapGraphToTypedInstance(String guid, AtlasVertex instanceVertex,
+        ReadPlan readPlan, EntityProjection projection) throws AtlasException {
 
         if(LOG.isDebugEnabled()) {
             //We don't do a cache check here since we want that to be at a higher level
@@ -81,7 +116,8 @@ public final class GraphToTypedInstanceMapper {
         }
 
         String typeName = GraphHelper.getSingleValuedProperty(instanceVertex, Constants.ENTITY_TYPE_PROPERTY_KEY, String.class);
-        List<String> traits = GraphHelper.getTraitNames(instanceVertex);
+        List<String> traits = projection.isIncludeTraits() ? GraphHelper.getTraitNames(instanceVertex)
+                : Collections.<String>emptyList();
         String state = GraphHelper.getStateAsString(instanceVertex);
         String createdBy = GraphHelper.getCreatedByAsString(instanceVertex);
         String modifiedBy = GraphHelper.getModifiedByAsString(instanceVertex);
@@ -104,26 +140,52 @@ public final class GraphToTypedInstanceMapper {
         ITypedReferenceableInstance typedInstance =
             classType.createInstance(id, systemAttributes, traits.toArray(new String[traits.size()]));
 
-        mapVertexToInstance(instanceVertex, typedInstance, classType.fieldMapping().fields);
-        mapVertexToInstanceTraits(instanceVertex, typedInstance, traits);
-        RequestContext.get().cache(typedInstance);
+        mapVertexToInstance(instanceVertex, typedInstance, getProjectedFields(classType, projection), readPlan);
+        mapVertexToInstanceTraits(instanceVertex, typedInstance, traits, readPlan);
+        if (projection.isAll()) {
+            RequestContext.get().cache(typedInstance);
+        }
         return typedInstance;
     }
 
+    private static Map<String, AttributeInfo> getProjectedFields(ClassType classType, EntityProjection projection) {
+        Map<String, AttributeInfo> fields = classType.fieldMapping().fields;
+
+        if (projection.getAttributes() == null) {
+            return fields;
+        }
+
+        Map<String, AttributeInfo> ret = new LinkedHashMap<>();
+        for (String attributeName : projection.getAttributes()) {
+            AttributeInfo attributeInfo = fields.get(attributeName);
+            if (attributeInfo == null) {
+                throw new IllegalArgumentException(String.format("Attribute %s not found for type %s", attributeName,
+                        classType.getName()));
+            }
+            ret.put(attributeName, attributeInfo);
+        }
+        return ret;
+    }
+
     private void mapVertexToInstanceTraits(AtlasVertex instanceVertex, ITypedReferenceableInstance typedInstance,
-        List<String> traits) throws AtlasException {
+        List<String> traits, ReadPlan readPlan) throws AtlasException {
         for (String traitName : traits) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("mapping trait {} to instance", traitName);
             }
 
             TraitType traitType = typeSystem.getDataType(TraitType.class, traitName);
-            mapVertexToTraitInstance(instanceVertex, typedInstance, traitName, traitType);
+            mapVertexToTraitInstance(instanceVertex, typedInstance, traitName, traitType, readPlan);
         }
     }
 
     public void mapVertexToInstance(AtlasVertex instanceVertex, ITypedInstance typedInstance,
         Map<String, AttributeInfo> fields) throws AtlasException {
+        mapVertexToInstance(instanceVertex, typedInstance, fields, new ReadPlan(getGraph(), true, null));
+    }
+
+    private void mapVertexToInstance(AtlasVertex instanceVertex, ITypedInstance typedInstance,
+        Map<String, AttributeInfo> fields, ReadPlan readPlan) throws AtlasException {
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Mapping vertex {} to instance {} for fields", instanceVertex, typedInstance.getTypeName(),
@@ -131,12 +193,12 @@ public final class GraphToTypedInstanceMapper {
         }
 
         for (AttributeInfo attributeInfo : fields.values()) {
-            mapVertexToAttribute(instanceVertex, typedInstance, attributeInfo);
+            mapVertexToAttribute(instanceVertex, typedInstance, attributeInfo, readPlan);
         }
     }
 
     private void mapVertexToAttribute(AtlasVertex instanceVertex, ITypedInstance typedInstance,
-        AttributeInfo attributeInfo) throws AtlasException {
+        AttributeInfo attributeInfo, ReadPlan readPlan) throws AtlasException {
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Mapping attributeInfo {}", attributeInfo.name);
@@ -161,16 +223,16 @@ public final class GraphToTypedInstanceMapper {
             break;
 
         case ARRAY:
-            mapVertexToArrayInstance(instanceVertex, typedInstance, attributeInfo, vertexPropertyName);
+            mapVertexToArrayInstance(instanceVertex, typedInstance, attributeInfo, vertexPropertyName, readPlan);
             break;
 
         case MAP:
-            mapVertexToMapInstance(instanceVertex, typedInstance, attributeInfo, vertexPropertyName);
+            mapVertexToMapInstance(instanceVertex, typedInstance, attributeInfo, vertexPropertyName, readPlan);
             break;
 
         case STRUCT:
             ITypedStruct structInstance = mapVertexToStructInstance(instanceVertex,
-                    (StructType) attributeInfo.dataType(), relationshipLabel, null);
+                    (StructType) attributeInfo.dataType(), relationshipLabel, null, readPlan);
             typedInstance.set(attributeInfo.name, structInstance);
             break;
 
@@ -181,7 +243,7 @@ public final class GraphToTypedInstanceMapper {
         case CLASS:
             AtlasEdge nullEdge = null;
             Object idOrInstance = mapVertexToClassReference(instanceVertex, attributeInfo, relationshipLabel,
-                attributeInfo.dataType(), nullEdge);
+                attributeInfo.dataType(), nullEdge, readPlan);
             if (idOrInstance != null) {
                 typedInstance.set(attributeInfo.name, idOrInstance);
             }
@@ -193,14 +255,15 @@ public final class GraphToTypedInstanceMapper {
     }
 
     private Object mapVertexToClassReference(AtlasVertex instanceVertex, AttributeInfo attributeInfo,
-            String relationshipLabel, IDataType dataType, AtlasEdge optionalEdge) throws AtlasException {
+            String relationshipLabel, IDataType dataType, AtlasEdge optionalEdge, ReadPlan readPlan)
+            throws AtlasException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Finding edge for {} -> label {} ", instanceVertex, relationshipLabel);
         }
 
         AtlasEdge edge = null;
         if (optionalEdge == null) {
-            edge = graphHelper.getEdgeForLabel(instanceVertex, relationshipLabel);
+            edge = readPlan.getEdgeForLabel(instanceVertex, relationshipLabel);
         } else {
             edge = optionalEdge;
         }
@@ -213,14 +276,14 @@ public final class GraphToTypedInstanceMapper {
                 LOG.debug("Found vertex {} for label {} with guid {}", referenceVertex, relationshipLabel, guid);
             }
 
-            if (attributeInfo.isComposite) {
+            if (attributeInfo.isComposite && readPlan.isExpandComposites()) {
                 //Also, when you retrieve a type's instance, you get the complete object graph of the composites
                 LOG.debug("Found composite, mapping vertex to instance");
                 ITypedReferenceableInstance cached = RequestContext.get().getInstance(guid);
                 if(cached != null) {
                     return cached;
                 }
-                return mapGraphToTypedInstance(guid, referenceVertex);
+                return mapGraphToTypedInstance(guid, referenceVertex, readPlan, EntityProjection.ALL);
             } else {
                 String state = GraphHelper.getStateAsString(referenceVertex);
                 Id referenceId =
@@ -240,7 +303,7 @@ public final class GraphToTypedInstanceMapper {
 
     @SuppressWarnings("unchecked")
     private void mapVertexToArrayInstance(AtlasVertex<?,?> instanceVertex, ITypedInstance typedInstance,
-            AttributeInfo attributeInfo, String propertyName) throws AtlasException {
+            AttributeInfo attributeInfo, String propertyName, ReadPlan readPlan) throws AtlasException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("mapping vertex {} to array {}", instanceVertex, attributeInfo.name);
         }
@@ -248,17 +311,24 @@ public final class GraphToTypedInstanceMapper {
         final DataTypes.ArrayType arrayType = (DataTypes.ArrayType) attributeInfo.dataType();
         final IDataType elementType = arrayType.getElemType();
 
-        List<Object> list = GraphHelper.getArrayElementsProperty(elementType, instanceVertex, propertyName);
+        String edgeLabel = GraphHelper.EDGE_LABEL_PREFIX + propertyName;
+
+        List<Object> list;
+        if (GraphHelper.isReference(elementType)) {
+            List<String> edgeIds = GraphHelper.getListProperty(instanceVertex, propertyName);
+            list = edgeIds == null ? null : (List) readPlan.getEdges(instanceVertex, edgeLabel, edgeIds,
+                    readPlan.isMappedToInstance(attributeInfo, elementType));
+        } else {
+            list = GraphHelper.getArrayElementsProperty(elementType, instanceVertex, propertyName);
+        }
 
         if (list == null || list.size() == 0) {
             return;
         }
-
-        String edgeLabel = GraphHelper.EDGE_LABEL_PREFIX + propertyName;
         ArrayList values = new ArrayList();
         for (Object aList : list) {
             values.add(mapVertexToCollectionEntry(instanceVertex, attributeInfo, elementType, aList,
-                    edgeLabel));
+                    edgeLabel, readPlan));
         }
 
         if (values.size() > 0) {
@@ -267,7 +337,7 @@ public final class GraphToTypedInstanceMapper {
     }
 
     private Object mapVertexToCollectionEntry(AtlasVertex instanceVertex, AttributeInfo attributeInfo,
-        IDataType elementType, Object value, String edgeLabel) throws AtlasException {
+        IDataType elementType, Object value, String edgeLabel, ReadPlan readPlan) throws AtlasException {
         switch (elementType.getTypeCategory()) {
         case PRIMITIVE:
         case ENUM:
@@ -280,10 +350,12 @@ public final class GraphToTypedInstanceMapper {
             break;
 
         case STRUCT:
-            return mapVertexToStructInstance(instanceVertex, (StructType) elementType, edgeLabel, (AtlasEdge) value);
+            return mapVertexToStructInstance(instanceVertex, (StructType) elementType, edgeLabel, (AtlasEdge) value,
+                    readPlan);
 
         case CLASS:
-            return mapVertexToClassReference(instanceVertex, attributeInfo, edgeLabel, elementType, (AtlasEdge) value);
+            return mapVertexToClassReference(instanceVertex, attributeInfo, edgeLabel, elementType, (AtlasEdge) value,
+                    readPlan);
 
         default:
             break;
@@ -294,7 +366,7 @@ public final class GraphToTypedInstanceMapper {
 
     @SuppressWarnings("unchecked")
     private void mapVertexToMapInstance(AtlasVertex<?,?> instanceVertex, ITypedInstance typedInstance,
-            AttributeInfo attributeInfo, final String propertyName) throws AtlasException {
+            AttributeInfo attributeInfo, final String propertyName, ReadPlan readPlan) throws AtlasException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("mapping vertex {} to array {}", instanceVertex, attributeInfo.name);
         }
@@ -306,12 +378,25 @@ public final class GraphToTypedInstanceMapper {
         DataTypes.MapType mapType = (DataTypes.MapType) attributeInfo.dataType();
         final IDataType valueType = mapType.getValueType();
 
+        List<AtlasEdge> edges = null;
+        if (GraphHelper.isReference(valueType)) {
+            List<String> edgeIds = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                edgeIds.add(GraphHelper.getSingleValuedProperty(instanceVertex, propertyName + "." + key, String.class));
+            }
+            // each entry has its own edge label
+            edges = readPlan.getEdges(instanceVertex, null, edgeIds, readPlan.isMappedToInstance(attributeInfo, valueType));
+        }
+
         HashMap<String,Object> values = new HashMap<>();
-        for (String key : keys) {
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
             final String keyPropertyName = propertyName + "." + key;
             final String edgeLabel = GraphHelper.EDGE_LABEL_PREFIX + keyPropertyName;
-            final Object keyValue = GraphHelper.getMapValueProperty(valueType, instanceVertex, keyPropertyName);
-            Object mapValue = mapVertexToCollectionEntry(instanceVertex, attributeInfo, valueType, keyValue, edgeLabel);
+            final Object keyValue = edges != null ? edges.get(i)
+                    : GraphHelper.getMapValueProperty(valueType, instanceVertex, keyPropertyName);
+            Object mapValue = mapVertexToCollectionEntry(instanceVertex, attributeInfo, valueType, keyValue, edgeLabel,
+                    readPlan);
             if (mapValue != null) {
                 values.put(key, mapValue);
             }
@@ -323,7 +408,7 @@ public final class GraphToTypedInstanceMapper {
     }
 
     private  ITypedStruct mapVertexToStructInstance(AtlasVertex instanceVertex, StructType structType,
-            String relationshipLabel, AtlasEdge optionalEdge) throws AtlasException {
+            String relationshipLabel, AtlasEdge optionalEdge, ReadPlan readPlan) throws AtlasException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("mapping {} to struct {}", string(instanceVertex), relationshipLabel);
         }
@@ -332,7 +417,7 @@ public final class GraphToTypedInstanceMapper {
 
         AtlasEdge edge;
         if (optionalEdge == null) {
-            edge = graphHelper.getEdgeForLabel(instanceVertex, relationshipLabel);
+            edge = readPlan.getEdgeForLabel(instanceVertex, relationshipLabel);
         } else {
             edge = optionalEdge;
         }
@@ -345,27 +430,28 @@ public final class GraphToTypedInstanceMapper {
                         structInstance.getTypeName());
             }
 
-            mapVertexToInstance(structInstanceVertex, structInstance, structType.fieldMapping().fields);
+            mapVertexToInstance(structInstanceVertex, structInstance, structType.fieldMapping().fields, readPlan);
         }
         return structInstance;
     }
 
     private void mapVertexToTraitInstance(AtlasVertex instanceVertex, ITypedReferenceableInstance typedInstance,
-        String traitName, TraitType traitType) throws AtlasException {
+        String traitName, TraitType traitType, ReadPlan readPlan) throws AtlasException {
         ITypedStruct traitInstance = (ITypedStruct) typedInstance.getTrait(traitName);
 
-        mapVertexToTraitInstance(instanceVertex, typedInstance.getTypeName(), traitName, traitType, traitInstance);
+        mapVertexToTraitInstance(instanceVertex, typedInstance.getTypeName(), traitName, traitType, traitInstance,
+                readPlan);
     }
 
     private void mapVertexToTraitInstance(AtlasVertex<?,?> instanceVertex, String typedInstanceTypeName, String traitName,
-            TraitType traitType, ITypedStruct traitInstance) throws AtlasException {
+            TraitType traitType, ITypedStruct traitInstance, ReadPlan readPlan) throws AtlasException {
         String relationshipLabel = GraphHelper.getTraitLabel(typedInstanceTypeName, traitName);
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Finding edge for {} -> label {} ", instanceVertex, relationshipLabel);
         }
 
-        for (AtlasEdge<?,?> edge : instanceVertex.getEdges(AtlasEdgeDirection.OUT, relationshipLabel)) {
+        for (AtlasEdge<?,?> edge : readPlan.getEdges(instanceVertex, relationshipLabel)) {
             final AtlasVertex<?,?> traitInstanceVertex = edge.getInVertex();
             if (traitInstanceVertex != null) {
                 if (LOG.isDebugEnabled()) {
@@ -373,7 +459,7 @@ public final class GraphToTypedInstanceMapper {
                             traitInstance.getTypeName());
                 }
 
-                mapVertexToInstance(traitInstanceVertex, traitInstance, traitType.fieldMapping().fields);
+                mapVertexToInstance(traitInstanceVertex, traitInstance, traitType.fieldMapping().fields, readPlan);
                 break;
             }
         }
@@ -449,5 +535,186 @@ public final class GraphToTypedInstanceMapper {
     private AtlasGraph getGraph() throws RepositoryException {
         return graphProvider.get();
     }
+
+    /**
+     * Reads the graph elements that one instance is mapped from. The outgoing edges of a vertex are read, with one
+     * query, when the first of them is needed, and the properties of the vertices they lead to are read together
+     * right after. The edges of the vertices which the elements of an array or map are mapped from are also read
+     * together, before the elements are mapped.
+     *
+     * The edges of a vertex of which only some attributes are mapped are instead read per label, with label-restricted
+     * queries, so that the edges of the other attributes, and the vertices they lead to, aren't read.
+     */
+    private static final class ReadPlan {
+        private final AtlasGraph graph;
+        private final boolean expandComposites;
+        private final Object labelRestrictedVertexId;
+        private final Map<Object, ListMultimap<String, AtlasEdge>> edgesByVertex = new HashMap<>();
+        private final Map<String, AtlasEdge> edgesById = new HashMap<>();
+        private final ListMultimap<String, AtlasEdge> labelRestrictedEdges = ArrayListMultimap.create();
+        private final Set<String> loadedLabels = new HashSet<>();
+
+        /**
+         * @param graph                 graph to read from
+         * @param expandComposites      whether composite references are mapped to instances rather than to ids
+         * @param labelRestrictedVertex vertex whose edges are read per label, or null
+         */
+        ReadPlan(AtlasGraph graph, boolean expandComposites, AtlasVertex labelRestrictedVertex) {
+            this.graph = graph;
+            this.expandComposites = expandComposites;
+            this.labelRestrictedVertexId = labelRestrictedVertex != null ? labelRestrictedVertex.getId() : null;
+        }
+
+        boolean isExpandComposites() {
+            return expandComposites;
+        }
+
+        // whether the vertices referred to by the attribute are mapped to instances, rather than to ids
+        boolean isMappedToInstance(AttributeInfo attributeInfo, IDataType elementType) {
+            switch (elementType.getTypeCategory()) {
+            case STRUCT:
+                return true;
+
+            case CLASS:
+                return attributeInfo.isComposite && expandComposites;
+
+            default:
+                return false;
+            }
+        }
+
+        /**
+         * @return the outgoing edges of the vertex with the given label
+         */
+        List<AtlasEdge> getEdges(AtlasVertex vertex, String edgeLabel) {
+            if (isLabelRestricted(vertex)) {
+                loadLabel(vertex, edgeLabel);
+
+                return labelRestrictedEdges.get(edgeLabel);
+            }
+
+            load(Collections.singletonList(vertex));
+
+            return edgesByVertex.get(vertex.getId()).get(edgeLabel);
+        }
+
+        /**
+         * @return the active edge of the vertex with the given label or, if there is none, the latest deleted one
+         */
+        AtlasEdge getEdgeForLabel(AtlasVertex vertex, String edgeLabel) {
+            return GraphHelper.getActiveOrLatestDeletedEdge(getEdges(vertex, edgeLabel).iterator());
+        }
+
+        /**
+         * @param vertex         vertex the edges start from
+         * @param edgeLabel      label of the edges, or null if they don't have the same label
+         * @param edgeIds        ids of outgoing edges of the vertex; may contain nulls
+         * @param loadInVertices whether the in-vertices of the edges are going to be mapped
+         * @return the edges with the given ids, in the same order; null for ids which are null or not found
+         */
+        List<AtlasEdge> getEdges(AtlasVertex vertex, String edgeLabel, List<String> edgeIds, boolean loadInVertices) {
+            if (!isLabelRestricted(vertex)) {
+                load(Collections.singletonList(vertex));
+            } else if (edgeLabel != null) {
+                loadLabel(vertex, edgeLabel);
+            }
+
+            List<AtlasEdge> ret = new ArrayList<>(edgeIds.size());
+            List<AtlasVertex> inVertices = new ArrayList<>();
+
+            for (String edgeId : edgeIds) {
+                AtlasEdge edge = null;
+
+                if (edgeId != null) {
+                    edge = edgesById.get(edgeId);
+
+                    if (edge == null) { // not an edge of this vertex; looked up like it was before
+                        edge = graph.getEdge(edgeId);
+                    }
+                }
+
+                if (edge != null && loadInVertices) {
+                    inVertices.add(edge.getInVertex());
+                }
+
+                ret.add(edge);
+            }
+
+            load(inVertices);
+
+            return ret;
+        }
+
+        private boolean isLabelRestricted(AtlasVertex vertex) {
+            return labelRestrictedVertexId != null && labelRestrictedVertexId.equals(vertex.getId());
+        }
+
+        private void loadLabel(AtlasVertex vertex, String edgeLabel) {
+            if (!loadedLabels.add(edgeLabel)) {
+                return;
+            }
+
+            Iterator<AtlasEdge> edges = graphHelper.getOutGoingEdgesByLabel(vertex, edgeLabel);
+            List<AtlasVertex> inVertices = new ArrayList<>();
+
+            while (edges != null && edges.hasNext()) {
+                AtlasEdge edge = edges.next();
+
+                labelRestrictedEdges.put(edgeLabel, edge);
+                edgesById.put(edge.getId().toString(), edge);
+                inVertices.add(edge.getInVertex());
+            }
+
+            if (!inVertices.isEmpty()) {
+                graph.loadProperties((Collection) inVertices);
+            }
+        }
+
+        private void load(Collection<AtlasVertex> vertices) {
+            List<AtlasVertex> toLoad = new ArrayList<>();
+
+            for (AtlasVertex vertex : vertices) {
+                if (!edgesByVertex.containsKey(vertex.getId()) && !isLabelRestricted(vertex)) {
+                    edgesByVertex.put(vertex.getId(), ArrayListMultimap.<String, AtlasEdge>create());
+                    toLoad.add(vertex);
+                }
+            }
+
+            if (toLoad.isEmpty()) {
+                return;
+            }
+
+            // edges are read without a label restriction and matched by label here, as in GraphHelper (ATLAS-1104)
+            Map<AtlasVertex, Iterable<AtlasEdge>> edges = graph.getEdges((Collection) toLoad, AtlasEdgeDirection.OUT);
+            Map<Object, AtlasVertex> inVertices = new HashMap<>();
+
+            for (AtlasVertex vertex : toLoad) {
+                Iterable<AtlasEdge> vertexEdges = edges.get(vertex);
+
+                if (vertexEdges == null) {
+                    continue;
+                }
+
+                ListMultimap<String, AtlasEdge> edgesByLabel = edgesByVertex.get(vertex.getId());
+
+                for (AtlasEdge edge : vertexEdges) {
+                    AtlasVertex inVertex = edge.getInVertex();
+
+                    edgesByLabel.put(edge.getLabel(), edge);
+                    edgesById.put(edge.getId().toString(), edge);
+                    inVertices.put(inVertex.getId(), inVertex);
+                }
+            }
+
+            if (!inVertices.isEmpty()) {
+                graph.loadProperties((Collection) inVertices.values());
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Read the edges of {} vertices and the properties of {} adjacent vertices", toLoad.size(),
+                        inVertices.size());
+            }
+        }
+    }
 }
 
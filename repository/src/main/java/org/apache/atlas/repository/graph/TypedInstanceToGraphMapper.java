@@ -55,6 +55,7 @@ import org.apache.atlas.typesystem.types.ObjectGraphWalker;
 import org.apache.atlas.typesystem.types.TraitType;
 import org.apache.atlas.typesystem.types.TypeSystem;
 import org.apache.atlas.typesystem.types.TypeUtils;
+import org.apache.atlas.util.AtlasRepositoryConfiguration;
 import org.apache.atlas.utils.MD5Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,10 +74,22 @@ public final class TypedInstanceToGraphMapper {
     private DeleteHandler deleteHandler;
     private GraphToTypedInstanceMapper graphToTypedInstanceMapper;
 
+    private final AsyncFullTextIndexer fullTextIndexer;
+
     @Inject
     public TypedInstanceToGraphMapper(GraphToTypedInstanceMapper graphToTypedInstanceMapper, DeleteHandler deleteHandler) {
+        this(graphToTypedInstanceMapper, deleteHandler, null);
+    }
+
+    /**
+     * @param fullTextIndexer indexer to compute the full-text documents with when they are computed asynchronously,
+     *                        or null to always compute them in the transaction
+     */
+    public TypedInstanceToGraphMapper(GraphToTypedInstanceMapper graphToTypedInstanceMapper, DeleteHandler deleteHandler,
+                                      AsyncFullTextIndexer fullTextIndexer) {
         this.graphToTypedInstanceMapper = graphToTypedInstanceMapper;
         this.deleteHandler = deleteHandler;
+        this.fullTextIndexer = fullTextIndexer;
     }
 
     private final String SIGNATURE_HASH_PROPERTY_KEY = Constants.INTERNAL_PROPERTY_KEY_PREFIX + "signature";
@@ -125,6 +138,19 @@ public final class TypedInstanceToGraphMapper {
             throw new UnsupportedOperationException("Not handled - " + operation);
         }
 
+        //The instances nested in the given ones get the ids of their entities too. The instances of the entities
+        //created by the request are complete, so they are cached along with the given ones.
+        for(IReferenceableInstance instance : allNewInstances) {
+            if(instance instanceof ITypedReferenceableInstance) {
+                assignId((ITypedReferenceableInstance) instance);
+            }
+        }
+
+        for(ITypedReferenceableInstance instance : entitiesToCreate) {
+            assignReferenceIds(instance);
+            addToEntityCache(requestContext, instance);
+        }
+
         for(ITypedReferenceableInstance instance : typedInstances) {
             addToEntityCache(requestContext, instance);
         }
@@ -372,6 +398,17 @@ public final class TypedInstanceToGraphMapper {
 
 
     private void addFullTextProperty(List<ITypedReferenceableInstance> instances, FullTextMapper fulltextMapper) throws AtlasException {
+        if (fullTextIndexer != null && AtlasRepositoryConfiguration.isAsyncFullTextIndexingEnabled()) {
+            List<AtlasVertex> vertices = new ArrayList<>(instances.size());
+            for (ITypedReferenceableInstance typedInstance : instances) {
+                vertices.add(getClassVertex(typedInstance));
+            }
+            //Too many entities are pending already; the documents are computed here, like when indexing synchronously
+            if (fullTextIndexer.enqueueAfterCommit(vertices)) {
+                return;
+            }
+        }
+
         for (ITypedReferenceableInstance typedInstance : instances) { // Traverse
             AtlasVertex instanceVertex = getClassVertex(typedInstance);
             String fullText = fulltextMapper.mapRecursive(instanceVertex, true);
@@ -832,19 +869,68 @@ public final class TypedInstanceToGraphMapper {
     private void addToEntityCache(RequestContext context, ITypedReferenceableInstance instance)
             throws EntityNotFoundException {
 
+        //When the id is unassigned, we can only cache the instance of it is
+        //an instance of ReferenceableInstance, since replaceWithNewId is not
+        //currently in the ITypedReferenceableInstance interface.
+        if(assignId(instance)) {
+            context.cache(instance);
+        }
+    }
+
+    //The instance refers to the other entities of the request by the ids the request gave them, which are replaced
+    //with the ids of the entities
+    private void assignReferenceIds(ITypedReferenceableInstance instance) throws AtlasException {
+        ClassType classType = typeSystem.getDataType(ClassType.class, instance.getTypeName());
+
+        for (AttributeInfo attributeInfo : classType.fieldMapping().fields.values()) {
+            Object value = instance.get(attributeInfo.name);
+            Object assignedValue = assignReferenceIds(value);
+
+            if (assignedValue != value) {
+                instance.set(attributeInfo.name, assignedValue);
+            }
+        }
+    }
+
+    private Object assignReferenceIds(Object value) throws EntityNotFoundException {
+        if (value instanceof Id) {
+            Id id = (Id) value;
+            return id.isUnassigned() && idToVertexMap.containsKey(id) ? getId(id) : id;
+        }
+
+        if (value instanceof List) {
+            List<Object> ret = new ArrayList<>();
+            boolean changed = false;
+            for (Object element : (List<?>) value) {
+                Object assignedElement = assignReferenceIds(element);
+                changed |= assignedElement != element;
+                ret.add(assignedElement);
+            }
+            return changed ? ret : value;
+        }
+
+        if (value instanceof Map) {
+            Map<Object, Object> ret = new HashMap<>();
+            boolean changed = false;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object assignedValue = assignReferenceIds(entry.getValue());
+                changed |= assignedValue != entry.getValue();
+                ret.put(entry.getKey(), assignedValue);
+            }
+            return changed ? ret : value;
+        }
+
+        return value;
+    }
+
+    private boolean assignId(ITypedReferenceableInstance instance) throws EntityNotFoundException {
         Id instanceId = instance.getId();
         if(instanceId.isUnassigned()) {
-            if(instance instanceof ReferenceableInstance) {
-                //When the id is unassigned, we can only cache the instance of it is
-                //an instance of ReferenceableInstance, since replaceWithNewId is not
-                //currently in the ITypedReferenceableInstance interface.
-                Id id = getId(instance);
-                ((ReferenceableInstance)instance).replaceWithNewId(id);
-                context.cache(instance);
+            if(!(instance instanceof ReferenceableInstance) || !idToVertexMap.containsKey(instanceId)) {
+                return false;
             }
+            ((ReferenceableInstance)instance).replaceWithNewId(getId(instance));
         }
-        else {
-            context.cache(instance);
-        }
+        return true;
     }
 }
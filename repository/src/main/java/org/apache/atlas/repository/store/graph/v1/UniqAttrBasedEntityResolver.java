@@ -17,7 +17,6 @@
  */
 package org.apache.atlas.repository.store.graph.v1;
 
-import com.google.common.base.Optional;
 import org.apache.atlas.AtlasErrorCode;
 import org.apache.atlas.exception.AtlasBaseException;
 import org.apache.atlas.model.TypeCategory;
@@ -31,15 +30,18 @@ import org.apache.atlas.repository.store.graph.EntityResolver;
 import org.apache.atlas.type.AtlasEntityType;
 import org.apache.atlas.type.AtlasStructType;
 import org.apache.atlas.type.AtlasTypeRegistry;
-import org.apache.atlas.typesystem.exception.EntityNotFoundException;
 import org.apache.commons.collections.MapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class UniqAttrBasedEntityResolver implements EntityResolver {
     private static final Logger LOG = LoggerFactory.getLogger(UniqAttrBasedEntityResolver.class);
@@ -64,144 +66,232 @@ public class UniqAttrBasedEntityResolver implements EntityResolver {
             throw new AtlasBaseException(AtlasErrorCode.INTERNAL_ERROR, "Unique attribute based entity resolver not initialized");
         }
 
+        // collect the unique attribute lookups of all unresolved references and root entities, so that
+        // they can be resolved with one graph query per (type, unique attribute) rather than one per entity
+        Map<AtlasObjectId, List<UniqueAttributeLookup>> referenceLookups = new LinkedHashMap<>();
+        Map<AtlasObjectId, List<UniqueAttributeLookup>> rootLookups      = new LinkedHashMap<>();
+
+        for (AtlasObjectId entityId : context.getUnresolvedIdsByUniqAttribs()) {
+            referenceLookups.put(entityId, getUniqueAttributeLookups(entityId));
+        }
+
+        for (AtlasEntity entity : context.getRootEntities()) {
+            AtlasObjectId entityId = entity.getAtlasObjectId();
+
+            if (!context.isResolvedId(entityId)) {
+                rootLookups.put(entityId, getUniqueAttributeLookups(entity));
+            }
+        }
+
+        List<List<UniqueAttributeLookup>> allLookups = new ArrayList<>(referenceLookups.values());
+
+        allLookups.addAll(rootLookups.values());
+
+        LookupResults results = resolveLookups(allLookups);
+
         //Resolve attribute references
         List<AtlasObjectId> resolvedReferences = new ArrayList<>();
 
-        for (AtlasObjectId entityId : context.getUnresolvedIdsByUniqAttribs()) {
-            //query in graph repo that given unique attribute - check for deleted also?
-            Optional<AtlasVertex> vertex = resolveByUniqueAttribute(entityId);
+        for (Map.Entry<AtlasObjectId, List<UniqueAttributeLookup>> entry : referenceLookups.entrySet()) {
+            AtlasVertex vertex = results.getVertex(entry.getValue());
 
-            if (vertex.isPresent()) {
-                context.addResolvedId(entityId, vertex.get());
-                resolvedReferences.add(entityId);
+            if (vertex != null) {
+                context.addResolvedId(entry.getKey(), vertex);
+                resolvedReferences.add(entry.getKey());
             }
         }
 
         context.removeUnresolvedIdsByUniqAttribs(resolvedReferences);
 
         //Resolve root references
-        for (AtlasEntity entity : context.getRootEntities()) {
-            AtlasObjectId entityId = entity.getAtlasObjectId();
+        for (Map.Entry<AtlasObjectId, List<UniqueAttributeLookup>> entry : rootLookups.entrySet()) {
+            if (context.isResolvedId(entry.getKey())) {
+                continue;
+            }
 
-            if (!context.isResolvedId(entityId) ) {
-                Optional<AtlasVertex> vertex = resolveByUniqueAttribute(entity);
+            AtlasVertex vertex = results.getVertex(entry.getValue());
 
-                if (vertex.isPresent()) {
-                    context.addResolvedId(entityId, vertex.get());
-                    context.removeUnResolvedId(entityId);
-                }
+            if (vertex != null) {
+                context.addResolvedId(entry.getKey(), vertex);
+                context.removeUnResolvedId(entry.getKey());
             }
         }
 
         return context;
     }
 
-    Optional<AtlasVertex> resolveByUniqueAttribute(AtlasEntity entity) throws AtlasBaseException {
-        AtlasEntityType entityType = typeRegistry.getEntityTypeByName(entity.getTypeName());
-
-        if (entityType == null) {
-            throw new AtlasBaseException(AtlasErrorCode.TYPE_NAME_INVALID, TypeCategory.ENTITY.name(), entity.getTypeName());
-        }
+    List<UniqueAttributeLookup> getUniqueAttributeLookups(AtlasEntity entity) throws AtlasBaseException {
+        AtlasEntityType             entityType = getEntityType(entity.getTypeName());
+        List<UniqueAttributeLookup> ret        = new ArrayList<>();
 
         for (AtlasStructType.AtlasAttribute attr : entityType.getAllAttributes().values()) {
             if (attr.getAttributeDef().getIsUnique()) {
                 Object attrVal = entity.getAttribute(attr.getName());
 
-                if (attrVal == null) {
-                    continue;
+                if (attrVal != null) {
+                    ret.add(new UniqueAttributeLookup(entityType.getTypeName(), attr.getQualifiedAttributeName(), attrVal));
                 }
+            }
+        }
 
-                Optional<AtlasVertex> vertex = findByTypeAndQualifiedName(entityType.getTypeName(), attr.getQualifiedAttributeName(), attrVal);
+        return ret;
+    }
 
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Found vertex by unique attribute : " + attr.getQualifiedAttributeName() + "=" + attrVal);
-                }
+    List<UniqueAttributeLookup> getUniqueAttributeLookups(AtlasObjectId entityId) throws AtlasBaseException {
+        AtlasEntityType             entityType       = getEntityType(entityId.getTypeName());
+        List<UniqueAttributeLookup> ret              = new ArrayList<>();
+        final Map<String, Object>   uniqueAttributes = entityId.getUniqueAttributes();
+
+        if (MapUtils.isNotEmpty(uniqueAttributes)) {
+            for (String attrName : uniqueAttributes.keySet()) {
+                AtlasStructType.AtlasAttribute attr = entityType.getAttribute(attrName);
 
-                if (!vertex.isPresent()) {
-                    vertex = findBySuperTypeAndQualifiedName(entityType.getTypeName(), attr.getQualifiedAttributeName(), attrVal);
+                if (attr.getAttributeDef().getIsUnique()) {
+                    Object attrVal = uniqueAttributes.get(attr.getName());
+
+                    if (attrVal != null) {
+                        ret.add(new UniqueAttributeLookup(entityId.getTypeName(), attr.getQualifiedAttributeName(), attrVal));
+                    }
                 }
+            }
+        }
+
+        return ret;
+    }
 
-                if (vertex.isPresent()) {
-                    return vertex;
+    private AtlasEntityType getEntityType(String typeName) throws AtlasBaseException {
+        AtlasEntityType ret = typeRegistry.getEntityTypeByName(typeName);
+
+        if (ret == null) {
+            throw new AtlasBaseException(AtlasErrorCode.TYPE_NAME_INVALID, TypeCategory.ENTITY.name(), typeName);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Looks up the vertices for the given lookups, first by entity type and then, for lookups that are not found
+     * by entity type, by super type. Lookups are grouped by type and unique attribute, so the number of graph
+     * queries depends on the number of distinct types rather than on the number of lookups.
+     *
+     * @param lookupLists unique attribute lookups of each entity, in the order they should be tried
+     */
+    private LookupResults resolveLookups(List<List<UniqueAttributeLookup>> lookupLists) {
+        LookupResults ret = new LookupResults();
+
+        Map<String, Map<String, Set<Object>>> byType = new HashMap<>();
+
+        for (List<UniqueAttributeLookup> lookups : lookupLists) {
+            for (UniqueAttributeLookup lookup : lookups) {
+                addLookup(byType, lookup);
+            }
+        }
+
+        ret.byType = findVertices(Constants.ENTITY_TYPE_PROPERTY_KEY, byType);
+
+        // super type lookups are needed only until a lookup of the entity is found by entity type
+        Map<String, Map<String, Set<Object>>> bySuperType = new HashMap<>();
+
+        for (List<UniqueAttributeLookup> lookups : lookupLists) {
+            for (UniqueAttributeLookup lookup : lookups) {
+                if (ret.find(ret.byType, lookup) != null) {
+                    break;
                 }
+
+                addLookup(bySuperType, lookup);
             }
         }
 
-        return Optional.absent();
+        ret.bySuperType = findVertices(Constants.SUPER_TYPES_PROPERTY_KEY, bySuperType);
+
+        return ret;
     }
 
-    Optional<AtlasVertex> resolveByUniqueAttribute(AtlasObjectId entityId) throws AtlasBaseException {
-        AtlasEntityType entityType = typeRegistry.getEntityTypeByName(entityId.getTypeName());
+    private void addLookup(Map<String, Map<String, Set<Object>>> lookups, UniqueAttributeLookup lookup) {
+        Map<String, Set<Object>> attrValues = lookups.get(lookup.typeName);
 
-        if (entityType == null) {
-            throw new AtlasBaseException(AtlasErrorCode.TYPE_NAME_INVALID, TypeCategory.ENTITY.name(), entityId.getTypeName());
+        if (attrValues == null) {
+            attrValues = new HashMap<>();
+
+            lookups.put(lookup.typeName, attrValues);
         }
 
-        final Map<String, Object> uniqueAttributes = entityId.getUniqueAttributes();
-        if (MapUtils.isNotEmpty(uniqueAttributes)) {
-            for (String attrName : uniqueAttributes.keySet()) {
-                AtlasStructType.AtlasAttribute attr = entityType.getAttribute(attrName);
+        Set<Object> values = attrValues.get(lookup.qualifiedAttrName);
 
-                if (attr.getAttributeDef().getIsUnique()) {
-                    Object attrVal = uniqueAttributes.get(attr.getName());
+        if (values == null) {
+            values = new HashSet<>();
 
-                    if (attrVal == null) {
-                        continue;
-                    }
+            attrValues.put(lookup.qualifiedAttrName, values);
+        }
 
-                    Optional<AtlasVertex> vertex = findByTypeAndQualifiedName(entityId.getTypeName(), attr.getQualifiedAttributeName(), attrVal);
+        values.add(lookup.attrValue);
+    }
 
-                    if (!vertex.isPresent()) {
-                        vertex = findBySuperTypeAndQualifiedName(entityId.getTypeName(), attr.getQualifiedAttributeName(), attrVal);
-                    }
+    private Map<String, Map<String, Map<String, AtlasVertex>>> findVertices(String typeProperty, Map<String, Map<String, Set<Object>>> lookups) {
+        Map<String, Map<String, Map<String, AtlasVertex>>> ret = new HashMap<>();
 
-                    if (vertex.isPresent()) {
-                        return vertex;
-                    }
+        for (Map.Entry<String, Map<String, Set<Object>>> typeEntry : lookups.entrySet()) {
+            Map<String, Map<String, AtlasVertex>> attrVertices = new HashMap<>();
+
+            for (Map.Entry<String, Set<Object>> attrEntry : typeEntry.getValue().entrySet()) {
+                Map<String, AtlasVertex> vertices = graphHelper.getActiveVerticesForPropertyValues(typeProperty, typeEntry.getKey(),
+                                                                                                   attrEntry.getKey(), attrEntry.getValue());
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Found {} of {} vertices by {}={} and unique attribute {}", vertices.size(), attrEntry.getValue().size(),
+                              typeProperty, typeEntry.getKey(), attrEntry.getKey());
                 }
+
+                attrVertices.put(attrEntry.getKey(), vertices);
             }
+
+            ret.put(typeEntry.getKey(), attrVertices);
         }
-        return Optional.absent();
+
+        return ret;
     }
 
-    Optional<AtlasVertex> findByTypeAndQualifiedName(String typeName, String qualifiedAttrName, Object attrVal) {
-        AtlasVertex vertex = null;
-        try {
-            vertex = graphHelper.findVertex(qualifiedAttrName, attrVal,
-                Constants.ENTITY_TYPE_PROPERTY_KEY, typeName,
-                Constants.STATE_PROPERTY_KEY, AtlasEntity.Status.ACTIVE
-                    .name());
+    static class UniqueAttributeLookup {
+        private final String typeName;
+        private final String qualifiedAttrName;
+        private final Object attrValue;
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Found vertex by unique attribute and type {} {} ", qualifiedAttrName + "=" + attrVal, typeName);
-            }
-            if (vertex != null) {
-                return Optional.of(vertex);
-            }
-        } catch (EntityNotFoundException e) {
-            //Ignore if not found
+        UniqueAttributeLookup(String typeName, String qualifiedAttrName, Object attrValue) {
+            this.typeName          = typeName;
+            this.qualifiedAttrName = qualifiedAttrName;
+            this.attrValue         = attrValue;
         }
-        return Optional.absent();
     }
 
-    Optional<AtlasVertex> findBySuperTypeAndQualifiedName(String typeName, String qualifiedAttrName, Object attrVal) {
-        AtlasVertex vertex = null;
-        try {
-            vertex = graphHelper.findVertex(qualifiedAttrName, attrVal,
-                Constants.SUPER_TYPES_PROPERTY_KEY, typeName,
-                Constants.STATE_PROPERTY_KEY, AtlasEntity.Status.ACTIVE
-                    .name());
+    private static class LookupResults {
+        private Map<String, Map<String, Map<String, AtlasVertex>>> byType;
+        private Map<String, Map<String, Map<String, AtlasVertex>>> bySuperType;
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Found vertex by unique attribute and supertype {} ", qualifiedAttrName + "=" + attrVal, typeName);
-            }
-            if (vertex != null) {
-                return Optional.of(vertex);
+        /**
+         * @return the vertex of the first lookup found, trying the entity type and then the super type for each lookup
+         */
+        AtlasVertex getVertex(List<UniqueAttributeLookup> lookups) {
+            for (UniqueAttributeLookup lookup : lookups) {
+                AtlasVertex ret = find(byType, lookup);
+
+                if (ret == null) {
+                    ret = find(bySuperType, lookup);
+                }
+
+                if (ret != null) {
+                    return ret;
+                }
             }
-        } catch (EntityNotFoundException e) {
-            //Ignore if not found
+
+            return null;
+        }
+
+        AtlasVertex find(Map<String, Map<String, Map<String, AtlasVertex>>> results, UniqueAttributeLookup lookup) {
+            Map<String, Map<String, AtlasVertex>> attrVertices = results != null ? results.get(lookup.typeName) : null;
+            Map<String, AtlasVertex>              vertices     = attrVertices != null ? attrVertices.get(lookup.qualifiedAttrName) : null;
+
+            return vertices != null ? vertices.get(String.valueOf(lookup.attrValue)) : null;
         }
-        return Optional.absent();
     }
 
     @Override
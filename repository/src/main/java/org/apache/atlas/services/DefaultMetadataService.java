@@ -20,6 +20,8 @@ package org.apache.atlas.services;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Provider;
 
 import org.apache.atlas.ApplicationProperties;
@@ -40,6 +42,7 @@ import org.apache.atlas.repository.RepositoryException;
 import org.apache.atlas.repository.audit.EntityAuditRepository;
 import org.apache.atlas.repository.graph.GraphHelper;
 import org.apache.atlas.repository.typestore.ITypeStore;
+import org.apache.atlas.service.Service;
 import org.apache.atlas.type.AtlasTypeUtil;
 import org.apache.atlas.typesystem.IStruct;
 import org.apache.atlas.typesystem.ITypedReferenceableInstance;
@@ -51,6 +54,7 @@ import org.apache.atlas.typesystem.exception.EntityNotFoundException;
 import org.apache.atlas.typesystem.exception.TypeNotFoundException;
 import org.apache.atlas.typesystem.json.InstanceSerialization;
 import org.apache.atlas.typesystem.json.TypesSerialization;
+import org.apache.atlas.typesystem.persistence.AtlasSystemAttributes;
 import org.apache.atlas.typesystem.persistence.Id;
 import org.apache.atlas.typesystem.persistence.ReferenceableInstance;
 import org.apache.atlas.typesystem.types.AttributeInfo;
@@ -73,9 +77,20 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -87,7 +102,8 @@ import javax.inject.Singleton;
  * for listening to changes to the repository.
  */
 @Singleton
-public class DefaultMetadataService implements MetadataService, ActiveStateChangeHandler, TypeDefChangeListener {
+public class DefaultMetadataService implements MetadataService, ActiveStateChangeHandler, TypeDefChangeListener,
+        Service {
     private enum OperationType {
         CREATE, UPDATE, DELETE
     };
@@ -96,6 +112,14 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     private final short maxAuditResults;
     private static final String CONFIG_MAX_AUDIT_RESULTS = "atlas.audit.maxResults";
     private static final short DEFAULT_MAX_AUDIT_RESULTS = 1000;
+    private static final String CONFIG_BULK_GET_BATCH_SIZE = "atlas.metadata.bulk.get.batch.size";
+    private static final int DEFAULT_BULK_GET_BATCH_SIZE = 100;
+    private static final String CONFIG_BULK_GET_THREADS = "atlas.metadata.bulk.get.threads";
+    private static final int DEFAULT_BULK_GET_THREADS = 4;
+    private static final int BULK_GET_SHUTDOWN_TIMEOUT_SECS = 30;
+
+    private final int bulkGetBatchSize;
+    private final ExecutorService bulkGetExecutor;
 
     private final TypeSystem typeSystem;
     private final MetadataRepository repository;
@@ -103,6 +127,8 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
 
     private final Collection<TypesChangeListener> typeChangeListeners = new LinkedHashSet<>();
     private final Collection<EntityChangeListener> entityChangeListeners = new LinkedHashSet<>();
+    private final EntityChangeOutbox entityChangeOutbox;
+    private final boolean haEnabled;
 
     @Inject
     private EntityAuditRepository auditRepository;
@@ -110,10 +136,11 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     @Inject
     DefaultMetadataService(final MetadataRepository repository, final ITypeStore typeStore,
                            final Collection<Provider<TypesChangeListener>> typeListenerProviders,
-                           final Collection<Provider<EntityChangeListener>> entityListenerProviders, TypeCache typeCache)
+                           final Collection<Provider<EntityChangeListener>> entityListenerProviders, TypeCache typeCache,
+                           EntityChangeOutbox entityChangeOutbox)
             throws AtlasException {
         this(repository, typeStore, typeListenerProviders, entityListenerProviders,
-                TypeSystem.getInstance(), ApplicationProperties.get(), typeCache);
+                TypeSystem.getInstance(), ApplicationProperties.get(), typeCache, entityChangeOutbox);
     }
     
     //for testing only
@@ -122,6 +149,17 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
                            final Collection<Provider<EntityChangeListener>> entityListenerProviders,
                            final TypeSystem typeSystem,
                            final Configuration configuration, TypeCache typeCache) throws AtlasException {
+        this(repository, typeStore, typeListenerProviders, entityListenerProviders, typeSystem, configuration,
+                typeCache, null);
+    }
+
+    //for testing only
+    public DefaultMetadataService(final MetadataRepository repository, final ITypeStore typeStore,
+                           final Collection<Provider<TypesChangeListener>> typeListenerProviders,
+                           final Collection<Provider<EntityChangeListener>> entityListenerProviders,
+                           final TypeSystem typeSystem,
+                           final Configuration configuration, TypeCache typeCache,
+                           EntityChangeOutbox entityChangeOutbox) throws AtlasException {
         this.typeStore = typeStore;
         this.typeSystem = typeSystem;
         /**
@@ -145,11 +183,25 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
             entityChangeListeners.add(provider.get());
         }
 
-        if (!HAConfiguration.isHAEnabled(configuration)) {
+        haEnabled = HAConfiguration.isHAEnabled(configuration);
+        if (!haEnabled) {
             restoreTypeSystem();
         }
 
         maxAuditResults = configuration.getShort(CONFIG_MAX_AUDIT_RESULTS, DEFAULT_MAX_AUDIT_RESULTS);
+
+        bulkGetBatchSize = configuration.getInt(CONFIG_BULK_GET_BATCH_SIZE, DEFAULT_BULK_GET_BATCH_SIZE);
+        int bulkGetThreads = configuration.getInt(CONFIG_BULK_GET_THREADS, DEFAULT_BULK_GET_THREADS);
+        bulkGetExecutor = bulkGetThreads > 1 ? Executors.newFixedThreadPool(bulkGetThreads,
+                new ThreadFactoryBuilder().setNameFormat("atlas-bulk-get-%d").setDaemon(true).build()) : null;
+
+        this.entityChangeOutbox = entityChangeOutbox != null && entityChangeOutbox.isEnabled() ? entityChangeOutbox : null;
+
+        if (this.entityChangeOutbox != null) {
+            for (EntityChangeListener listener : entityChangeListeners) {
+                this.entityChangeOutbox.addListener(listener);
+            }
+        }
     }
 
     private void restoreTypeSystem() throws AtlasException {
@@ -344,6 +396,97 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
         return instance;
     }
 
+    @Override
+    public String getEntityDefinitionJson(String guid, EntityProjection projection) throws AtlasException {
+        return InstanceSerialization.toJson(getEntityDefinition(guid, projection), true);
+    }
+
+    @Override
+    public ITypedReferenceableInstance getEntityDefinition(String guid, EntityProjection projection)
+            throws AtlasException {
+        guid = ParamChecker.notEmpty(guid, "entity id");
+
+        if (projection == null || projection.isAll()) {
+            return repository.getEntityDefinition(guid);
+        }
+
+        return repository.getEntityDefinition(guid, projection);
+    }
+
+    /**
+     * Return the definitions for the given guids. Large requests are split into batches which are read
+     * concurrently, each in its own request context, by a pool shared by all requests. Once the pool is stopped, the
+     * entities are read in the calling thread.
+     *
+     * @param guids guids
+     * @return entity definitions in the order of the given guids, without duplicates
+     */
+    @Override
+    public List<ITypedReferenceableInstance> getEntityDefinitions(List<String> guids) throws AtlasException {
+        ParamChecker.notEmpty(guids, "entity ids");
+
+        List<String> uniqueGuids = new ArrayList<>(new LinkedHashSet<>(guids));
+        for (String guid : uniqueGuids) {
+            ParamChecker.notEmpty(guid, "entity id");
+        }
+
+        if (bulkGetExecutor == null || bulkGetExecutor.isShutdown() || bulkGetBatchSize <= 0
+                || uniqueGuids.size() <= bulkGetBatchSize) {
+            return repository.getEntityDefinitions(uniqueGuids);
+        }
+
+        final String user = RequestContext.get().getUser();
+        List<Future<List<ITypedReferenceableInstance>>> futures = new ArrayList<>();
+
+        try {
+            for (final List<String> batch : Lists.partition(uniqueGuids, bulkGetBatchSize)) {
+                futures.add(bulkGetExecutor.submit(new Callable<List<ITypedReferenceableInstance>>() {
+                    @Override
+                    public List<ITypedReferenceableInstance> call() throws Exception {
+                        RequestContext requestContext = RequestContext.createContext();
+                        requestContext.setUser(user);
+
+                        try {
+                            return repository.getEntityDefinitions(batch);
+                        } finally {
+                            RequestContext.clear();
+                        }
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            // the pool was shut down after the check above, as the server is stopping
+            LOG.debug("Bulk get thread pool is shut down; reading the entities in the calling thread");
+
+            for (Future<List<ITypedReferenceableInstance>> future : futures) {
+                future.cancel(true);
+            }
+
+            return repository.getEntityDefinitions(uniqueGuids);
+        }
+
+        List<ITypedReferenceableInstance> ret = new ArrayList<>(uniqueGuids.size());
+        try {
+            for (Future<List<ITypedReferenceableInstance>> future : futures) {
+                ret.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AtlasException("Interrupted while retrieving entities", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AtlasException) {
+                throw (AtlasException) e.getCause();
+            }
+            throw new AtlasException(e.getCause());
+        } finally {
+            for (Future<List<ITypedReferenceableInstance>> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return ret;
+    }
+
     @Override
     public ITypedReferenceableInstance getEntityDefinitionReference(String entityType, String attribute, String value)
             throws AtlasException {
@@ -390,6 +533,30 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
         return repository.getEntityList(entityType);
     }
 
+    /**
+     * Return a page of the entity guids for the given type in the repository.
+     *
+     * @param entityType type
+     * @param limit maximum number of guids to return
+     * @param continuationToken token of the page to return, or null for the first page
+     * @return page of entity guids for the given type in the repository
+     */
+    @Override
+    public EntityListPage getEntityList(String entityType, int limit, String continuationToken) throws AtlasException {
+        validateTypeExists(entityType);
+        ParamChecker.greaterThan(limit, 0, "limit");
+
+        return repository.getEntityList(entityType, limit, continuationToken);
+    }
+
+    @Override
+    public void visitEntityList(String entityType, String continuationToken, EntityListVisitor visitor)
+            throws AtlasException {
+        validateTypeExists(entityType);
+
+        repository.visitEntityList(entityType, continuationToken, visitor);
+    }
+
     /**
      * Updates an entity, instance of the type based on the guid set.
      *
@@ -698,12 +865,129 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     }
 
     private void onEntitiesAdded(List<String> guids) throws AtlasException {
+        if (entityChangeOutbox != null) {
+            List<ITypedReferenceableInstance> entities    = new ArrayList<>();
+            List<String>                      guidsToLoad = new ArrayList<>();
+
+            for (String guid : guids) {
+                ITypedReferenceableInstance entity = getCreatedEntity(guid);
+
+                if (entity != null) {
+                    entities.add(entity);
+                } else {
+                    guidsToLoad.add(guid);
+                }
+            }
+
+            entityChangeOutbox.onEntitiesAdded(entities, guidsToLoad);
+            return;
+        }
         List<ITypedReferenceableInstance> entities = loadEntities(guids);
         for (EntityChangeListener listener : entityChangeListeners) {
             listener.onEntitiesAdded(entities);
         }
     }
 
+    /**
+     * @return the entity with the given guid as created by the request, from the instance in the request context, or
+     *         null if the request context doesn't have it
+     */
+    private ITypedReferenceableInstance getCreatedEntity(String guid) throws AtlasException {
+        ITypedReferenceableInstance instance = RequestContext.get().getInstance(guid);
+
+        return instance != null ? toCreatedEntity(instance) : null;
+    }
+
+    // the instances of the request lack the system attributes, and hold the entities they refer to instead of their ids
+    private ITypedReferenceableInstance toCreatedEntity(ITypedReferenceableInstance instance) throws AtlasException {
+        if (instance.getId().isUnassigned()) {
+            return null;
+        }
+
+        RequestContext        context          = RequestContext.get();
+        Date                  requestTime      = new Date(context.getRequestTime());
+        AtlasSystemAttributes systemAttributes = new AtlasSystemAttributes(context.getUser(), context.getUser(),
+                                                                           requestTime, requestTime);
+        ClassType             type             = typeSystem.getDataType(ClassType.class, instance.getTypeName());
+        List<String>          traitNames       = instance.getTraits();
+        Map<String, IStruct>  traits           = new HashMap<>();
+
+        for (String traitName : traitNames) {
+            traits.put(traitName, instance.getTrait(traitName));
+        }
+
+        Referenceable               traitValues = new Referenceable(instance.getId(), type.getName(), null, traitNames, traits);
+        ITypedReferenceableInstance ret         = type.createInstanceWithTraits(instance.getId(), systemAttributes,
+                                                          traitValues, traitNames.toArray(new String[traitNames.size()]));
+
+        for (AttributeInfo attributeInfo : type.fieldMapping().fields.values()) {
+            Object value = instance.get(attributeInfo.name);
+
+            if (value != null) {
+                value = toCreatedValue(attributeInfo, value);
+
+                if (value == null) {
+                    return null;
+                }
+
+                ret.set(attributeInfo.name, value);
+            }
+        }
+
+        return ret;
+    }
+
+    // composites are created with the entity; other entities are referred to by id. Null if an id isn't known
+    private Object toCreatedValue(AttributeInfo attributeInfo, Object value) throws AtlasException {
+        if (value instanceof Id) {
+            return ((Id) value).isUnassigned() ? null : value;
+        }
+
+        if (value instanceof ITypedReferenceableInstance) {
+            ITypedReferenceableInstance entity = (ITypedReferenceableInstance) value;
+
+            if (attributeInfo.isComposite) {
+                return toCreatedEntity(entity);
+            }
+
+            return entity.getId().isUnassigned() ? null : entity.getId();
+        }
+
+        if (value instanceof Collection) {
+            List<Object> ret = new ArrayList<>();
+
+            for (Object element : (Collection<?>) value) {
+                Object createdElement = element != null ? toCreatedValue(attributeInfo, element) : null;
+
+                if (element != null && createdElement == null) {
+                    return null;
+                }
+
+                ret.add(createdElement);
+            }
+
+            return ret;
+        }
+
+        if (value instanceof Map) {
+            Map<Object, Object> ret = new LinkedHashMap<>();
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object createdValue = entry.getValue() != null ? toCreatedValue(attributeInfo, entry.getValue()) : null;
+
+                if (entry.getValue() != null && createdValue == null) {
+                    return null;
+                }
+
+                ret.put(entry.getKey(), createdValue);
+            }
+
+            return ret;
+        }
+
+        return value;
+    }
+
     private List<ITypedReferenceableInstance> loadEntities(List<String> guids) throws EntityNotFoundException,
             RepositoryException {
         List<ITypedReferenceableInstance> entities = new ArrayList<>();
@@ -720,6 +1004,12 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     }
 
     private void onEntitiesUpdated(List<String> guids) throws AtlasException {
+        if (entityChangeOutbox != null) {
+            // the request context only holds the attributes the request updated, so the entities are loaded when the
+            // event is delivered, off the request thread
+            entityChangeOutbox.onEntitiesUpdated(Collections.<ITypedReferenceableInstance>emptyList(), guids);
+            return;
+        }
         List<ITypedReferenceableInstance> entities = loadEntities(guids);
         for (EntityChangeListener listener : entityChangeListeners) {
             listener.onEntitiesUpdated(entities);
@@ -727,12 +1017,20 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     }
 
     private void onTraitAddedToEntity(ITypedReferenceableInstance entity, IStruct trait) throws AtlasException {
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.onTraitAdded(entity, trait);
+            return;
+        }
         for (EntityChangeListener listener : entityChangeListeners) {
             listener.onTraitAdded(entity, trait);
         }
     }
 
     private void onTraitDeletedFromEntity(ITypedReferenceableInstance entity, String traitName) throws AtlasException {
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.onTraitDeleted(entity, traitName);
+            return;
+        }
         for (EntityChangeListener listener : entityChangeListeners) {
             listener.onTraitDeleted(entity, traitName);
         }
@@ -740,10 +1038,16 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
 
     public void registerListener(EntityChangeListener listener) {
         entityChangeListeners.add(listener);
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.addListener(listener);
+        }
     }
 
     public void unregisterListener(EntityChangeListener listener) {
         entityChangeListeners.remove(listener);
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.removeListener(listener);
+        }
     }
 
     @Override
@@ -786,6 +1090,10 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     }
 
     private void onEntitiesDeleted(List<ITypedReferenceableInstance> entities) throws AtlasException {
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.onEntitiesDeleted(entities);
+            return;
+        }
         for (EntityChangeListener listener : entityChangeListeners) {
             listener.onEntitiesDeleted(entities);
         }
@@ -803,11 +1111,55 @@ public class DefaultMetadataService implements MetadataService, ActiveStateChang
     public void instanceIsActive() throws AtlasException {
         LOG.info("Reacting to active state: restoring type system");
         restoreTypeSystem();
+
+        // events are delivered once the types are restored, and only by the active instance
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.start();
+        }
     }
 
     @Override
     public void instanceIsPassive() {
-        LOG.info("Reacting to passive state: no action right now");
+        LOG.info("Reacting to passive state: stopping entity change delivery");
+
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.close();
+        }
+    }
+
+    /**
+     * Starts entity change delivery, unless HA is enabled, in which case {@link #instanceIsActive()} starts it. The
+     * bulk get threads are started with the service.
+     */
+    @Override
+    public void start() throws AtlasException {
+        if (entityChangeOutbox != null && !haEnabled) {
+            entityChangeOutbox.start();
+        }
+    }
+
+    /**
+     * Stops the bulk get threads once the batches being read are done, after which entities are read on the
+     * calling thread, and stops entity change delivery.
+     */
+    @Override
+    public void stop() throws AtlasException {
+        if (bulkGetExecutor != null) {
+            bulkGetExecutor.shutdown();
+
+            try {
+                if (!bulkGetExecutor.awaitTermination(BULK_GET_SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+                    LOG.warn("Bulk get threads did not stop within {} seconds", BULK_GET_SHUTDOWN_TIMEOUT_SECS);
+                    bulkGetExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (entityChangeOutbox != null) {
+            entityChangeOutbox.close();
+        }
     }
 
     @Override
@@ -0,0 +1,1071 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.services;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.AtlasException;
+import org.apache.atlas.RequestContext;
+import org.apache.atlas.listener.EntityChangeListener;
+import org.apache.atlas.repository.MetadataRepository;
+import org.apache.atlas.typesystem.IStruct;
+import org.apache.atlas.typesystem.ITypedReferenceableInstance;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.exception.EntityNotFoundException;
+import org.apache.atlas.typesystem.json.InstanceSerialization;
+import org.apache.atlas.typesystem.types.AttributeInfo;
+import org.apache.atlas.typesystem.types.ClassType;
+import org.apache.atlas.typesystem.types.DataTypes;
+import org.apache.atlas.typesystem.types.IDataType;
+import org.apache.atlas.typesystem.types.TypeSystem;
+import org.apache.commons.configuration.Configuration;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers entity change events to the EntityChangeListeners in the background, so that requests don't wait for
+ * the listeners.
+ *
+ * Every listener has its own queue and thread, so a slow listener doesn't hold back the others, and gets the events
+ * in the order in which they were recorded. Events are appended to a journal before they are queued. Once the
+ * configured number of events is queued, further events are only journaled, and the listeners read them back from
+ * the journal when they get to them, so recording an event never waits for the listeners.
+ *
+ * A listener gets an event until it accepts it without an exception, up to the configured number of attempts, after
+ * which the event is written to the dead-letter log of the outbox and the listener moves on. The position of each
+ * listener in the journal is saved every second, so events which haven't been delivered to every listener when the
+ * server stops are delivered again after a restart. Listeners must therefore tolerate getting an event more than
+ * once: audit events are written again under the same key, notifications are sent again, and the metrics skip the
+ * events they have already counted, by the sequence number set in the request context of the delivery.
+ *
+ * Added entities are recorded from the instances the request created, which are in the request context, with their
+ * system attributes filled in and the entities they refer to replaced by their ids. Updated entities, of which the
+ * request only holds the attributes it updated, are recorded by guid and loaded from the repository when the event
+ * is delivered, so listeners get their state as of the delivery.
+ *
+ * The outbox only moves the listeners off the request thread. Its limits:
+ * - events are serialized and appended to the journal on the request thread, which holds the lock of the outbox
+ *   while appending, and listeners serialize the entities again for their own use;
+ * - the journal is on the local disk of the server, so events which aren't delivered yet when the active instance
+ *   fails over are delivered only once that server is active again;
+ * - an event counts as delivered once the listener returns, which is not always once its effect is durable: with
+ *   atlas.audit.hbase.async.enabled, the audit listener returns once the audit events are queued for HBase, and events
+ *   which HBase still rejects after the client retries are dropped rather than delivered again or dead-lettered, so
+ *   audit delivery through the asynchronous writer is best-effort.
+ *
+ * Events are written to the journal without waiting for the disk, so they survive a crash of the server but not
+ * of the host. Journal segments are deleted once all of their events are delivered to every listener.
+ *
+ * Listeners are identified in the journal offsets by their class name, followed by a number when several listeners
+ * have the same class name, so they must be registered in the same order after a restart. Events are recorded and
+ * delivered only between {@link #start()} and {@link #close()}, i.e. while the server is the active instance, and
+ * only when asynchronous delivery is enabled; otherwise the metadata service delivers the events itself.
+ */
+@Singleton
+public class EntityChangeOutbox {
+    private static final Logger LOG = LoggerFactory.getLogger(EntityChangeOutbox.class);
+
+    public static final String ASYNC_ENABLED        = "atlas.entity.change.async.enabled";
+    public static final String OUTBOX_DIR           = "atlas.entity.change.outbox.dir";
+    public static final String OUTBOX_CAPACITY      = "atlas.entity.change.outbox.capacity";
+    public static final int    DEFAULT_CAPACITY     = 100000;
+    public static final String OUTBOX_SEGMENT_SIZE  = "atlas.entity.change.outbox.segment.size";
+    public static final int    DEFAULT_SEGMENT_SIZE = 10000;
+    public static final String OUTBOX_MAX_ATTEMPTS  = "atlas.entity.change.outbox.max.attempts";
+    public static final int    DEFAULT_MAX_ATTEMPTS = 10;
+
+    public static final String METRIC_PENDING   = "pending";
+    public static final String METRIC_LAG       = "lagInMillis";
+    public static final String METRIC_DELIVERED = "delivered";
+    public static final String METRIC_FAILURES  = "failures";
+    public static final String METRIC_DEAD      = "deadLettered";
+
+    private static final String SEGMENT_PREFIX           = "outbox-";
+    private static final String SEGMENT_SUFFIX           = ".log";
+    private static final String OFFSETS_FILE             = "offsets.properties";
+    private static final String DEAD_LETTER_FILE         = "dead-letter.log";
+    private static final String DEAD_LETTER_LISTENER     = "listener";
+    private static final String DEAD_LETTER_ERROR        = "error";
+    private static final String DEAD_LETTER_EVENT        = "event";
+    private static final long   OFFSETS_SAVE_INTERVAL_MS = 1000;
+    private static final long   MIN_RETRY_WAIT_MS        = 1000;
+    private static final long   MAX_RETRY_WAIT_MS        = 60 * 1000;
+    private static final long   READ_BACK_POLL_MS        = 100;
+    private static final int    READ_BACK_BATCH_SIZE     = 1000;
+
+    private final File                                 dir;
+    private final int                                  capacity;
+    private final int                                  segmentSize;
+    private final int                                  maxAttempts;
+    private final MetadataRepository                   repository;
+    private final boolean                              enabled;
+    private final List<EntityChangeListener>           listeners      = new ArrayList<>();
+    private final Map<String, ListenerDispatcher>      dispatchers    = new ConcurrentHashMap<>();
+    private final Map<String, Long>                    savedOffsets   = new ConcurrentHashMap<>();
+    private final TreeMap<Long, File>                  segments       = new TreeMap<>();
+    private final Object                               offsetsLock    = new Object();
+    private final Object                               deadLetterLock = new Object();
+
+    // guarded by this
+    private boolean                  started;
+    private ScheduledExecutorService offsetSaver;
+    private Writer                   segmentWriter;
+    private int                      segmentEventCount;
+    private volatile long            nextSeq;
+    private int                      pendingEvents;
+
+    // seq of the last event which is only in the journal, 0 while all events are queued
+    private volatile long            spilledSeq;
+
+    @Inject
+    public EntityChangeOutbox(MetadataRepository repository) throws AtlasException {
+        this(ApplicationProperties.get(), repository);
+    }
+
+    /**
+     * Create the outbox of the server. Listeners are added by the metadata service, and events are delivered once
+     * the outbox is started.
+     */
+    public EntityChangeOutbox(Configuration configuration, MetadataRepository repository) {
+        this(new File(configuration.getString(OUTBOX_DIR, System.getProperty("atlas.home", ".") + "/data/outbox")),
+             configuration.getInt(OUTBOX_CAPACITY, DEFAULT_CAPACITY),
+             configuration.getInt(OUTBOX_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE),
+             configuration.getInt(OUTBOX_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS), repository,
+             Collections.<EntityChangeListener>emptyList(), configuration.getBoolean(ASYNC_ENABLED, false));
+    }
+
+    @VisibleForTesting
+    EntityChangeOutbox(File dir, int capacity, int segmentSize, int maxAttempts, Collection<EntityChangeListener> listeners) {
+        this(dir, capacity, segmentSize, maxAttempts, null, listeners, true);
+    }
+
+    @VisibleForTesting
+    EntityChangeOutbox(File dir, int capacity, int segmentSize, int maxAttempts, MetadataRepository repository,
+                       Collection<EntityChangeListener> listeners, boolean enabled) {
+        this.dir         = dir;
+        this.capacity    = capacity;
+        this.segmentSize = segmentSize;
+        this.maxAttempts = maxAttempts;
+        this.repository  = repository;
+        this.enabled     = enabled;
+
+        this.listeners.addAll(listeners);
+    }
+
+    /**
+     * @return true if entity change events are delivered through the outbox, false if they are delivered
+     *         synchronously
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start delivering events to the listeners, beginning with the events in the journal which they didn't accept
+     * before the outbox was closed.
+     */
+    public synchronized void start() throws AtlasException {
+        if (started) {
+            return;
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new AtlasException("Unable to create entity change outbox directory " + dir);
+        }
+
+        long lastSeq;
+
+        try {
+            savedOffsets.clear();
+            savedOffsets.putAll(loadOffsets());
+
+            segments.clear();
+            lastSeq = loadSegments();
+        } catch (IOException e) {
+            throw new AtlasException("Unable to read entity change outbox in " + dir, e);
+        }
+
+        // the events in the journal are read back by the listeners which didn't accept them yet
+        nextSeq       = lastSeq + 1;
+        pendingEvents = 0;
+        spilledSeq    = lastSeq;
+        started       = true;
+
+        for (EntityChangeListener listener : listeners) {
+            Long offset = savedOffsets.get(getName(listener));
+
+            startDispatcher(listener, offset != null ? offset : segments.isEmpty() ? lastSeq : segments.firstKey() - 1);
+        }
+
+        offsetSaver = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("atlas-entity-change-outbox").setDaemon(true).build());
+        offsetSaver.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                saveOffsets();
+            }
+        }, OFFSETS_SAVE_INTERVAL_MS, OFFSETS_SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        LOG.info("Started entity change outbox in {}, last event {}", dir, lastSeq);
+    }
+
+    /**
+     * Deliver the events recorded from now on to the given listener.
+     */
+    public synchronized void addListener(EntityChangeListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+
+            if (started) {
+                startDispatcher(listener, nextSeq - 1);
+            }
+        }
+    }
+
+    // the listener gets the events after the given one
+    private void startDispatcher(EntityChangeListener listener, long ackedSeq) {
+        String name = getName(listener);
+
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, name);
+
+        dispatcher.ackedSeq = ackedSeq;
+        dispatchers.put(name, dispatcher);
+        dispatcher.thread.start();
+    }
+
+    /**
+     * Stop delivering events to the given listener. The events queued for it no longer count against the capacity.
+     */
+    public synchronized void removeListener(EntityChangeListener listener) {
+        listeners.remove(listener);
+
+        ListenerDispatcher dispatcher = getDispatcher(listener);
+
+        if (dispatcher != null) {
+            dispatchers.remove(dispatcher.name);
+
+            // the dispatcher releases its queued events when it stops
+            dispatcher.removed = true;
+            dispatcher.thread.interrupt();
+        }
+    }
+
+    public void onEntitiesAdded(List<ITypedReferenceableInstance> entities) throws AtlasException {
+        onEntitiesAdded(entities, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param guidsToLoad  guids of the entities which the request has no complete instance of; they are loaded from
+     *                     the repository when the event is delivered
+     */
+    public void onEntitiesAdded(List<ITypedReferenceableInstance> entities, List<String> guidsToLoad)
+            throws AtlasException {
+        if (!entities.isEmpty() || !guidsToLoad.isEmpty()) {
+            record(new Event(Operation.ENTITIES_ADDED, entities, guidsToLoad, null, null));
+        }
+    }
+
+    public void onEntitiesUpdated(List<ITypedReferenceableInstance> entities) throws AtlasException {
+        onEntitiesUpdated(entities, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param guidsToLoad  guids of the entities which the request has no complete instance of; they are loaded from
+     *                     the repository when the event is delivered
+     */
+    public void onEntitiesUpdated(List<ITypedReferenceableInstance> entities, List<String> guidsToLoad)
+            throws AtlasException {
+        if (!entities.isEmpty() || !guidsToLoad.isEmpty()) {
+            record(new Event(Operation.ENTITIES_UPDATED, entities, guidsToLoad, null, null));
+        }
+    }
+
+    public void onEntitiesDeleted(List<ITypedReferenceableInstance> entities) throws AtlasException {
+        if (!entities.isEmpty()) {
+            record(new Event(Operation.ENTITIES_DELETED, entities, Collections.<String>emptyList(), null, null));
+        }
+    }
+
+    public void onTraitAdded(ITypedReferenceableInstance entity, IStruct trait) throws AtlasException {
+        record(new Event(Operation.TRAIT_ADDED, Collections.singletonList(entity), Collections.<String>emptyList(),
+                         trait, null));
+    }
+
+    public void onTraitDeleted(ITypedReferenceableInstance entity, String traitName) throws AtlasException {
+        record(new Event(Operation.TRAIT_DELETED, Collections.singletonList(entity), Collections.<String>emptyList(),
+                         null, traitName));
+    }
+
+    /**
+     * @return sequence number of the last event recorded, 0 if there is none or the outbox isn't started yet
+     */
+    public long getLastSeq() {
+        return Math.max(nextSeq - 1, 0);
+    }
+
+    /**
+     * @return pending count, lag, delivered count, failure count and dead-lettered count of every listener, keyed by
+     *         listener name and metric name
+     */
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> ret     = new LinkedHashMap<>();
+        long                now     = System.currentTimeMillis();
+        long                lastSeq = nextSeq - 1;
+
+        for (ListenerDispatcher dispatcher : dispatchers.values()) {
+            Event oldest = dispatcher.current;
+
+            if (oldest == null) {
+                oldest = dispatcher.queue.peek();
+            }
+
+            ret.put(dispatcher.name + "." + METRIC_PENDING, Math.max(lastSeq - dispatcher.ackedSeq, 0));
+            ret.put(dispatcher.name + "." + METRIC_LAG, oldest != null ? now - oldest.time : 0);
+            ret.put(dispatcher.name + "." + METRIC_DELIVERED, dispatcher.delivered.get());
+            ret.put(dispatcher.name + "." + METRIC_FAILURES, dispatcher.failures.get());
+            ret.put(dispatcher.name + "." + METRIC_DEAD, dispatcher.deadLettered.get());
+        }
+
+        return ret;
+    }
+
+    /**
+     * Stop delivering events. Events which aren't delivered yet are delivered when the outbox is started again.
+     */
+    public void close() {
+        ScheduledExecutorService saver;
+
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+
+            started = false;
+            saver   = offsetSaver;
+        }
+
+        for (ListenerDispatcher dispatcher : dispatchers.values()) {
+            dispatcher.thread.interrupt();
+        }
+
+        for (ListenerDispatcher dispatcher : dispatchers.values()) {
+            try {
+                dispatcher.thread.join(MAX_RETRY_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        saver.shutdown();
+        saveOffsets();
+
+        synchronized (this) {
+            closeSegment();
+            dispatchers.clear();
+        }
+    }
+
+    private void record(Event event) throws AtlasException {
+        RequestContext context = RequestContext.get();
+
+        event.user        = context.getUser();
+        event.requestTime = context.getRequestTime();
+
+        // the entities are serialized before taking the lock, as that is the expensive part
+        JSONObject json;
+
+        try {
+            json = event.toJson();
+        } catch (JSONException e) {
+            throw new AtlasException("Unable to serialize entity change event", e);
+        }
+
+        synchronized (this) {
+            if (!started) {
+                throw new AtlasException("Entity change outbox is not started");
+            }
+
+            event.seq = nextSeq++;
+
+            try {
+                json.put(Event.SEQ, event.seq);
+
+                append(event.seq, json.toString());
+            } catch (IOException | JSONException e) {
+                throw new AtlasException("Unable to write entity change event to the outbox", e);
+            }
+
+            if (!dispatchers.isEmpty()) {
+                // events are queued again once every listener has read back the journaled ones
+                if (spilledSeq != 0 && getMinAckedSeq() >= spilledSeq) {
+                    LOG.info("Entity change listeners caught up with the outbox");
+
+                    spilledSeq = 0;
+                }
+
+                if (spilledSeq == 0 && pendingEvents < capacity) {
+                    pendingEvents++;
+                    event.pendingListeners.set(dispatchers.size());
+
+                    for (ListenerDispatcher dispatcher : dispatchers.values()) {
+                        dispatcher.queue.add(event);
+                    }
+                } else {
+                    if (spilledSeq == 0) {
+                        LOG.warn("Entity change outbox is full, listeners will read further events from the journal");
+                    }
+
+                    spilledSeq = event.seq;
+                }
+            }
+        }
+    }
+
+    private synchronized void onDelivered(Event event) {
+        // events read back from the journal aren't counted
+        if (event.pendingListeners.get() > 0 && event.pendingListeners.decrementAndGet() == 0) {
+            pendingEvents--;
+        }
+    }
+
+    private long getMinAckedSeq() {
+        long ret = Long.MAX_VALUE;
+
+        for (ListenerDispatcher dispatcher : dispatchers.values()) {
+            ret = Math.min(ret, dispatcher.ackedSeq);
+        }
+
+        return ret;
+    }
+
+    // ----- journal ---------------------------------------------------------
+
+    private void append(long seq, String json) throws IOException {
+        if (segmentWriter == null || segmentEventCount >= segmentSize) {
+            closeSegment();
+
+            File segment = new File(dir, SEGMENT_PREFIX + seq + SEGMENT_SUFFIX);
+
+            segmentWriter     = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(segment, true), StandardCharsets.UTF_8));
+            segmentEventCount = 0;
+            segments.put(seq, segment);
+        }
+
+        segmentWriter.write(json);
+        segmentWriter.write('\n');
+        segmentWriter.flush();
+
+        segmentEventCount++;
+    }
+
+    private void closeSegment() {
+        if (segmentWriter != null) {
+            try {
+                segmentWriter.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close entity change outbox segment", e);
+            }
+
+            segmentWriter = null;
+        }
+    }
+
+    // returns the seq of the last event in the journal, 0 if it is empty
+    private long loadSegments() throws IOException {
+        long   ret   = 0;
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            }
+        }
+
+        for (File segment : segments.descendingMap().values()) {
+            for (Event event : readSegment(segment, 0, Long.MAX_VALUE, Integer.MAX_VALUE)) {
+                ret = Math.max(ret, event.seq);
+            }
+
+            if (ret > 0) {
+                break;
+            }
+        }
+
+        return ret;
+    }
+
+    // reads back the journaled events after afterSeq up to upToSeq, at most maxEvents of them
+    private List<Event> readJournal(long afterSeq, long upToSeq, int maxEvents) throws IOException {
+        List<File> files;
+
+        synchronized (this) {
+            Long first = segments.floorKey(afterSeq + 1);
+
+            files = new ArrayList<>((first != null ? segments.tailMap(first) : segments).values());
+        }
+
+        List<Event> ret = new ArrayList<>();
+
+        for (File segment : files) {
+            if (ret.size() >= maxEvents || (!ret.isEmpty() && ret.get(ret.size() - 1).seq >= upToSeq)) {
+                break;
+            }
+
+            ret.addAll(readSegment(segment, afterSeq, upToSeq, maxEvents - ret.size()));
+        }
+
+        return ret;
+    }
+
+    private List<Event> readSegment(File segment, long afterSeq, long upToSeq, int maxEvents) throws IOException {
+        List<Event> ret = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(segment), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null && ret.size() < maxEvents; line = reader.readLine()) {
+                Event event;
+
+                try {
+                    event = Event.fromJson(new JSONObject(line));
+                } catch (JSONException e) {
+                    // the last line of a segment may be incomplete if the server crashed while writing it
+                    LOG.warn("Skipping unreadable entity change event in {}", segment, e);
+                    continue;
+                }
+
+                if (event.seq > upToSeq) {
+                    break;
+                }
+
+                if (event.seq > afterSeq) {
+                    ret.add(event);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private void deadLetter(String listenerName, Event event, Exception error) {
+        synchronized (deadLetterLock) {
+            File file = new File(dir, DEAD_LETTER_FILE);
+
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+                JSONObject json = new JSONObject();
+
+                json.put(DEAD_LETTER_LISTENER, listenerName);
+                json.put(DEAD_LETTER_ERROR, String.valueOf(error));
+                json.put(DEAD_LETTER_EVENT, event.toJson().put(Event.SEQ, event.seq));
+
+                writer.write(json.toString());
+                writer.write('\n');
+            } catch (IOException | JSONException e) {
+                LOG.error("Unable to write entity change event {} to {}", event.seq, file, e);
+            }
+        }
+    }
+
+    private Map<String, Long> loadOffsets() throws IOException {
+        Map<String, Long> ret  = new ConcurrentHashMap<>();
+        File              file = new File(dir, OFFSETS_FILE);
+
+        if (file.exists()) {
+            Properties properties = new Properties();
+
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+
+            for (String name : properties.stringPropertyNames()) {
+                ret.put(name, Long.parseLong(properties.getProperty(name)));
+            }
+        }
+
+        return ret;
+    }
+
+    private void saveOffsets() {
+        synchronized (offsetsLock) {
+            saveOffsetsLocked();
+        }
+    }
+
+    private void saveOffsetsLocked() {
+        Properties properties = new Properties();
+        long       minOffset  = Long.MAX_VALUE;
+
+        for (Map.Entry<String, Long> entry : savedOffsets.entrySet()) {
+            if (!dispatchers.containsKey(entry.getKey())) {
+                properties.setProperty(entry.getKey(), entry.getValue().toString());
+            }
+        }
+
+        for (ListenerDispatcher dispatcher : dispatchers.values()) {
+            long offset = dispatcher.ackedSeq;
+
+            properties.setProperty(dispatcher.name, Long.toString(offset));
+            minOffset = Math.min(minOffset, offset);
+        }
+
+        File file    = new File(dir, OFFSETS_FILE);
+        File tmpFile = new File(dir, OFFSETS_FILE + ".tmp");
+
+        try {
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                properties.store(out, null);
+            }
+
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException("Unable to rename " + tmpFile + " to " + file);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to save the entity change outbox offsets", e);
+            return;
+        }
+
+        if (!dispatchers.isEmpty()) {
+            deleteDeliveredSegments(minOffset);
+        }
+    }
+
+    // deletes the segments, other than the one being written, whose events are all delivered
+    private synchronized void deleteDeliveredSegments(long minOffset) {
+        while (segments.size() > 1) {
+            Map.Entry<Long, File> first = segments.firstEntry();
+            long                  next  = segments.higherKey(first.getKey());
+
+            if (next - 1 > minOffset) {
+                break;
+            }
+
+            if (!first.getValue().delete()) {
+                LOG.warn("Unable to delete entity change outbox segment {}", first.getValue());
+                break;
+            }
+
+            segments.remove(first.getKey());
+        }
+    }
+
+    private ListenerDispatcher getDispatcher(EntityChangeListener listener) {
+        for (ListenerDispatcher dispatcher : dispatchers.values()) {
+            if (dispatcher.listener == listener) {
+                return dispatcher;
+            }
+        }
+
+        return null;
+    }
+
+    // unique among the listeners, and the same after a restart as long as the listeners are registered in the same order
+    private String getName(EntityChangeListener listener) {
+        String simpleName = listener.getClass().getSimpleName();
+        String ret        = simpleName;
+
+        for (int i = 2; dispatchers.containsKey(ret); i++) {
+            ret = simpleName + "#" + i;
+        }
+
+        return ret;
+    }
+
+    // ----- inner classes ---------------------------------------------------
+
+    enum Operation {
+        ENTITIES_ADDED, ENTITIES_UPDATED, ENTITIES_DELETED, TRAIT_ADDED, TRAIT_DELETED
+    }
+
+    static final class Event {
+        private static final String SEQ          = "seq";
+        private static final String TIME         = "time";
+        private static final String OPERATION    = "operation";
+        private static final String USER         = "user";
+        private static final String REQUEST_TIME = "requestTime";
+        private static final String ENTITIES     = "entities";
+        private static final String GUID         = "guid";
+        private static final String TYPE_NAME    = "typeName";
+        private static final String DEFINITION   = "definition";
+        private static final String TRAIT        = "trait";
+        private static final String TRAIT_NAME   = "traitName";
+
+        final AtomicInteger pendingListeners = new AtomicInteger();
+        final Operation     operation;
+        final long          time;
+        final String        traitName;
+        long                seq;
+        String              user;
+        long                requestTime;
+
+        // materialized on the request thread; for recovered events, converted from the JSON when delivered. The
+        // entities only known by guid are loaded when the event is delivered first
+        private List<ITypedReferenceableInstance> entities;
+        private List<String>                      guidsToLoad;
+        private IStruct                           trait;
+        private JSONArray                         entitiesJson;
+        private String                            traitJson;
+
+        Event(Operation operation, List<ITypedReferenceableInstance> entities, List<String> guidsToLoad, IStruct trait,
+              String traitName) {
+            this(operation, System.currentTimeMillis(), traitName);
+
+            this.entities    = entities;
+            this.guidsToLoad = guidsToLoad;
+            this.trait       = trait;
+        }
+
+        private Event(Operation operation, long time, String traitName) {
+            this.operation = operation;
+            this.time      = time;
+            this.traitName = traitName;
+        }
+
+        // the seq is added once it is assigned
+        JSONObject toJson() throws JSONException {
+            JSONObject ret          = new JSONObject();
+            JSONArray  entitiesJson = this.entitiesJson;
+
+            if (entitiesJson == null) {
+                entitiesJson = new JSONArray();
+
+                for (ITypedReferenceableInstance entity : entities) {
+                    JSONObject entityJson = new JSONObject();
+
+                    entityJson.put(GUID, entity.getId()._getId());
+                    entityJson.put(TYPE_NAME, entity.getTypeName());
+                    entityJson.put(DEFINITION, InstanceSerialization.toJson(entity, true));
+
+                    entitiesJson.put(entityJson);
+                }
+
+                for (String guid : guidsToLoad) {
+                    entitiesJson.put(new JSONObject().put(GUID, guid));
+                }
+            }
+
+            ret.put(TIME, time);
+            ret.put(OPERATION, operation.name());
+            ret.put(USER, user);
+            ret.put(REQUEST_TIME, requestTime);
+            ret.put(ENTITIES, entitiesJson);
+            ret.put(TRAIT, trait != null ? InstanceSerialization.toJson(trait, true) : traitJson);
+            ret.put(TRAIT_NAME, traitName);
+
+            return ret;
+        }
+
+        static Event fromJson(JSONObject json) throws JSONException {
+            Event ret = new Event(Operation.valueOf(json.getString(OPERATION)), json.getLong(TIME),
+                                  json.optString(TRAIT_NAME, null));
+
+            ret.seq          = json.getLong(SEQ);
+            ret.user         = json.optString(USER, null);
+            ret.requestTime  = json.getLong(REQUEST_TIME);
+            ret.entitiesJson = json.getJSONArray(ENTITIES);
+            ret.traitJson    = json.optString(TRAIT, null);
+
+            return ret;
+        }
+
+        synchronized List<ITypedReferenceableInstance> getEntities(MetadataRepository repository) throws AtlasException {
+            if (entities == null) {
+                TypeSystem                        typeSystem = TypeSystem.getInstance();
+                List<ITypedReferenceableInstance> ret        = new ArrayList<>(entitiesJson.length());
+
+                guidsToLoad = new ArrayList<>();
+
+                try {
+                    for (int i = 0; i < entitiesJson.length(); i++) {
+                        JSONObject entityJson = entitiesJson.getJSONObject(i);
+
+                        if (entityJson.has(DEFINITION)) {
+                            ClassType     type   = typeSystem.getDataType(ClassType.class, entityJson.getString(TYPE_NAME));
+                            Referenceable entity = InstanceSerialization.fromJsonReferenceable(entityJson.getString(DEFINITION), true);
+
+                            ret.add((ITypedReferenceableInstance) toTypedValue(type, entity));
+                        } else {
+                            guidsToLoad.add(entityJson.getString(GUID));
+                        }
+                    }
+                } catch (JSONException e) {
+                    throw new AtlasException(e);
+                }
+
+                entities = ret;
+            }
+
+            if (!guidsToLoad.isEmpty()) {
+                List<ITypedReferenceableInstance> ret = new ArrayList<>(entities);
+
+                for (String guid : guidsToLoad) {
+                    try {
+                        ret.add(repository.getEntityDefinition(guid));
+                    } catch (EntityNotFoundException e) {
+                        // deleted since, the listeners get its deletion next
+                        LOG.warn("Entity {} of entity change event {} no longer exists", guid, seq);
+                    }
+                }
+
+                entities    = ret;
+                guidsToLoad = Collections.emptyList();
+            }
+
+            return entities;
+        }
+
+        // ClassType.convert drops the attributes and system attributes of entities with an assigned id
+        private static Object toTypedValue(IDataType type, Object value) throws AtlasException {
+            if (value instanceof Referenceable && type.getTypeCategory() == DataTypes.TypeCategory.CLASS) {
+                Referenceable entity     = (Referenceable) value;
+                ClassType     entityType = TypeSystem.getInstance().getDataType(ClassType.class, entity.getTypeName());
+                List<String>  traitNames = entity.getTraits();
+
+                ITypedReferenceableInstance ret = entityType.createInstanceWithTraits(entity.getId(),
+                        entity.getSystemAttributes(), entity, traitNames.toArray(new String[traitNames.size()]));
+
+                for (Map.Entry<String, AttributeInfo> field : entityType.fieldMapping().fields.entrySet()) {
+                    Object attrValue = entity.get(field.getKey());
+
+                    if (attrValue != null) {
+                        ret.set(field.getKey(), toTypedValue(field.getValue().dataType(), attrValue));
+                    }
+                }
+
+                return ret;
+            }
+
+            if (value instanceof Collection && type.getTypeCategory() == DataTypes.TypeCategory.ARRAY) {
+                IDataType    elementType = ((DataTypes.ArrayType) type).getElemType();
+                List<Object> ret         = new ArrayList<>();
+
+                for (Object element : (Collection<?>) value) {
+                    ret.add(toTypedValue(elementType, element));
+                }
+
+                return ret;
+            }
+
+            if (value instanceof Map && type.getTypeCategory() == DataTypes.TypeCategory.MAP) {
+                IDataType           valueType = ((DataTypes.MapType) type).getValueType();
+                Map<Object, Object> ret       = new LinkedHashMap<>();
+
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    ret.put(entry.getKey(), toTypedValue(valueType, entry.getValue()));
+                }
+
+                return ret;
+            }
+
+            return value;
+        }
+
+        synchronized IStruct getTrait() {
+            if (trait == null && traitJson != null) {
+                trait = InstanceSerialization.fromJsonStruct(traitJson, true);
+            }
+
+            return trait;
+        }
+    }
+
+    private class ListenerDispatcher implements Runnable {
+        private final EntityChangeListener listener;
+        private final String               name;
+        private final BlockingQueue<Event> queue        = new LinkedBlockingQueue<>();
+        private final Deque<Event>         readBack     = new ArrayDeque<>();
+        private final AtomicLong           delivered    = new AtomicLong();
+        private final AtomicLong           failures     = new AtomicLong();
+        private final AtomicLong           deadLettered = new AtomicLong();
+        private final Thread               thread;
+        private volatile Event             current;
+        private volatile long              ackedSeq;
+        private volatile boolean           removed;
+
+        ListenerDispatcher(EntityChangeListener listener, String name) {
+            this.listener = listener;
+            this.name     = name;
+            this.thread   = new ThreadFactoryBuilder().setNameFormat("atlas-entity-change-" + name).setDaemon(true)
+                                                      .build().newThread(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    current = nextEvent();
+
+                    if (current == null) {
+                        continue;
+                    }
+
+                    deliverWithRetries(current);
+
+                    ackedSeq = current.seq;
+                    delivered.incrementAndGet();
+                    onDelivered(current);
+
+                    current = null;
+                }
+            } catch (InterruptedException e) {
+                LOG.info("Stopped delivering entity change events to {}", name);
+            } finally {
+                // events of a removed listener won't be delivered; when the outbox is closed, they are after a restart
+                if (removed) {
+                    release();
+                }
+            }
+        }
+
+        // the events queued before the outbox filled up come first, then the ones only in the journal
+        private Event nextEvent() throws InterruptedException {
+            Event ret = queue.poll();
+
+            if (ret == null) {
+                ret = readBack.poll();
+            }
+
+            if (ret == null && ackedSeq < spilledSeq) {
+                try {
+                    readBack.addAll(readJournal(ackedSeq, spilledSeq, READ_BACK_BATCH_SIZE));
+                } catch (IOException e) {
+                    LOG.error("Unable to read entity change events after {} from the outbox", ackedSeq, e);
+                }
+
+                ret = readBack.poll();
+            }
+
+            return ret != null ? ret : queue.poll(READ_BACK_POLL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        private void deliverWithRetries(Event event) throws InterruptedException {
+            long retryWait = MIN_RETRY_WAIT_MS;
+
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    deliver(event);
+
+                    return;
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+
+                    if (attempt >= maxAttempts) {
+                        LOG.error("{} failed to process entity change event {} {} times, writing it to the dead-letter log",
+                                  name, event.seq, attempt, e);
+
+                        deadLetter(name, event, e);
+                        deadLettered.incrementAndGet();
+
+                        return;
+                    }
+
+                    LOG.error("{} failed to process entity change event {}, retrying", name, event.seq, e);
+                }
+
+                Thread.sleep(retryWait);
+
+                retryWait = Math.min(retryWait * 2, MAX_RETRY_WAIT_MS);
+            }
+        }
+
+        private void release() {
+            if (current != null) {
+                onDelivered(current);
+                current = null;
+            }
+
+            for (Event event = queue.poll(); event != null; event = queue.poll()) {
+                onDelivered(event);
+            }
+        }
+
+        private void deliver(Event event) throws AtlasException {
+            RequestContext context = RequestContext.createContext();
+
+            context.setUser(event.user);
+            context.setRequestTime(event.requestTime);
+            context.setEntityChangeSeq(event.seq);
+
+            try {
+                switch (event.operation) {
+                case ENTITIES_ADDED:
+                    listener.onEntitiesAdded(event.getEntities(repository));
+                    break;
+
+                case ENTITIES_UPDATED:
+                    listener.onEntitiesUpdated(event.getEntities(repository));
+                    break;
+
+                case ENTITIES_DELETED:
+                    listener.onEntitiesDeleted(event.getEntities(repository));
+                    break;
+
+                case TRAIT_ADDED:
+                    listener.onTraitAdded(event.getEntities(repository).get(0), event.getTrait());
+                    break;
+
+                case TRAIT_DELETED:
+                    listener.onTraitDeleted(event.getEntities(repository).get(0), event.traitName);
+                    break;
+                }
+            } finally {
+                RequestContext.clear();
+            }
+        }
+    }
+}
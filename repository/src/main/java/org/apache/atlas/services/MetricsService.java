@@ -18,13 +18,30 @@
 package org.apache.atlas.services;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Singleton;
 import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasException;
+import org.apache.atlas.RequestContext;
+import org.apache.atlas.exception.AtlasBaseException;
+import org.apache.atlas.ha.HAConfiguration;
+import org.apache.atlas.listener.ActiveStateChangeHandler;
+import org.apache.atlas.listener.ChangedTypeDefs;
+import org.apache.atlas.listener.EntityChangeListener;
+import org.apache.atlas.listener.TypeDefChangeListener;
 import org.apache.atlas.model.metrics.AtlasMetrics;
+import org.apache.atlas.repository.Constants;
+import org.apache.atlas.repository.graph.AsyncFullTextIndexer;
 import org.apache.atlas.repository.graph.AtlasGraphProvider;
+import org.apache.atlas.repository.graph.HardDeleteHandler;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
+import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.type.AtlasType;
 import org.apache.atlas.type.AtlasTypeRegistry;
+import org.apache.atlas.typesystem.IStruct;
+import org.apache.atlas.typesystem.ITypedReferenceableInstance;
+import org.apache.atlas.util.AtlasRepositoryConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,11 +49,36 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.script.ScriptException;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Serves the metrics shown by /admin/metrics.
+ *
+ * By default the entity and tag counts are maintained incrementally from entity change notifications, so that
+ * serving the metrics only walks the counters (O(types)) instead of scanning the whole graph. The counters are
+ * seeded once, from the last persisted snapshot or from a full scan with the metric queries, are persisted
+ * periodically and can optionally be reconciled against a full scan in the background to correct any drift.
+ * Setting atlas.metric.incremental.enabled to false restores the cached full scan on every expiry.
+ *
+ * The counters are maintained only by the active instance: the snapshot is persisted and reconciled once the
+ * instance is active, or on startup when HA is disabled. On activation the counters are served from the persisted
+ * snapshot; as it misses the changes made since it was persisted if the server didn't stop cleanly, setting
+ * atlas.metric.reconcile.onActivation to true also reconciles them in the background on activation, at the cost of a
+ * full scan. Tags count the active entities they are attached to, and the number of tags of each active entity is
+ * maintained and persisted along with the counters. The number of unused types only changes with the types, so it is
+ * persisted too, and counted again with its metric query after types are created, updated or deleted.
+ */
 @Singleton
-public class MetricsService {
+public class MetricsService implements EntityChangeListener, TypeDefChangeListener, ActiveStateChangeHandler {
     private static final Logger LOG = LoggerFactory.getLogger(MetricsService.class);
 
     public static final String METRIC_QUERY_PREFIX       = "atlas.metric.query.";
@@ -62,66 +104,671 @@ public class MetricsService {
 
     public static final String METRIC_COLLECTION_TIME = "collectionTime";
 
+    public static final String METRIC_FULLTEXT_PENDING = "fullTextPending";
+    public static final String METRIC_FULLTEXT_LAG     = "fullTextLagInMillis";
+
+    public static final String METRIC_ENTITY_CHANGE_PREFIX = "entityChange.";
+
+    public static final String  METRIC_INCREMENTAL_ENABLED         = "atlas.metric.incremental.enabled";
+    public static final boolean DEFAULT_INCREMENTAL_ENABLED        = true;
+    public static final String  METRIC_PERSIST_INTERVAL            = "atlas.metric.persist.intervalInSecs";
+    public static final int     DEFAULT_PERSIST_INTERVAL_IN_SECS   = 60;
+    public static final String  METRIC_RECONCILE_INTERVAL          = "atlas.metric.reconcile.intervalInSecs";
+    public static final int     DEFAULT_RECONCILE_INTERVAL_IN_SECS = 0;
+    public static final String  METRIC_RECONCILE_ON_ACTIVATION     = "atlas.metric.reconcile.onActivation";
+    public static final boolean DEFAULT_RECONCILE_ON_ACTIVATION    = false;
+
+    static final String METRICS_VERTEX_TYPE           = "metrics";
+    static final String METRICS_SNAPSHOT_PROPERTY_KEY = Constants.INTERNAL_PROPERTY_KEY_PREFIX + "metrics.snapshot";
+
+    private static final String SNAPSHOT_ENTITY_COUNT      = "entityCount";
+    private static final String SNAPSHOT_DELETED_COUNT     = "deletedEntityCount";
+    private static final String SNAPSHOT_TAGGED_COUNT      = "taggedEntityCount";
+    private static final String SNAPSHOT_UNUSED_TYPE_COUNT = "unusedTypeCount";
+    private static final String SNAPSHOT_ENTITIES_PER_TYPE = "entitiesPerType";
+    private static final String SNAPSHOT_ENTITIES_PER_TAG  = "entitiesPerTag";
+    private static final String SNAPSHOT_TAGS_PER_ENTITY   = "tagsPerEntity";
+    private static final String SNAPSHOT_ENTITY_CHANGE_SEQ = "entityChangeSeq";
+
     private static Configuration    configuration = null;
     private final AtlasGraph        atlasGraph;
     private final AtlasTypeRegistry atlasTypeRegistry;
     private final int               cacheTTLInSecs;
+    private final boolean           incrementalEnabled;
+    private final boolean           hardDelete;
+
+    private final AsyncFullTextIndexer fullTextIndexer;
+    private final EntityChangeOutbox   entityChangeOutbox;
 
     private AtlasMetrics cachedMetrics       = null;
     private long         cacheExpirationTime = 0;
 
+    // incrementally maintained counters, valid once countersInitialized is set
+    private final ConcurrentMap<String, AtomicLong> entitiesPerType    = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> entitiesPerTag     = new ConcurrentHashMap<>();
+    private final AtomicLong                        entityCount        = new AtomicLong();
+    private final AtomicLong                        deletedEntityCount = new AtomicLong();
+    private final AtomicLong                        taggedEntityCount  = new AtomicLong();
+    private final AtomicLong                        unusedTypeCount    = new AtomicLong();
+
+    // number of tags of each active tagged entity, by qualifiedName
+    private final ConcurrentMap<String, Long>       tagsPerEntity      = new ConcurrentHashMap<>();
+
+    // sequence number of the last entity change event counted, when they are delivered by the entity change outbox
+    private final AtomicLong                        appliedSeq         = new AtomicLong();
+
+    private volatile boolean countersInitialized    = false;
+    private volatile boolean unusedTypeCountChanged = false;
+
+    private final Object             schedulerLock = new Object();
+    private ScheduledExecutorService scheduler     = null;
+
 
     @Inject
-    public MetricsService(AtlasTypeRegistry typeRegistry) throws AtlasException {
-        this(ApplicationProperties.get(), AtlasGraphProvider.getGraphInstance(), typeRegistry);
+    public MetricsService(AtlasTypeRegistry typeRegistry, AsyncFullTextIndexer fullTextIndexer,
+                          EntityChangeOutbox entityChangeOutbox) throws AtlasException {
+        this(ApplicationProperties.get(), AtlasGraphProvider.getGraphInstance(), typeRegistry,
+             HardDeleteHandler.class.isAssignableFrom(AtlasRepositoryConfiguration.getDeleteHandlerImpl()),
+             fullTextIndexer, entityChangeOutbox);
     }
 
     @VisibleForTesting
     MetricsService(Configuration configuration, AtlasGraph graph, AtlasTypeRegistry typeRegistry) {
+        this(configuration, graph, typeRegistry, false, null);
+    }
+
+    @VisibleForTesting
+    MetricsService(Configuration configuration, AtlasGraph graph, AtlasTypeRegistry typeRegistry, boolean hardDelete,
+                   AsyncFullTextIndexer fullTextIndexer) {
+        this(configuration, graph, typeRegistry, hardDelete, fullTextIndexer, null);
+    }
+
+    @VisibleForTesting
+    MetricsService(Configuration configuration, AtlasGraph graph, AtlasTypeRegistry typeRegistry, boolean hardDelete,
+                   AsyncFullTextIndexer fullTextIndexer, EntityChangeOutbox entityChangeOutbox) {
         MetricsService.configuration = configuration;
 
-        atlasTypeRegistry = typeRegistry;
-        atlasGraph        = graph;
-        cacheTTLInSecs    = configuration != null ? configuration.getInt(METRIC_QUERY_CACHE_TTL, DEFAULT_CACHE_TTL_IN_SECS)
-                                                  : DEFAULT_CACHE_TTL_IN_SECS;
+        atlasTypeRegistry  = typeRegistry;
+        atlasGraph         = graph;
+        cacheTTLInSecs     = configuration != null ? configuration.getInt(METRIC_QUERY_CACHE_TTL, DEFAULT_CACHE_TTL_IN_SECS)
+                                                   : DEFAULT_CACHE_TTL_IN_SECS;
+        incrementalEnabled = configuration != null ? configuration.getBoolean(METRIC_INCREMENTAL_ENABLED, DEFAULT_INCREMENTAL_ENABLED)
+                                                   : DEFAULT_INCREMENTAL_ENABLED;
+        this.hardDelete    = hardDelete;
+        this.fullTextIndexer = fullTextIndexer;
+        // null when entity change events are delivered synchronously
+        this.entityChangeOutbox = entityChangeOutbox != null && entityChangeOutbox.isEnabled() ? entityChangeOutbox : null;
+
+        if (configuration != null && !HAConfiguration.isHAEnabled(configuration)) {
+            startBackgroundTasks();
+        }
+    }
+
+    @Override
+    public void instanceIsActive() {
+        LOG.info("Reacting to active state: maintaining metric counters");
+
+        startBackgroundTasks();
+    }
+
+    @Override
+    public void instanceIsPassive() {
+        LOG.info("Reacting to passive state: no longer maintaining metric counters");
+
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+
+                scheduler = null;
+            }
+        }
+
+        // the counters are seeded again on activation, from what the active instance persisted meanwhile
+        countersInitialized = false;
     }
 
-    @SuppressWarnings("unchecked")
     public AtlasMetrics getMetrics() {
-        if (!isCacheValid()) {
-            AtlasMetrics metrics = new AtlasMetrics();
+        if (!incrementalEnabled) {
+            if (!isCacheValid()) {
+                AtlasMetrics metrics = collectMetrics();
+
+                this.cachedMetrics       = metrics;
+                this.cacheExpirationTime = (metrics.getMetric(GENERAL, METRIC_COLLECTION_TIME).longValue() + cacheTTLInSecs * 1000);
+            }
+
+            addFullTextIndexMetrics(cachedMetrics);
+            addEntityChangeOutboxMetrics(cachedMetrics);
+
+            return cachedMetrics;
+        }
+
+        if (!countersInitialized) {
+            initializeCounters();
+        }
+
+        if (unusedTypeCountChanged) {
+            countUnusedTypes();
+        }
+
+        AtlasMetrics metrics = buildMetricsFromCounters();
+
+        addFullTextIndexMetrics(metrics);
+        addEntityChangeOutboxMetrics(metrics);
+
+        return metrics;
+    }
+
+    // the full-text index and entity change lags are always current, also when the other metrics are cached
+    private void addFullTextIndexMetrics(AtlasMetrics metrics) {
+        if (fullTextIndexer != null && AtlasRepositoryConfiguration.isAsyncFullTextIndexingEnabled()) {
+            metrics.addData(GENERAL, METRIC_FULLTEXT_PENDING, fullTextIndexer.getPendingCount());
+            metrics.addData(GENERAL, METRIC_FULLTEXT_LAG, fullTextIndexer.getLagInMillis());
+        }
+    }
+
+    // pending events, lag, delivered events and failures of each entity change listener, when they are asynchronous
+    private void addEntityChangeOutboxMetrics(AtlasMetrics metrics) {
+        if (entityChangeOutbox != null) {
+            for (Map.Entry<String, Number> entry : entityChangeOutbox.getMetrics().entrySet()) {
+                metrics.addData(GENERAL, METRIC_ENTITY_CHANGE_PREFIX + entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void onEntitiesAdded(Collection<ITypedReferenceableInstance> entities) throws AtlasException {
+        if (isRedelivered()) {
+            return;
+        }
+
+        for (ITypedReferenceableInstance entity : entities) {
+            increment(entitiesPerType, entity.getTypeName(), 1);
+            entityCount.incrementAndGet();
+
+            List<String> traitNames = entity.getTraits();
+
+            if (traitNames != null && !traitNames.isEmpty()) {
+                taggedEntityCount.incrementAndGet();
+
+                for (String traitName : traitNames) {
+                    increment(entitiesPerTag, traitName, 1);
+                }
+
+                setTagCount(entity, traitNames.size());
+            }
+        }
+    }
+
+    @Override
+    public void onEntitiesUpdated(Collection<ITypedReferenceableInstance> entities) throws AtlasException {
+        // attribute updates change neither the type nor the traits of an entity
+    }
+
+    @Override
+    public void onTraitAdded(ITypedReferenceableInstance entity, IStruct trait) throws AtlasException {
+        if (isRedelivered()) {
+            return;
+        }
+
+        increment(entitiesPerTag, trait.getTypeName(), 1);
+
+        // the entity is reloaded after the trait is added, so this is its first trait if it is the only one
+        if (entity.getTraits().size() == 1) {
+            taggedEntityCount.incrementAndGet();
+        }
+
+        setTagCount(entity, entity.getTraits().size());
+    }
+
+    @Override
+    public void onTraitDeleted(ITypedReferenceableInstance entity, String traitName) throws AtlasException {
+        if (isRedelivered()) {
+            return;
+        }
+
+        increment(entitiesPerTag, traitName, -1);
+
+        if (entity.getTraits().isEmpty()) {
+            taggedEntityCount.decrementAndGet();
+        }
+
+        setTagCount(entity, entity.getTraits().size());
+    }
+
+    @Override
+    public void onEntitiesDeleted(Collection<ITypedReferenceableInstance> entities) throws AtlasException {
+        if (isRedelivered()) {
+            return;
+        }
+
+        for (ITypedReferenceableInstance entity : entities) {
+            // soft deleted entities are still counted with their type, as deleted
+            if (hardDelete) {
+                increment(entitiesPerType, entity.getTypeName(), -1);
+                entityCount.decrementAndGet();
+            } else {
+                deletedEntityCount.incrementAndGet();
+            }
+
+            // deleted entities are reported with the names of their traits, which no longer count them either way
+            List<String> traitNames = entity.getTraits();
+
+            if (traitNames != null && !traitNames.isEmpty()) {
+                taggedEntityCount.decrementAndGet();
+
+                for (String traitName : traitNames) {
+                    increment(entitiesPerTag, traitName, -1);
+                }
+
+                setTagCount(entity, 0);
+            }
+        }
+    }
+
+    @Override
+    public void onChange(ChangedTypeDefs changedTypeDefs) throws AtlasBaseException {
+        // types refer to each other, and are no longer unused once another type refers to them
+        unusedTypeCountChanged = true;
+    }
+
+    private void setTagCount(ITypedReferenceableInstance entity, int tagCount) {
+        String qualifiedName = getQualifiedName(entity);
+
+        if (qualifiedName == null) {
+            return;
+        }
+
+        if (tagCount > 0) {
+            tagsPerEntity.put(qualifiedName, (long) tagCount);
+        } else {
+            tagsPerEntity.remove(qualifiedName);
+        }
+    }
+
+    private static String getQualifiedName(ITypedReferenceableInstance entity) {
+        try {
+            Object qualifiedName = entity.get(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME);
+
+            return qualifiedName != null ? qualifiedName.toString() : null;
+        } catch (AtlasException e) {
+            // not a Referenceable, which the tags per entity metric doesn't count
+            return null;
+        }
+    }
+
+    private void countUnusedTypes() {
+        unusedTypeCountChanged = false;
+
+        try {
+            Object result = atlasGraph.executeGremlinScript(MetricQuery.UNUSED_TYPE_COUNT.query, false);
+
+            if (result instanceof Number) {
+                unusedTypeCount.set(((Number) result).longValue());
+            }
+        } catch (ScriptException e) {
+            LOG.error("Gremlin execution failed for metric {}", MetricQuery.UNUSED_TYPE_COUNT, e);
+
+            unusedTypeCountChanged = true;
+        }
+    }
+
+    // the entity change outbox delivers events again which it didn't record as delivered before a restart
+    private boolean isRedelivered() {
+        RequestContext context = RequestContext.get();
+        long           seq     = context != null ? context.getEntityChangeSeq() : 0;
+
+        if (seq <= 0) {
+            return false;
+        }
+
+        // the persisted counters tell which events they include
+        if (incrementalEnabled && !countersInitialized) {
+            initializeCounters();
+        }
+
+        // events are delivered to a listener one at a time, in order
+        if (seq <= appliedSeq.get()) {
+            LOG.debug("Skipping entity change event {}, which is already counted", seq);
+
+            return true;
+        }
+
+        appliedSeq.set(seq);
+
+        return false;
+    }
+
+    /**
+     * Recomputes the counters with a full scan of the graph. Notifications received while the scan runs may be
+     * counted twice; the next reconciliation corrects that.
+     */
+    public synchronized void reconcile() {
+        // the scan includes the changes of the entity change events recorded so far, delivered or not
+        long         recordedSeq = entityChangeOutbox != null ? entityChangeOutbox.getLastSeq() : 0;
+        AtlasMetrics metrics     = collectMetrics();
+
+        resetCounters(metrics);
 
-            for (MetricQuery metricQuery : MetricQuery.values()) {
+        if (recordedSeq > appliedSeq.get()) {
+            appliedSeq.set(recordedSeq);
+        }
+
+        countersInitialized = true;
+    }
+
+    @VisibleForTesting
+    void persistCounters() {
+        if (!countersInitialized) {
+            return;
+        }
+
+        try {
+            AtlasVertex vertex = findSnapshotVertex();
+
+            if (vertex == null) {
+                vertex = atlasGraph.addVertex();
+
+                vertex.setProperty(Constants.VERTEX_TYPE_PROPERTY_KEY, METRICS_VERTEX_TYPE);
+            }
+
+            vertex.setProperty(METRICS_SNAPSHOT_PROPERTY_KEY, AtlasType.toJson(toSnapshot()));
+
+            atlasGraph.commit();
+        } catch (Exception e) {
+            LOG.warn("Failed to persist metric counters", e);
+
+            atlasGraph.rollback();
+        }
+    }
+
+    private synchronized void initializeCounters() {
+        if (countersInitialized) {
+            return;
+        }
+
+        Map snapshot = loadSnapshot();
+
+        if (snapshot != null) {
+            // notifications received since startup are on top of the persisted counts
+            addToCounters(snapshot);
+
+            countersInitialized = true;
+        } else {
+            reconcile();
+        }
+    }
+
+    private AtlasMetrics buildMetricsFromCounters() {
+        AtlasMetrics metrics = new AtlasMetrics();
+
+        metrics.addData(GENERAL, METRIC_TYPE_COUNT, atlasTypeRegistry.getAllEntityDefNames().size()
+                                                    + atlasTypeRegistry.getAllStructDefNames().size()
+                                                    + atlasTypeRegistry.getAllEnumDefNames().size());
+        metrics.addData(GENERAL, METRIC_TYPE_UNUSED_COUNT, unusedTypeCount.get());
+        metrics.addData(GENERAL, METRIC_ENTITY_COUNT, entityCount.get());
+        metrics.addData(GENERAL, METRIC_TAG_COUNT, atlasTypeRegistry.getAllClassificationDefNames().size());
+        metrics.addData(GENERAL, METRIC_ENTITY_DELETED, deletedEntityCount.get());
+
+        for (String entityDefName : atlasTypeRegistry.getAllEntityDefNames()) {
+            AtomicLong count = entitiesPerType.get(entityDefName);
+
+            metrics.addData(ENTITY, entityDefName, count != null ? count.get() : 0);
+        }
+
+        metrics.addData(ENTITY, METRIC_TAGGED_ENTITIES, taggedEntityCount.get());
+
+        for (Map.Entry<String, AtomicLong> entry : entitiesPerTag.entrySet()) {
+            metrics.addData(METRIC_ENTITIES_PER_TAG, entry.getKey(), entry.getValue().get());
+        }
+
+        for (Map.Entry<String, Long> entry : tagsPerEntity.entrySet()) {
+            metrics.addData(TAG, entry.getKey(), entry.getValue());
+        }
+
+        metrics.addData(GENERAL, METRIC_COLLECTION_TIME, System.currentTimeMillis());
+
+        return metrics;
+    }
+
+    private void resetCounters(AtlasMetrics metrics) {
+        Map<String, Object> snapshot = new HashMap<>();
+        Map<String, Number> general  = metrics.getData() != null ? metrics.getData().get(GENERAL) : null;
+        Map<String, Number> entities = metrics.getData() != null ? metrics.getData().get(ENTITY) : null;
+
+        if (general != null) {
+            snapshot.put(SNAPSHOT_ENTITY_COUNT, general.get(METRIC_ENTITY_COUNT));
+            snapshot.put(SNAPSHOT_DELETED_COUNT, general.get(METRIC_ENTITY_DELETED));
+            snapshot.put(SNAPSHOT_UNUSED_TYPE_COUNT, general.get(METRIC_TYPE_UNUSED_COUNT));
+        }
+
+        if (entities != null) {
+            Map<String, Number> perType = new HashMap<>(entities);
+
+            snapshot.put(SNAPSHOT_TAGGED_COUNT, perType.remove(METRIC_TAGGED_ENTITIES));
+            snapshot.put(SNAPSHOT_ENTITIES_PER_TYPE, perType);
+        }
+
+        snapshot.put(SNAPSHOT_ENTITIES_PER_TAG, metrics.getData() != null ? metrics.getData().get(METRIC_ENTITIES_PER_TAG) : null);
+        snapshot.put(SNAPSHOT_TAGS_PER_ENTITY, metrics.getData() != null ? metrics.getData().get(TAG) : null);
+
+        entityCount.set(0);
+        deletedEntityCount.set(0);
+        taggedEntityCount.set(0);
+        unusedTypeCount.set(0);
+        entitiesPerType.clear();
+        entitiesPerTag.clear();
+        tagsPerEntity.clear();
+
+        addToCounters(snapshot);
+    }
+
+    // adds the counts in the given snapshot to the current counters
+    private void addToCounters(Map snapshot) {
+        entityCount.addAndGet(getLong(snapshot, SNAPSHOT_ENTITY_COUNT));
+        deletedEntityCount.addAndGet(getLong(snapshot, SNAPSHOT_DELETED_COUNT));
+        taggedEntityCount.addAndGet(getLong(snapshot, SNAPSHOT_TAGGED_COUNT));
+        unusedTypeCount.set(getLong(snapshot, SNAPSHOT_UNUSED_TYPE_COUNT));
+
+        addAll(entitiesPerType, (Map) snapshot.get(SNAPSHOT_ENTITIES_PER_TYPE));
+        addAll(entitiesPerTag, (Map) snapshot.get(SNAPSHOT_ENTITIES_PER_TAG));
+
+        // the number of tags of an entity is replaced, not added to, by the changes received since startup
+        Map perEntity = (Map) snapshot.get(SNAPSHOT_TAGS_PER_ENTITY);
+
+        if (perEntity != null) {
+            for (Object key : perEntity.keySet()) {
+                Object value = perEntity.get(key);
+
+                if (value instanceof Number) {
+                    tagsPerEntity.putIfAbsent((String) key, ((Number) value).longValue());
+                }
+            }
+        }
+
+        long seq = getLong(snapshot, SNAPSHOT_ENTITY_CHANGE_SEQ);
+
+        if (seq > appliedSeq.get()) {
+            appliedSeq.set(seq);
+        }
+    }
+
+    private Map<String, Object> toSnapshot() {
+        Map<String, Object> ret     = new HashMap<>();
+        Map<String, Long>   perType = new HashMap<>();
+        Map<String, Long>   perTag  = new HashMap<>();
+
+        for (Map.Entry<String, AtomicLong> entry : entitiesPerType.entrySet()) {
+            perType.put(entry.getKey(), entry.getValue().get());
+        }
+
+        for (Map.Entry<String, AtomicLong> entry : entitiesPerTag.entrySet()) {
+            perTag.put(entry.getKey(), entry.getValue().get());
+        }
+
+        ret.put(SNAPSHOT_ENTITY_COUNT, entityCount.get());
+        ret.put(SNAPSHOT_DELETED_COUNT, deletedEntityCount.get());
+        ret.put(SNAPSHOT_TAGGED_COUNT, taggedEntityCount.get());
+        ret.put(SNAPSHOT_UNUSED_TYPE_COUNT, unusedTypeCount.get());
+        ret.put(SNAPSHOT_ENTITIES_PER_TYPE, perType);
+        ret.put(SNAPSHOT_ENTITIES_PER_TAG, perTag);
+        ret.put(SNAPSHOT_TAGS_PER_ENTITY, new HashMap<>(tagsPerEntity));
+        ret.put(SNAPSHOT_ENTITY_CHANGE_SEQ, appliedSeq.get());
+
+        return ret;
+    }
+
+    private Map loadSnapshot() {
+        try {
+            AtlasVertex vertex = findSnapshotVertex();
+            String      json   = vertex != null ? (String) vertex.getProperty(METRICS_SNAPSHOT_PROPERTY_KEY, String.class) : null;
+
+            return json != null ? AtlasType.fromJson(json, Map.class) : null;
+        } catch (Exception e) {
+            LOG.warn("Failed to load persisted metric counters. Counters will be rebuilt with a full scan", e);
+
+            return null;
+        }
+    }
+
+    private AtlasVertex findSnapshotVertex() {
+        Iterator<AtlasVertex> vertices = atlasGraph.query().has(Constants.VERTEX_TYPE_PROPERTY_KEY, METRICS_VERTEX_TYPE)
+                                                   .vertices().iterator();
+
+        return vertices.hasNext() ? vertices.next() : null;
+    }
+
+    private void startBackgroundTasks() {
+        if (!incrementalEnabled || configuration == null) {
+            return;
+        }
+
+        int     persistIntervalInSecs   = configuration.getInt(METRIC_PERSIST_INTERVAL, DEFAULT_PERSIST_INTERVAL_IN_SECS);
+        int     reconcileIntervalInSecs = configuration.getInt(METRIC_RECONCILE_INTERVAL, DEFAULT_RECONCILE_INTERVAL_IN_SECS);
+        boolean reconcileOnActivation   = configuration.getBoolean(METRIC_RECONCILE_ON_ACTIVATION, DEFAULT_RECONCILE_ON_ACTIVATION);
+
+        if (persistIntervalInSecs <= 0 && reconcileIntervalInSecs <= 0 && !reconcileOnActivation) {
+            return;
+        }
+
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                return;
+            }
+
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("atlas-metrics-%d").setDaemon(true).build());
+
+            scheduleBackgroundTasks(persistIntervalInSecs, reconcileIntervalInSecs, reconcileOnActivation);
+        }
+    }
+
+    private void scheduleBackgroundTasks(int persistIntervalInSecs, int reconcileIntervalInSecs, boolean reconcileOnActivation) {
+        Runnable reconciliation = new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Executing query: {}", metricQuery);
-                    }
+                    reconcile();
+                    persistCounters();
+                } catch (Exception e) {
+                    LOG.warn("Metric counters reconciliation failed", e);
+                }
+            }
+        };
+
+        if (reconcileOnActivation) {
+            scheduler.execute(reconciliation);
+        }
+
+        if (persistIntervalInSecs > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    persistCounters();
+                }
+            }, persistIntervalInSecs, persistIntervalInSecs, TimeUnit.SECONDS);
+        }
+
+        if (reconcileIntervalInSecs > 0) {
+            scheduler.scheduleWithFixedDelay(reconciliation, reconcileIntervalInSecs, reconcileIntervalInSecs, TimeUnit.SECONDS);
+        }
+    }
 
-                    if (metricQuery == MetricQuery.ENTITIES_PER_TYPE) {
-                        Collection<String> entityDefNames = atlasTypeRegistry.getAllEntityDefNames();
+    private static void increment(ConcurrentMap<String, AtomicLong> counters, String key, long delta) {
+        AtomicLong counter = counters.get(key);
 
-                        for (String entityDefName : entityDefNames) {
-                            String formattedQuery = String.format(metricQuery.query, entityDefName);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
 
-                            executeGremlinQuery(metrics, metricQuery.type, entityDefName, formattedQuery);
-                        }
-                    } else {
-                        executeGremlinQuery(metrics, metricQuery.type, metricQuery.name, metricQuery.query);
-                    }
-                } catch (ScriptException e) {
-                    LOG.error("Gremlin execution failed for metric {}", metricQuery, e);
+            counter = counters.putIfAbsent(key, newCounter);
+
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+
+        counter.addAndGet(delta);
+    }
+
+    private static void addAll(ConcurrentMap<String, AtomicLong> counters, Map values) {
+        if (values != null) {
+            for (Object key : values.keySet()) {
+                Object value = values.get(key);
+
+                if (value instanceof Number) {
+                    increment(counters, (String) key, ((Number) value).longValue());
                 }
             }
+        }
+    }
 
-            long collectionTime = System.currentTimeMillis();
+    private static long getLong(Map map, String key) {
+        Object value = map.get(key);
 
-            metrics.addData(GENERAL, METRIC_COLLECTION_TIME, collectionTime);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
 
-            this.cachedMetrics       = metrics;
-            this.cacheExpirationTime = (collectionTime + cacheTTLInSecs * 1000);
+    @SuppressWarnings("unchecked")
+    private AtlasMetrics collectMetrics() {
+        AtlasMetrics metrics = new AtlasMetrics();
+
+        for (MetricQuery metricQuery : MetricQuery.values()) {
+            try {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Executing query: {}", metricQuery);
+                }
+
+                if (metricQuery == MetricQuery.ENTITIES_PER_TYPE) {
+                    Collection<String> entityDefNames = atlasTypeRegistry.getAllEntityDefNames();
+
+                    for (String entityDefName : entityDefNames) {
+                        String formattedQuery = String.format(metricQuery.query, entityDefName);
+
+                        executeGremlinQuery(metrics, metricQuery.type, entityDefName, formattedQuery);
+                    }
+                } else if (metricQuery == MetricQuery.ENTITIES_PER_TAG) {
+                    // only used to seed the incremental counters
+                    if (!incrementalEnabled) {
+                        continue;
+                    }
+
+                    Collection<String> classificationDefNames = atlasTypeRegistry.getAllClassificationDefNames();
+
+                    for (String classificationDefName : classificationDefNames) {
+                        String formattedQuery = String.format(metricQuery.query, classificationDefName);
+
+                        executeGremlinQuery(metrics, METRIC_ENTITIES_PER_TAG, classificationDefName, formattedQuery);
+                    }
+                } else {
+                    executeGremlinQuery(metrics, metricQuery.type, metricQuery.name, metricQuery.query);
+                }
+            } catch (ScriptException e) {
+                LOG.error("Gremlin execution failed for metric {}", metricQuery, e);
+            }
         }
 
-        return cachedMetrics;
+        metrics.addData(GENERAL, METRIC_COLLECTION_TIME, System.currentTimeMillis());
+
+        return metrics;
     }
 
     private void executeGremlinQuery(AtlasMetrics metrics, String type, String name, String query) throws ScriptException {
@@ -174,12 +821,13 @@ public class MetricsService {
         UNUSED_TYPE_COUNT(GENERAL, METRIC_TYPE_UNUSED_COUNT, "g.V('__type', 'typeSystem').filter({ it.'__type.category'.name() != 'TRAIT' && it.inE.count() == 0}).count()"),
         ENTITY_COUNT(GENERAL, METRIC_ENTITY_COUNT, "g.V().has('__superTypeNames', T.in, ['Referenceable']).count()"),
         TAGS_COUNT(GENERAL, METRIC_TAG_COUNT, "g.V().has('__type', 'typeSystem').filter({it.'__type.category'.name() == 'TRAIT'}).count()"),
-        DELETED_ENTITY_COUNT(GENERAL, METRIC_ENTITY_DELETED, "g.V().has('__superTypeNames', T.in, ['Referenceable']).has('__status', 'DELETED').count()"),
+        DELETED_ENTITY_COUNT(GENERAL, METRIC_ENTITY_DELETED, "g.V().has('__superTypeNames', T.in, ['Referenceable']).has('__state', 'DELETED').count()"),
 
         ENTITIES_PER_TYPE(ENTITY, METRIC_TYPE_ENTITIES, "g.V().has('__typeName', T.in, ['%s']).count()"),
-        TAGGED_ENTITIES(ENTITY, METRIC_TAGGED_ENTITIES, "g.V().has('__superTypeNames', T.in, ['Referenceable']).has('__traitNames').count()"),
+        TAGGED_ENTITIES(ENTITY, METRIC_TAGGED_ENTITIES, "g.V().has('__superTypeNames', T.in, ['Referenceable']).has('__state', 'ACTIVE').has('__traitNames').count()"),
 
-        TAGS_PER_ENTITY(TAG, METRIC_TAGS_PER_ENTITY, "g.V().has('__superTypeNames', T.in, ['Referenceable']).has('__traitNames').transform{[ key: it.'Referenceable.qualifiedName', value: it.'__traitNames'.size()]}.dedup().toList()"),
+        TAGS_PER_ENTITY(TAG, METRIC_TAGS_PER_ENTITY, "g.V().has('__superTypeNames', T.in, ['Referenceable']).has('__state', 'ACTIVE').has('__traitNames').transform{[ key: it.'Referenceable.qualifiedName', value: it.'__traitNames'.size()]}.dedup().toList()"),
+        ENTITIES_PER_TAG(TAG, METRIC_ENTITIES_PER_TAG, "g.V().has('__traitNames', T.in, ['%s']).has('__state', 'ACTIVE').count()"),
         ;
 
         private final String type;
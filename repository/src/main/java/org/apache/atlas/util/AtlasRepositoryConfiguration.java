@@ -169,6 +169,39 @@ public class AtlasRepositoryConfiguration {
         }
     }
 
+    public static final String GREMLIN_PARAMETERIZED_QUERIES_PROPERTY = "atlas.query.gremlinParameterizedQueries";
+    private static final boolean DEFAULT_GREMLIN_PARAMETERIZED_QUERIES = true;
+
+    /**
+     * Whether literals in the gremlin generated from DSL queries should be passed as bindings,
+     * rather than being inlined in the query text.  This allows queries that differ only in their
+     * literal values to share the same compiled script.
+     */
+    public static boolean isGremlinParameterizedQueriesEnabled() {
+        try {
+            return ApplicationProperties.get().getBoolean(GREMLIN_PARAMETERIZED_QUERIES_PROPERTY, DEFAULT_GREMLIN_PARAMETERIZED_QUERIES);
+        } catch (AtlasException e) {
+            LOG.error("Could not determine value of " + GREMLIN_PARAMETERIZED_QUERIES_PROPERTY + ".  Defaulting to " + DEFAULT_GREMLIN_PARAMETERIZED_QUERIES, e);
+            return DEFAULT_GREMLIN_PARAMETERIZED_QUERIES;
+        }
+    }
+
+    public static final String FULLTEXT_ASYNC_ENABLED_PROPERTY = "atlas.fulltext.async.enabled";
+    private static final boolean DEFAULT_FULLTEXT_ASYNC_ENABLED = false;
+
+    /**
+     * Whether the full-text documents of created and updated entities are computed by a background worker
+     * after the transaction is committed, rather than within the transaction.
+     */
+    public static boolean isAsyncFullTextIndexingEnabled() {
+        try {
+            return ApplicationProperties.get().getBoolean(FULLTEXT_ASYNC_ENABLED_PROPERTY, DEFAULT_FULLTEXT_ASYNC_ENABLED);
+        } catch (AtlasException e) {
+            LOG.error("Could not determine value of " + FULLTEXT_ASYNC_ENABLED_PROPERTY + ".  Defaulting to " + DEFAULT_FULLTEXT_ASYNC_ENABLED, e);
+            return DEFAULT_FULLTEXT_ASYNC_ENABLED;
+        }
+    }
+
     /**
      * Get the list of operations which are configured to be skipped from auditing
      * Valid format is HttpMethod:URL eg: GET:Version
@@ -17,6 +17,8 @@
  */
 package org.apache.atlas.util;
 
+import java.util.Collections;
+
 import org.apache.atlas.query.GremlinQuery;
 import org.apache.atlas.typesystem.types.IDataType;
 
@@ -29,7 +31,7 @@ public class NoopGremlinQuery extends GremlinQuery {
     private final IDataType dataType;
 
     public NoopGremlinQuery(IDataType dataType) {
-        super(null, null, null);
+        super(null, null, null, Collections.<String, Object>emptyMap());
         this.dataType = dataType;
     }
 
@@ -83,7 +83,7 @@ class GremlinEvaluator(qry: GremlinQuery, persistenceStrategy: GraphPersistenceS
         else {
             rType
         }
-        val rawRes = g.executeGremlinScript(qry.queryStr, qry.isPathExpression);
+        val rawRes = g.executeGremlinScript(qry.queryStr, qry.queryParams, qry.isPathExpression);
         if(debug) {
             println(" rawRes " +rawRes)
         }
@@ -90,7 +90,12 @@ trait IntSequence {
     def next: Int
 }
 
-case class GremlinQuery(expr: Expression, queryStr: String, resultMaping: Map[String, (String, Int)]) {
+/**
+ * @param queryParams values of the parameters referenced by queryStr. Literals are passed as parameters,
+ *                    rather than inlined, so that one compiled script serves all the parameter values.
+ */
+case class GremlinQuery(expr: Expression, queryStr: String, resultMaping: Map[String, (String, Int)],
+                        queryParams: java.util.Map[String, Object] = java.util.Collections.emptyMap[String, Object]()) {
 
     def hasSelectList = resultMaping != null
 
@@ -692,7 +697,7 @@ class GremlinTranslator(expr: Expression,
        }
     }
 
-    def genFullQuery(expr: Expression, hasSelect: Boolean): String = {
+    def genFullQuery(expr: Expression, hasSelect: Boolean): GroovyGenerationContext = {
 
         var q : GroovyExpression = new FunctionCallExpression(TraversalStepType.START, new IdentifierExpression(TraversalStepType.SOURCE, "g"),"V");
 
@@ -719,21 +724,21 @@ class GremlinTranslator(expr: Expression,
 
 	    val overallExpression = new LabeledExpression("L", closureExpression);
 
-        val qryStr = generateGremlin(overallExpression);
+        val ctx = generateGremlin(overallExpression);
 
         if(debug) {
-          println(" query " + qryStr)
+          println(" query " + ctx.getQuery + " parameters " + ctx.getParameters)
         }
 
-        qryStr;
+        ctx;
 
     }
 
-    def generateGremlin(expr: GroovyExpression) : String = {
+    def generateGremlin(expr: GroovyExpression) : GroovyGenerationContext = {
          val ctx : GroovyGenerationContext = new GroovyGenerationContext();
-         ctx.setParametersAllowed(false);
+         ctx.setParametersAllowed(AtlasRepositoryConfiguration.isGremlinParameterizedQueriesEnabled());
          expr.generateGroovy(ctx);
-         return ctx.getQuery;
+         return ctx;
     }
 
     def translate(): GremlinQuery = {
@@ -753,9 +758,11 @@ class GremlinTranslator(expr: Expression,
         val se = SelectExpressionHelper.extractSelectExpression(e1)
         if (se.isDefined) {
           val rMap = buildResultMapping(se.get)
-          GremlinQuery(e1, genFullQuery(e1, true), rMap)
+          val ctx = genFullQuery(e1, true)
+          GremlinQuery(e1, ctx.getQuery, rMap, ctx.getParameters)
         } else {
-            GremlinQuery(e1, genFullQuery(e1, false), null)
+            val ctx = genFullQuery(e1, false)
+            GremlinQuery(e1, ctx.getQuery, null, ctx.getParameters)
         }
 
     }
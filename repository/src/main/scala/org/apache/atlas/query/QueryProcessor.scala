@@ -62,6 +62,7 @@ object QueryProcessor {
         if(LOG.isDebugEnabled()) {
             LOG.debug("DSL Query: " + dsl);
             LOG.debug("Gremlin Query: " + q.queryStr)
+            LOG.debug("Gremlin Query Parameters: " + q.queryParams)
         }
         new GremlinEvaluator(q, strategy, g).evaluate()
     }
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.discovery;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.atlas.AtlasClient;
+import org.apache.atlas.AtlasErrorCode;
+import org.apache.atlas.exception.AtlasBaseException;
+import org.apache.atlas.model.lineage.AtlasLineageInfo;
+import org.apache.atlas.model.lineage.AtlasLineageInfo.LineageDirection;
+import org.apache.atlas.model.lineage.AtlasLineageInfo.LineageRelation;
+import org.apache.atlas.repository.Constants;
+import org.apache.atlas.repository.graphdb.AtlasEdge;
+import org.apache.atlas.repository.graphdb.AtlasEdgeDirection;
+import org.apache.atlas.repository.graphdb.AtlasGraph;
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
+import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the breadth-first lineage traversal of {@link EntityLineageService} against a mocked graph:
+ *
+ *   t1 -> p1 -> t2 -> p2 -> t3, with p2 also writing t1,
+ *   c1 (not a DataSet) read and written by p1, and written by p3 which reads t1.
+ */
+public class EntityLineageServiceTraversalTest {
+    private static final String INPUTS  = "__Process.inputs";
+    private static final String OUTPUTS = "__Process.outputs";
+
+    private AtlasGraph               graph;
+    private Map<String, AtlasVertex> vertices;
+    private Map<String, List<AtlasEdge>> edges;
+    private EntityLineageService     lineageService;
+
+    @BeforeMethod
+    public void setup() {
+        graph          = mock(AtlasGraph.class);
+        vertices       = new HashMap<>();
+        edges          = new HashMap<>();
+        lineageService = new EntityLineageService(graph, null);
+
+        for (String guid : Arrays.asList("t1", "t2", "t3")) {
+            vertex(guid, "hive_table", AtlasClient.DATA_SET_SUPER_TYPE);
+        }
+
+        for (String guid : Arrays.asList("p1", "p2", "p3")) {
+            vertex(guid, "hive_process", AtlasClient.PROCESS_SUPER_TYPE);
+        }
+
+        vertex("c1", "hive_column");
+
+        edge("p1", INPUTS, "t1");
+        edge("p1", INPUTS, "c1");
+        edge("p1", OUTPUTS, "t2");
+        edge("p1", OUTPUTS, "c1");
+        edge("p2", INPUTS, "t2");
+        edge("p2", OUTPUTS, "t3");
+        edge("p2", OUTPUTS, "t1");
+        edge("p3", INPUTS, "t1");
+        edge("p3", OUTPUTS, "c1");
+
+        final AtlasGraphQuery query = mock(AtlasGraphQuery.class);
+
+        when(graph.query()).thenReturn(query);
+        when(query.has(eq(Constants.GUID_PROPERTY_KEY), anyString())).thenAnswer(new Answer<AtlasGraphQuery>() {
+            @Override
+            public AtlasGraphQuery answer(InvocationOnMock invocation) throws Throwable {
+                AtlasVertex     vertex  = vertices.get((String) invocation.getArguments()[1]);
+                AtlasGraphQuery byGuid  = mock(AtlasGraphQuery.class);
+                List            results = vertex != null && vertex.getPropertyValues(Constants.SUPER_TYPES_PROPERTY_KEY, String.class)
+                                                                   .contains(AtlasClient.DATA_SET_SUPER_TYPE)
+                                          ? Collections.singletonList(vertex) : Collections.emptyList();
+
+                when(byGuid.has(Constants.SUPER_TYPES_PROPERTY_KEY, AtlasClient.DATA_SET_SUPER_TYPE)).thenReturn(byGuid);
+                when(byGuid.vertices()).thenReturn(results);
+
+                return byGuid;
+            }
+        });
+    }
+
+    @Test
+    public void testOutputLineage() throws AtlasBaseException {
+        AtlasLineageInfo lineage = lineageService.traverseLineage("t1", LineageDirection.OUTPUT, -1);
+
+        assertEquals(lineage.getGuidEntityMap().keySet(), guids("t1", "p1", "t2", "p2", "t3"));
+        assertEquals(lineage.getRelations(), relations("t1", "p1", "p1", "t2", "t2", "p2", "p2", "t3", "p2", "t1"));
+        assertEquals(lineage.getGuidEntityMap().get("p1").getTypeName(), "hive_process");
+        assertEquals(lineage.getGuidEntityMap().get("t3").getDisplayText(), "t3@cl1");
+    }
+
+    @Test
+    public void testInputLineage() throws AtlasBaseException {
+        AtlasLineageInfo lineage = lineageService.traverseLineage("t3", LineageDirection.INPUT, -1);
+
+        assertEquals(lineage.getGuidEntityMap().keySet(), guids("t3", "p2", "t2", "p1", "t1"));
+        assertEquals(lineage.getRelations(), relations("p2", "t3", "t2", "p2", "p1", "t2", "t1", "p1", "p2", "t1"));
+    }
+
+    @Test
+    public void testLineageIsLimitedToDepth() throws AtlasBaseException {
+        AtlasLineageInfo output = lineageService.traverseLineage("t1", LineageDirection.OUTPUT, 1);
+
+        assertEquals(output.getGuidEntityMap().keySet(), guids("t1", "p1", "t2"));
+        assertEquals(output.getRelations(), relations("t1", "p1", "p1", "t2"));
+
+        AtlasLineageInfo input = lineageService.traverseLineage("t3", LineageDirection.INPUT, 1);
+
+        assertEquals(input.getGuidEntityMap().keySet(), guids("t3", "p2", "t2"));
+        assertEquals(input.getRelations(), relations("p2", "t3", "t2", "p2"));
+    }
+
+    @Test
+    public void testLineageSkipsEntitiesThatAreNotDataSets() throws AtlasBaseException {
+        // p3 only writes c1, so neither of them is in the lineage of t1
+        AtlasLineageInfo output = lineageService.traverseLineage("t1", LineageDirection.OUTPUT, -1);
+
+        assertFalse(output.getGuidEntityMap().containsKey("c1"));
+        assertFalse(output.getGuidEntityMap().containsKey("p3"));
+
+        AtlasLineageInfo input = lineageService.traverseLineage("t2", LineageDirection.INPUT, 1);
+
+        assertEquals(input.getGuidEntityMap().keySet(), guids("t2", "p1", "t1"));
+        assertEquals(input.getRelations(), relations("p1", "t2", "t1", "p1"));
+    }
+
+    @Test
+    public void testLineageOfUnknownEntity() {
+        try {
+            lineageService.traverseLineage("c1", LineageDirection.OUTPUT, -1);
+            fail("Expected AtlasBaseException");
+        } catch (AtlasBaseException e) {
+            assertEquals(e.getAtlasErrorCode(), AtlasErrorCode.INSTANCE_GUID_NOT_FOUND);
+        }
+    }
+
+    private void vertex(final String guid, String typeName, String... superTypes) {
+        AtlasVertex vertex = mock(AtlasVertex.class);
+
+        when(vertex.getId()).thenReturn(guid);
+        when(vertex.getProperty(Constants.GUID_PROPERTY_KEY, String.class)).thenReturn(guid);
+        when(vertex.getProperty(Constants.TYPE_NAME_PROPERTY_KEY, String.class)).thenReturn(typeName);
+        when(vertex.getProperty(Constants.QUALIFIED_NAME, String.class)).thenReturn(guid + "@cl1");
+        when(vertex.getProperty(Constants.STATE_PROPERTY_KEY, String.class)).thenReturn("ACTIVE");
+        when(vertex.getPropertyValues(Constants.SUPER_TYPES_PROPERTY_KEY, String.class)).thenReturn(Arrays.asList(superTypes));
+        when(vertex.getEdges(eq(AtlasEdgeDirection.IN), anyString())).thenAnswer(edgesOf(guid, AtlasEdgeDirection.IN));
+        when(vertex.getEdges(eq(AtlasEdgeDirection.OUT), anyString())).thenAnswer(edgesOf(guid, AtlasEdgeDirection.OUT));
+
+        vertices.put(guid, vertex);
+    }
+
+    private void edge(String fromGuid, String label, String toGuid) {
+        AtlasEdge edge = mock(AtlasEdge.class);
+
+        when(edge.getOutVertex()).thenReturn(vertices.get(fromGuid));
+        when(edge.getInVertex()).thenReturn(vertices.get(toGuid));
+        when(edge.getLabel()).thenReturn(label);
+
+        edgeList(fromGuid, AtlasEdgeDirection.OUT, label).add(edge);
+        edgeList(toGuid, AtlasEdgeDirection.IN, label).add(edge);
+    }
+
+    private List<AtlasEdge> edgeList(String guid, AtlasEdgeDirection direction, String label) {
+        String          key = guid + ":" + direction + ":" + label;
+        List<AtlasEdge> ret = edges.get(key);
+
+        if (ret == null) {
+            ret = new ArrayList<>();
+
+            edges.put(key, ret);
+        }
+
+        return ret;
+    }
+
+    private Answer<Iterable<AtlasEdge>> edgesOf(final String guid, final AtlasEdgeDirection direction) {
+        return new Answer<Iterable<AtlasEdge>>() {
+            @Override
+            public Iterable<AtlasEdge> answer(InvocationOnMock invocation) throws Throwable {
+                return edgeList(guid, direction, (String) invocation.getArguments()[1]);
+            }
+        };
+    }
+
+    private static Set<String> guids(String... guids) {
+        return new HashSet<>(Arrays.asList(guids));
+    }
+
+    /**
+     * @param guids pairs of from and to guids
+     */
+    private static Set<LineageRelation> relations(String... guids) {
+        Set<LineageRelation> ret = new HashSet<>();
+
+        for (int i = 0; i < guids.length; i += 2) {
+            ret.add(new LineageRelation(guids[i], guids[i + 1]));
+        }
+
+        return ret;
+    }
+}
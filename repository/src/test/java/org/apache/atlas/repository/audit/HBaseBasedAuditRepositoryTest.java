@@ -18,20 +18,58 @@
 
 package org.apache.atlas.repository.audit;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.AtlasException;
 import org.apache.atlas.EntityAuditEvent;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.json.InstanceSerialization;
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationUtils;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.RandomStringUtils;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class HBaseBasedAuditRepositoryTest extends AuditRepositoryTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(HBaseBasedAuditRepositoryTest.class);
+
     private TableName tableName;
 
     @BeforeClass
@@ -59,6 +97,348 @@ public class HBaseBasedAuditRepositoryTest extends AuditRepositoryTestBase {
         assertTrue(admin.tableExists(tableName));
     }
 
+    @Test
+    public void testAsyncWrite() throws Exception {
+        HBaseBasedAuditRepository asyncRepository = startRepository(
+                HBaseBasedAuditRepository.CONFIG_ASYNC_ENABLED, true,
+                //Smaller than the number of events, so that adding events waits for the writer
+                HBaseBasedAuditRepository.CONFIG_ASYNC_QUEUE_SIZE, 10);
+
+        try {
+            String entityId = "async" + RandomStringUtils.randomAlphanumeric(10);
+            long ts = System.currentTimeMillis();
+            Referenceable entity = new Referenceable(RandomStringUtils.randomAlphanumeric(10));
+            List<EntityAuditEvent> expectedEvents = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                EntityAuditEvent event = new EntityAuditEvent(entityId, ts + i, "user" + i,
+                        EntityAuditEvent.EntityAuditAction.ENTITY_UPDATE, "details" + i, entity);
+                asyncRepository.putEvents(event);
+                expectedEvents.add(0, event);
+            }
+
+            asyncRepository.flush();
+
+            List<EntityAuditEvent> events = eventRepository.listEvents(entityId, null, (short) 100);
+            assertEquals(events.size(), expectedEvents.size());
+            for (int i = 0; i < events.size(); i++) {
+                assertEventEquals(events.get(i), expectedEvents.get(i));
+            }
+        } finally {
+            asyncRepository.stop();
+        }
+    }
+
+    @Test
+    public void testAsyncWriteFailuresAreCounted() throws Exception {
+        final Connection connection = mock(Connection.class);
+        Admin admin = mock(Admin.class);
+        BufferedMutator mutator = mock(BufferedMutator.class);
+        when(connection.getAdmin()).thenReturn(admin);
+        when(admin.tableExists(any(TableName.class))).thenReturn(true);
+        when(connection.getBufferedMutator(any(BufferedMutatorParams.class))).thenReturn(mutator);
+        doThrow(new IOException("Simulating write failure")).when(mutator).mutate(anyListOf(Put.class));
+
+        HBaseBasedAuditRepository failingRepository = new HBaseBasedAuditRepository() {
+            @Override
+            protected Connection createConnection(org.apache.hadoop.conf.Configuration hbaseConf) {
+                return connection;
+            }
+        };
+        Configuration atlasConf = new PropertiesConfiguration();
+        ConfigurationUtils.copy(ApplicationProperties.get(), atlasConf);
+        atlasConf.setProperty(HBaseBasedAuditRepository.CONFIG_ASYNC_ENABLED, "true");
+        failingRepository.startInternal(atlasConf, HBaseBasedAuditRepository.getHBaseConfiguration(atlasConf));
+
+        try {
+            String entityId = "failed" + RandomStringUtils.randomAlphanumeric(10);
+            long ts = System.currentTimeMillis();
+            for (int i = 0; i < 10; i++) {
+                failingRepository.putEvents(new EntityAuditEvent(entityId, ts + i, "user",
+                        EntityAuditEvent.EntityAuditAction.ENTITY_UPDATE, "details" + i, null));
+            }
+
+            failingRepository.flush();
+
+            assertEquals(failingRepository.getFailedWriteCount(), 10);
+        } finally {
+            failingRepository.stop();
+        }
+    }
+
+    @Test
+    public void testAuditSettingsAreNotPassedToHBase() throws Exception {
+        Configuration atlasConf = new PropertiesConfiguration();
+        atlasConf.setProperty("atlas.audit.hbase.zookeeper.quorum", "localhost");
+        atlasConf.setProperty(HBaseBasedAuditRepository.CONFIG_ASYNC_ENABLED, true);
+        atlasConf.setProperty(HBaseBasedAuditRepository.CONFIG_DELTA_SNAPSHOT_INTERVAL, 10);
+
+        org.apache.hadoop.conf.Configuration hbaseConf = HBaseBasedAuditRepository.getHBaseConfiguration(atlasConf);
+
+        assertEquals(hbaseConf.get("hbase.zookeeper.quorum"), "localhost");
+        assertNull(hbaseConf.get("hbase.async.enabled"));
+        assertNull(hbaseConf.get("hbase.delta.snapshot.interval"));
+    }
+
+    @Test
+    public void testDeltaStorageFormat() throws Exception {
+        HBaseBasedAuditRepository plainRepository = startRepository(
+                HBaseBasedAuditRepository.CONFIG_PERSIST_ENTITY_DEFINITION, true);
+        HBaseBasedAuditRepository deltaRepository = startRepository(
+                HBaseBasedAuditRepository.CONFIG_PERSIST_ENTITY_DEFINITION, true,
+                HBaseBasedAuditRepository.CONFIG_STORAGE_FORMAT, HBaseBasedAuditRepository.STORAGE_FORMAT_DELTA,
+                HBaseBasedAuditRepository.CONFIG_DELTA_SNAPSHOT_INTERVAL, 10);
+
+        try {
+            //Synthetic history: an entity with 30 attributes, one of which changes with every update
+            String plainId = "plain" + RandomStringUtils.randomAlphanumeric(10);
+            String deltaId = "delta" + RandomStringUtils.randomAlphanumeric(10);
+            String typeName = RandomStringUtils.randomAlphanumeric(10);
+            long ts = System.currentTimeMillis();
+            Map<String, Object> attributes = new HashMap<>();
+            for (int i = 0; i < 30; i++) {
+                attributes.put("attr" + i, RandomStringUtils.randomAlphanumeric(40));
+            }
+
+            List<String> expectedDefinitions = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                attributes.put("attr" + (i % 30), RandomStringUtils.randomAlphanumeric(40));
+                Referenceable entity = new Referenceable(typeName, attributes);
+                String definition = InstanceSerialization.toJson(entity, true);
+
+                plainRepository.putEvents(new EntityAuditEvent(plainId, ts + i, "user",
+                        EntityAuditEvent.EntityAuditAction.ENTITY_UPDATE, "Updated: " + definition, entity));
+                deltaRepository.putEvents(new EntityAuditEvent(deltaId, ts + i, "user",
+                        EntityAuditEvent.EntityAuditAction.ENTITY_UPDATE, "Updated: " + definition, entity));
+                expectedDefinitions.add(0, definition);
+            }
+
+            long plainSize = getStoredSize(plainId);
+            long deltaSize = getStoredSize(deltaId);
+
+            long start = System.nanoTime();
+            List<EntityAuditEvent> plainEvents = plainRepository.listEvents(plainId, null, (short) 50);
+            long plainReadTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<EntityAuditEvent> deltaEvents = deltaRepository.listEvents(deltaId, null, (short) 50);
+            long deltaReadTime = System.nanoTime() - start;
+
+            LOG.info("Audit history of 50 events: plain {} bytes, read in {} us; delta {} bytes, read in {} us",
+                    plainSize, plainReadTime / 1000, deltaSize, deltaReadTime / 1000);
+
+            assertTrue(deltaSize * 4 < plainSize, "delta size " + deltaSize + ", plain size " + plainSize);
+            assertDefinitions(plainEvents, expectedDefinitions);
+            assertDefinitions(deltaEvents, expectedDefinitions);
+
+            //The first page refers to older events, which are read separately
+            assertDefinitions(deltaRepository.listEvents(deltaId, null, (short) 5), expectedDefinitions.subList(0, 5));
+        } finally {
+            plainRepository.stop();
+            deltaRepository.stop();
+        }
+    }
+
+    @Test
+    public void testDeltaSnapshotMaxAge() throws Exception {
+        HBaseBasedAuditRepository deltaRepository = startRepository(
+                HBaseBasedAuditRepository.CONFIG_PERSIST_ENTITY_DEFINITION, true,
+                HBaseBasedAuditRepository.CONFIG_STORAGE_FORMAT, HBaseBasedAuditRepository.STORAGE_FORMAT_DELTA,
+                HBaseBasedAuditRepository.CONFIG_DELTA_SNAPSHOT_INTERVAL, 10,
+                HBaseBasedAuditRepository.CONFIG_DELTA_SNAPSHOT_MAX_AGE_MS, 5);
+
+        try {
+            String entityId = "age" + RandomStringUtils.randomAlphanumeric(10);
+            String typeName = RandomStringUtils.randomAlphanumeric(10);
+            long ts = System.currentTimeMillis();
+            Map<String, Object> attributes = new HashMap<>();
+            List<String> expectedDefinitions = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                attributes.put("attr", "value" + i);
+                Referenceable entity = new Referenceable(typeName, attributes);
+                String definition = InstanceSerialization.toJson(entity, true);
+
+                deltaRepository.putEvents(new EntityAuditEvent(entityId, ts + i, "user",
+                        EntityAuditEvent.EntityAuditAction.ENTITY_UPDATE, "Updated: " + definition, entity));
+                expectedDefinitions.add(0, definition);
+            }
+
+            //A full definition for the first event of every 5 ms, rather than of every 10 events
+            Table table = HBaseTestUtils.getConnection().getTable(tableName);
+            try {
+                int snapshots = 0;
+                try (ResultScanner scanner = table.getScanner(new Scan().setRowPrefixFilter(Bytes.toBytes(entityId)))) {
+                    for (Result result : scanner) {
+                        if (result.getValue(HBaseBasedAuditRepository.COLUMN_FAMILY,
+                                HBaseBasedAuditRepository.COLUMN_DEFINITION) != null) {
+                            snapshots++;
+                        }
+                    }
+                }
+                assertEquals(snapshots, 4);
+
+                //As if the oldest event expired, the events after the next full definition are still decoded
+                table.delete(new Delete(Bytes.toBytes(entityId + ":" + ts)));
+            } finally {
+                table.close();
+            }
+
+            assertDefinitions(deltaRepository.listEvents(entityId, null, (short) 15), expectedDefinitions.subList(0, 15));
+        } finally {
+            deltaRepository.stop();
+        }
+    }
+
+    @Test
+    public void testDefinitionAfterFailedWriteIsStoredInFull() throws Exception {
+        Connection connection = mockConnection();
+        Table table = mock(Table.class);
+        when(connection.getTable(any(TableName.class))).thenReturn(table);
+        doThrow(new IOException("Simulating write failure")).doNothing().when(table).put(anyListOf(Put.class));
+
+        HBaseBasedAuditRepository failingRepository = startRepository(connection,
+                HBaseBasedAuditRepository.CONFIG_PERSIST_ENTITY_DEFINITION, true,
+                HBaseBasedAuditRepository.CONFIG_STORAGE_FORMAT, HBaseBasedAuditRepository.STORAGE_FORMAT_DELTA);
+
+        try {
+            String entityId = "failed" + RandomStringUtils.randomAlphanumeric(10);
+            long ts = System.currentTimeMillis();
+
+            try {
+                failingRepository.putEvents(createUpdateEvent(entityId, ts, "value0"));
+                fail("Expected AtlasException");
+            } catch (AtlasException e) {
+                //expected
+            }
+            failingRepository.putEvents(createUpdateEvent(entityId, ts + 1, "value1"));
+            failingRepository.putEvents(createUpdateEvent(entityId, ts + 2, "value2"));
+
+            //The event after the failed one can't be a delta against it, the event after that one can
+            List<Put> written = getPuts(table, 3);
+            assertTrue(written.get(1).has(HBaseBasedAuditRepository.COLUMN_FAMILY,
+                    HBaseBasedAuditRepository.COLUMN_DEFINITION));
+            assertTrue(written.get(2).has(HBaseBasedAuditRepository.COLUMN_FAMILY,
+                    HBaseBasedAuditRepository.COLUMN_DEFINITION_DELTA));
+        } finally {
+            failingRepository.stop();
+        }
+    }
+
+    @Test
+    public void testDefinitionAfterFailedAsyncWriteIsStoredInFull() throws Exception {
+        Connection connection = mockConnection();
+        BufferedMutator mutator = mock(BufferedMutator.class);
+        when(connection.getBufferedMutator(any(BufferedMutatorParams.class))).thenReturn(mutator);
+        doThrow(new IOException("Simulating write failure")).doNothing().when(mutator).mutate(anyListOf(Put.class));
+
+        HBaseBasedAuditRepository failingRepository = startRepository(connection,
+                HBaseBasedAuditRepository.CONFIG_ASYNC_ENABLED, true,
+                HBaseBasedAuditRepository.CONFIG_PERSIST_ENTITY_DEFINITION, true,
+                HBaseBasedAuditRepository.CONFIG_STORAGE_FORMAT, HBaseBasedAuditRepository.STORAGE_FORMAT_DELTA);
+
+        try {
+            String entityId = "failed" + RandomStringUtils.randomAlphanumeric(10);
+            long ts = System.currentTimeMillis();
+
+            for (int i = 0; i < 3; i++) {
+                failingRepository.putEvents(createUpdateEvent(entityId, ts + i, "value" + i));
+                failingRepository.flush();
+            }
+
+            assertEquals(failingRepository.getFailedWriteCount(), 1);
+
+            ArgumentCaptor<List> puts = ArgumentCaptor.forClass(List.class);
+            verify(mutator, times(3)).mutate(puts.capture());
+            assertTrue(((Put) puts.getAllValues().get(1).get(0)).has(HBaseBasedAuditRepository.COLUMN_FAMILY,
+                    HBaseBasedAuditRepository.COLUMN_DEFINITION));
+            assertTrue(((Put) puts.getAllValues().get(2).get(0)).has(HBaseBasedAuditRepository.COLUMN_FAMILY,
+                    HBaseBasedAuditRepository.COLUMN_DEFINITION_DELTA));
+        } finally {
+            failingRepository.stop();
+        }
+    }
+
+    private EntityAuditEvent createUpdateEvent(String entityId, long ts, String value) throws AtlasException {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("attr", value);
+        Referenceable entity = new Referenceable("failedType", attributes);
+
+        return new EntityAuditEvent(entityId, ts, "user", EntityAuditEvent.EntityAuditAction.ENTITY_UPDATE,
+                "Updated: " + InstanceSerialization.toJson(entity, true), entity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Put> getPuts(Table table, int count) throws IOException {
+        ArgumentCaptor<List> puts = ArgumentCaptor.forClass(List.class);
+        verify(table, times(count)).put(puts.capture());
+
+        List<Put> ret = new ArrayList<>();
+        for (List batch : puts.getAllValues()) {
+            ret.addAll(batch);
+        }
+        return ret;
+    }
+
+    private Connection mockConnection() throws IOException {
+        Connection connection = mock(Connection.class);
+        Admin admin = mock(Admin.class);
+        when(connection.getAdmin()).thenReturn(admin);
+        when(admin.tableExists(any(TableName.class))).thenReturn(false);
+        return connection;
+    }
+
+    private void assertDefinitions(List<EntityAuditEvent> events, List<String> expectedDefinitions) {
+        JsonParser parser = new JsonParser();
+
+        assertEquals(events.size(), expectedDefinitions.size());
+        for (int i = 0; i < events.size(); i++) {
+            JsonElement expected = parser.parse(expectedDefinitions.get(i));
+            String details = events.get(i).getDetails();
+
+            assertTrue(details.startsWith("Updated: "), details);
+            assertEquals(parser.parse(details.substring("Updated: ".length())), expected);
+            assertEquals(parser.parse(events.get(i).getEntityDefinitionString()), expected);
+        }
+    }
+
+    private long getStoredSize(String entityId) throws Exception {
+        long ret = 0;
+        Table table = HBaseTestUtils.getConnection().getTable(tableName);
+        try (ResultScanner scanner = table.getScanner(new Scan().setRowPrefixFilter(Bytes.toBytes(entityId)))) {
+            for (Result result : scanner) {
+                for (Cell cell : result.rawCells()) {
+                    ret += cell.getValueLength();
+                }
+            }
+        } finally {
+            table.close();
+        }
+        return ret;
+    }
+
+    private HBaseBasedAuditRepository startRepository(Object... properties) throws Exception {
+        return startRepository(null, properties);
+    }
+
+    private HBaseBasedAuditRepository startRepository(final Connection connection, Object... properties)
+            throws Exception {
+        Configuration atlasConf = new PropertiesConfiguration();
+        ConfigurationUtils.copy(ApplicationProperties.get(), atlasConf);
+        //As strings, like the properties read from atlas-application.properties
+        for (int i = 0; i < properties.length; i += 2) {
+            atlasConf.setProperty((String) properties[i], String.valueOf(properties[i + 1]));
+        }
+
+        HBaseBasedAuditRepository repository = connection == null ? new HBaseBasedAuditRepository()
+                : new HBaseBasedAuditRepository() {
+                    @Override
+                    protected Connection createConnection(org.apache.hadoop.conf.Configuration hbaseConf) {
+                        return connection;
+                    }
+                };
+        repository.startInternal(atlasConf, HBaseBasedAuditRepository.getHBaseConfiguration(atlasConf));
+        return repository;
+    }
+
     @Override
     protected void assertEventEquals(EntityAuditEvent actual, EntityAuditEvent expected) {
         super.assertEventEquals(actual, expected);
@@ -0,0 +1,378 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.graph;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.atlas.repository.Constants;
+import org.apache.atlas.repository.RepositoryException;
+import org.apache.atlas.repository.graphdb.AtlasGraph;
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
+import org.apache.atlas.repository.graphdb.AtlasIndexQuery;
+import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.services.EntityListPage;
+import org.apache.atlas.services.EntityListVisitor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Tests the paging of entity lists against a mocked graph, whose vertex index and exact-match type index serve the
+ * vertices of a type with ids 1 to the size of the type, creating only the vertices of the results they return.
+ */
+public class GraphBackedMetadataRepositoryPagingTest {
+    private static final String TYPE = "Person";
+
+    private AtlasGraph                    graph;
+    private GraphBackedMetadataRepository repository;
+    private int                           typeSize;
+    private Set<Integer>                  otherTypeIds;
+    private List<IndexQuery>              queries;
+
+    @BeforeMethod
+    public void setup() {
+        graph        = mock(AtlasGraph.class);
+        typeSize     = 1000000;
+        otherTypeIds = new HashSet<>();
+        queries      = new ArrayList<>();
+        repository   = new GraphBackedMetadataRepository(new IAtlasGraphProvider() {
+            @Override
+            public AtlasGraph get() throws RepositoryException {
+                return graph;
+            }
+        }, null);
+
+        when(graph.isIndexKeyOrderSupported(Constants.VERTEX_INDEX)).thenReturn(true);
+        when(graph.query()).thenAnswer(new Answer<AtlasGraphQuery>() {
+            @Override
+            public AtlasGraphQuery answer(InvocationOnMock invocation) throws Throwable {
+                return new TypeQuery();
+            }
+        });
+        when(graph.indexQuery(eq(Constants.VERTEX_INDEX), anyString())).thenAnswer(new Answer<AtlasIndexQuery>() {
+            @Override
+            public AtlasIndexQuery answer(InvocationOnMock invocation) throws Throwable {
+                IndexQuery ret = new IndexQuery((String) invocation.getArguments()[1]);
+                queries.add(ret);
+                return ret;
+            }
+        });
+    }
+
+    @Test
+    public void testPagesAreReadAfterLastVertexOfPreviousPage() throws Exception {
+        EntityListPage page = repository.getEntityList(TYPE, 10, null);
+        assertEquals(page.getGuids(), guids(1, 10));
+
+        page = repository.getEntityList(TYPE, 10, page.getContinuationToken());
+        assertEquals(page.getGuids(), guids(11, 20));
+
+        assertEquals(queries.size(), 2);
+        assertEquals(queries.get(0).query, "v.\"" + Constants.ENTITY_TYPE_PROPERTY_KEY + "\":(\"" + TYPE + "\")");
+        assertNull(queries.get(0).afterVertexId);
+        assertEquals(queries.get(1).afterVertexId, "10");
+
+        // however large the type, a page reads only the vertices of the page, and the one telling there is another
+        for (IndexQuery query : queries) {
+            assertEquals(query.limit, 11);
+            assertEquals(query.resultCount, 11);
+        }
+    }
+
+    @Test
+    public void testLastPageHasNoContinuationToken() throws Exception {
+        typeSize = 15;
+
+        EntityListPage page = repository.getEntityList(TYPE, 10, null);
+        page = repository.getEntityList(TYPE, 10, page.getContinuationToken());
+
+        assertEquals(page.getGuids(), guids(11, 15));
+        assertNull(page.getContinuationToken());
+    }
+
+    @Test
+    public void testVerticesOfOtherTypesAreSkipped() throws Exception {
+        // the index matches type names as text, so it may return vertices of other types
+        otherTypeIds.add(2);
+        otherTypeIds.add(3);
+
+        EntityListPage page = repository.getEntityList(TYPE, 2, null);
+        assertEquals(page.getGuids(), guids(1, 1, 4, 4));
+
+        page = repository.getEntityList(TYPE, 2, page.getContinuationToken());
+        assertEquals(page.getGuids(), guids(5, 6));
+        assertEquals(queries.get(queries.size() - 1).afterVertexId, "4");
+    }
+
+    @Test
+    public void testListFittingInOnePageIsReadFromTypeIndex() throws Exception {
+        typeSize = 5;
+
+        EntityListPage page = repository.getEntityList(TYPE, 10, null);
+        assertEquals(page.getGuids(), guids(1, 5));
+        assertNull(page.getContinuationToken());
+
+        page = repository.getEntityList(TYPE, Integer.MAX_VALUE, null);
+        assertEquals(page.getGuids(), guids(1, 5));
+        assertNull(page.getContinuationToken());
+
+        // the vertex index, which sees entities only once they are searchable, isn't queried
+        assertEquals(queries.size(), 0);
+    }
+
+    @Test
+    public void testEntityListIsVisitedFromTypeIndex() throws Exception {
+        typeSize = 2500;
+
+        final List<String> visited = new ArrayList<>();
+        repository.visitEntityList(TYPE, null, new EntityListVisitor() {
+            @Override
+            public void visit(String guid) {
+                visited.add(guid);
+            }
+        });
+
+        assertEquals(visited, guids(1, typeSize));
+        assertEquals(queries.size(), 0);
+    }
+
+    @Test
+    public void testEntityListIsVisitedPageByPageAfterFirstPage() throws Exception {
+        typeSize = 2500;
+
+        EntityListPage page = repository.getEntityList(TYPE, 1000, null);
+
+        final List<String> visited = new ArrayList<>(page.getGuids());
+        repository.visitEntityList(TYPE, page.getContinuationToken(), new EntityListVisitor() {
+            @Override
+            public void visit(String guid) {
+                visited.add(guid);
+            }
+        });
+
+        assertEquals(visited, guids(1, typeSize));
+        assertEquals(queries.size(), 3);
+        assertNull(queries.get(0).afterVertexId);
+        assertEquals(queries.get(1).afterVertexId, "1000");
+        assertEquals(queries.get(2).afterVertexId, "2000");
+    }
+
+    @Test
+    public void testPagesAreReadByOffsetWithoutKeyOrder() throws Exception {
+        when(graph.isIndexKeyOrderSupported(Constants.VERTEX_INDEX)).thenReturn(false);
+        typeSize = 25;
+
+        EntityListPage page = repository.getEntityList(TYPE, 10, null);
+        assertEquals(page.getGuids(), guids(1, 10));
+
+        final List<String> visited = new ArrayList<>();
+        repository.visitEntityList(TYPE, page.getContinuationToken(), new EntityListVisitor() {
+            @Override
+            public void visit(String guid) {
+                visited.add(guid);
+            }
+        });
+        assertEquals(visited, guids(11, 25));
+
+        page = repository.getEntityList(TYPE, 10, page.getContinuationToken());
+        assertEquals(page.getGuids(), guids(11, 20));
+
+        page = repository.getEntityList(TYPE, 10, page.getContinuationToken());
+        assertEquals(page.getGuids(), guids(21, 25));
+        assertNull(page.getContinuationToken());
+
+        assertEquals(queries.size(), 0);
+    }
+
+    private static List<String> guids(int... ranges) {
+        List<String> ret = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int id = ranges[i]; id <= ranges[i + 1]; id++) {
+                ret.add("guid" + id);
+            }
+        }
+        return ret;
+    }
+
+    private AtlasVertex vertex(int id) {
+        AtlasVertex ret = mock(AtlasVertex.class);
+        when(ret.getId()).thenReturn(Integer.valueOf(id));
+        when(ret.getProperty(Constants.GUID_PROPERTY_KEY, String.class)).thenReturn("guid" + id);
+        when(ret.getProperty(Constants.ENTITY_TYPE_PROPERTY_KEY, String.class))
+                .thenReturn(otherTypeIds.contains(id) ? TYPE + " Employee" : TYPE);
+        return ret;
+    }
+
+    /**
+     * An exact-match index query over the vertices of the type, returned as they are read.
+     */
+    private class TypeQuery implements AtlasGraphQuery {
+        private int limit = -1;
+        private int offset;
+
+        @Override
+        public AtlasGraphQuery has(String propertyKey, Object value) {
+            assertEquals(propertyKey, Constants.ENTITY_TYPE_PROPERTY_KEY);
+            assertEquals(value, TYPE);
+            return this;
+        }
+
+        @Override
+        public AtlasGraphQuery in(String propertyKey, Collection values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterable<AtlasVertex> vertices() {
+            return new Iterable<AtlasVertex>() {
+                @Override
+                public Iterator<AtlasVertex> iterator() {
+                    return new AbstractIterator<AtlasVertex>() {
+                        private int id = 0;
+                        private int count = 0;
+
+                        @Override
+                        protected AtlasVertex computeNext() {
+                            while (++id <= typeSize && (limit < 0 || count < (long) offset + limit)) {
+                                if (!otherTypeIds.contains(id) && count++ >= offset) {
+                                    return vertex(id);
+                                }
+                            }
+                            return endOfData();
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public AtlasGraphQuery has(String propertyKey, ComparisionOperator compMethod, Object values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AtlasGraphQuery or(List childQueries) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AtlasGraphQuery createChildQuery() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AtlasGraphQuery limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        @Override
+        public AtlasGraphQuery offset(int offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        @Override
+        public AtlasGraphQuery orderBy(String propertyKey, SortOrder order) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AtlasGraphQuery addConditionsFrom(AtlasGraphQuery otherQuery) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isChildQuery() {
+            return false;
+        }
+    }
+
+    /**
+     * An index query over the vertices of the type, ordered by id.
+     */
+    private class IndexQuery implements AtlasIndexQuery {
+        private final String query;
+        private String       afterVertexId;
+        private int          limit = -1;
+        private int          resultCount;
+
+        IndexQuery(String query) {
+            this.query = query;
+        }
+
+        @Override
+        public AtlasIndexQuery limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        @Override
+        public AtlasIndexQuery offset(int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AtlasIndexQuery startAfter(String vertexId) {
+            afterVertexId = vertexId;
+            return this;
+        }
+
+        @Override
+        public AtlasIndexQuery orderBy(String propertyKey, AtlasGraphQuery.SortOrder order) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Result> vertices() {
+            List<Result> ret = new ArrayList<>();
+            int first = afterVertexId == null ? 1 : Integer.parseInt(afterVertexId) + 1;
+            for (int id = first; id <= typeSize && (limit < 0 || ret.size() < limit); id++) {
+                final AtlasVertex vertex = vertex(id);
+                ret.add(new Result() {
+                    @Override
+                    public AtlasVertex getVertex() {
+                        return vertex;
+                    }
+
+                    @Override
+                    public double getScore() {
+                        return 1;
+                    }
+                });
+            }
+            resultCount = ret.size();
+            return ret.iterator();
+        }
+    }
+}
@@ -36,6 +36,9 @@ import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
 import org.apache.atlas.repository.graphdb.AtlasGraphQuery.ComparisionOperator;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.services.EntityListPage;
+import org.apache.atlas.services.EntityListVisitor;
+import org.apache.atlas.services.EntityProjection;
 import org.apache.atlas.type.AtlasTypeRegistry;
 import org.apache.atlas.typesystem.IStruct;
 import org.apache.atlas.typesystem.ITypedReferenceableInstance;
@@ -67,6 +70,7 @@ import org.testng.annotations.Test;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
@@ -74,6 +78,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
@@ -232,6 +237,173 @@ public class GraphBackedMetadataRepositoryTest {
         Assert.assertTrue(entityList.contains(guid));
     }
 
+    @Test(dependsOnMethods = "testSubmitEntity")
+    public void testAsyncFullTextIndexing() throws Exception {
+        AtlasGraph graph = AtlasGraphProvider.getGraphInstance();
+        AtlasVertex vertex = GraphHelper.getInstance().getVertexForGUID(guid);
+        String fullText = vertex.getProperty(Constants.ENTITY_TEXT_PROPERTY_KEY, String.class);
+        Assert.assertNotNull(fullText);
+
+        vertex.removeProperty(Constants.ENTITY_TEXT_PROPERTY_KEY);
+        graph.commit();
+
+        AsyncFullTextIndexer indexer = new AsyncFullTextIndexer(new AtlasGraphProvider(), 1, 10);
+        indexer.enqueue(Arrays.asList(guid, guid));
+        Assert.assertEquals(indexer.getPendingCount(), 1);
+
+        indexer.start();
+        try {
+            for (int i = 0; i < 100 && indexer.getPendingCount() > 0; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(indexer.getPendingCount(), 0);
+            Assert.assertEquals(indexer.getLagInMillis(), 0);
+        } finally {
+            indexer.stop();
+        }
+
+        graph.commit();
+        vertex = GraphHelper.getInstance().getVertexForGUID(guid);
+        Assert.assertEquals(vertex.getProperty(Constants.ENTITY_TEXT_PROPERTY_KEY, String.class), fullText);
+    }
+
+    @Test(dependsOnMethods = "testSubmitEntity")
+    public void testAsyncFullTextIndexingOfMarkedEntitiesOnStart() throws Exception {
+        AtlasGraph graph = AtlasGraphProvider.getGraphInstance();
+        AtlasVertex vertex = GraphHelper.getInstance().getVertexForGUID(guid);
+        String fullText = vertex.getProperty(Constants.ENTITY_TEXT_PROPERTY_KEY, String.class);
+
+        // the server stopped before the entity was indexed
+        vertex.removeProperty(Constants.ENTITY_TEXT_PROPERTY_KEY);
+        GraphHelper.setProperty(vertex, Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, System.currentTimeMillis());
+        graph.commit();
+
+        AsyncFullTextIndexer indexer = new AsyncFullTextIndexer(new AtlasGraphProvider(), 1, 10);
+
+        indexer.start();
+        try {
+            graph.commit();
+            for (int i = 0; i < 100 && GraphHelper.getInstance().getVertexForGUID(guid)
+                    .getProperty(Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, Long.class) != null; i++) {
+                Thread.sleep(100);
+                graph.commit();
+            }
+        } finally {
+            indexer.stop();
+        }
+
+        graph.commit();
+        vertex = GraphHelper.getInstance().getVertexForGUID(guid);
+        Assert.assertEquals(vertex.getProperty(Constants.ENTITY_TEXT_PROPERTY_KEY, String.class), fullText);
+        Assert.assertNull(vertex.getProperty(Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, Long.class));
+    }
+
+    @Test(dependsOnMethods = "testSubmitEntity")
+    public void testAsyncFullTextIndexingFallsBackToTransactionWhenFull() throws Exception {
+        AtlasGraph graph = AtlasGraphProvider.getGraphInstance();
+        AtlasVertex vertex = GraphHelper.getInstance().getVertexForGUID(guid);
+
+        AsyncFullTextIndexer indexer = new AsyncFullTextIndexer(new AtlasGraphProvider(), 1, 10, 3, 1, true);
+        indexer.enqueue(Arrays.asList("guid1"));
+
+        // the entity is neither marked nor scheduled, the caller computes its document
+        Assert.assertFalse(indexer.enqueueAfterCommit(Arrays.asList(vertex)));
+        Assert.assertNull(vertex.getProperty(Constants.FULLTEXT_PENDING_SINCE_PROPERTY_KEY, Long.class));
+        Assert.assertEquals(indexer.getPendingCount(), 1);
+        graph.rollback();
+    }
+
+    @Test
+    public void testAsyncFullTextIndexingGivesUpAfterMaxAttempts() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        AsyncFullTextIndexer indexer = new AsyncFullTextIndexer(new IAtlasGraphProvider() {
+            @Override
+            public AtlasGraph get() throws RepositoryException {
+                attempts.incrementAndGet();
+                throw new RepositoryException("Simulating graph failure");
+            }
+        }, 1, 10, 3, true);
+        indexer.enqueue(Arrays.asList("guid1", "guid2"));
+
+        indexer.start();
+        try {
+            for (int i = 0; i < 100 && indexer.getPendingCount() > 0; i++) {
+                Thread.sleep(100);
+            }
+            // the failed batch is enqueued again until it has been attempted 3 times
+            Assert.assertEquals(indexer.getPendingCount(), 0);
+            Assert.assertEquals(attempts.get(), 3);
+        } finally {
+            indexer.stop();
+        }
+    }
+
+    @Test
+    public void testAsyncFullTextIndexerDoesNotStartIfDisabled() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        AsyncFullTextIndexer indexer = new AsyncFullTextIndexer(new IAtlasGraphProvider() {
+            @Override
+            public AtlasGraph get() throws RepositoryException {
+                attempts.incrementAndGet();
+                return AtlasGraphProvider.getGraphInstance();
+            }
+        }, 1, 10, 3, false);
+        indexer.enqueue(Arrays.asList("guid1"));
+
+        indexer.start();
+        try {
+            Thread.sleep(500);
+            Assert.assertEquals(indexer.getPendingCount(), 1);
+            Assert.assertEquals(attempts.get(), 0);
+        } finally {
+            indexer.stop();
+        }
+    }
+
+    @Test(dependsOnMethods = "testSubmitEntity")
+    public void testGetEntityListPages() throws Exception {
+        List<String> entityList = repositoryService.getEntityList(TestUtils.PERSON_TYPE);
+        Assert.assertTrue(entityList.size() > 1);
+
+        // pages are read from the index, which makes the entities searchable some time after they are committed
+        List<String> pagedList = getEntityListPages(TestUtils.PERSON_TYPE);
+        for (int i = 0; i < 50 && pagedList.size() < entityList.size(); i++) {
+            Thread.sleep(100);
+            pagedList = getEntityListPages(TestUtils.PERSON_TYPE);
+        }
+        Assert.assertEquals(new HashSet<>(pagedList), new HashSet<>(entityList));
+        Assert.assertEquals(pagedList.size(), entityList.size());
+
+        final List<String> visitedList = new ArrayList<>();
+        EntityListPage page = repositoryService.getEntityList(TestUtils.PERSON_TYPE, 1, null);
+        repositoryService.visitEntityList(TestUtils.PERSON_TYPE, page.getContinuationToken(), new EntityListVisitor() {
+            @Override
+            public void visit(String guid) {
+                visitedList.add(guid);
+            }
+        });
+        Assert.assertEquals(visitedList, pagedList.subList(1, pagedList.size()));
+
+        try {
+            repositoryService.getEntityList(TestUtils.DEPARTMENT_TYPE, 1, page.getContinuationToken());
+            Assert.fail("Expected IllegalArgumentException for a token of another type");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private List<String> getEntityListPages(String entityType) throws Exception {
+        List<String> ret = new ArrayList<>();
+        EntityListPage page = repositoryService.getEntityList(entityType, 1, null);
+        ret.addAll(page.getGuids());
+        while (page.getContinuationToken() != null) {
+            Assert.assertEquals(page.getGuids().size(), 1);
+            page = repositoryService.getEntityList(entityType, 1, page.getContinuationToken());
+            ret.addAll(page.getGuids());
+        }
+        return ret;
+    }
+
     @Test
     public void testGetTypeAttributeName() throws Exception {
         Assert.assertEquals(repositoryService.getTypeAttributeName(), Constants.ENTITY_TYPE_PROPERTY_KEY);
@@ -269,12 +441,79 @@ public class GraphBackedMetadataRepositoryTest {
     }
 
     @Test(dependsOnMethods = "testCreateEntity")
+    @SuppressWarnings("unchecked")
     public void testGetEntityDefinition() throws Exception {
         String guid = getGUID();
 
         ITypedReferenceableInstance table = repositoryService.getEntityDefinition(guid);
         Assert.assertEquals(table.getDate("created"), new Date(TestUtils.TEST_DATE_IN_LONG));
         System.out.println("*** table = " + table);
+
+        // elements of reference arrays are resolved in order, from the edges read with the table vertex
+        List<ITypedReferenceableInstance> columns = (List<ITypedReferenceableInstance>) table.get("columns");
+        Assert.assertEquals(columns.size(), 5);
+        for (int index = 0; index < columns.size(); index++) {
+            Assert.assertEquals(columns.get(index).get("name"), "column_" + index);
+        }
+
+        List<ITypedStruct> partitions = (List<ITypedStruct>) table.get("partitions");
+        Assert.assertEquals(partitions.size(), 5);
+        for (int index = 0; index < partitions.size(); index++) {
+            Assert.assertEquals(partitions.get(index).get("name"), "partition_" + index);
+        }
+
+        Assert.assertEquals(((ITypedStruct) table.get("serde1")).get("name"), "serde1");
+        Assert.assertEquals(((Id) table.get("database")).getTypeName(), TestUtils.DATABASE_TYPE);
+        Assert.assertEquals(table.getTrait(TestUtils.CLASSIFICATION).get("tag"), "foundation_etl");
+    }
+
+    @Test(dependsOnMethods = "testCreateEntity")
+    public void testGetEntityDefinitions() throws Exception {
+        String guid = getGUID();
+
+        List<ITypedReferenceableInstance> tables = repositoryService.getEntityDefinitions(Arrays.asList(guid, guid));
+        Assert.assertEquals(tables.size(), 2);
+        Assert.assertEquals(tables.get(0).getId()._getId(), guid);
+        Assert.assertSame(tables.get(1), tables.get(0));
+
+        try {
+            repositoryService.getEntityDefinitions(Arrays.asList(guid, UUID.randomUUID().toString()));
+            Assert.fail("Expected EntityNotFoundException");
+        } catch (EntityNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test(dependsOnMethods = "testCreateEntity")
+    public void testGetEntityDefinitionWithProjection() throws Exception {
+        String guid = getGUID();
+
+        RequestContext.createContext();
+        ITypedReferenceableInstance table = repositoryService.getEntityDefinition(guid,
+                new EntityProjection(Arrays.asList("name", "columns"), false, false));
+
+        Assert.assertEquals(table.get("name"), TestUtils.TABLE_NAME);
+        Assert.assertNull(table.get("description"));
+        Assert.assertNull(table.get("serde1"));
+        Assert.assertTrue(table.getTraits().isEmpty());
+
+        // composite columns are not expanded
+        List<?> columns = (List<?>) table.get("columns");
+        Assert.assertEquals(columns.size(), 5);
+        for (Object column : columns) {
+            Assert.assertTrue(column instanceof Id, "Expected an id, found " + column);
+        }
+
+        // partial instances are not cached for later reads in the request
+        Assert.assertNull(RequestContext.get().getInstance(guid));
+
+        try {
+            repositoryService.getEntityDefinition(guid,
+                    new EntityProjection(Arrays.asList("name", "noSuchAttribute"), true, true));
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
     }
 
     private List<String> createEntities(ITypedReferenceableInstance... instances) throws Exception {
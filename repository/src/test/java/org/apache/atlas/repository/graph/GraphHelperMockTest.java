@@ -17,10 +17,18 @@
  */
 package org.apache.atlas.repository.graph;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 
 import org.apache.atlas.repository.RepositoryException;
@@ -28,6 +36,7 @@ import org.apache.atlas.repository.graphdb.AtlasEdge;
 import org.apache.atlas.repository.graphdb.AtlasEdgeDirection;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
 import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.repository.graphdb.AtlasVertexQuery;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -73,6 +82,7 @@ public class GraphHelperMockTest {
         };
         when(v2.getEdges(AtlasEdgeDirection.IN)).thenReturn(noEdgesIterable);
         when(v1.getEdges(AtlasEdgeDirection.OUT)).thenReturn(noEdgesIterable);
+        mockEdgeQuery(v1);
 
         when(v1.getId()).thenReturn("1234");
         when(v2.getId()).thenReturn("5678");
@@ -109,6 +119,7 @@ public class GraphHelperMockTest {
         };
         when(v2.getEdges(AtlasEdgeDirection.IN)).thenReturn(noEdgesIterable);
         when(v1.getEdges(AtlasEdgeDirection.OUT)).thenReturn(noEdgesIterable);
+        mockEdgeQuery(v1);
 
         when(v1.getId()).thenReturn("v1");
         when(v2.getId()).thenReturn("v2");
@@ -118,4 +129,124 @@ public class GraphHelperMockTest {
         AtlasEdge redge = graphHelperInstance.getOrCreateEdge(v1, v2, edgeLabel);
         assertEquals(edge, redge);
     }
+
+    @Test
+    public void testGetOrCreateEdgeLooksUpExistingEdge() throws Exception {
+        final String edgeLabel = "testLabel";
+        AtlasVertex v1 = mock(AtlasVertex.class);
+        AtlasVertex v2 = mock(AtlasVertex.class);
+        AtlasEdge edge = mock(AtlasEdge.class);
+
+        AtlasVertexQuery query = mockEdgeQuery(v1, edge);
+
+        assertEquals(graphHelperInstance.getOrCreateEdge(v1, v2, edgeLabel), edge);
+        verify(query).direction(AtlasEdgeDirection.OUT);
+        verify(query).label(edgeLabel);
+        verify(query).adjacent(v2);
+        //Neither the edges of the out-vertex nor those of the in-vertex are scanned
+        verify(v1, never()).getEdges(any(AtlasEdgeDirection.class));
+        verify(v2, never()).getEdges(any(AtlasEdgeDirection.class));
+        verify(graph, never()).addEdge(v1, v2, edgeLabel);
+    }
+
+    @Test
+    public void testGetOrCreateEdgeScanFallback() throws Exception {
+        final String edgeLabel = "testLabel";
+        AtlasVertex v1 = mock(AtlasVertex.class);
+        AtlasVertex v2 = mock(AtlasVertex.class);
+        AtlasEdge otherEdge = mock(AtlasEdge.class);
+        AtlasEdge edge = mock(AtlasEdge.class);
+        AtlasEdge newEdge = mock(AtlasEdge.class);
+
+        //The lookup doesn't see the edge, as with a label created by a concurrent transaction (ATLAS-1104)
+        mockEdgeQuery(v1);
+        when(otherEdge.getLabel()).thenReturn("otherLabel");
+        when(edge.getLabel()).thenReturn(edgeLabel);
+        when(edge.getInVertex()).thenReturn(v2);
+        when(v1.getEdges(AtlasEdgeDirection.OUT)).thenReturn(Arrays.asList(otherEdge, edge));
+        when(graph.addEdge(v1, v2, edgeLabel)).thenReturn(newEdge);
+
+        assertEquals(graphHelperInstance.getOrCreateEdge(v1, v2, edgeLabel), edge);
+        verify(graph, never()).addEdge(v1, v2, edgeLabel);
+
+        GraphHelper.setEdgeLookupScanFallback(false);
+        try {
+            assertEquals(graphHelperInstance.getOrCreateEdge(v1, v2, edgeLabel), newEdge);
+            verify(v1, times(1)).getEdges(AtlasEdgeDirection.OUT);
+        } finally {
+            GraphHelper.setEdgeLookupScanFallback(GraphHelper.DEFAULT_EDGE_LOOKUP_SCAN_FALLBACK);
+        }
+    }
+
+    @Test
+    public void testGetAdjacentEdgesByLabelScanFallback() throws Exception {
+        final String edgeLabel = "testLabel";
+        AtlasVertex v1 = mock(AtlasVertex.class);
+        AtlasEdge otherEdge = mock(AtlasEdge.class);
+        AtlasEdge edge = mock(AtlasEdge.class);
+
+        when(otherEdge.getLabel()).thenReturn("otherLabel");
+        when(edge.getLabel()).thenReturn(edgeLabel);
+        when(v1.getEdges(AtlasEdgeDirection.OUT, edgeLabel)).thenReturn(Collections.<AtlasEdge>emptyList());
+        when(v1.getEdges(AtlasEdgeDirection.OUT)).thenReturn(Arrays.asList(otherEdge, edge));
+
+        Iterator<AtlasEdge> edges = graphHelperInstance.getOutGoingEdgesByLabel(v1, edgeLabel);
+        assertEquals(edges.next(), edge);
+        assertFalse(edges.hasNext());
+
+        GraphHelper.setEdgeLookupScanFallback(false);
+        try {
+            assertFalse(graphHelperInstance.getOutGoingEdgesByLabel(v1, edgeLabel).hasNext());
+        } finally {
+            GraphHelper.setEdgeLookupScanFallback(GraphHelper.DEFAULT_EDGE_LOOKUP_SCAN_FALLBACK);
+        }
+    }
+
+    @Test
+    public void testEdgesAreNotScannedForKnownLabel() throws Exception {
+        final String edgeLabel = "knownLabel";
+        AtlasVertex v1 = mock(AtlasVertex.class);
+        AtlasVertex v2 = mock(AtlasVertex.class);
+        AtlasEdge newEdge = mock(AtlasEdge.class);
+
+        //The label is in the schema, so a lookup that finds nothing is trusted
+        when(graph.containsEdgeLabel(edgeLabel)).thenReturn(true);
+        mockEdgeQuery(v1);
+        when(v1.getEdges(AtlasEdgeDirection.OUT, edgeLabel)).thenReturn(Collections.<AtlasEdge>emptyList());
+        when(graph.addEdge(v1, v2, edgeLabel)).thenReturn(newEdge);
+
+        assertEquals(graphHelperInstance.getOrCreateEdge(v1, v2, edgeLabel), newEdge);
+        assertFalse(graphHelperInstance.getOutGoingEdgesByLabel(v1, edgeLabel).hasNext());
+        verify(v1, never()).getEdges(AtlasEdgeDirection.OUT);
+    }
+
+    @Test
+    public void testEdgeLookupScanFallbackIsEnabledByDefault() throws Exception {
+        final String edgeLabel = "testLabel";
+        AtlasVertex v1 = mock(AtlasVertex.class);
+        AtlasVertex v2 = mock(AtlasVertex.class);
+        AtlasEdge edge = mock(AtlasEdge.class);
+
+        //Without a setting, a new helper scans the edges that the lookup doesn't see
+        GraphHelper.setEdgeLookupScanFallback(false);
+        GraphHelper graphHelper = new GraphHelper(graph);
+
+        mockEdgeQuery(v1);
+        when(edge.getLabel()).thenReturn(edgeLabel);
+        when(edge.getInVertex()).thenReturn(v2);
+        when(v1.getEdges(AtlasEdgeDirection.OUT)).thenReturn(Arrays.asList(edge));
+
+        assertEquals(graphHelper.getOrCreateEdge(v1, v2, edgeLabel), edge);
+        verify(graph, never()).addEdge(v1, v2, edgeLabel);
+    }
+
+    private AtlasVertexQuery mockEdgeQuery(AtlasVertex vertex, AtlasEdge... edges) {
+        AtlasVertexQuery query = mock(AtlasVertexQuery.class);
+        when(vertex.query()).thenReturn(query);
+        when(query.direction(any(AtlasEdgeDirection.class))).thenReturn(query);
+        when(query.label(anyString())).thenReturn(query);
+        when(query.adjacent(any(AtlasVertex.class))).thenReturn(query);
+        when(query.edges()).thenReturn(Arrays.asList(edges));
+        return query;
+    }
 }
@@ -50,9 +50,14 @@ import org.apache.atlas.typesystem.TypesDef;
 import org.apache.atlas.typesystem.exception.TypeNotFoundException;
 import org.apache.atlas.typesystem.json.InstanceSerialization;
 import org.apache.atlas.typesystem.json.TypesSerialization;
+import org.apache.atlas.typesystem.persistence.Id;
+import org.apache.atlas.typesystem.types.AttributeDefinition;
 import org.apache.atlas.typesystem.types.ClassType;
+import org.apache.atlas.typesystem.types.DataTypes;
+import org.apache.atlas.typesystem.types.HierarchicalTypeDefinition;
 import org.apache.atlas.typesystem.types.Multiplicity;
 import org.apache.atlas.typesystem.types.TypeSystem;
+import org.apache.atlas.typesystem.types.utils.TypesUtil;
 import org.codehaus.jettison.json.JSONArray;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
@@ -61,6 +66,8 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Guice;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableSet;
+
 @Guice(modules = RepositoryMetadataModule.class)
 public class GraphHelperTest {
 
@@ -177,6 +184,75 @@ public class GraphHelperTest {
         }
     }
 
+    @Test
+    public void testGetCompositeVerticesAcrossLevels() throws Exception {
+        HierarchicalTypeDefinition<ClassType> leafDef = TypesUtil.createClassTypeDef("gh_leaf",
+                ImmutableSet.<String>of(), TypesUtil.createRequiredAttrDef("name", DataTypes.STRING_TYPE));
+        HierarchicalTypeDefinition<ClassType> branchDef = TypesUtil.createClassTypeDef("gh_branch",
+                ImmutableSet.<String>of(), TypesUtil.createRequiredAttrDef("name", DataTypes.STRING_TYPE),
+                new AttributeDefinition("leaves", DataTypes.arrayTypeName("gh_leaf"), Multiplicity.OPTIONAL, true,
+                        null),
+                new AttributeDefinition("related", "gh_leaf", Multiplicity.OPTIONAL, false, null));
+        HierarchicalTypeDefinition<ClassType> rootDef = TypesUtil.createClassTypeDef("gh_root",
+                ImmutableSet.<String>of(), TypesUtil.createRequiredAttrDef("name", DataTypes.STRING_TYPE),
+                new AttributeDefinition("branches", DataTypes.arrayTypeName("gh_branch"), Multiplicity.OPTIONAL,
+                        true, null));
+        typeSystem.defineClassTypes(leafDef, branchDef, rootDef);
+
+        // referenced by a branch, but not owned by it: not part of the composite
+        Referenceable unrelated = new Referenceable("gh_leaf");
+        unrelated.set("name", "unrelated");
+        String unrelatedGuid = repositoryService.createEntities(
+                convert(unrelated, typeSystem.getDataType(ClassType.class, "gh_leaf"))).get(0);
+
+        Referenceable root = new Referenceable("gh_root");
+        root.set("name", "root");
+        List<Referenceable> branches = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Referenceable branch = new Referenceable("gh_branch");
+            branch.set("name", "branch" + i);
+            branch.set("related", new Id(unrelatedGuid, 0, "gh_leaf"));
+            List<Referenceable> leaves = new ArrayList<>();
+            for (int j = 0; j < 2; j++) {
+                Referenceable leaf = new Referenceable("gh_leaf");
+                leaf.set("name", "leaf" + i + j);
+                leaves.add(leaf);
+            }
+            branch.set("leaves", leaves);
+            branches.add(branch);
+        }
+        root.set("branches", branches);
+
+        TestUtils.resetRequestContext();
+        List<String> createdGuids = repositoryService.createEntities(
+                convert(root, typeSystem.getDataType(ClassType.class, "gh_root")));
+        assertEquals(createdGuids.size(), 7);
+
+        String rootGuid = null;
+        Map<String, Integer> typeCounts = new HashMap<>();
+        for (String guid : createdGuids) {
+            String typeName = GraphHelper.getTypeName(GraphHelper.getInstance().getVertexForGUID(guid));
+            if (typeName.equals("gh_root")) {
+                rootGuid = guid;
+            }
+        }
+
+        Set<VertexInfo> compositeVertices = GraphHelper.getInstance().getCompositeVertices(
+                GraphHelper.getInstance().getVertexForGUID(rootGuid));
+        Set<String> compositeGuids = new HashSet<>();
+        for (VertexInfo vertexInfo : compositeVertices) {
+            compositeGuids.add(vertexInfo.getGuid());
+            Integer count = typeCounts.get(vertexInfo.getTypeName());
+            typeCounts.put(vertexInfo.getTypeName(), count == null ? 1 : count + 1);
+        }
+
+        assertEquals(compositeGuids, new HashSet<>(createdGuids));
+        assertFalse(compositeGuids.contains(unrelatedGuid));
+        assertEquals(typeCounts.get("gh_root"), Integer.valueOf(1));
+        assertEquals(typeCounts.get("gh_branch"), Integer.valueOf(2));
+        assertEquals(typeCounts.get("gh_leaf"), Integer.valueOf(4));
+    }
+
     @Test(dataProvider = "encodeDecodeTestData")
     public void testEncodeDecode(String str, String expectedEncodedStr) throws Exception {
         String encodedStr = GraphHelper.encodePropertyKey(str);
@@ -203,6 +279,28 @@ public class GraphHelperTest {
         assertFalse(iterator.hasNext());
     }
 
+    @Test
+    public void testGetOrCreateEdgeReturnsExistingEdge() throws Exception {
+        TestUtils.resetRequestContext();
+        AtlasGraph graph = TestUtils.getGraph();
+        AtlasVertex v1 = graph.addVertex();
+        AtlasVertex v2 = graph.addVertex();
+        AtlasVertex v3 = graph.addVertex();
+
+        AtlasEdge edge = GraphHelper.getInstance().getOrCreateEdge(v1, v2, "l1");
+        assertEquals(GraphHelper.getInstance().getOrCreateEdge(v1, v2, "l1").getId(), edge.getId());
+        assertFalse(GraphHelper.getInstance().getOrCreateEdge(v1, v3, "l1").getId().equals(edge.getId()));
+        assertFalse(GraphHelper.getInstance().getOrCreateEdge(v1, v2, "l2").getId().equals(edge.getId()));
+
+        Iterator<AtlasEdge> iterator = GraphHelper.getInstance().getOutGoingEdgesByLabel(v1, "l1");
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(count, 2);
+    }
+
     private ITypedReferenceableInstance convert(Referenceable instance, ClassType type) throws AtlasException {
 
         return type.convert(instance, Multiplicity.REQUIRED);
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.repository.store.graph.v1;
+
+import org.apache.atlas.RepositoryMetadataModule;
+import org.apache.atlas.RequestContextV1;
+import org.apache.atlas.TestUtils;
+import org.apache.atlas.TestUtilsV2;
+import org.apache.atlas.model.instance.AtlasEntity;
+import org.apache.atlas.model.instance.AtlasEntityHeader;
+import org.apache.atlas.model.instance.AtlasObjectId;
+import org.apache.atlas.model.instance.EntityMutationResponse;
+import org.apache.atlas.model.instance.EntityMutations;
+import org.apache.atlas.repository.Constants;
+import org.apache.atlas.repository.graph.AtlasGraphProvider;
+import org.apache.atlas.repository.graph.GraphBackedSearchIndexer;
+import org.apache.atlas.repository.graphdb.AtlasVertex;
+import org.apache.atlas.repository.store.graph.AtlasEntityStore;
+import org.apache.atlas.repository.store.graph.EntityGraphDiscoveryContext;
+import org.apache.atlas.store.AtlasTypeDefStore;
+import org.apache.atlas.type.AtlasTypeRegistry;
+import org.apache.atlas.util.AtlasRepositoryConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Guice(modules = RepositoryMetadataModule.class)
+public class UniqAttrBasedEntityResolverTest {
+
+    @Inject
+    AtlasTypeRegistry typeRegistry;
+
+    @Inject
+    AtlasTypeDefStore typeDefStore;
+
+    // guids of the entities created, by name
+    private final Map<String, String> guids = new HashMap<>();
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        new GraphBackedSearchIndexer(typeRegistry);
+        typeDefStore.createTypesDef(TestUtilsV2.defineDeptEmployeeTypes());
+
+        final Class<? extends DeleteHandlerV1> deleteHandlerImpl = AtlasRepositoryConfiguration.getDeleteHandlerV1Impl();
+        final Constructor<? extends DeleteHandlerV1> deleteHandlerImplConstructor = deleteHandlerImpl.getConstructor(AtlasTypeRegistry.class);
+        DeleteHandlerV1 deleteHandler = deleteHandlerImplConstructor.newInstance(typeRegistry);
+
+        AtlasEntityStore entityStore = new AtlasEntityStoreV1(new EntityGraphMapper(new ArrayVertexMapper(deleteHandler),
+                                                                                    new MapVertexMapper(deleteHandler), deleteHandler));
+        entityStore.init(typeRegistry);
+
+        RequestContextV1.clear();
+
+        EntityMutationResponse response = entityStore.createOrUpdate(TestUtilsV2.createDeptEg1());
+
+        for (AtlasEntityHeader header : response.getEntitiesByOperation(EntityMutations.EntityOperation.CREATE)) {
+            Object name = header.getAttribute("name");
+
+            if (name != null) {
+                guids.put(name.toString(), header.getGuid());
+            }
+        }
+    }
+
+    @AfterClass
+    public void clear() {
+        AtlasGraphProvider.cleanup();
+        TestUtils.resetRequestContext();
+    }
+
+    @Test
+    public void testResolveReferencesByUniqueAttributes() throws Exception {
+        EntityGraphDiscoveryContext context = new EntityGraphDiscoveryContext(typeRegistry);
+
+        AtlasObjectId hr      = objectId(TestUtilsV2.DEPARTMENT_TYPE, "hr");
+        AtlasObjectId john    = objectId(TestUtilsV2.EMPLOYEE_TYPE, "John");
+        AtlasObjectId max     = objectId(TestUtilsV2.EMPLOYEE_TYPE, "Max");
+        AtlasObjectId unknown = objectId(TestUtilsV2.EMPLOYEE_TYPE, "Unknown");
+
+        for (AtlasObjectId id : Arrays.asList(hr, john, max, unknown)) {
+            context.addUnresolvedIdByUniqAttribs(id);
+        }
+
+        resolve(context);
+
+        assertResolved(context, hr, "hr");
+        assertResolved(context, john, "John");
+        assertResolved(context, max, "Max");
+        assertFalse(context.isResolvedId(unknown));
+        assertEquals(context.getUnresolvedIdsByUniqAttribs(), Collections.singletonList(unknown));
+    }
+
+    @Test
+    public void testResolveReferencesBySuperType() throws Exception {
+        EntityGraphDiscoveryContext context = new EntityGraphDiscoveryContext(typeRegistry);
+
+        // Jane and Julius are Managers, and John is an Employee: all of them are found as a Person
+        AtlasObjectId jane   = objectId("Person", "Jane");
+        AtlasObjectId julius = objectId("Person", "Julius");
+        AtlasObjectId john   = objectId("Person", "John");
+
+        for (AtlasObjectId id : Arrays.asList(jane, julius, john)) {
+            context.addUnresolvedIdByUniqAttribs(id);
+        }
+
+        resolve(context);
+
+        assertResolved(context, jane, "Jane");
+        assertResolved(context, julius, "Julius");
+        assertResolved(context, john, "John");
+        assertTrue(context.getUnresolvedIdsByUniqAttribs().isEmpty());
+    }
+
+    @Test
+    public void testResolveRootEntitiesByUniqueAttributes() throws Exception {
+        EntityGraphDiscoveryContext context = new EntityGraphDiscoveryContext(typeRegistry);
+
+        AtlasEntity hr      = new AtlasEntity(TestUtilsV2.DEPARTMENT_TYPE);
+        AtlasEntity jane    = new AtlasEntity("Manager");
+        AtlasEntity unknown = new AtlasEntity(TestUtilsV2.DEPARTMENT_TYPE);
+
+        hr.setAttribute("name", "hr");
+        jane.setAttribute("name", "Jane");
+        unknown.setAttribute("name", "Unknown");
+
+        for (AtlasEntity entity : Arrays.asList(hr, jane, unknown)) {
+            context.addRootEntity(entity);
+            context.addUnResolvedId(entity.getAtlasObjectId());
+        }
+
+        resolve(context);
+
+        assertResolved(context, hr.getAtlasObjectId(), "hr");
+        assertResolved(context, jane.getAtlasObjectId(), "Jane");
+        assertFalse(context.isResolvedId(unknown.getAtlasObjectId()));
+        assertEquals(context.getUnresolvedIds(), Collections.singleton(unknown.getAtlasObjectId()));
+    }
+
+    @Test
+    public void testReferencedRootEntityIsResolvedByItsAttributes() throws Exception {
+        EntityGraphDiscoveryContext context = new EntityGraphDiscoveryContext(typeRegistry);
+
+        // the id of the root entity has no unique attributes, so it is found by the attributes of the entity
+
+        AtlasEntity max = new AtlasEntity(TestUtilsV2.EMPLOYEE_TYPE);
+
+        max.setAttribute("name", "Max");
+
+        context.addRootEntity(max);
+        context.addUnresolvedIdByUniqAttribs(max.getAtlasObjectId());
+
+        resolve(context);
+
+        assertResolved(context, max.getAtlasObjectId(), "Max");
+        assertEquals(context.getResolvedIds().size(), 1);
+    }
+
+    private void resolve(EntityGraphDiscoveryContext context) throws Exception {
+        UniqAttrBasedEntityResolver resolver = new UniqAttrBasedEntityResolver(typeRegistry);
+
+        resolver.init(context);
+        resolver.resolveEntityReferences();
+        resolver.cleanUp();
+    }
+
+    private void assertResolved(EntityGraphDiscoveryContext context, AtlasObjectId id, String name) {
+        assertTrue(context.isResolvedId(id), id + " is not resolved");
+
+        AtlasVertex vertex = context.getResolvedIds().get(id);
+
+        assertEquals(vertex.getProperty(Constants.GUID_PROPERTY_KEY, String.class), guids.get(name));
+    }
+
+    private static AtlasObjectId objectId(String typeName, String name) {
+        Map<String, Object> uniqueAttributes = new HashMap<>();
+
+        uniqueAttributes.put("name", name);
+
+        return new AtlasObjectId(typeName, uniqueAttributes);
+    }
+}
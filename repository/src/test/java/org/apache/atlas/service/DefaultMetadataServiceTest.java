@@ -35,6 +35,8 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -54,12 +56,16 @@ import org.apache.atlas.exception.AtlasBaseException;
 import org.apache.atlas.listener.ChangedTypeDefs;
 import org.apache.atlas.listener.EntityChangeListener;
 import org.apache.atlas.listener.TypeDefChangeListener;
+import org.apache.atlas.listener.TypesChangeListener;
 import org.apache.atlas.query.QueryParams;
+import org.apache.atlas.repository.MetadataRepository;
 import org.apache.atlas.repository.audit.EntityAuditRepository;
 import org.apache.atlas.repository.audit.HBaseBasedAuditRepository;
 import org.apache.atlas.repository.audit.HBaseTestUtils;
 import org.apache.atlas.repository.graph.AtlasGraphProvider;
+import org.apache.atlas.repository.typestore.ITypeStore;
 import org.apache.atlas.services.DefaultMetadataService;
+import org.apache.atlas.services.EntityChangeOutbox;
 import org.apache.atlas.services.MetadataService;
 import org.apache.atlas.type.AtlasTypeUtil;
 import org.apache.atlas.typesystem.IReferenceableInstance;
@@ -84,6 +90,9 @@ import org.apache.atlas.typesystem.types.ValueConversionException;
 import org.apache.atlas.typesystem.types.cache.TypeCache;
 import org.apache.atlas.typesystem.types.utils.TypesUtil;
 import org.apache.atlas.utils.ParamChecker;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.RandomStringUtils;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
@@ -97,6 +106,7 @@ import org.testng.annotations.Test;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
 @Guice(modules = RepositoryMetadataModule.class)
 public class DefaultMetadataServiceTest {
@@ -111,6 +121,15 @@ public class DefaultMetadataServiceTest {
     @Inject
     private GraphBackedDiscoveryService discoveryService;
 
+    @Inject
+    private MetadataRepository repository;
+
+    @Inject
+    private ITypeStore typeStore;
+
+    @Inject
+    private TypeCache typeCache;
+
     private Referenceable db = createDBEntity();
 
     private Referenceable table;
@@ -1006,6 +1025,113 @@ public class DefaultMetadataServiceTest {
         }
     }
 
+    @Test
+    public void testGetEntityDefinitionsInBatches() throws Exception {
+        List<String> guids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            guids.add(TestUtils.createInstance(metadataService, createDBEntity()));
+        }
+
+        // 5 entities are read in 3 batches of 2, by 2 threads
+        Configuration configuration = new PropertiesConfiguration();
+        configuration.setProperty("atlas.metadata.bulk.get.batch.size", 2);
+        configuration.setProperty("atlas.metadata.bulk.get.threads", 2);
+        DefaultMetadataService service = new DefaultMetadataService(repository, typeStore,
+                Collections.<Provider<TypesChangeListener>>emptyList(),
+                Collections.<Provider<EntityChangeListener>>emptyList(), TypeSystem.getInstance(), configuration,
+                typeCache);
+
+        List<String> requestedGuids = new ArrayList<>(guids);
+        requestedGuids.add(guids.get(0));
+        try {
+            assertEquals(getGuids(service.getEntityDefinitions(requestedGuids)), guids);
+        } finally {
+            service.stop();
+        }
+
+        // once the threads are stopped, the entities are read on the calling thread
+        assertEquals(getGuids(service.getEntityDefinitions(requestedGuids)), guids);
+    }
+
+    @Test
+    public void testCreatedEntitiesAreRecordedFromRequestContext() throws Exception {
+        File outboxDir = Files.createTempDirectory("outbox").toFile();
+        Configuration configuration = new PropertiesConfiguration();
+        configuration.setProperty(EntityChangeOutbox.ASYNC_ENABLED, true);
+        configuration.setProperty(EntityChangeOutbox.OUTBOX_DIR, outboxDir.getAbsolutePath());
+
+        final EntitiesChangeListener listener = new EntitiesChangeListener();
+        DefaultMetadataService service = new DefaultMetadataService(repository, typeStore,
+                Collections.<Provider<TypesChangeListener>>emptyList(),
+                Collections.<Provider<EntityChangeListener>>singletonList(new Provider<EntityChangeListener>() {
+                    @Override
+                    public EntityChangeListener get() {
+                        return listener;
+                    }
+                }), TypeSystem.getInstance(), configuration, typeCache,
+                new EntityChangeOutbox(configuration, repository));
+
+        service.start();
+
+        try {
+            // the table refers to the database created by the same request, and holds its columns
+            Referenceable dbEntity = createDBEntity();
+            Referenceable tableEntity = createTableEntity(dbEntity.getId()._getId());
+            tableEntity.set("database", dbEntity);
+            tableEntity.set(COLUMNS_ATTR_NAME, ImmutableList.of(createColumnEntity()));
+
+            JSONArray entitiesJson = new JSONArray();
+            entitiesJson.put(InstanceSerialization.toJson(dbEntity, true));
+            entitiesJson.put(InstanceSerialization.toJson(tableEntity, true));
+
+            RequestContext.createContext();
+            RequestContext.get().setUser("testuser");
+            List<String> guids = service.createEntities(entitiesJson.toString());
+
+            ITypedReferenceableInstance dbInstance = null;
+            ITypedReferenceableInstance tableInstance = null;
+            long deadline = System.currentTimeMillis() + 10000;
+            while ((dbInstance == null || tableInstance == null) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                synchronized (listener.addedEntities) {
+                    for (ITypedReferenceableInstance entity : listener.addedEntities) {
+                        if (entity.getTypeName().equals(TestUtils.DATABASE_TYPE)) {
+                            dbInstance = entity;
+                        } else if (entity.getTypeName().equals(TABLE_TYPE)) {
+                            tableInstance = entity;
+                        }
+                    }
+                }
+            }
+
+            assertNotNull(dbInstance);
+            assertNotNull(tableInstance);
+            assertTrue(guids.contains(tableInstance.getId()._getId()));
+            assertEquals(tableInstance.get(NAME), tableEntity.get(NAME));
+            assertEquals(tableInstance.getSystemAttributes().getCreatedBy(), "testuser");
+            assertNotNull(tableInstance.getSystemAttributes().getCreatedTime());
+
+            // the database is referred to by id, the columns are created with the table
+            assertEquals(tableInstance.get("database"), dbInstance.getId());
+            List<?> columns = (List<?>) tableInstance.get(COLUMNS_ATTR_NAME);
+            assertEquals(columns.size(), 1);
+            ITypedReferenceableInstance column = (ITypedReferenceableInstance) columns.get(0);
+            assertTrue(guids.contains(column.getId()._getId()));
+            assertEquals(column.getSystemAttributes().getCreatedBy(), "testuser");
+        } finally {
+            service.stop();
+            FileUtils.deleteDirectory(outboxDir);
+        }
+    }
+
+    private List<String> getGuids(List<ITypedReferenceableInstance> entities) {
+        List<String> ret = new ArrayList<>();
+        for (ITypedReferenceableInstance entity : entities) {
+            ret.add(entity.getId()._getId());
+        }
+        return ret;
+    }
+
     @Test
     public void testDeleteEntities() throws Exception {
         // Create a table entity, with 3 composite column entities
@@ -1242,10 +1368,13 @@ public class DefaultMetadataServiceTest {
     private static class EntitiesChangeListener implements EntityChangeListener {
         private List<String> deletedEntities = new ArrayList<>();
         private List<String> updatedEntities = new ArrayList<>();
+        private final List<ITypedReferenceableInstance> addedEntities =
+                Collections.synchronizedList(new ArrayList<ITypedReferenceableInstance>());
 
         @Override
         public void onEntitiesAdded(Collection<ITypedReferenceableInstance> entities)
             throws AtlasException {
+            addedEntities.addAll(entities);
         }
 
         @Override
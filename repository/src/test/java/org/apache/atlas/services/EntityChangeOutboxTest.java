@@ -0,0 +1,473 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.services;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.atlas.AtlasException;
+import org.apache.atlas.RequestContext;
+import org.apache.atlas.listener.EntityChangeListener;
+import org.apache.atlas.repository.MetadataRepository;
+import org.apache.atlas.typesystem.IStruct;
+import org.apache.atlas.typesystem.ITypedReferenceableInstance;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.Struct;
+import org.apache.atlas.typesystem.exception.EntityNotFoundException;
+import org.apache.atlas.typesystem.persistence.AtlasSystemAttributes;
+import org.apache.atlas.typesystem.persistence.Id;
+import org.apache.atlas.typesystem.types.ClassType;
+import org.apache.atlas.typesystem.types.DataTypes;
+import org.apache.atlas.typesystem.types.Multiplicity;
+import org.apache.atlas.typesystem.types.TypeSystem;
+import org.apache.atlas.typesystem.types.utils.TypesUtil;
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jettison.json.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class EntityChangeOutboxTest {
+    private static final String TYPE_NAME  = "outbox_test_type";
+    private static final String TRAIT_NAME = "outbox_test_trait";
+    private static final long   TIMEOUT_MS = 10000;
+
+    private ClassType type;
+    private File      dir;
+
+    @BeforeClass
+    public void defineTypes() throws AtlasException {
+        TypeSystem typeSystem = TypeSystem.getInstance();
+
+        if (!typeSystem.isRegistered(TYPE_NAME)) {
+            typeSystem.defineClassTypes(TypesUtil.createClassTypeDef(TYPE_NAME, ImmutableSet.<String>of(),
+                    TypesUtil.createOptionalAttrDef("name", DataTypes.STRING_TYPE)));
+        }
+
+        if (!typeSystem.isRegistered(TRAIT_NAME)) {
+            typeSystem.defineTraitTypes(TypesUtil.createTraitTypeDef(TRAIT_NAME, ImmutableSet.<String>of()));
+        }
+
+        type = typeSystem.getDataType(ClassType.class, TYPE_NAME);
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("outbox").toFile();
+
+        RequestContext.createContext().setUser("testuser");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        RequestContext.clear();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testDeliversInOrderAndRetriesFailures() throws Exception {
+        RecordingListener  listener = new RecordingListener(1);
+        EntityChangeOutbox outbox   = new EntityChangeOutbox(dir, 100, 2, 10, Collections.<EntityChangeListener>singletonList(listener));
+
+        outbox.start();
+
+        try {
+            for (String name : Arrays.asList("e1", "e2", "e3")) {
+                outbox.onEntitiesAdded(Collections.singletonList(createEntity(name)));
+            }
+
+            listener.waitFor(3);
+
+            assertEquals(listener.getEvents(), Arrays.asList("e1", "e2", "e3"));
+            assertEquals(listener.users, Arrays.asList("testuser", "testuser", "testuser"));
+
+            Map<String, Number> metrics = waitForPending(outbox, 0);
+
+            assertEquals(metrics.get("RecordingListener." + EntityChangeOutbox.METRIC_DELIVERED).longValue(), 3);
+            assertEquals(metrics.get("RecordingListener." + EntityChangeOutbox.METRIC_FAILURES).longValue(), 1);
+            assertEquals(metrics.get("RecordingListener." + EntityChangeOutbox.METRIC_PENDING).intValue(), 0);
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testRedeliversUndeliveredEventsAfterRestart() throws Exception {
+        RecordingListener  listener = new RecordingListener(0);
+        EntityChangeOutbox outbox   = new EntityChangeOutbox(dir, 100, 1, 10, Collections.<EntityChangeListener>singletonList(listener));
+
+        outbox.start();
+        outbox.onEntitiesDeleted(Collections.singletonList(createDeletedEntity("guid1")));
+        listener.waitFor(1);
+
+        // the listener rejects every event from now on, until the outbox is closed
+        listener.failuresLeft = Integer.MAX_VALUE;
+
+        outbox.onEntitiesDeleted(Collections.singletonList(createDeletedEntity("guid2")));
+        outbox.onEntitiesAdded(Collections.singletonList(createEntity("e3")));
+        outbox.close();
+
+        RecordingListener restartedListener = new RecordingListener(0);
+
+        outbox = new EntityChangeOutbox(dir, 100, 1, 10, Collections.<EntityChangeListener>singletonList(restartedListener));
+        outbox.start();
+
+        try {
+            restartedListener.waitFor(2);
+
+            assertEquals(restartedListener.getEvents(), Arrays.asList("guid2", "e3"));
+            assertEquals(restartedListener.users, Arrays.asList("testuser", "testuser"));
+
+            // deleted entities are recovered with their attributes and traits
+            ITypedReferenceableInstance deleted = restartedListener.entities.get(0);
+
+            assertEquals(deleted.get("name"), "deleted-guid2");
+            assertEquals(deleted.getTraits(), Collections.singletonList(TRAIT_NAME));
+
+            // events recorded after the restart follow the recovered ones
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e4")));
+            restartedListener.waitFor(3);
+
+            assertEquals(restartedListener.getEvents(), Arrays.asList("guid2", "e3", "e4"));
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testEntitiesToLoadAreLoadedWhenDeliveredAfterRestart() throws Exception {
+        String             createdGuid = UUID.randomUUID().toString();
+        MetadataRepository repository  = mock(MetadataRepository.class);
+        RecordingListener  listener    = new RecordingListener(Integer.MAX_VALUE);
+        EntityChangeOutbox outbox      = new EntityChangeOutbox(dir, 100, 10, 10, repository,
+                Collections.<EntityChangeListener>singletonList(listener), true);
+
+        when(repository.getEntityDefinition("guid1")).thenReturn(createEntity("loaded"));
+        when(repository.getEntityDefinition("guid2")).thenThrow(new EntityNotFoundException("guid2"));
+
+        // the listener rejects every event, until the outbox is closed
+        outbox.start();
+        outbox.onEntitiesAdded(Collections.singletonList(createEntity(createdGuid, "created")));
+        outbox.onEntitiesUpdated(Collections.<ITypedReferenceableInstance>emptyList(), Arrays.asList("guid1", "guid2"));
+        outbox.close();
+
+        RecordingListener restartedListener = new RecordingListener(0);
+
+        outbox = new EntityChangeOutbox(dir, 100, 10, 10, repository,
+                Collections.<EntityChangeListener>singletonList(restartedListener), true);
+        outbox.start();
+
+        try {
+            restartedListener.waitFor(2);
+
+            // entities with a guid are recovered with their attributes and system attributes, and the entities
+            // recorded by guid are loaded, unless they have been deleted since
+            assertEquals(restartedListener.getEvents(), Arrays.asList("created", "loaded"));
+
+            ITypedReferenceableInstance created = restartedListener.entities.get(0);
+
+            assertEquals(created.getId()._getId(), createdGuid);
+            assertEquals(created.getSystemAttributes().getCreatedBy(), "testuser");
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testListenersOfTheSameClass() throws Exception {
+        RecordingListener  listener1 = new RecordingListener(0);
+        RecordingListener  listener2 = new RecordingListener(0);
+        EntityChangeOutbox outbox    = new EntityChangeOutbox(dir, 100, 10, 10,
+                Arrays.<EntityChangeListener>asList(listener1, listener2));
+
+        outbox.start();
+
+        try {
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e1")));
+
+            listener1.waitFor(1);
+            listener2.waitFor(1);
+
+            assertEquals(listener1.getEvents(), Collections.singletonList("e1"));
+            assertEquals(listener2.getEvents(), Collections.singletonList("e1"));
+
+            Map<String, Number> metrics = outbox.getMetrics();
+
+            assertEquals(metrics.get("RecordingListener." + EntityChangeOutbox.METRIC_DELIVERED).longValue(), 1);
+            assertEquals(metrics.get("RecordingListener#2." + EntityChangeOutbox.METRIC_DELIVERED).longValue(), 1);
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testRecordDoesNotWaitForListeners() throws Exception {
+        final RecordingListener  listener = new RecordingListener(Integer.MAX_VALUE);
+        final EntityChangeOutbox outbox   = new EntityChangeOutbox(dir, 2, 2, Integer.MAX_VALUE,
+                Collections.<EntityChangeListener>singletonList(listener));
+
+        outbox.start();
+
+        try {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+
+            try {
+                // the listener accepts nothing, and the outbox holds two events, but recording goes on
+                Future<?> future = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        RequestContext.createContext().setUser("testuser");
+
+                        for (String name : Arrays.asList("e1", "e2", "e3", "e4", "e5")) {
+                            outbox.onEntitiesAdded(Collections.singletonList(createEntity(name)));
+                        }
+
+                        return null;
+                    }
+                });
+
+                future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(outbox.getMetrics().get("RecordingListener." + EntityChangeOutbox.METRIC_PENDING).longValue(), 5);
+
+            // the events past the capacity are read back from the journal, in order
+            listener.failuresLeft = 0;
+            listener.waitFor(5);
+
+            assertEquals(listener.getEvents(), Arrays.asList("e1", "e2", "e3", "e4", "e5"));
+
+            // once the listener caught up, events are queued again
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e6")));
+            listener.waitFor(6);
+
+            assertEquals(listener.getEvents(), Arrays.asList("e1", "e2", "e3", "e4", "e5", "e6"));
+            assertEquals(waitForPending(outbox, 0).get("RecordingListener." + EntityChangeOutbox.METRIC_PENDING).intValue(), 0);
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testRejectedEventsAreDeadLettered() throws Exception {
+        RecordingListener  listener = new RecordingListener(2);
+        EntityChangeOutbox outbox   = new EntityChangeOutbox(dir, 100, 10, 2,
+                Collections.<EntityChangeListener>singletonList(listener));
+
+        outbox.start();
+
+        try {
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e1")));
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e2")));
+
+            // e1 is rejected twice, and the listener moves on
+            listener.waitFor(1);
+
+            assertEquals(listener.getEvents(), Collections.singletonList("e2"));
+
+            Map<String, Number> metrics = waitForPending(outbox, 0);
+
+            assertEquals(metrics.get("RecordingListener." + EntityChangeOutbox.METRIC_FAILURES).longValue(), 2);
+            assertEquals(metrics.get("RecordingListener." + EntityChangeOutbox.METRIC_DEAD).longValue(), 1);
+
+            List<String> deadLetters = FileUtils.readLines(new File(dir, "dead-letter.log"), "UTF-8");
+
+            assertEquals(deadLetters.size(), 1);
+
+            JSONObject deadLetter = new JSONObject(deadLetters.get(0));
+
+            assertEquals(deadLetter.getString("listener"), "RecordingListener");
+            assertEquals(deadLetter.getJSONObject("event").getLong("seq"), 1);
+            assertEquals(deadLetter.getJSONObject("event").getString("operation"), "ENTITIES_ADDED");
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testRemoveListenerReleasesItsEvents() throws Exception {
+        RecordingListener  listener = new RecordingListener(0);
+        RecordingListener  stuck    = new RecordingListener(Integer.MAX_VALUE);
+        EntityChangeOutbox outbox   = new EntityChangeOutbox(dir, 2, 10, Integer.MAX_VALUE,
+                Arrays.<EntityChangeListener>asList(listener, stuck));
+
+        outbox.start();
+
+        try {
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e1")));
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e2")));
+            listener.waitFor(2);
+
+            // the events of the stuck listener fill the outbox until they are released
+            outbox.removeListener(stuck);
+            outbox.onEntitiesAdded(Collections.singletonList(createEntity("e3")));
+
+            listener.waitFor(3);
+            assertEquals(listener.getEvents(), Arrays.asList("e1", "e2", "e3"));
+            assertEquals(outbox.getMetrics().keySet(), new HashSet<>(Arrays.asList(
+                    "RecordingListener." + EntityChangeOutbox.METRIC_PENDING,
+                    "RecordingListener." + EntityChangeOutbox.METRIC_LAG,
+                    "RecordingListener." + EntityChangeOutbox.METRIC_DELIVERED,
+                    "RecordingListener." + EntityChangeOutbox.METRIC_FAILURES,
+                    "RecordingListener." + EntityChangeOutbox.METRIC_DEAD)));
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test(expectedExceptions = AtlasException.class)
+    public void testRecordBeforeStart() throws Exception {
+        EntityChangeOutbox outbox = new EntityChangeOutbox(dir, 100, 10, 10,
+                Collections.<EntityChangeListener>singletonList(new RecordingListener(0)));
+
+        outbox.onEntitiesAdded(Collections.singletonList(createEntity("e1")));
+    }
+
+    private Map<String, Number> waitForPending(EntityChangeOutbox outbox, int pending) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while (true) {
+            Map<String, Number> ret = outbox.getMetrics();
+
+            if (ret.get("RecordingListener." + EntityChangeOutbox.METRIC_PENDING).intValue() == pending
+                    || System.currentTimeMillis() > deadline) {
+                return ret;
+            }
+
+            Thread.sleep(10);
+        }
+    }
+
+    private ITypedReferenceableInstance createEntity(String name) throws AtlasException {
+        Referenceable entity = new Referenceable(TYPE_NAME);
+
+        entity.set("name", name);
+
+        return type.convert(entity, Multiplicity.REQUIRED);
+    }
+
+    private ITypedReferenceableInstance createEntity(String guid, String name) throws AtlasException {
+        Date                        now    = new Date();
+        ITypedReferenceableInstance entity = type.createInstance(new Id(guid, 0, TYPE_NAME),
+                new AtlasSystemAttributes("testuser", "testuser", now, now));
+
+        entity.set("name", name);
+
+        return entity;
+    }
+
+    private ITypedReferenceableInstance createDeletedEntity(String guid) throws AtlasException {
+        Referenceable entity = new Referenceable(guid, TYPE_NAME,
+                Collections.<String, Object>singletonMap("name", "deleted-" + guid), Collections.singletonList(TRAIT_NAME),
+                Collections.<String, IStruct>singletonMap(TRAIT_NAME, new Struct(TRAIT_NAME)));
+
+        return type.convert(entity, Multiplicity.REQUIRED);
+    }
+
+    // records the name of added entities and the guid of deleted entities
+    private static class RecordingListener implements EntityChangeListener {
+        private final List<String> events = new ArrayList<>();
+        private final List<ITypedReferenceableInstance> entities = Collections.synchronizedList(
+                new ArrayList<ITypedReferenceableInstance>());
+        private final List<String> users  = Collections.synchronizedList(new ArrayList<String>());
+        private volatile int       failuresLeft;
+
+        RecordingListener(int failuresLeft) {
+            this.failuresLeft = failuresLeft;
+        }
+
+        @Override
+        public void onEntitiesAdded(Collection<ITypedReferenceableInstance> entities) throws AtlasException {
+            record(entities, false);
+        }
+
+        @Override
+        public void onEntitiesUpdated(Collection<ITypedReferenceableInstance> entities) throws AtlasException {
+            record(entities, false);
+        }
+
+        @Override
+        public void onTraitAdded(ITypedReferenceableInstance entity, IStruct trait) throws AtlasException {
+        }
+
+        @Override
+        public void onTraitDeleted(ITypedReferenceableInstance entity, String traitName) throws AtlasException {
+        }
+
+        @Override
+        public void onEntitiesDeleted(Collection<ITypedReferenceableInstance> entities) throws AtlasException {
+            record(entities, true);
+        }
+
+        private void record(Collection<ITypedReferenceableInstance> entities, boolean deleted) throws AtlasException {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new AtlasException("failing as requested");
+            }
+
+            users.add(RequestContext.get().getUser());
+
+            synchronized (events) {
+                for (ITypedReferenceableInstance entity : entities) {
+                    events.add(deleted ? entity.getId()._getId() : (String) entity.get("name"));
+                    this.entities.add(entity);
+                }
+
+                events.notifyAll();
+            }
+        }
+
+        List<String> getEvents() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+
+        void waitFor(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+            synchronized (events) {
+                while (events.size() < count && System.currentTimeMillis() < deadline) {
+                    events.wait(100);
+                }
+            }
+        }
+    }
+}
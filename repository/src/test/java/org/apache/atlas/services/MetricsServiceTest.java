@@ -17,10 +17,19 @@
  */
 package org.apache.atlas.services;
 
+import com.google.common.collect.ImmutableList;
+import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasException;
+import org.apache.atlas.RequestContext;
+import org.apache.atlas.exception.AtlasBaseException;
+import org.apache.atlas.ha.HAConfiguration;
+import org.apache.atlas.listener.ChangedTypeDefs;
 import org.apache.atlas.model.metrics.AtlasMetrics;
 import org.apache.atlas.repository.graphdb.AtlasGraph;
+import org.apache.atlas.repository.graphdb.AtlasGraphQuery;
+import org.apache.atlas.repository.graphdb.AtlasVertex;
 import org.apache.atlas.type.AtlasTypeRegistry;
+import org.apache.atlas.typesystem.ITypedReferenceableInstance;
 import org.apache.commons.configuration.Configuration;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -30,15 +39,18 @@ import org.testng.annotations.Test;
 import javax.script.ScriptException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 
 public class MetricsServiceTest {
     private Configuration mockConfig = mock(Configuration.class);
@@ -138,4 +150,241 @@ public class MetricsServiceTest {
         metricsService.getMetrics();
         verify(mockGraph, atLeastOnce()).executeGremlinScript(anyString(), anyBoolean());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetMetricsFromIncrementalCounters() throws AtlasException, ScriptException {
+        Configuration     config       = mock(Configuration.class);
+        AtlasTypeRegistry typeRegistry = mock(AtlasTypeRegistry.class);
+        AtlasGraph        graph        = mock(AtlasGraph.class);
+        AtlasGraphQuery   query        = mock(AtlasGraphQuery.class);
+        AtlasVertex       vertex       = mock(AtlasVertex.class);
+
+        when(config.getBoolean(eq(MetricsService.METRIC_INCREMENTAL_ENABLED), anyBoolean())).thenReturn(true);
+        when(config.getString(anyString(), anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return invocationOnMock.getArguments()[1];
+            }
+        });
+        when(typeRegistry.getAllEntityDefNames()).thenReturn(Arrays.asList("a", "b", "c"));
+
+        // counters persisted by a previous run
+        when(graph.query()).thenReturn(query);
+        when(query.has(anyString(), any())).thenReturn(query);
+        when(query.vertices()).thenReturn(Collections.singletonList(vertex));
+        when(vertex.getProperty(eq(MetricsService.METRICS_SNAPSHOT_PROPERTY_KEY), eq(String.class)))
+                .thenReturn("{\"entityCount\":5,\"deletedEntityCount\":1,\"taggedEntityCount\":2,\"unusedTypeCount\":1,"
+                          + "\"entitiesPerType\":{\"a\":3,\"b\":2},\"entitiesPerTag\":{\"PII\":2}}");
+
+        MetricsService service = new MetricsService(config, graph, typeRegistry);
+
+        ITypedReferenceableInstance added   = mock(ITypedReferenceableInstance.class);
+        ITypedReferenceableInstance deleted = mock(ITypedReferenceableInstance.class);
+
+        when(added.getTypeName()).thenReturn("a");
+        when(added.getTraits()).thenReturn(ImmutableList.of("PII"));
+        when(deleted.getTypeName()).thenReturn("b");
+
+        service.onEntitiesAdded(Collections.singletonList(added));
+        service.onEntitiesDeleted(Collections.singletonList(deleted));
+
+        AtlasMetrics metrics = service.getMetrics();
+
+        assertEquals(metrics.getMetric("general", "entityCount").longValue(), 6);
+        assertEquals(metrics.getMetric("general", "entityDeleted").longValue(), 2);
+        assertEquals(metrics.getMetric("general", "typeUnusedCount").longValue(), 1);
+        assertEquals(metrics.getMetric("entity", "a").longValue(), 4);
+        assertEquals(metrics.getMetric("entity", "b").longValue(), 2);
+        assertEquals(metrics.getMetric("entity", "c").longValue(), 0);
+        assertEquals(metrics.getMetric("entity", "entityTagged").longValue(), 3);
+        assertEquals(metrics.getMetric("tagEntities", "PII").longValue(), 3);
+
+        service.onEntitiesAdded(Collections.singletonList(added));
+
+        // served from the counters, always current and without any graph scan
+        assertEquals(service.getMetrics().getMetric("entity", "a").longValue(), 5);
+        verify(graph, never()).executeGremlinScript(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testRedeliveredEntityChangeEventsAreCountedOnce() throws AtlasException {
+        Configuration     config       = mock(Configuration.class);
+        AtlasTypeRegistry typeRegistry = mock(AtlasTypeRegistry.class);
+        AtlasGraph        graph        = mock(AtlasGraph.class);
+        AtlasGraphQuery   query        = mock(AtlasGraphQuery.class);
+        AtlasVertex       vertex       = mock(AtlasVertex.class);
+
+        when(config.getBoolean(eq(MetricsService.METRIC_INCREMENTAL_ENABLED), anyBoolean())).thenReturn(true);
+        when(typeRegistry.getAllEntityDefNames()).thenReturn(Collections.singletonList("a"));
+
+        // counters persisted after counting the event with seq 5
+        when(graph.query()).thenReturn(query);
+        when(query.has(anyString(), any())).thenReturn(query);
+        when(query.vertices()).thenReturn(Collections.singletonList(vertex));
+        when(vertex.getProperty(eq(MetricsService.METRICS_SNAPSHOT_PROPERTY_KEY), eq(String.class)))
+                .thenReturn("{\"entityCount\":5,\"entitiesPerType\":{\"a\":5},\"entityChangeSeq\":5}");
+
+        MetricsService              service = new MetricsService(config, graph, typeRegistry);
+        ITypedReferenceableInstance added   = mock(ITypedReferenceableInstance.class);
+
+        when(added.getTypeName()).thenReturn("a");
+        when(added.getTraits()).thenReturn(ImmutableList.<String>of());
+
+        try {
+            // the outbox delivers the events after the last one it saw delivered before a restart
+            for (long seq : new long[] { 4, 5, 6, 6, 7 }) {
+                RequestContext.createContext().setEntityChangeSeq(seq);
+
+                service.onEntitiesAdded(Collections.singletonList(added));
+            }
+
+            // events delivered synchronously have no seq, and are always counted
+            RequestContext.createContext();
+
+            service.onEntitiesAdded(Collections.singletonList(added));
+        } finally {
+            RequestContext.clear();
+        }
+
+        assertEquals(service.getMetrics().getMetric("general", "entityCount").longValue(), 8);
+        assertEquals(service.getMetrics().getMetric("entity", "a").longValue(), 8);
+    }
+
+    @Test
+    public void testDeletedEntitiesNoLongerCountForTheirTags() throws AtlasException {
+        String snapshot = "{\"entityCount\":3,\"taggedEntityCount\":2,\"entitiesPerType\":{\"a\":3},"
+                        + "\"entitiesPerTag\":{\"PII\":2}}";
+
+        ITypedReferenceableInstance deleted = mock(ITypedReferenceableInstance.class);
+
+        when(deleted.getTypeName()).thenReturn("a");
+        when(deleted.getTraits()).thenReturn(ImmutableList.of("PII"));
+
+        // soft deleted entities are still counted, as deleted
+        MetricsService softDeleteService = new MetricsService(incrementalConfig(), mockSnapshotGraph(snapshot),
+                                                              mockTypeRegistry, false, null);
+
+        softDeleteService.onEntitiesDeleted(Collections.singletonList(deleted));
+
+        AtlasMetrics metrics = softDeleteService.getMetrics();
+
+        assertEquals(metrics.getMetric("general", "entityCount").longValue(), 3);
+        assertEquals(metrics.getMetric("general", "entityDeleted").longValue(), 1);
+        assertEquals(metrics.getMetric("entity", "a").longValue(), 3);
+        assertEquals(metrics.getMetric("entity", "entityTagged").longValue(), 1);
+        assertEquals(metrics.getMetric("tagEntities", "PII").longValue(), 1);
+
+        MetricsService hardDeleteService = new MetricsService(incrementalConfig(), mockSnapshotGraph(snapshot),
+                                                              mockTypeRegistry, true, null);
+
+        hardDeleteService.onEntitiesDeleted(Collections.singletonList(deleted));
+
+        metrics = hardDeleteService.getMetrics();
+
+        assertEquals(metrics.getMetric("general", "entityCount").longValue(), 2);
+        assertEquals(metrics.getMetric("general", "entityDeleted").longValue(), 0);
+        assertEquals(metrics.getMetric("entity", "a").longValue(), 2);
+        assertEquals(metrics.getMetric("entity", "entityTagged").longValue(), 1);
+        assertEquals(metrics.getMetric("tagEntities", "PII").longValue(), 1);
+    }
+
+    @Test
+    public void testTagsPerEntityAndUnusedTypesAreServedFromSnapshot() throws AtlasException, AtlasBaseException,
+                                                                                ScriptException {
+        String snapshot = "{\"entityCount\":2,\"taggedEntityCount\":1,\"unusedTypeCount\":4,\"entitiesPerType\":{\"a\":2},"
+                        + "\"entitiesPerTag\":{\"PII\":1,\"Sales\":1},\"tagsPerEntity\":{\"t1@cl1\":2}}";
+
+        AtlasGraph     graph   = mockSnapshotGraph(snapshot);
+        MetricsService service = new MetricsService(incrementalConfig(), graph, mockTypeRegistry, false, null);
+
+        // activated from the snapshot, without a full scan
+        AtlasMetrics metrics = service.getMetrics();
+
+        assertEquals(metrics.getMetric("tag", "t1@cl1").longValue(), 2);
+        assertEquals(metrics.getMetric("general", "typeUnusedCount").longValue(), 4);
+
+        ITypedReferenceableInstance t1 = mock(ITypedReferenceableInstance.class);
+        ITypedReferenceableInstance t2 = mock(ITypedReferenceableInstance.class);
+
+        when(t1.getTypeName()).thenReturn("a");
+        when(t1.get(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME)).thenReturn("t1@cl1");
+        when(t1.getTraits()).thenReturn(ImmutableList.of("PII"));
+        when(t2.getTypeName()).thenReturn("a");
+        when(t2.get(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME)).thenReturn("t2@cl1");
+        when(t2.getTraits()).thenReturn(ImmutableList.of("PII"));
+
+        service.onTraitDeleted(t1, "Sales");
+        service.onEntitiesAdded(Collections.singletonList(t2));
+
+        metrics = service.getMetrics();
+
+        assertEquals(metrics.getMetric("tag", "t1@cl1").longValue(), 1);
+        assertEquals(metrics.getMetric("tag", "t2@cl1").longValue(), 1);
+
+        service.onEntitiesDeleted(Collections.singletonList(t2));
+
+        assertNull(service.getMetrics().getMetric("tag", "t2@cl1"));
+        verify(graph, never()).executeGremlinScript(anyString(), anyBoolean());
+
+        // unused types are counted again once the types change
+        when(graph.executeGremlinScript(anyString(), eq(false))).thenReturn(5);
+
+        service.onChange(new ChangedTypeDefs());
+
+        assertEquals(service.getMetrics().getMetric("general", "typeUnusedCount").longValue(), 5);
+        assertEquals(service.getMetrics().getMetric("general", "typeUnusedCount").longValue(), 5);
+        verify(graph, times(1)).executeGremlinScript(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testCountersAreReconciledOnActivation() throws InterruptedException, ScriptException {
+        Configuration config = mock(Configuration.class);
+        AtlasGraph    graph  = mock(AtlasGraph.class);
+
+        when(config.containsKey(HAConfiguration.ATLAS_SERVER_HA_ENABLED_KEY)).thenReturn(true);
+        when(config.getBoolean(HAConfiguration.ATLAS_SERVER_HA_ENABLED_KEY)).thenReturn(true);
+        when(config.getBoolean(eq(MetricsService.METRIC_INCREMENTAL_ENABLED), anyBoolean())).thenReturn(true);
+        when(config.getBoolean(eq(MetricsService.METRIC_RECONCILE_ON_ACTIVATION), anyBoolean())).thenReturn(true);
+        when(config.getString(anyString(), anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return invocationOnMock.getArguments()[1];
+            }
+        });
+
+        MetricsService service = new MetricsService(config, graph, mockTypeRegistry);
+
+        try {
+            // nothing runs in the background until the instance is active
+            Thread.sleep(500);
+            verify(graph, never()).executeGremlinScript(anyString(), anyBoolean());
+
+            service.instanceIsActive();
+
+            verify(graph, timeout(10000).atLeastOnce()).executeGremlinScript(anyString(), anyBoolean());
+        } finally {
+            service.instanceIsPassive();
+        }
+    }
+
+    private Configuration incrementalConfig() {
+        Configuration ret = mock(Configuration.class);
+
+        when(ret.getBoolean(eq(MetricsService.METRIC_INCREMENTAL_ENABLED), anyBoolean())).thenReturn(true);
+
+        return ret;
+    }
+
+    private AtlasGraph mockSnapshotGraph(String snapshot) {
+        AtlasGraph      graph  = mock(AtlasGraph.class);
+        AtlasGraphQuery query  = mock(AtlasGraphQuery.class);
+        AtlasVertex     vertex = mock(AtlasVertex.class);
+
+        when(graph.query()).thenReturn(query);
+        when(query.has(anyString(), any())).thenReturn(query);
+        when(query.vertices()).thenReturn(Collections.singletonList(vertex));
+        when(vertex.getProperty(eq(MetricsService.METRICS_SNAPSHOT_PROPERTY_KEY), eq(String.class))).thenReturn(snapshot);
+
+        return graph;
+    }
+}
@@ -27,6 +27,9 @@ import org.testng.annotations.{Test,BeforeClass,AfterClass}
 import org.apache.atlas.repository.graph.AtlasGraphProvider
 import org.testng.annotations.BeforeMethod
 import org.apache.atlas.TestUtils
+import org.apache.atlas.ApplicationProperties
+import org.apache.atlas.util.AtlasRepositoryConfiguration
+import org.testng.Assert
 
 class GremlinTest extends BaseGremlinTest {
 
@@ -1066,4 +1069,32 @@ class GremlinTest extends BaseGremlinTest {
     val r = QueryProcessor.evaluate(e, g, gp)
     validateJson(r)
   }
+
+  @Test def testLiteralsArePassedAsParameters {
+    val q1 = new GremlinTranslator(QueryProcessor.validate(_class("DB").where(id("name").`=`(string("Sales")))), gp).translate()
+    val q2 = new GremlinTranslator(QueryProcessor.validate(_class("DB").where(id("name").`=`(string("Reporting")))), gp).translate()
+
+    //queries which differ only in their literals share the script text
+    Assert.assertEquals(q1.queryStr, q2.queryStr)
+    Assert.assertFalse(q1.queryStr.contains("Sales"))
+    Assert.assertTrue(q1.queryParams.containsValue("Sales"))
+    Assert.assertTrue(q2.queryParams.containsValue("Reporting"))
+
+    //the bindings are passed when the script is run
+    val r = QueryProcessor.evaluate(_class("DB").where(id("name").`=`(string("Reporting"))), g, gp)
+    Assert.assertEquals(r.rows.size, 1)
+  }
+
+  @Test def testLiteralsAreInlinedWhenParametersAreDisabled {
+    val conf = ApplicationProperties.get()
+    conf.setProperty(AtlasRepositoryConfiguration.GREMLIN_PARAMETERIZED_QUERIES_PROPERTY, false)
+    try {
+      val q = new GremlinTranslator(QueryProcessor.validate(_class("DB").where(id("name").`=`(string("Sales")))), gp).translate()
+
+      Assert.assertTrue(q.queryStr.contains("Sales"))
+      Assert.assertTrue(q.queryParams.isEmpty)
+    } finally {
+      conf.clearProperty(AtlasRepositoryConfiguration.GREMLIN_PARAMETERIZED_QUERIES_PROPERTY)
+    }
+  }
 }
@@ -47,6 +47,7 @@ public class RequestContext {
 
     private String user;
     private long requestTime;
+    private long entityChangeSeq;
 
     TypeSystem typeSystem = TypeSystem.getInstance();
     private Metrics metrics = new Metrics();
@@ -118,9 +119,13 @@ public class RequestContext {
         this.updatedEntityIds.add(entityId);
     }
 
-    public void recordEntityDelete(String entityId, String typeName) throws AtlasException {
+    /**
+     * Records the deletion of an entity, which the entity change listeners get with the names of its traits.
+     */
+    public void recordEntityDelete(String entityId, String typeName, List<String> traitNames) throws AtlasException {
         ClassType type = typeSystem.getDataType(ClassType.class, typeName);
-        ITypedReferenceableInstance entity = type.createInstance(new Id(entityId, 0, typeName));
+        ITypedReferenceableInstance entity = type.createInstance(new Id(entityId, 0, typeName),
+                traitNames.toArray(new String[traitNames.size()]));
         if (deletedEntityIds.add(entityId)) {
             deletedEntities.add(entity);
         }
@@ -146,6 +151,32 @@ public class RequestContext {
         return requestTime;
     }
 
+    /**
+     * Sets the time of the request, when work of the request is continued in a context created on another thread.
+     *
+     * @param requestTime time of the request
+     */
+    public void setRequestTime(long requestTime) {
+        this.requestTime = requestTime;
+    }
+
+    /**
+     * @return sequence number of the entity change event being delivered in this context, 0 outside of deliveries
+     */
+    public long getEntityChangeSeq() {
+        return entityChangeSeq;
+    }
+
+    /**
+     * Sets the sequence number of the entity change event delivered in this context, by which listeners can tell
+     * an event they have already processed when it is delivered again.
+     *
+     * @param entityChangeSeq sequence number of the event
+     */
+    public void setEntityChangeSeq(long entityChangeSeq) {
+        this.entityChangeSeq = entityChangeSeq;
+    }
+
     public boolean isDeletedEntity(String entityGuid) {
         return deletedEntityIds.contains(entityGuid);
     }
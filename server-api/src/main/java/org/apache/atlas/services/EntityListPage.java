@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.atlas.services;
+
+import java.util.List;
+
+/**
+ * A page of the guids of the entities of a type.
+ */
+public class EntityListPage {
+    private final List<String> guids;
+    private final String continuationToken;
+
+    public EntityListPage(List<String> guids, String continuationToken) {
+        this.guids = guids;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<String> getGuids() {
+        return guids;
+    }
+
+    /**
+     * @return opaque token to get the next page with, or null if this is the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of an entity to read: the attributes, whether the composite entities these attributes refer to are read
+ * along with the entity rather than as ids, and whether the traits of the entity are read. Attributes which are not
+ * read are left null in the instance returned.
+ */
+public final class EntityProjection {
+    public static final EntityProjection ALL = new EntityProjection(null, true, true);
+
+    private final Set<String> attributes;
+    private final boolean     expandComposites;
+    private final boolean     includeTraits;
+
+    /**
+     * @param attributes       names of the attributes to read, or null to read all of them
+     * @param expandComposites whether composite entities are read along with the entity
+     * @param includeTraits    whether the traits of the entity are read
+     */
+    public EntityProjection(Collection<String> attributes, boolean expandComposites, boolean includeTraits) {
+        this.attributes       = attributes == null ? null
+                                        : Collections.unmodifiableSet(new LinkedHashSet<>(attributes));
+        this.expandComposites = expandComposites;
+        this.includeTraits    = includeTraits;
+    }
+
+    /**
+     * @param attributes       comma separated names of the attributes to read; null or blank to read all of them
+     * @param expandComposites whether composite entities are read along with the entity
+     * @param includeTraits    whether the traits of the entity are read
+     */
+    public static EntityProjection parse(String attributes, boolean expandComposites, boolean includeTraits) {
+        List<String> names = null;
+
+        if (attributes != null && !attributes.trim().isEmpty()) {
+            names = new ArrayList<>();
+
+            for (String name : attributes.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim());
+                }
+            }
+        }
+
+        return new EntityProjection(names, expandComposites, includeTraits);
+    }
+
+    /**
+     * @return names of the attributes to read, or null if all attributes are read
+     */
+    public Set<String> getAttributes() {
+        return attributes;
+    }
+
+    public boolean isExpandComposites() {
+        return expandComposites;
+    }
+
+    public boolean isIncludeTraits() {
+        return includeTraits;
+    }
+
+    /**
+     * @return true if the whole entity is read
+     */
+    public boolean isAll() {
+        return attributes == null && expandComposites && includeTraits;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityProjection{attributes=" + (attributes == null ? "all" : attributes)
+                + ", expandComposites=" + expandComposites + ", includeTraits=" + includeTraits + '}';
+    }
+}
@@ -111,8 +111,35 @@ public interface MetadataService {
      */
     String getEntityDefinitionJson(String guid) throws AtlasException;
 
+    /**
+     * Return the parts of the definition for the given guid selected by the projection.
+     *
+     * @param guid guid
+     * @param projection attributes to read, and whether composite entities and traits are read
+     * @return entity definition as JSON
+     */
+    String getEntityDefinitionJson(String guid, EntityProjection projection) throws AtlasException;
+
     ITypedReferenceableInstance getEntityDefinition(String guid) throws AtlasException;
 
+    /**
+     * Return the parts of the definition for the given guid selected by the projection. Attributes which aren't
+     * selected are not set in the returned instance.
+     *
+     * @param guid guid
+     * @param projection attributes to read, and whether composite entities and traits are read
+     * @return entity definition
+     */
+    ITypedReferenceableInstance getEntityDefinition(String guid, EntityProjection projection) throws AtlasException;
+
+    /**
+     * Return the definitions for the given guids.
+     *
+     * @param guids guids
+     * @return entity definitions in the order of the given guids, without duplicates
+     */
+    List<ITypedReferenceableInstance> getEntityDefinitions(List<String> guids) throws AtlasException;
+
 
     /**
      * Return the definition given type and attribute. The attribute has to be unique attribute for the type
@@ -142,6 +169,25 @@ public interface MetadataService {
      */
     List<String> getEntityList(String entityType) throws AtlasException;
 
+    /**
+     * Return a page of the entity guids for the given type in the repository.
+     *
+     * @param entityType type
+     * @param limit maximum number of guids to return
+     * @param continuationToken token of the page to return, as returned with the previous page, or null for the first page
+     * @return page of entity guids for the given type in the repository
+     */
+    EntityListPage getEntityList(String entityType, int limit, String continuationToken) throws AtlasException;
+
+    /**
+     * Pass the entity guids for the given type in the repository to the visitor as they are read.
+     *
+     * @param entityType type
+     * @param continuationToken token of the page to start at, or null to start at the first entity
+     * @param visitor visitor receiving the guids
+     */
+    void visitEntityList(String entityType, String continuationToken, EntityListVisitor visitor) throws AtlasException;
+
     /**
      * Adds the property to the given entity id(guid).
      * Currently supports updates only on PRIMITIVE, CLASS attribute types
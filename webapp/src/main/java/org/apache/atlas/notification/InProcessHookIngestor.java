@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.atlas.notification;
+
+import org.apache.atlas.AtlasClient;
+import org.apache.atlas.AtlasException;
+import org.apache.atlas.LocalAtlasClient;
+import org.apache.atlas.RequestContext;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.services.MetadataService;
+import org.apache.atlas.typesystem.ITypedReferenceableInstance;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.persistence.Id;
+import org.apache.atlas.web.filters.AuditFilter;
+import org.apache.atlas.web.util.DateTimeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Applies hook notification messages directly on the MetadataService.
+ *
+ * The entities in a hook message are already deserialized, so they are converted to typed instances and handed to
+ * the service as is, instead of being serialized to JSON again and routed through EntityResource like
+ * LocalAtlasClient does. The request context and the audit record are set up exactly as LocalAtlasClient does.
+ */
+class InProcessHookIngestor {
+    private static final Logger LOG = LoggerFactory.getLogger(InProcessHookIngestor.class);
+
+    private static final String LOCALHOST = "localhost";
+
+    // audit records keep the name of the client that used to apply the hook messages
+    private static final String CLASS = LocalAtlasClient.class.getSimpleName();
+
+    private final MetadataService metadataService;
+
+    InProcessHookIngestor(MetadataService metadataService) {
+        this.metadataService = metadataService;
+    }
+
+    void handleMessage(HookNotification.HookNotificationMessage message) throws AtlasException {
+        String user = message.getUser();
+
+        switch (message.getType()) {
+        case ENTITY_CREATE:
+            HookNotification.EntityCreateRequest createRequest = (HookNotification.EntityCreateRequest) message;
+
+            beginRequest(user, AtlasClient.API.CREATE_ENTITY);
+            List<String> guids = metadataService.createEntities(toTypedInstances(createRequest.getEntities()));
+
+            LOG.debug("Created entities {}", guids);
+            break;
+
+        case ENTITY_PARTIAL_UPDATE:
+            HookNotification.EntityPartialUpdateRequest partialUpdateRequest =
+                (HookNotification.EntityPartialUpdateRequest) message;
+
+            beginRequest(user, AtlasClient.API.UPDATE_ENTITY_PARTIAL);
+            AtlasClient.EntityResult partialUpdateResult =
+                metadataService.updateEntityByUniqueAttribute(partialUpdateRequest.getTypeName(),
+                    partialUpdateRequest.getAttribute(), partialUpdateRequest.getAttributeValue(),
+                    partialUpdateRequest.getEntity());
+
+            LOG.debug("Updated entities {}", partialUpdateResult);
+            break;
+
+        case ENTITY_DELETE:
+            HookNotification.EntityDeleteRequest deleteRequest = (HookNotification.EntityDeleteRequest) message;
+
+            beginRequest(user, AtlasClient.API.DELETE_ENTITY);
+            AtlasClient.EntityResult deleteResult =
+                metadataService.deleteEntityByUniqueAttribute(deleteRequest.getTypeName(),
+                    deleteRequest.getAttribute(), deleteRequest.getAttributeValue());
+
+            LOG.debug("Deleted entities {}", deleteResult);
+            break;
+
+        case ENTITY_FULL_UPDATE:
+            HookNotification.EntityUpdateRequest updateRequest = (HookNotification.EntityUpdateRequest) message;
+
+            beginRequest(user, AtlasClient.API.UPDATE_ENTITY);
+            AtlasClient.EntityResult updateResult =
+                metadataService.updateEntities(toTypedInstances(updateRequest.getEntities()));
+
+            LOG.debug("Updated entities {}", updateResult);
+            break;
+
+        default:
+            throw new IllegalStateException("Unhandled exception!");
+        }
+    }
+
+    private void beginRequest(String user, AtlasClient.API api) {
+        RequestContext requestContext = RequestContext.createContext();
+        requestContext.setUser(user);
+
+        AuditFilter.audit(user, CLASS, api.getMethod(), LOCALHOST, api.getPath(), LOCALHOST,
+            DateTimeHelper.formatDateUTC(new Date()));
+    }
+
+    private ITypedReferenceableInstance[] toTypedInstances(List<Referenceable> entities) throws AtlasException {
+        ITypedReferenceableInstance[] typedInstances = new ITypedReferenceableInstance[entities.size()];
+
+        for (int i = 0; i < typedInstances.length; i++) {
+            Referenceable entity = entities.get(i);
+            Id            id     = entity.getId();
+
+            // the conversion replaces the id of the entity; the message is applied again if the request fails
+            try {
+                typedInstances[i] = metadataService.getTypedReferenceableInstance(entity);
+            } finally {
+                entity.replaceWithNewId(id);
+            }
+        }
+
+        return typedInstances;
+    }
+}
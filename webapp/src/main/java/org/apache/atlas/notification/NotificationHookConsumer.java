@@ -27,19 +27,34 @@ import org.apache.atlas.AtlasException;
 import org.apache.atlas.AtlasServiceException;
 import org.apache.atlas.LocalAtlasClient;
 import org.apache.atlas.ha.HAConfiguration;
+import org.apache.atlas.kafka.KafkaNotification;
 import org.apache.atlas.listener.ActiveStateChangeHandler;
+import org.apache.atlas.notification.hook.HookMessageEntities;
 import org.apache.atlas.notification.hook.HookNotification;
 import org.apache.atlas.service.Service;
+import org.apache.atlas.services.MetadataService;
+import org.apache.atlas.typesystem.Referenceable;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Consumer of notifications from hooks e.g., hive hook etc.
@@ -48,6 +63,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class NotificationHookConsumer implements Service, ActiveStateChangeHandler {
     private static final Logger LOG = LoggerFactory.getLogger(NotificationHookConsumer.class);
     private static Logger FAILED_LOG = LoggerFactory.getLogger("FAILED");
+    private static final Logger METRICS_LOG = LoggerFactory.getLogger("METRICS");
 
     private static final String THREADNAME_PREFIX = NotificationHookConsumer.class.getSimpleName();
 
@@ -55,21 +71,66 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
     public static final String CONSUMER_RETRIES_PROPERTY = "atlas.notification.hook.maxretries";
     public static final String CONSUMER_FAILEDCACHESIZE_PROPERTY = "atlas.notification.hook.failedcachesize";
     public static final String CONSUMER_RETRY_INTERVAL="atlas.notification.consumer.retry.interval";
+    public static final String CONSUMER_DIRECT_INGEST_PROPERTY = "atlas.notification.hook.direct.ingest";
+    public static final String CONSUMER_BATCH_SIZE_PROPERTY = "atlas.notification.hook.batch.size";
+    public static final String CONSUMER_BATCH_MAX_WAIT_MS_PROPERTY = "atlas.notification.hook.batch.maxWaitMs";
+    public static final String CONSUMER_STATS_LOG_INTERVAL_PROPERTY = "atlas.notification.hook.stats.log.intervalInSecs";
+    public static final String CONSUMER_LANES_PROPERTY = "atlas.notification.hook.lanes";
+    public static final String KAFKA_CONSUMER_TIMEOUT_PROPERTY = "atlas.kafka.consumer.timeout.ms";
+
+    public static final int DEFAULT_CONSUMER_BATCH_SIZE = KafkaNotification.DEFAULT_HOOK_BATCH_SIZE;
+    public static final int DEFAULT_KAFKA_CONSUMER_TIMEOUT_MS = KafkaNotification.DEFAULT_HOOK_CONSUMER_TIMEOUT_MS;
+
+    public static final String METRIC_BATCHES = "batches";
+    public static final String METRIC_MESSAGES = "messages";
+    public static final String METRIC_MERGED_MESSAGES = "mergedMessages";
+    public static final String METRIC_SPLIT_BATCHES = "splitBatches";
+    public static final String METRIC_FAILED_MESSAGES = "failedMessages";
+    public static final String METRIC_LAST_BATCH_SIZE = "lastBatchSize";
+    public static final String METRIC_MAX_BATCH_SIZE = "maxBatchSize";
+    public static final String METRIC_BATCH_TIME = "batchTimeMs";
+    public static final String METRIC_MAX_BATCH_TIME = "maxBatchTimeMs";
 
     public static final int SERVER_READY_WAIT_TIME_MS = 1000;
     private final LocalAtlasClient atlasClient;
     private final int maxRetries;
     private final int failedMsgCacheSize;
     private final int consumerRetryInterval;
+    private final InProcessHookIngestor hookIngestor;
+    private final int batchSize;
+    private final int batchMaxWaitMs;
+    private final long statsLogIntervalMs;
+    private final int numLanes;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong mergedMessages = new AtomicLong();
+    private final AtomicLong splitBatches = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong batchTimeMs = new AtomicLong();
+    private final AtomicLong maxBatchTimeMs = new AtomicLong();
+    private final AtomicLong lastStatsLogTime = new AtomicLong(System.currentTimeMillis());
 
     private NotificationInterface notificationInterface;
     private ExecutorService executors;
     private Configuration applicationProperties;
     private List<HookConsumer> consumers;
+    private List<ExecutorService> lanes;
 
-    @Inject
     public NotificationHookConsumer(NotificationInterface notificationInterface, LocalAtlasClient atlasClient)
             throws AtlasException {
+        this(notificationInterface, atlasClient, null);
+    }
+
+    /**
+     * @param metadataService when set, and unless disabled with atlas.notification.hook.direct.ingest, hook messages
+     *                        are applied directly on the metadata service instead of through atlasClient
+     */
+    @Inject
+    public NotificationHookConsumer(NotificationInterface notificationInterface, LocalAtlasClient atlasClient,
+                                    MetadataService metadataService) throws AtlasException {
         this.notificationInterface = notificationInterface;
         this.atlasClient = atlasClient;
         this.applicationProperties = ApplicationProperties.get();
@@ -78,6 +139,80 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
         failedMsgCacheSize = applicationProperties.getInt(CONSUMER_FAILEDCACHESIZE_PROPERTY, 20);
         consumerRetryInterval = applicationProperties.getInt(CONSUMER_RETRY_INTERVAL, 500);
 
+        if (metadataService != null && applicationProperties.getBoolean(CONSUMER_DIRECT_INGEST_PROPERTY, true)) {
+            hookIngestor = new InProcessHookIngestor(metadataService);
+        } else {
+            hookIngestor = null;
+        }
+
+        // a partially filled batch can only be flushed when hasNext() times out. KafkaNotification sets a consumer
+        // timeout for hook consumers when batching is on; when the timeout is disabled explicitly, the consumer would
+        // block with messages pending, so these are then applied one at a time
+        int size = applicationProperties.getInt(CONSUMER_BATCH_SIZE_PROPERTY, DEFAULT_CONSUMER_BATCH_SIZE);
+        if (size > 1 && applicationProperties.getInt(KAFKA_CONSUMER_TIMEOUT_PROPERTY,
+            DEFAULT_KAFKA_CONSUMER_TIMEOUT_MS) < 0) {
+            LOG.warn("{} is disabled, hook messages will not be batched", KAFKA_CONSUMER_TIMEOUT_PROPERTY);
+
+            size = 1;
+        }
+        batchSize = Math.max(size, 1);
+        batchMaxWaitMs = applicationProperties.getInt(CONSUMER_BATCH_MAX_WAIT_MS_PROPERTY, 500);
+        statsLogIntervalMs = applicationProperties.getInt(CONSUMER_STATS_LOG_INTERVAL_PROPERTY, 300) * 1000L;
+
+        // LocalAtlasClient keeps the user of the current message in a field, so it can't be used from several lanes
+        int lanesCount = applicationProperties.getInt(CONSUMER_LANES_PROPERTY, 1);
+        if (lanesCount > 1 && hookIngestor == null) {
+            LOG.warn("{} requires {}, hook messages will be applied by the consumer threads", CONSUMER_LANES_PROPERTY,
+                CONSUMER_DIRECT_INGEST_PROPERTY);
+
+            lanesCount = 1;
+        }
+        numLanes = Math.max(lanesCount, 1);
+    }
+
+    /**
+     * @return counters of the hook messages and batches processed by the consumer threads
+     */
+    public Map<String, Number> getStatistics() {
+        Map<String, Number> ret = new LinkedHashMap<>();
+
+        ret.put(METRIC_BATCHES, batches.get());
+        ret.put(METRIC_MESSAGES, messages.get());
+        ret.put(METRIC_MERGED_MESSAGES, mergedMessages.get());
+        ret.put(METRIC_SPLIT_BATCHES, splitBatches.get());
+        ret.put(METRIC_FAILED_MESSAGES, droppedMessages.get());
+        ret.put(METRIC_LAST_BATCH_SIZE, lastBatchSize.get());
+        ret.put(METRIC_MAX_BATCH_SIZE, maxBatchSize.get());
+        ret.put(METRIC_BATCH_TIME, batchTimeMs.get());
+        ret.put(METRIC_MAX_BATCH_TIME, maxBatchTimeMs.get());
+
+        return ret;
+    }
+
+    private void recordBatch(int size, long timeMs) {
+        batches.incrementAndGet();
+        messages.addAndGet(size);
+        lastBatchSize.set(size);
+        batchTimeMs.addAndGet(timeMs);
+        updateMax(maxBatchSize, size);
+        updateMax(maxBatchTimeMs, timeMs);
+
+        if (statsLogIntervalMs > 0 && METRICS_LOG.isInfoEnabled()) {
+            long now     = System.currentTimeMillis();
+            long lastLog = lastStatsLogTime.get();
+
+            if (now - lastLog >= statsLogIntervalMs && lastStatsLogTime.compareAndSet(lastLog, now)) {
+                METRICS_LOG.info("NotificationHookConsumer: {}", getStatistics());
+            }
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        for (long current = max.get(); value > current; current = max.get()) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
     }
 
     @Override
@@ -107,6 +242,7 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
                     new ThreadFactoryBuilder().setNameFormat(THREADNAME_PREFIX + " thread-%d").build());
         }
         executors = executorService;
+        startLanes();
         for (final NotificationConsumer<HookNotification.HookNotificationMessage> consumer : notificationConsumers) {
             HookConsumer hookConsumer = new HookConsumer(consumer);
             consumers.add(hookConsumer);
@@ -126,12 +262,44 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
                 }
                 executors = null;
             }
+            stopLanes();
             notificationInterface.close();
         } catch (InterruptedException e) {
             LOG.error("Failure in shutting down consumers");
         }
     }
 
+    private synchronized void startLanes() {
+        if (numLanes > 1 && lanes == null) {
+            List<ExecutorService> newLanes = new ArrayList<>(numLanes);
+
+            for (int i = 0; i < numLanes; i++) {
+                newLanes.add(Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat(THREADNAME_PREFIX + " lane-" + i).setDaemon(true).build()));
+            }
+
+            lanes = newLanes;
+        }
+    }
+
+    private synchronized void stopLanes() throws InterruptedException {
+        if (lanes != null) {
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(5000, TimeUnit.MILLISECONDS)) {
+                    LOG.error("Timed out waiting for hook message lanes to shut down");
+                }
+            }
+            lanes = null;
+        }
+    }
+
+    private synchronized List<ExecutorService> getLanes() {
+        return lanes;
+    }
+
     private void stopConsumerThreads() {
         if (consumers != null) {
             for (HookConsumer consumer : consumers) {
@@ -174,7 +342,8 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
     class HookConsumer implements Runnable {
         private final NotificationConsumer<HookNotification.HookNotificationMessage> consumer;
         private final AtomicBoolean shouldRun = new AtomicBoolean(false);
-        private List<HookNotification.HookNotificationMessage> failedMessages = new ArrayList<>();
+        private final List<HookNotification.HookNotificationMessage> failedMessages =
+            Collections.synchronizedList(new ArrayList<HookNotification.HookNotificationMessage>());
 
         public HookConsumer(NotificationConsumer<HookNotification.HookNotificationMessage> consumer) {
             this.consumer = consumer;
@@ -198,8 +367,10 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
 
             while (shouldRun.get()) {
                 try {
-                    if (hasNext()) {
-                        handleMessage(consumer.next());
+                    List<HookNotification.HookNotificationMessage> batch = nextBatch();
+
+                    if (!batch.isEmpty()) {
+                        handleMessages(batch);
                     }
                 } catch (Throwable t) {
                     LOG.warn("Failure in NotificationHookConsumer", t);
@@ -207,47 +378,310 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
             }
         }
 
+        /**
+         * Reads messages until the batch is full, the batch wait time has passed or no more messages are available.
+         */
+        private List<HookNotification.HookNotificationMessage> nextBatch() {
+            List<HookNotification.HookNotificationMessage> ret = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + batchMaxWaitMs;
+
+            while (shouldRun.get() && ret.size() < batchSize && hasNext()) {
+                try {
+                    ret.add(consumer.next());
+                } catch (Throwable t) {
+                    LOG.warn("Failure in reading hook notification", t);
+                }
+
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+            }
+
+            return ret;
+        }
+
         @VisibleForTesting
         void handleMessage(HookNotification.HookNotificationMessage message) throws
             AtlasServiceException, AtlasException {
+            long start = System.currentTimeMillis();
+            boolean isProcessed = processMessage(message);
+
+            recordBatch(1, System.currentTimeMillis() - start);
+
+            if (isProcessed) {
+                commit();
+            }
+        }
+
+        /**
+         * Applies a batch of messages and commits the offset once for the whole batch. Consecutive create or
+         * full-update messages are merged and applied in one call, hence in one graph transaction; when a merged
+         * call fails, its messages are applied again one at a time.
+         *
+         * When lanes are configured, the messages are first spread over the lanes by their root entity, so that
+         * messages about one entity are applied in order while other messages are applied concurrently.
+         * The offset is committed only after every lane has completed its share of the batch.
+         */
+        @VisibleForTesting
+        void handleMessages(List<HookNotification.HookNotificationMessage> messages) {
+            long start = System.currentTimeMillis();
+            List<ExecutorService> lanes = getLanes();
+            boolean isProcessed;
+
+            if (lanes == null || messages.size() == 1) {
+                isProcessed = applyMessages(messages);
+            } else {
+                isProcessed = applyMessagesInLanes(messages, lanes);
+            }
+
+            recordBatch(messages.size(), System.currentTimeMillis() - start);
+
+            if (isProcessed) {
+                commit();
+            }
+        }
+
+        private boolean applyMessagesInLanes(List<HookNotification.HookNotificationMessage> messages,
+                                             List<ExecutorService> lanes) {
+            boolean ret = false;
+
+            for (List<List<HookNotification.HookNotificationMessage>> wave : assignLanes(messages, lanes.size())) {
+                List<Future<Boolean>> results = new ArrayList<>(lanes.size());
+
+                for (int i = 0; i < lanes.size(); i++) {
+                    final List<HookNotification.HookNotificationMessage> toApply = wave.get(i);
+
+                    if (!toApply.isEmpty()) {
+                        results.add(lanes.get(i).submit(new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() {
+                                return applyMessages(toApply);
+                            }
+                        }));
+                    }
+                }
+
+                for (Future<Boolean> result : results) {
+                    try {
+                        ret |= result.get();
+                    } catch (ExecutionException e) {
+                        LOG.warn("Failure in applying hook messages", e.getCause());
+                    } catch (InterruptedException e) {
+                        LOG.warn("Interrupted while waiting for hook messages to be applied, offset will not be committed");
+
+                        Thread.currentThread().interrupt();
+
+                        return false;
+                    }
+                }
+            }
+
+            return ret;
+        }
+
+        /**
+         * @return true if at least one of the messages was applied
+         */
+        private boolean applyMessages(List<HookNotification.HookNotificationMessage> messages) {
+            boolean ret = false;
+
+            for (List<HookNotification.HookNotificationMessage> group : groupMessages(messages)) {
+                if (group.size() > 1) {
+                    try {
+                        applyMessage(mergeMessages(group));
+
+                        mergedMessages.addAndGet(group.size());
+                        ret = true;
+                        continue;
+                    } catch (Throwable e) {
+                        LOG.warn("Error handling {} merged messages, retrying them individually: {}", group.size(),
+                            e.getMessage());
+
+                        splitBatches.incrementAndGet();
+                    }
+                }
+
+                for (HookNotification.HookNotificationMessage message : group) {
+                    ret |= processMessage(message);
+                }
+            }
+
+            return ret;
+        }
+
+        /**
+         * Spreads the messages over the lanes by the hash of their root entity, so that the messages about one
+         * entity are applied in one lane, in the order they were received. The entities a message only refers to,
+         * like the database of a table or the inputs of a query, are dependencies rather than keys: a message goes
+         * to the lane of the messages that write the entities it writes or refers to, or that refer to the entities
+         * it writes, when these messages are all in one lane. When they are in several lanes, the message starts a
+         * new wave, which is applied after the lanes of the earlier waves have completed. Messages in different
+         * lanes may still update an entity they both refer to, as HiveHook sends it along; a conflict between them
+         * fails one of the transactions, and that message is applied again.
+         *
+         * @return the waves of messages, each with the messages of every lane
+         */
+        @VisibleForTesting
+        List<List<List<HookNotification.HookNotificationMessage>>> assignLanes(
+            List<HookNotification.HookNotificationMessage> messages, int numLanes) {
+            List<List<List<HookNotification.HookNotificationMessage>>> ret = new ArrayList<>();
+            List<List<HookNotification.HookNotificationMessage>> wave = null;
+            Map<String, Integer> writerLanes = new HashMap<>();
+            Map<String, Set<Integer>> readerLanes = new HashMap<>();
+
+            for (HookNotification.HookNotificationMessage message : messages) {
+                HookMessageEntities entities = HookMessageEntities.of(message);
+                Set<Integer> dependencyLanes = new HashSet<>();
+
+                for (String key : entities.getWrittenKeys()) {
+                    addLane(dependencyLanes, writerLanes.get(key));
+
+                    if (readerLanes.containsKey(key)) {
+                        dependencyLanes.addAll(readerLanes.get(key));
+                    }
+                }
+
+                for (String key : entities.getReferencedKeys()) {
+                    addLane(dependencyLanes, writerLanes.get(key));
+                }
+
+                // a message whose entities are not known can't be ordered with the others, so it has its own wave
+                boolean isKnown = entities.getRootKey() != null;
+
+                if (wave == null || !isKnown || dependencyLanes.size() > 1) {
+                    wave = newWave(numLanes);
+                    writerLanes.clear();
+                    readerLanes.clear();
+                    dependencyLanes.clear();
+                    ret.add(wave);
+                }
+
+                int lane;
+
+                if (!dependencyLanes.isEmpty()) {
+                    lane = dependencyLanes.iterator().next();
+                } else if (isKnown) {
+                    lane = (entities.getRootKey().hashCode() & Integer.MAX_VALUE) % numLanes;
+                } else {
+                    lane = 0;
+                }
+
+                wave.get(lane).add(message);
+
+                for (String key : entities.getWrittenKeys()) {
+                    writerLanes.put(key, lane);
+                }
+
+                for (String key : entities.getReferencedKeys()) {
+                    Set<Integer> keyLanes = readerLanes.get(key);
+
+                    if (keyLanes == null) {
+                        keyLanes = new HashSet<>();
+                        readerLanes.put(key, keyLanes);
+                    }
+
+                    keyLanes.add(lane);
+                }
+
+                if (!isKnown) {
+                    wave = null;
+                }
+            }
+
+            return ret;
+        }
+
+        private void addLane(Set<Integer> lanes, Integer lane) {
+            if (lane != null) {
+                lanes.add(lane);
+            }
+        }
+
+        private List<List<HookNotification.HookNotificationMessage>> newWave(int numLanes) {
+            List<List<HookNotification.HookNotificationMessage>> ret = new ArrayList<>(numLanes);
+
+            for (int i = 0; i < numLanes; i++) {
+                ret.add(new ArrayList<HookNotification.HookNotificationMessage>());
+            }
+
+            return ret;
+        }
+
+        /**
+         * Splits the messages into consecutive runs that can be applied together: create or full-update messages
+         * of the same user, none of which writes an entity that an earlier message in the run writes or refers to,
+         * or refers to an entity that an earlier message writes. Messages which only refer to the same entities,
+         * like Hive messages about tables of one database, are applied together.
+         */
+        private List<List<HookNotification.HookNotificationMessage>> groupMessages(
+            List<HookNotification.HookNotificationMessage> messages) {
+            List<List<HookNotification.HookNotificationMessage>> ret = new ArrayList<>();
+            List<HookNotification.HookNotificationMessage> group = null;
+            Set<String> groupWrittenKeys = new HashSet<>();
+            Set<String> groupReferencedKeys = new HashSet<>();
+
+            for (HookNotification.HookNotificationMessage message : messages) {
+                HookMessageEntities entities = isMergeable(message) ? HookMessageEntities.of(message) : null;
+
+                boolean canJoin = group != null && entities != null
+                    && group.get(0).getType() == message.getType()
+                    && Objects.equals(group.get(0).getUser(), message.getUser())
+                    && isMergeable(group.get(0))
+                    && Collections.disjoint(groupWrittenKeys, entities.getWrittenKeys())
+                    && Collections.disjoint(groupReferencedKeys, entities.getWrittenKeys())
+                    && Collections.disjoint(groupWrittenKeys, entities.getReferencedKeys());
+
+                if (!canJoin) {
+                    group = new ArrayList<>();
+                    groupWrittenKeys.clear();
+                    groupReferencedKeys.clear();
+                    ret.add(group);
+                }
+
+                group.add(message);
+
+                if (entities != null) {
+                    groupWrittenKeys.addAll(entities.getWrittenKeys());
+                    groupReferencedKeys.addAll(entities.getReferencedKeys());
+                }
+            }
+
+            return ret;
+        }
+
+        private boolean isMergeable(HookNotification.HookNotificationMessage message) {
+            return message.getType() == HookNotification.HookNotificationType.ENTITY_CREATE
+                || message.getType() == HookNotification.HookNotificationType.ENTITY_FULL_UPDATE;
+        }
+
+        private HookNotification.HookNotificationMessage mergeMessages(
+            List<HookNotification.HookNotificationMessage> group) {
+            HookNotification.HookNotificationMessage first = group.get(0);
+            List<Referenceable> entities = new ArrayList<>();
+
+            for (HookNotification.HookNotificationMessage message : group) {
+                entities.addAll(((HookNotification.EntityCreateRequest) message).getEntities());
+            }
+
+            if (first.getType() == HookNotification.HookNotificationType.ENTITY_CREATE) {
+                return new HookNotification.EntityCreateRequest(first.getUser(), entities);
+            } else {
+                return new HookNotification.EntityUpdateRequest(first.getUser(), entities);
+            }
+        }
+
+        /**
+         * Applies the message, retrying on failure.
+         *
+         * @return true if the message was applied, false if it was given up on after the maximum number of retries
+         */
+        private boolean processMessage(HookNotification.HookNotificationMessage message) {
             for (int numRetries = 0; numRetries < maxRetries; numRetries++) {
                 LOG.debug("Running attempt {}", numRetries);
                 try {
-                    atlasClient.setUser(message.getUser());
-                    switch (message.getType()) {
-                    case ENTITY_CREATE:
-                        HookNotification.EntityCreateRequest createRequest =
-                            (HookNotification.EntityCreateRequest) message;
-                        atlasClient.createEntity(createRequest.getEntities());
-                        break;
-
-                    case ENTITY_PARTIAL_UPDATE:
-                        HookNotification.EntityPartialUpdateRequest partialUpdateRequest =
-                            (HookNotification.EntityPartialUpdateRequest) message;
-                        atlasClient.updateEntity(partialUpdateRequest.getTypeName(),
-                            partialUpdateRequest.getAttribute(),
-                            partialUpdateRequest.getAttributeValue(), partialUpdateRequest.getEntity());
-                        break;
-
-                    case ENTITY_DELETE:
-                        HookNotification.EntityDeleteRequest deleteRequest =
-                            (HookNotification.EntityDeleteRequest) message;
-                        atlasClient.deleteEntity(deleteRequest.getTypeName(),
-                            deleteRequest.getAttribute(),
-                            deleteRequest.getAttributeValue());
-                        break;
-
-                    case ENTITY_FULL_UPDATE:
-                        HookNotification.EntityUpdateRequest updateRequest =
-                            (HookNotification.EntityUpdateRequest) message;
-                        atlasClient.updateEntities(updateRequest.getEntities());
-                        break;
-
-                    default:
-                        throw new IllegalStateException("Unhandled exception!");
-                    }
+                    applyMessage(message);
 
-                    break;
+                    return true;
                 } catch (Throwable e) {
                     LOG.warn("Error handling message{}", e.getMessage());
                     try{
@@ -259,30 +693,73 @@ public class NotificationHookConsumer implements Service, ActiveStateChangeHandl
 
                     if (numRetries == (maxRetries - 1)) {
                         LOG.warn("Max retries exceeded for message {}", message, e);
+                        droppedMessages.incrementAndGet();
                         failedMessages.add(message);
                         if (failedMessages.size() >= failedMsgCacheSize) {
                             recordFailedMessages();
                         }
-                        return;
                     }
                 }
             }
-            commit();
+
+            return false;
+        }
+
+        private void applyMessage(HookNotification.HookNotificationMessage message) throws Exception {
+            if (hookIngestor != null) {
+                hookIngestor.handleMessage(message);
+                return;
+            }
+
+            atlasClient.setUser(message.getUser());
+            switch (message.getType()) {
+            case ENTITY_CREATE:
+                HookNotification.EntityCreateRequest createRequest =
+                    (HookNotification.EntityCreateRequest) message;
+                atlasClient.createEntity(createRequest.getEntities());
+                break;
+
+            case ENTITY_PARTIAL_UPDATE:
+                HookNotification.EntityPartialUpdateRequest partialUpdateRequest =
+                    (HookNotification.EntityPartialUpdateRequest) message;
+                atlasClient.updateEntity(partialUpdateRequest.getTypeName(),
+                    partialUpdateRequest.getAttribute(),
+                    partialUpdateRequest.getAttributeValue(), partialUpdateRequest.getEntity());
+                break;
+
+            case ENTITY_DELETE:
+                HookNotification.EntityDeleteRequest deleteRequest =
+                    (HookNotification.EntityDeleteRequest) message;
+                atlasClient.deleteEntity(deleteRequest.getTypeName(),
+                    deleteRequest.getAttribute(),
+                    deleteRequest.getAttributeValue());
+                break;
+
+            case ENTITY_FULL_UPDATE:
+                HookNotification.EntityUpdateRequest updateRequest =
+                    (HookNotification.EntityUpdateRequest) message;
+                atlasClient.updateEntities(updateRequest.getEntities());
+                break;
+
+            default:
+                throw new IllegalStateException("Unhandled exception!");
+            }
         }
 
         private void recordFailedMessages() {
-            //logging failed messages
-            for (HookNotification.HookNotificationMessage message : failedMessages) {
-                FAILED_LOG.error("[DROPPED_NOTIFICATION] {}", AbstractNotification.getMessageJson(message));
+            synchronized (failedMessages) {
+                //logging failed messages
+                for (HookNotification.HookNotificationMessage message : failedMessages) {
+                    FAILED_LOG.error("[DROPPED_NOTIFICATION] {}", AbstractNotification.getMessageJson(message));
+                }
+                failedMessages.clear();
             }
-            failedMessages.clear();
         }
 
         private void commit() {
             recordFailedMessages();
             consumer.commit();
         }
-
         boolean serverAvailable(Timer timer) {
             try {
                 while (!atlasClient.isServerReady()) {
@@ -24,6 +24,9 @@ import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasConstants;
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.EntityAuditEvent;
+import org.apache.atlas.services.EntityListPage;
+import org.apache.atlas.services.EntityListVisitor;
+import org.apache.atlas.services.EntityProjection;
 import org.apache.atlas.services.MetadataService;
 import org.apache.atlas.typesystem.IStruct;
 import org.apache.atlas.typesystem.Referenceable;
@@ -50,9 +53,16 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -73,6 +83,9 @@ public class EntityResource {
 
     private static final String TRAIT_NAME = "traitName";
 
+    // entity lists longer than this are streamed to the client when no limit is given
+    private static final int ENTITY_LIST_STREAMING_THRESHOLD = 1000;
+
     private final MetadataService metadataService;
 
     @Context
@@ -521,16 +534,23 @@ public class EntityResource {
     }
 
     /**
-     * Fetch the complete definition of an entity given its GUID.
+     * Fetch the definition of an entity given its GUID. By default the complete definition is returned.
      *
      * @param guid GUID for the entity
+     * @param attributes comma separated names of the attributes to return; all attributes if not given. The other
+     *                   attributes are not read, and are returned with a null value, like attributes which are not set
+     * @param expandComposites whether composite entities are returned in full, rather than as ids
+     * @param includeTraits whether the traits of the entity are returned
      */
     @GET
     @Path("{guid}")
     @Produces(Servlets.JSON_MEDIA_TYPE)
-    public Response getEntityDefinition(@PathParam("guid") String guid) {
+    public Response getEntityDefinition(@PathParam("guid") String guid,
+                                        @QueryParam("attributes") String attributes,
+                                        @DefaultValue("true") @QueryParam("expandComposites") boolean expandComposites,
+                                        @DefaultValue("true") @QueryParam("includeTraits") boolean includeTraits) {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("==> EntityResource.getEntityDefinition({})", guid);
+            LOG.debug("==> EntityResource.getEntityDefinition({}, {})", guid, attributes);
         }
 
         AtlasPerfTracer perf = null;
@@ -544,7 +564,8 @@ public class EntityResource {
             }
 
             guid = ParamChecker.notEmpty(guid, "guid cannot be null");
-            final String entityDefinition = metadataService.getEntityDefinitionJson(guid);
+            EntityProjection projection = EntityProjection.parse(attributes, expandComposites, includeTraits);
+            final String entityDefinition = metadataService.getEntityDefinitionJson(guid, projection);
 
             JSONObject response = new JSONObject();
             response.put(AtlasClient.REQUEST_ID, Servlets.getRequestId());
@@ -584,20 +605,41 @@ public class EntityResource {
      * @param entityType name of a type which is unique
      */
     public Response getEntityListByType(String entityType) {
+        return getEntityListByType(entityType, null, null);
+    }
+
+    /**
+     * Gets the list of entities for a given entity type. When a limit is given, a single page of at most limit
+     * entities is returned along with the continuation token of the next page. Otherwise all entities are
+     * returned, and long lists are streamed to the client instead of being collected in memory.
+     *
+     * @param entityType name of a type which is unique
+     * @param limit maximum number of entities to return, or null to return all entities
+     * @param continuationToken continuation token returned with the previous page, or null
+     */
+    public Response getEntityListByType(final String entityType, Integer limit, String continuationToken) {
         try {
             Preconditions.checkNotNull(entityType, "Entity type cannot be null");
 
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Fetching entity list for type={} ", entityType);
+                LOG.debug("Fetching entity list for type={}, limit={} ", entityType, limit);
             }
 
-            final List<String> entityList = metadataService.getEntityList(entityType);
+            final EntityListPage page = metadataService.getEntityList(entityType,
+                    limit != null ? limit : ENTITY_LIST_STREAMING_THRESHOLD, continuationToken);
+
+            if (limit == null && page.getContinuationToken() != null) {
+                return Response.ok(new EntityListStreamingOutput(entityType, page)).build();
+            }
 
             JSONObject response = new JSONObject();
             response.put(AtlasClient.REQUEST_ID, Servlets.getRequestId());
             response.put(AtlasClient.TYPENAME, entityType);
-            response.put(AtlasClient.RESULTS, new JSONArray(entityList));
-            response.put(AtlasClient.COUNT, entityList.size());
+            response.put(AtlasClient.RESULTS, new JSONArray(page.getGuids()));
+            response.put(AtlasClient.COUNT, page.getGuids().size());
+            if (page.getContinuationToken() != null) {
+                response.put(AtlasClient.CONTINUATION_TOKEN, page.getContinuationToken());
+            }
 
             return Response.ok(response).build();
         } catch (NullPointerException e) {
@@ -612,12 +654,73 @@ public class EntityResource {
         }
     }
 
+    /**
+     * Writes the complete entity list of a type: the first page, which was read to decide to stream, followed by the
+     * rest of the list as it is read from the repository, starting at the continuation token of the first page.
+     */
+    private class EntityListStreamingOutput implements StreamingOutput {
+        private final String         entityType;
+        private final EntityListPage firstPage;
+        private final String         requestId;
+
+        EntityListStreamingOutput(String entityType, EntityListPage firstPage) {
+            this.entityType = entityType;
+            this.firstPage  = firstPage;
+            this.requestId  = Servlets.getRequestId();
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            final long[] count = new long[1];
+
+            EntityListVisitor visitor = new EntityListVisitor() {
+                @Override
+                public void visit(String guid) throws AtlasException {
+                    try {
+                        if (count[0]++ > 0) {
+                            writer.write(',');
+                        }
+                        writer.write(JSONObject.quote(guid));
+                    } catch (IOException e) {
+                        throw new AtlasException(e);
+                    }
+                }
+            };
+
+            writer.write('{');
+            writer.write(JSONObject.quote(AtlasClient.REQUEST_ID) + ':' + JSONObject.quote(requestId) + ',');
+            writer.write(JSONObject.quote(AtlasClient.TYPENAME) + ':' + JSONObject.quote(entityType) + ',');
+            writer.write(JSONObject.quote(AtlasClient.RESULTS) + ":[");
+
+            try {
+                for (String guid : firstPage.getGuids()) {
+                    visitor.visit(guid);
+                }
+
+                metadataService.visitEntityList(entityType, firstPage.getContinuationToken(), visitor);
+            } catch (AtlasException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to get entity list for type " + entityType, e);
+            }
+
+            writer.write("],");
+            writer.write(JSONObject.quote(AtlasClient.COUNT) + ':' + count[0]);
+            writer.write('}');
+            writer.flush();
+        }
+    }
+
     @GET
     @Consumes({Servlets.JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON})
     @Produces(Servlets.JSON_MEDIA_TYPE)
     public Response getEntity(@QueryParam("type") String entityType,
                               @QueryParam("property") String attribute,
-                              @QueryParam("value") String value) {
+                              @QueryParam("value") String value,
+                              @QueryParam("limit") Integer limit,
+                              @QueryParam("continuationToken") String continuationToken) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("==> EntityResource.getEntity({}, {}, {})", entityType, attribute, value);
         }
@@ -630,7 +733,7 @@ public class EntityResource {
 
             if (StringUtils.isEmpty(attribute)) {
                 //List API
-                return getEntityListByType(entityType);
+                return getEntityListByType(entityType, limit, continuationToken);
             } else {
                 //Get entity by unique attribute
                 return getEntityDefinitionByAttribute(entityType, attribute, value);
@@ -55,9 +55,11 @@ import javax.ws.rs.core.MediaType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.apache.atlas.web.adapters.AtlasInstanceRestAdapters.toAtlasBaseException;
 import static org.apache.atlas.web.adapters.AtlasInstanceRestAdapters.toEntityMutationResponse;
@@ -135,25 +137,26 @@ public class EntitiesREST {
 
         List<AtlasEntity> entityList = new ArrayList<>();
 
-        for (String guid : guids) {
-            try {
-               ITypedReferenceableInstance ref = metadataService.getEntityDefinition(guid);
-               Map<String, AtlasEntityWithAssociations> entityRet = restAdapters.getAtlasEntity(ref);
+        Set<String> entityGuids = new HashSet<>();
 
-               addToEntityList(entityList, entityRet.values());
+        try {
+            for (ITypedReferenceableInstance ref : metadataService.getEntityDefinitions(guids)) {
+                Map<String, AtlasEntityWithAssociations> entityRet = restAdapters.getAtlasEntity(ref);
 
-            } catch (AtlasException e) {
-                throw toAtlasBaseException(e);
+                addToEntityList(entityList, entityGuids, entityRet.values());
             }
+        } catch (AtlasException e) {
+            throw toAtlasBaseException(e);
         }
 
         entities.setList(entityList);
         return entities;
     }
 
-    private void addToEntityList(final List<AtlasEntity> entityList, final Collection<AtlasEntityWithAssociations> values) {
+    private void addToEntityList(final List<AtlasEntity> entityList, final Set<String> entityGuids,
+                                 final Collection<AtlasEntityWithAssociations> values) {
         for (AtlasEntityWithAssociations val : values) {
-            if ( !entityList.contains(val)) {
+            if (entityGuids.add(val.getGuid())) {
                 entityList.add(val);
             }
         }
@@ -27,6 +27,7 @@ import org.apache.atlas.model.instance.AtlasEntity;
 import org.apache.atlas.model.instance.AtlasEntityWithAssociations;
 import org.apache.atlas.model.instance.EntityMutationResponse;
 import org.apache.atlas.model.typedef.AtlasStructDef.AtlasAttributeDef;
+import org.apache.atlas.services.EntityProjection;
 import org.apache.atlas.services.MetadataService;
 import org.apache.atlas.type.AtlasEntityType;
 import org.apache.atlas.type.AtlasType;
@@ -76,45 +77,54 @@ public class EntityREST {
     }
 
     /**
-     * Fetch the complete definition of an entity given its GUID.
+     * Fetch the definition of an entity given its GUID. By default the complete definition is returned.
      *
      * @param guid GUID for the entity
+     * @param attributes comma separated names of the attributes to return; all attributes if not given. The other
+     *                   attributes are not read, and are returned with a null value, like attributes which are not set
+     * @param expandComposites whether composite entities are returned in full, rather than as ids
+     * @param includeTraits whether the classifications of the entity are returned
      */
     @GET
     @Path("/guid/{guid}")
     @Produces(Servlets.JSON_MEDIA_TYPE)
-    public List<AtlasEntityWithAssociations> getById(@PathParam("guid") String guid) throws AtlasBaseException {
-        List<AtlasEntityWithAssociations> entityList = new ArrayList<>();
-
-        try {
-            ITypedReferenceableInstance ref = metadataService.getEntityDefinition(guid);
-            Map<String, AtlasEntityWithAssociations> entityRet = restAdapters.getAtlasEntity(ref);
-            entityList.addAll(entityRet.values());
-            return entityList;
-        } catch (AtlasException e) {
-            throw toAtlasBaseException(e);
-        }
+    public List<AtlasEntityWithAssociations> getById(@PathParam("guid") String guid,
+                                                     @QueryParam("attributes") String attributes,
+                                                     @DefaultValue("true") @QueryParam("expandComposites") boolean expandComposites,
+                                                     @DefaultValue("true") @QueryParam("includeTraits") boolean includeTraits) throws AtlasBaseException {
+        return getEntity(guid, EntityProjection.parse(attributes, expandComposites, includeTraits));
     }
 
     /**
-     * Fetch the complete definition of an entity given its GUID including its associations
-     * like classifications, terms etc.
+     * Fetch the definition of an entity given its GUID including its associations
+     * like classifications, terms etc. By default the complete definition is returned.
      *
      * @param guid GUID for the entity
+     * @param attributes comma separated names of the attributes to return; all attributes if not given. The other
+     *                   attributes are not read, and are returned with a null value, like attributes which are not set
+     * @param expandComposites whether composite entities are returned in full, rather than as ids
      */
     @GET
     @Path("/guid/{guid}/associations")
     @Produces(Servlets.JSON_MEDIA_TYPE)
-    public List<AtlasEntityWithAssociations> getWithAssociationsByGuid(@PathParam("guid") String guid) throws AtlasBaseException {
+    public List<AtlasEntityWithAssociations> getWithAssociationsByGuid(@PathParam("guid") String guid,
+                                                                       @QueryParam("attributes") String attributes,
+                                                                       @DefaultValue("true") @QueryParam("expandComposites") boolean expandComposites) throws AtlasBaseException {
+        return getEntity(guid, EntityProjection.parse(attributes, expandComposites, true));
+    }
 
+    private List<AtlasEntityWithAssociations> getEntity(String guid, EntityProjection projection) throws AtlasBaseException {
         List<AtlasEntityWithAssociations> entityList = new ArrayList<>();
+
         try {
-            ITypedReferenceableInstance ref = metadataService.getEntityDefinition(guid);
+            ITypedReferenceableInstance ref = metadataService.getEntityDefinition(guid, projection);
             Map<String, AtlasEntityWithAssociations> entityRet = restAdapters.getAtlasEntity(ref);
             entityList.addAll(entityRet.values());
             return entityList;
         } catch (AtlasException e) {
             throw toAtlasBaseException(e);
+        } catch (IllegalArgumentException e) {
+            throw new AtlasBaseException(AtlasErrorCode.INVALID_PARAMETERS, e, e.getMessage());
         }
     }
 
@@ -27,6 +27,7 @@ import org.apache.atlas.repository.graph.GraphBackedSearchIndexer;
 import org.apache.atlas.repository.store.graph.v1.AtlasTypeDefGraphStoreV1;
 import org.apache.atlas.service.Service;
 import org.apache.atlas.services.DefaultMetadataService;
+import org.apache.atlas.services.MetricsService;
 
 /**
  * A Guice module that registers the handlers of High Availability state change handlers and other services.
@@ -40,6 +41,8 @@ public class ActiveInstanceElectorModule extends AbstractModule {
                 Multibinder.newSetBinder(binder(), ActiveStateChangeHandler.class);
         activeStateChangeHandlerBinder.addBinding().to(GraphBackedSearchIndexer.class);
         activeStateChangeHandlerBinder.addBinding().to(DefaultMetadataService.class);
+        // after DefaultMetadataService, so that the entity change outbox is started when the counters are reconciled
+        activeStateChangeHandlerBinder.addBinding().to(MetricsService.class);
         activeStateChangeHandlerBinder.addBinding().to(NotificationHookConsumer.class);
         activeStateChangeHandlerBinder.addBinding().to(HBaseBasedAuditRepository.class);
         activeStateChangeHandlerBinder.addBinding().to(AtlasTypeDefGraphStoreV1.class);
@@ -17,22 +17,33 @@
  */
 package org.apache.atlas.notification;
 
+import org.apache.atlas.ApplicationProperties;
 import org.apache.atlas.AtlasClient;
 import org.apache.atlas.AtlasException;
 import org.apache.atlas.AtlasServiceException;
 import org.apache.atlas.LocalAtlasClient;
 import org.apache.atlas.ha.HAConfiguration;
 import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.services.MetadataService;
+import org.apache.atlas.typesystem.ITypedReferenceableInstance;
 import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.persistence.Id;
 import org.apache.commons.configuration.Configuration;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doThrow;
@@ -41,7 +52,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 
 public class NotificationHookConsumerTest {
@@ -120,6 +133,418 @@ public class NotificationHookConsumerTest {
         verifyZeroInteractions(consumer);
     }
 
+    @Test
+    public void testMessageIsAppliedOnMetadataServiceWhenAvailable() throws AtlasServiceException, AtlasException {
+        MetadataService metadataService = mock(MetadataService.class);
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient, metadataService);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(consumer);
+        Referenceable entity = new Referenceable("type");
+        ITypedReferenceableInstance typedEntity = mock(ITypedReferenceableInstance.class);
+        when(metadataService.getTypedReferenceableInstance(entity)).thenReturn(typedEntity);
+        HookNotification.EntityCreateRequest message = new HookNotification.EntityCreateRequest("user", entity);
+
+        hookConsumer.handleMessage(message);
+
+        verify(metadataService).createEntities(new ITypedReferenceableInstance[] { typedEntity });
+        verifyZeroInteractions(atlasClient);
+        verify(consumer).commit();
+    }
+
+    @Test
+    public void testMessageEntityIdIsKeptWhenApplied() throws AtlasServiceException, AtlasException {
+        MetadataService metadataService = mock(MetadataService.class);
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient, metadataService);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(consumer);
+        final Referenceable entity = createEntity("entity1");
+        final List<Id> convertedIds = new ArrayList<>();
+        Id id = entity.getId();
+        // like the conversion of the service, replace the id of the entity and fail
+        when(metadataService.getTypedReferenceableInstance(entity)).thenAnswer(new Answer<ITypedReferenceableInstance>() {
+            @Override
+            public ITypedReferenceableInstance answer(InvocationOnMock invocation) throws Throwable {
+                convertedIds.add(entity.getId());
+                entity.replaceWithNewId(new Id(entity.getTypeName()));
+                throw new AtlasException("Simulating exception in converting entity");
+            }
+        });
+
+        hookConsumer.handleMessages(Arrays.<HookNotification.HookNotificationMessage>asList(
+                new HookNotification.EntityUpdateRequest("user", entity)));
+
+        // every retry converts the entity with the id it was sent with
+        assertTrue(convertedIds.size() > 1);
+        for (Id convertedId : convertedIds) {
+            assertSame(convertedId, id);
+        }
+        assertSame(entity.getId(), id);
+    }
+
+    @Test
+    public void testBatchOfMessagesIsMergedAndCommittedOnce() throws AtlasServiceException, AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(consumer);
+        Referenceable entity1 = createEntity("entity1");
+        Referenceable entity2 = createEntity("entity2");
+
+        hookConsumer.handleMessages(Arrays.<HookNotification.HookNotificationMessage>asList(
+                new HookNotification.EntityCreateRequest("user", entity1),
+                new HookNotification.EntityCreateRequest("user", entity2),
+                new HookNotification.EntityDeleteRequest("user", "type", "qualifiedName", "entity3")));
+
+        verify(atlasClient).createEntity(Arrays.asList(entity1, entity2));
+        verify(atlasClient).deleteEntity("type", "qualifiedName", "entity3");
+        verify(consumer, times(1)).commit();
+    }
+
+    @Test
+    public void testMessagesOfFailedBatchAreRetriedIndividually() throws AtlasServiceException, AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(consumer);
+        Referenceable entity1 = createEntity("entity1");
+        Referenceable entity2 = createEntity("entity2");
+        when(atlasClient.updateEntities(Arrays.asList(entity1, entity2))).
+                thenThrow(new RuntimeException("Simulating exception in processing batch"));
+
+        hookConsumer.handleMessages(Arrays.<HookNotification.HookNotificationMessage>asList(
+                new HookNotification.EntityUpdateRequest("user", entity1),
+                new HookNotification.EntityUpdateRequest("user", entity2)));
+
+        verify(atlasClient).updateEntities(Arrays.asList(entity1));
+        verify(atlasClient).updateEntities(Arrays.asList(entity2));
+        verify(consumer, times(1)).commit();
+    }
+
+    @Test
+    public void testMessagesForSameEntityAreNotMerged() throws AtlasServiceException, AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(consumer);
+        Referenceable entity1 = createEntity("entity1");
+        Referenceable entity1Update = createEntity("entity1");
+
+        hookConsumer.handleMessages(Arrays.<HookNotification.HookNotificationMessage>asList(
+                new HookNotification.EntityUpdateRequest("user", entity1),
+                new HookNotification.EntityUpdateRequest("user", entity1Update)));
+
+        verify(atlasClient, times(2)).updateEntities(any(List.class));
+        verify(consumer, times(1)).commit();
+    }
+
+    @Test
+    public void testHiveMessagesSharingDatabaseAreMerged() throws AtlasServiceException, AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(consumer);
+        Referenceable db = createHiveDb("default");
+        Referenceable table1 = createHiveTable(db, "t1");
+        Referenceable table2 = createHiveTable(db, "t2");
+        Referenceable db2 = createHiveDb("default");
+        Referenceable table3 = createHiveTable(db2, "t3");
+        Referenceable table2Update = createHiveTable(db2, "t2");
+
+        //Like HiveHook, every message carries the database of its table, which the message only refers to
+        hookConsumer.handleMessages(Arrays.<HookNotification.HookNotificationMessage>asList(
+                new HookNotification.EntityUpdateRequest("user", db, table1),
+                new HookNotification.EntityUpdateRequest("user", db, table2),
+                new HookNotification.EntityUpdateRequest("user", db2, table3),
+                new HookNotification.EntityUpdateRequest("user", db2, table2Update)));
+
+        verify(atlasClient).updateEntities(Arrays.asList(db, table1, db, table2, db2, table3));
+        verify(atlasClient).updateEntities(Arrays.asList(db2, table2Update));
+        verify(consumer, times(1)).commit();
+    }
+
+    @Test
+    public void testMessagesAreAssignedToLanesByTheirRootEntity() throws AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(mock(NotificationConsumer.class));
+        Referenceable db = createHiveDb("db1");
+        Referenceable sales = createHiveTable(db, "sales");
+        Referenceable orders = createHiveTable(db, "orders");
+        HookNotification.HookNotificationMessage createSales = new HookNotification.EntityUpdateRequest("user", db, sales);
+        HookNotification.HookNotificationMessage createOrders =
+                new HookNotification.EntityUpdateRequest("user", db, orders);
+        HookNotification.HookNotificationMessage deleteSales = new HookNotification.EntityDeleteRequest("user",
+                "hive_table", AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, "db1.sales@cluster");
+
+        //Both messages carry db, which they only refer to, so the tables go to their own lanes
+        List<List<List<HookNotification.HookNotificationMessage>>> waves =
+                hookConsumer.assignLanes(Arrays.asList(createSales, createOrders, deleteSales), 4);
+
+        assertEquals(waves.size(), 1);
+        assertEquals(waves.get(0).get(laneOf("hive_table.db1.sales@cluster", 4)), Arrays.asList(createSales, deleteSales));
+        assertEquals(waves.get(0).get(laneOf("hive_table.db1.orders@cluster", 4)), Arrays.asList(createOrders));
+    }
+
+    @Test
+    public void testUpdateOfNestedEntityIsAssignedToLaneOfItsDefinition() throws AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(mock(NotificationConsumer.class));
+        Referenceable column = createEntity("column1");
+        Referenceable table1 = createEntity("table1");
+        table1.set("columns", Arrays.asList(column));
+        Referenceable table2 = createEntity("table2");
+        HookNotification.HookNotificationMessage createTable1 = new HookNotification.EntityCreateRequest("user", table1);
+        HookNotification.HookNotificationMessage updateTable1 = new HookNotification.EntityPartialUpdateRequest("user",
+                "type", AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, "table1", createEntity("table1"));
+        HookNotification.HookNotificationMessage createTable2 = new HookNotification.EntityCreateRequest("user", table2);
+        HookNotification.HookNotificationMessage renameColumn = new HookNotification.EntityPartialUpdateRequest("user",
+                "type", AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, "column1", createEntity("column2"));
+
+        //The column is only defined inside table1, yet its rename must follow the creation of table1
+        List<List<List<HookNotification.HookNotificationMessage>>> waves = hookConsumer.assignLanes(
+                Arrays.asList(createTable1, updateTable1, createTable2, renameColumn), 2);
+
+        assertEquals(waves.size(), 1);
+        int table1Lane = laneOf("type.table1", 2);
+        assertEquals(waves.get(0).get(table1Lane), Arrays.asList(createTable1, updateTable1, renameColumn));
+        assertTrue(waves.get(0).get(laneOf("type.table2", 2)).contains(createTable2));
+    }
+
+    @Test
+    public void testUpdateOfRenamedEntityIsAssignedToLaneOfItsRename() throws AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(mock(NotificationConsumer.class));
+        HookNotification.HookNotificationMessage renameTable = new HookNotification.EntityPartialUpdateRequest("user",
+                "type", AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, "table1", createEntity("table1_renamed"));
+        HookNotification.HookNotificationMessage updateRenamedTable = new HookNotification.EntityPartialUpdateRequest(
+                "user", "type", AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, "table1_renamed",
+                createEntity("table1_renamed"));
+
+        //The update refers to the table by its new name only, yet it must follow the rename
+        List<List<List<HookNotification.HookNotificationMessage>>> waves =
+                hookConsumer.assignLanes(Arrays.asList(renameTable, updateRenamedTable), 4);
+
+        assertEquals(waves.size(), 1);
+        assertEquals(waves.get(0).get(laneOf("type.table1", 4)), Arrays.asList(renameTable, updateRenamedTable));
+    }
+
+    @Test
+    public void testHiveLineageMessagesAreAssignedToLanesAndWaves() throws AtlasException {
+        NotificationHookConsumer notificationHookConsumer =
+                new NotificationHookConsumer(notificationInterface, atlasClient);
+        NotificationHookConsumer.HookConsumer hookConsumer =
+                notificationHookConsumer.new HookConsumer(mock(NotificationConsumer.class));
+        List<HookNotification.HookNotificationMessage> messages = createHiveMessages();
+
+        List<List<List<HookNotification.HookNotificationMessage>>> waves = hookConsumer.assignLanes(messages, 4);
+
+        //The CTAS of orders_by_day follows the creation of orders in its lane; the insert into sales_by_customer
+        //reads tables of two lanes, so it waits for both in a second wave, along with the messages after it
+        assertEquals(waves.size(), 2);
+        assertEquals(waves.get(0).get(0), Arrays.asList(messages.get(0)));
+        assertEquals(waves.get(0).get(1), Arrays.asList(messages.get(1), messages.get(3)));
+        assertEquals(waves.get(0).get(2), Arrays.asList(messages.get(2)));
+        assertTrue(waves.get(0).get(3).isEmpty());
+        assertEquals(waves.get(1).get(0), Arrays.asList(messages.get(4), messages.get(5)));
+        assertEquals(waves.get(1).get(1).size() + waves.get(1).get(2).size() + waves.get(1).get(3).size(), 0);
+
+        //An alter of the CTAS output is keyed by the output table, so it follows the CTAS
+        HookNotification.HookNotificationMessage alterOrdersByDay = new HookNotification.EntityPartialUpdateRequest(
+                "user", "hive_table", AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, "db1.orders_by_day@cluster",
+                createHiveTable(createHiveDb("db1"), "orders_by_day"));
+
+        waves = hookConsumer.assignLanes(Arrays.asList(messages.get(1), messages.get(3), alterOrdersByDay), 4);
+
+        assertEquals(waves.size(), 1);
+        assertEquals(waves.get(0).get(1), Arrays.asList(messages.get(1), messages.get(3), alterOrdersByDay));
+    }
+
+    @Test
+    public void testHiveMessagesAreAppliedConcurrentlyInLanes() throws Exception {
+        final MetadataService metadataService = mock(MetadataService.class);
+        final List<HookNotification.HookNotificationMessage> messages = createHiveMessages();
+        final Map<Referenceable, ITypedReferenceableInstance> typedEntities = new IdentityHashMap<>();
+        final Map<ITypedReferenceableInstance, Referenceable> entities = new IdentityHashMap<>();
+        for (HookNotification.HookNotificationMessage message : messages) {
+            for (Referenceable entity : ((HookNotification.EntityCreateRequest) message).getEntities()) {
+                ITypedReferenceableInstance typedEntity = mock(ITypedReferenceableInstance.class);
+                typedEntities.put(entity, typedEntity);
+                entities.put(typedEntity, entity);
+            }
+        }
+        when(metadataService.getTypedReferenceableInstance(any(Referenceable.class))).thenAnswer(
+                new Answer<ITypedReferenceableInstance>() {
+                    @Override
+                    public ITypedReferenceableInstance answer(InvocationOnMock invocation) {
+                        return typedEntities.get(invocation.getArguments()[0]);
+                    }
+                });
+        final AtomicInteger clock = new AtomicInteger();
+        final List<AppliedEntities> applied = Collections.synchronizedList(new ArrayList<AppliedEntities>());
+        when(metadataService.updateEntities(any(ITypedReferenceableInstance[].class))).thenAnswer(
+                new Answer<AtlasClient.EntityResult>() {
+                    @Override
+                    public AtlasClient.EntityResult answer(InvocationOnMock invocation) throws Exception {
+                        AppliedEntities ret = new AppliedEntities(clock.incrementAndGet());
+                        for (Object typedEntity : (Object[]) invocation.getArguments()[0]) {
+                            ret.qualifiedNames.add((String) entities.get(typedEntity).get(
+                                    AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME));
+                        }
+                        Thread.sleep(100);
+                        ret.end = clock.incrementAndGet();
+                        applied.add(ret);
+                        return null;
+                    }
+                });
+
+        ApplicationProperties.get().setProperty(NotificationHookConsumer.CONSUMER_LANES_PROPERTY, 4);
+        NotificationHookConsumer notificationHookConsumer;
+        try {
+            notificationHookConsumer = new NotificationHookConsumer(notificationInterface, atlasClient, metadataService);
+        } finally {
+            ApplicationProperties.get().clearProperty(NotificationHookConsumer.CONSUMER_LANES_PROPERTY);
+        }
+        notificationHookConsumer.startInternal(configuration, executorService);
+        NotificationConsumer consumer = mock(NotificationConsumer.class);
+        NotificationHookConsumer.HookConsumer hookConsumer = notificationHookConsumer.new HookConsumer(consumer);
+
+        try {
+            hookConsumer.handleMessages(messages);
+        } finally {
+            notificationHookConsumer.stop();
+        }
+
+        AppliedEntities sales = getApplied(applied, "db1.sales@cluster", false);
+        AppliedEntities orders = getApplied(applied, "db1.orders@cluster", false);
+        AppliedEntities customers = getApplied(applied, "db2.customers@cluster", false);
+        AppliedEntities ordersByDay = getApplied(applied, "db1.orders_by_day@cluster", true);
+        AppliedEntities salesByCustomer = getApplied(applied, "db2.sales_by_customer@cluster", true);
+
+        //The tables were created at the same time, each referring to its db, and lineage followed its inputs
+        assertTrue(sales.start < orders.end && orders.start < sales.end);
+        assertTrue(orders.start < customers.end && customers.start < orders.end);
+        assertTrue(orders.end < ordersByDay.start);
+        assertTrue(sales.end < salesByCustomer.start && customers.end < salesByCustomer.start);
+        //regions only shares db2 with the insert before it in its lane, so they were applied together
+        assertTrue(salesByCustomer.qualifiedNames.contains("db2.regions@cluster"));
+        verify(consumer, times(1)).commit();
+    }
+
+    private Referenceable createEntity(String qualifiedName) {
+        Referenceable entity = new Referenceable("type");
+        entity.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, qualifiedName);
+        return entity;
+    }
+
+    private int laneOf(String key, int numLanes) {
+        return (key.hashCode() & Integer.MAX_VALUE) % numLanes;
+    }
+
+    /**
+     * Messages like HiveHook sends: tables created with their db, a CTAS and an insert from two tables.
+     * The tables sales, orders and customers hash to lanes 0, 1 and 2 of 4, sales_by_customer and regions to lane 0.
+     */
+    private List<HookNotification.HookNotificationMessage> createHiveMessages() {
+        Referenceable sales = createHiveTable(createHiveDb("db1"), "sales");
+        Referenceable orders = createHiveTable(createHiveDb("db1"), "orders");
+        Referenceable customers = createHiveTable(createHiveDb("db2"), "customers");
+        Referenceable ordersInput = createHiveTable(createHiveDb("db1"), "orders");
+        Referenceable ordersByDay = createHiveTable(createHiveDb("db1"), "orders_by_day");
+        Referenceable salesInput = createHiveTable(createHiveDb("db1"), "sales");
+        Referenceable customersInput = createHiveTable(createHiveDb("db2"), "customers");
+        Referenceable salesByCustomer = createHiveTable(createHiveDb("db2"), "sales_by_customer");
+        Referenceable regions = createHiveTable(createHiveDb("db2"), "regions");
+
+        return Arrays.<HookNotification.HookNotificationMessage>asList(
+                new HookNotification.EntityUpdateRequest("user", (Referenceable) sales.get("db"), sales),
+                new HookNotification.EntityUpdateRequest("user", (Referenceable) orders.get("db"), orders),
+                new HookNotification.EntityUpdateRequest("user", (Referenceable) customers.get("db"), customers),
+                createHiveLineageMessage(Arrays.asList(ordersInput), ordersByDay),
+                createHiveLineageMessage(Arrays.asList(salesInput, customersInput), salesByCustomer),
+                new HookNotification.EntityUpdateRequest("user", (Referenceable) regions.get("db"), regions));
+    }
+
+    /**
+     * A lineage message like HiveHook sends: the inputs and the output with their dbs, and the process last.
+     */
+    private HookNotification.HookNotificationMessage createHiveLineageMessage(List<Referenceable> inputs,
+                                                                              Referenceable output) {
+        List<Referenceable> entities = new ArrayList<>();
+        for (Referenceable input : inputs) {
+            entities.add((Referenceable) input.get("db"));
+            entities.add(input);
+        }
+        entities.add((Referenceable) output.get("db"));
+        entities.add(output);
+        Referenceable process = new Referenceable("hive_process");
+        process.set(AtlasClient.NAME, "insert into " + output.get(AtlasClient.NAME));
+        process.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, output.get(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME)
+                + ":1480000000000");
+        process.set(AtlasClient.PROCESS_ATTRIBUTE_INPUTS, inputs);
+        process.set(AtlasClient.PROCESS_ATTRIBUTE_OUTPUTS, Arrays.asList(output));
+        entities.add(process);
+        return new HookNotification.EntityUpdateRequest("user", entities);
+    }
+
+    private AppliedEntities getApplied(List<AppliedEntities> applied, String qualifiedName, boolean isOutput) {
+        for (AppliedEntities entities : applied) {
+            boolean hasProcess = false;
+            for (String name : entities.qualifiedNames) {
+                hasProcess |= name.endsWith(":1480000000000");
+            }
+            if (entities.qualifiedNames.contains(qualifiedName) && hasProcess == isOutput) {
+                return entities;
+            }
+        }
+        return null;
+    }
+
+    private static class AppliedEntities {
+        private final List<String> qualifiedNames = new ArrayList<>();
+        private final int start;
+        private int end;
+
+        AppliedEntities(int start) {
+            this.start = start;
+        }
+    }
+
+    private Referenceable createHiveDb(String name) {
+        Referenceable db = new Referenceable("hive_db");
+        db.set(AtlasClient.NAME, name);
+        db.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, name + "@cluster");
+        return db;
+    }
+
+    private Referenceable createHiveTable(Referenceable db, String name) {
+        String qualifiedName = db.get(AtlasClient.NAME) + "." + name + "@cluster";
+        Referenceable column = new Referenceable("hive_column");
+        column.set(AtlasClient.NAME, "id");
+        column.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, db.get(AtlasClient.NAME) + "." + name + ".id@cluster");
+        Referenceable sd = new Referenceable("hive_storagedesc");
+        sd.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, qualifiedName + "_storage");
+        Referenceable table = new Referenceable("hive_table");
+        table.set(AtlasClient.NAME, name);
+        table.set(AtlasClient.REFERENCEABLE_ATTRIBUTE_NAME, qualifiedName);
+        table.set("db", db);
+        table.set("columns", Arrays.asList(column));
+        table.set("sd", sd);
+        return table;
+    }
+
     @Test
     public void testConsumerProceedsWithFalseIfInterrupted() throws Exception {
         NotificationHookConsumer notificationHookConsumer = new NotificationHookConsumer(notificationInterface, atlasClient);
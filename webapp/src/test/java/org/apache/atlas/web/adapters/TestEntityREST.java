@@ -98,7 +98,7 @@ public class TestEntityREST {
     @Test
     public void testGetEntityById() throws Exception {
         createOrUpdateEntity();
-        final List<AtlasEntityWithAssociations> response = entityREST.getById(dbGuid);
+        final List<AtlasEntityWithAssociations> response = entityREST.getById(dbGuid, null, true, true);
 
         Assert.assertNotNull(response);
         TestEntitiesREST.verifyAttributes(response.get(0).getAttributes(), dbEntity.getAttributes());
@@ -130,7 +130,7 @@ public class TestEntityREST {
     @Test(dependsOnMethods = "testAddAndGetClassification")
     public void  testGetEntityWithAssociations() throws Exception {
 
-        List<AtlasEntityWithAssociations> entity = entityREST.getWithAssociationsByGuid(dbGuid);
+        List<AtlasEntityWithAssociations> entity = entityREST.getWithAssociationsByGuid(dbGuid, null, true);
         final List<AtlasClassification> retrievedClassifications = entity.get(0).getClassifications();
 
         Assert.assertNotNull(retrievedClassifications);